@@ -0,0 +1,142 @@
+/*
+ * Copyright 2012-2016 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * Please cite the following publication(s):
+ *
+ * M. Hoffer, C.Poliwoda, G.Wittum. Visual Reflection Library -
+ * A Framework for Declarative GUI Programming on the Java Platform.
+ * Computing and Visualization in Science, 2011, in press.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vrl.workflow;
+
+import javafx.collections.ModifiableObservableListBase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Observable list that supports batched updates. Changes that are performed
+ * between {@link #beginUpdate()} and {@link #endUpdate()} are reported as one
+ * consolidated change when the outermost update ends.
+ *
+ * <p>
+ * Subclasses can override {@link #elementAdded(java.lang.Object)} and
+ * {@link #elementRemoved(java.lang.Object)} to be notified synchronously,
+ * i.e., also while an update is in progress.
+ * </p>
+ *
+ * @param <E> element type
+ *
+ * @author Michael Hoffer &lt;info@michaelhoffer.de&gt;
+ */
+class BatchObservableList<E> extends ModifiableObservableListBase<E> {
+
+    private final List<E> elements = new ArrayList<>();
+    private int updateDepth;
+
+    /**
+     * Starts a batched update. Listeners won't be notified until the
+     * corresponding call to {@link #endUpdate()}. Updates can be nested.
+     */
+    public void beginUpdate() {
+        updateDepth++;
+        beginChange();
+    }
+
+    /**
+     * Ends a batched update. If this call ends the outermost update, all
+     * changes are reported as one consolidated change.
+     */
+    public void endUpdate() {
+        if (updateDepth == 0) {
+            throw new IllegalStateException(
+                    "endUpdate() called without beginUpdate()");
+        }
+
+        updateDepth--;
+        endChange();
+    }
+
+    /**
+     * Determines whether a batched update is in progress.
+     *
+     * @return {@code true} if an update is in progress; {@code false}
+     * otherwise
+     */
+    public boolean isUpdating() {
+        return updateDepth > 0;
+    }
+
+    /**
+     * Called after the specified element has been added.
+     *
+     * @param e the element that has been added
+     */
+    protected void elementAdded(E e) {
+        //
+    }
+
+    /**
+     * Called after the specified element has been removed.
+     *
+     * @param e the element that has been removed
+     */
+    protected void elementRemoved(E e) {
+        //
+    }
+
+    @Override
+    public E get(int index) {
+        return elements.get(index);
+    }
+
+    @Override
+    public int size() {
+        return elements.size();
+    }
+
+    @Override
+    protected void doAdd(int index, E element) {
+        elements.add(index, element);
+        elementAdded(element);
+    }
+
+    @Override
+    protected E doSet(int index, E element) {
+        E old = elements.set(index, element);
+        elementRemoved(old);
+        elementAdded(element);
+        return old;
+    }
+
+    @Override
+    protected E doRemove(int index) {
+        E old = elements.remove(index);
+        elementRemoved(old);
+        return old;
+    }
+}
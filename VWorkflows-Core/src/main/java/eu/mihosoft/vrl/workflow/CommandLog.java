@@ -0,0 +1,840 @@
+/*
+ * Copyright 2012-2016 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * Please cite the following publication(s):
+ *
+ * M. Hoffer, C.Poliwoda, G.Wittum. Visual Reflection Library -
+ * A Framework for Declarative GUI Programming on the Java Platform.
+ * Computing and Visualization in Science, 2011, in press.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vrl.workflow;
+
+import javafx.beans.property.Property;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Undo/redo log of a flow. The log observes the flow and all of its subflows
+ * and records node additions and removals, connections, connector additions
+ * and removals as well as changes of the title, geometry, value object and
+ * value of nodes as compact deltas. Undoing or redoing a command only replays
+ * its deltas, i.e., its cost depends on the size of the change rather than on
+ * the size of the flow.
+ *
+ * <p>
+ * By default, each change becomes a command of its own with the following
+ * exceptions:
+ * </p>
+ * <ul>
+ * <li>Consecutive geometry changes (x, y, width, height) of the same node are
+ * merged into one delta, e.g., all moves of a drag operation. Call
+ * {@link #seal()} to start a new command (e.g. when a drag gesture ends).</li>
+ * <li>Connections that are removed together with a node or connector are
+ * recorded as part of the removal.</li>
+ * <li>All changes between {@link #beginGroup()} and {@link #endGroup()} form
+ * one command. If changes are performed in a batched update (see
+ * {@link FlowModel#beginUpdate()}), the update must end before the group
+ * ends since listeners are notified when the update ends.</li>
+ * </ul>
+ *
+ * <p>
+ * The memory of the log is bounded by the number of commands that can be
+ * undone (the capacity) and by the number of deltas of all commands that can
+ * be undone or redone. If one of the limits is exceeded, the oldest commands
+ * are discarded. A single command that exceeds the delta limit, e.g., a large
+ * group, cannot be undone. It is discarded together with all other commands.
+ * </p>
+ *
+ * <p>
+ * The flow is observed without creating the properties of its nodes (see
+ * {@link VNodeImpl}). Only flows created by {@link FlowFactory} are
+ * supported since removed nodes are restored via {@link VFlowModelImpl}.
+ * </p>
+ *
+ * @author Michael Hoffer &lt;info@michaelhoffer.de&gt;
+ */
+public final class CommandLog {
+
+    /**
+     * Default number of commands that can be undone.
+     */
+    public static final int DEFAULT_CAPACITY = 100;
+
+    /**
+     * Default number of deltas that are kept by the log.
+     */
+    public static final int DEFAULT_MAX_DELTAS = 100000;
+
+    private final VFlowModel flow;
+    private final int capacity;
+    private final int maxDeltas;
+
+    private final Deque<Command> undoStack = new ArrayDeque<>();
+    private final Deque<Command> redoStack = new ArrayDeque<>();
+    // number of deltas of all commands on the undo and redo stacks
+    private int deltaCount;
+
+    private final FlowObserver observer;
+
+    private int groupDepth;
+    private Command group;
+    private boolean replaying;
+
+    /**
+     * Constructor. Creates a log with the default capacity (see
+     * {@link #DEFAULT_CAPACITY}).
+     *
+     * @param flow flow to observe
+     */
+    public CommandLog(VFlowModel flow) {
+        this(flow, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor. Creates a log that keeps at most
+     * {@link #DEFAULT_MAX_DELTAS} deltas.
+     *
+     * @param flow flow to observe
+     * @param capacity maximum number of commands that can be undone
+     */
+    public CommandLog(VFlowModel flow, int capacity) {
+        this(flow, capacity, DEFAULT_MAX_DELTAS);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param flow flow to observe
+     * @param capacity maximum number of commands that can be undone
+     * @param maxDeltas maximum number of deltas of all commands that can be
+     * undone or redone
+     * @throws IllegalArgumentException if the flow has not been created by
+     * {@link FlowFactory} or if one of the limits is not positive
+     */
+    public CommandLog(VFlowModel flow, int capacity, int maxDeltas) {
+        if (!(flow instanceof VFlowModelImpl)) {
+            throw new IllegalArgumentException(
+                    "Unsupported flow class '"
+                    + (flow == null ? null : flow.getClass())
+                    + "', should extend '" + VFlowModelImpl.class + "'");
+        }
+
+        if (capacity < 1) {
+            throw new IllegalArgumentException(
+                    "Capacity must be positive: " + capacity);
+        }
+
+        if (maxDeltas < 1) {
+            throw new IllegalArgumentException(
+                    "Maximum number of deltas must be positive: " + maxDeltas);
+        }
+
+        this.flow = flow;
+        this.capacity = capacity;
+        this.maxDeltas = maxDeltas;
+
+        this.observer = new FlowObserver(flow, new Recorder());
+    }
+
+    /**
+     * Returns the observed flow.
+     *
+     * @return the observed flow
+     */
+    public VFlowModel getFlow() {
+        return flow;
+    }
+
+    /**
+     * Returns the maximum number of commands that can be undone.
+     *
+     * @return the maximum number of commands that can be undone
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the maximum number of deltas of all commands that can be undone
+     * or redone.
+     *
+     * @return the maximum number of deltas
+     */
+    public int getMaxDeltas() {
+        return maxDeltas;
+    }
+
+    /**
+     * Returns the number of deltas of all commands that can be undone or
+     * redone.
+     *
+     * @return the number of deltas
+     */
+    int getDeltaCount() {
+        return deltaCount;
+    }
+
+    /**
+     * Starts a group of changes that form one command. Groups can be nested.
+     */
+    public void beginGroup() {
+        if (groupDepth == 0) {
+            group = new Command(false);
+        }
+
+        groupDepth++;
+    }
+
+    /**
+     * Ends a group of changes (see {@link #beginGroup()}).
+     */
+    public void endGroup() {
+        if (groupDepth == 0) {
+            throw new IllegalStateException(
+                    "endGroup() called without beginGroup()");
+        }
+
+        groupDepth--;
+
+        if (groupDepth > 0) {
+            return;
+        }
+
+        Command cmd = group;
+        group = null;
+
+        if (cmd.overflow) {
+            // the changes of the group cannot be undone. therefore,
+            // previous commands cannot be undone either
+            clear();
+        } else if (!cmd.deltas.isEmpty()) {
+            cmd.sealed = true;
+            push(cmd);
+        }
+    }
+
+    /**
+     * Performs the specified changes as one command.
+     *
+     * @param changes changes to perform
+     */
+    public void group(Runnable changes) {
+        beginGroup();
+        try {
+            changes.run();
+        } finally {
+            endGroup();
+        }
+    }
+
+    /**
+     * Ends the current command. Subsequent changes won't be merged with the
+     * previous command.
+     */
+    public void seal() {
+        Command cmd = undoStack.peekLast();
+
+        if (cmd != null) {
+            cmd.sealed = true;
+        }
+    }
+
+    /**
+     * Indicates whether a command can be undone.
+     *
+     * @return {@code true} if a command can be undone; {@code false}
+     * otherwise
+     */
+    public boolean canUndo() {
+        return !undoStack.isEmpty();
+    }
+
+    /**
+     * Indicates whether a command can be redone.
+     *
+     * @return {@code true} if a command can be redone; {@code false}
+     * otherwise
+     */
+    public boolean canRedo() {
+        return !redoStack.isEmpty();
+    }
+
+    /**
+     * Returns the number of commands that can be undone.
+     *
+     * @return the number of commands that can be undone
+     */
+    public int getUndoCount() {
+        return undoStack.size();
+    }
+
+    /**
+     * Returns the number of commands that can be redone.
+     *
+     * @return the number of commands that can be redone
+     */
+    public int getRedoCount() {
+        return redoStack.size();
+    }
+
+    /**
+     * Undoes the last command.
+     *
+     * @return {@code true} if a command has been undone; {@code false} if
+     * there is nothing to undo
+     */
+    public boolean undo() {
+        checkNotGrouping();
+
+        Command cmd = undoStack.pollLast();
+
+        if (cmd == null) {
+            return false;
+        }
+
+        cmd.sealed = true;
+        replay(cmd::undo);
+        // moving commands between the stacks doesn't change the delta count
+        redoStack.addLast(cmd);
+
+        return true;
+    }
+
+    /**
+     * Redoes the last command that has been undone.
+     *
+     * @return {@code true} if a command has been redone; {@code false} if
+     * there is nothing to redo
+     */
+    public boolean redo() {
+        checkNotGrouping();
+
+        Command cmd = redoStack.pollLast();
+
+        if (cmd == null) {
+            return false;
+        }
+
+        replay(cmd::redo);
+        undoStack.addLast(cmd);
+
+        return true;
+    }
+
+    /**
+     * Discards all commands.
+     */
+    public void clear() {
+        undoStack.clear();
+        redoStack.clear();
+        deltaCount = 0;
+    }
+
+    /**
+     * Stops observing the flow and discards all commands.
+     */
+    public void dispose() {
+        observer.dispose();
+        clear();
+    }
+
+    private void checkNotGrouping() {
+        if (groupDepth > 0) {
+            throw new IllegalStateException(
+                    "Cannot undo/redo while a group is in progress");
+        }
+    }
+
+    private void replay(Runnable r) {
+        replaying = true;
+        try {
+            flow.batch(f -> r.run());
+        } finally {
+            replaying = false;
+        }
+    }
+
+    private void push(Command cmd) {
+        clearRedo();
+        undoStack.addLast(cmd);
+        deltaCount += cmd.deltas.size();
+
+        trim();
+    }
+
+    private void clearRedo() {
+        for (Command cmd : redoStack) {
+            deltaCount -= cmd.deltas.size();
+        }
+
+        redoStack.clear();
+    }
+
+    private void trim() {
+        while (undoStack.size() > 1 && (undoStack.size() > capacity
+                || deltaCount > maxDeltas)) {
+            deltaCount -= undoStack.removeFirst().deltas.size();
+        }
+
+        if (deltaCount > maxDeltas) {
+            clear();
+        }
+    }
+
+    private void record(Delta delta) {
+        if (replaying) {
+            return;
+        }
+
+        if (group != null) {
+            if (!group.overflow && group.deltas.size() < maxDeltas) {
+                group.add(delta);
+            } else {
+                group.overflow = true;
+                group.deltas.clear();
+                group.removed.clear();
+            }
+            return;
+        }
+
+        Command last = undoStack.peekLast();
+
+        if (last != null && !last.sealed && redoStack.isEmpty()) {
+            int size = last.deltas.size();
+
+            if (last.merge(delta)) {
+                deltaCount += last.deltas.size() - size;
+                trim();
+                return;
+            }
+        }
+
+        if (last != null) {
+            last.sealed = true;
+        }
+
+        Command cmd = new Command(delta instanceof GeometryDelta);
+        cmd.add(delta);
+        push(cmd);
+    }
+
+    /**
+     * Records the changes that are reported by the flow observer.
+     */
+    private final class Recorder implements FlowObserver.Listener {
+
+        @Override
+        public void nodeAdded(VFlowModel f, VNode n, int index) {
+            record(new NodeDelta(f, n, index, true));
+        }
+
+        @Override
+        public void nodeRemoved(VFlowModel f, VNode n, int index) {
+            record(new NodeDelta(f, n, index, false));
+        }
+
+        @Override
+        public void connectionAdded(VFlowModel f, Connection c) {
+            record(new ConnectionDelta(c, true));
+        }
+
+        @Override
+        public void connectionRemoved(VFlowModel f, Connection c) {
+            record(new ConnectionDelta(c, false));
+        }
+
+        @Override
+        public void connectorAdded(VFlowModel owner, VNode n,
+                Connector c, int index) {
+            record(new ConnectorDelta(n, c, index, true));
+        }
+
+        @Override
+        public void connectorRemoved(VFlowModel owner, VNode n,
+                Connector c, int index) {
+            record(new ConnectorDelta(n, c, index, false));
+        }
+
+        @Override
+        public void attributeChanged(VFlowModel owner, VNode n,
+                FlowObserver.Attribute a, Object oldValue, Object newValue) {
+            if (a.isGeometry()) {
+                record(new GeometryDelta(n, a,
+                        ((Number) oldValue).doubleValue(),
+                        ((Number) newValue).doubleValue()));
+            } else if (a == FlowObserver.Attribute.TITLE
+                    || a == FlowObserver.Attribute.VALUE_OBJECT) {
+                // ids and visibility are not recorded
+                record(new AttributeDelta(n, a, oldValue, newValue));
+            }
+        }
+
+        @Override
+        public void valueChanged(VFlowModel owner, VNode n,
+                ValueObject vObj, Object oldValue, Object newValue) {
+            record(new PropertyDelta<>(vObj.valueProperty(),
+                    oldValue, newValue));
+        }
+    }
+
+    /**
+     * Sequence of deltas that is undone/redone as a whole.
+     */
+    private static final class Command {
+
+        private final List<Delta> deltas = new ArrayList<>(1);
+        // nodes and connectors that have been removed by this command
+        private final Set<Object> removed
+                = Collections.newSetFromMap(new IdentityHashMap<>());
+        private final boolean geometryOnly;
+        private boolean sealed;
+        // true if a group exceeded the maximum number of deltas
+        private boolean overflow;
+
+        Command(boolean geometryOnly) {
+            this.geometryOnly = geometryOnly;
+        }
+
+        void add(Delta delta) {
+            // connections that are removed together with a node are removed
+            // before the node (they are restored after the node)
+            if (delta instanceof ConnectionDelta
+                    && !((ConnectionDelta) delta).added) {
+                Connection c = ((ConnectionDelta) delta).connection;
+
+                for (int i = 0; i < deltas.size(); i++) {
+                    Delta d = deltas.get(i);
+
+                    if (d instanceof NodeDelta && !((NodeDelta) d).added
+                            && ((NodeDelta) d).connects(c)) {
+                        deltas.add(i, delta);
+                        return;
+                    }
+                }
+            }
+
+            deltas.add(delta);
+
+            if (delta instanceof NodeDelta && !((NodeDelta) delta).added) {
+                removed.add(((NodeDelta) delta).node);
+            } else if (delta instanceof ConnectorDelta
+                    && !((ConnectorDelta) delta).added) {
+                removed.add(((ConnectorDelta) delta).connector);
+            }
+        }
+
+        boolean merge(Delta delta) {
+            if (geometryOnly) {
+                if (!(delta instanceof GeometryDelta)) {
+                    return false;
+                }
+
+                GeometryDelta g = (GeometryDelta) delta;
+
+                if (((GeometryDelta) deltas.get(0)).node != g.node) {
+                    return false;
+                }
+
+                for (Delta d : deltas) {
+                    GeometryDelta prev = (GeometryDelta) d;
+
+                    if (prev.attribute == g.attribute) {
+                        prev.newValue = g.newValue;
+                        return true;
+                    }
+                }
+
+                deltas.add(g);
+                return true;
+            }
+
+            if (delta instanceof ConnectionDelta
+                    && !((ConnectionDelta) delta).added) {
+                // connection of a node/connector that has been removed
+                Connection c = ((ConnectionDelta) delta).connection;
+
+                if (removed.contains(c.getSender())
+                        || removed.contains(c.getReceiver())
+                        || removed.contains(c.getSender().getNode())
+                        || removed.contains(c.getReceiver().getNode())) {
+                    add(delta);
+                    return true;
+                }
+            } else if (delta instanceof ConnectorDelta
+                    && !((ConnectorDelta) delta).added) {
+                // connectors are removed after their connections and
+                // thru connectors after their inner nodes
+                Connector c = ((ConnectorDelta) delta).connector;
+
+                if (c instanceof ThruConnector
+                        && removed.contains(
+                                ((ThruConnector) c).getInnerNode())) {
+                    add(delta);
+                    return true;
+                }
+
+                for (Delta d : deltas) {
+                    if (!(d instanceof ConnectionDelta)
+                            || ((ConnectionDelta) d).added
+                            || !((ConnectionDelta) d).connects(c)) {
+                        return false;
+                    }
+                }
+
+                add(delta);
+                return true;
+            }
+
+            return false;
+        }
+
+        void undo() {
+            for (int i = deltas.size() - 1; i >= 0; i--) {
+                deltas.get(i).undo();
+            }
+        }
+
+        void redo() {
+            for (Delta d : deltas) {
+                d.redo();
+            }
+        }
+    }
+
+    /**
+     * Atomic change.
+     */
+    private interface Delta {
+
+        void undo();
+
+        void redo();
+    }
+
+    private static final class NodeDelta implements Delta {
+
+        private final VFlowModel flow;
+        private final VNode node;
+        private final int index;
+        private final boolean added;
+
+        NodeDelta(VFlowModel flow, VNode node, int index, boolean added) {
+            this.flow = flow;
+            this.node = node;
+            this.index = index;
+            this.added = added;
+        }
+
+        boolean connects(Connection c) {
+            return c.getSender().getNode() == node
+                    || c.getReceiver().getNode() == node;
+        }
+
+        private void add() {
+            // checked by the constructor, subflows are created by the flow
+            ((VFlowModelImpl) flow).restore(node, index);
+        }
+
+        @Override
+        public void undo() {
+            if (added) {
+                flow.remove(node);
+            } else {
+                add();
+            }
+        }
+
+        @Override
+        public void redo() {
+            if (added) {
+                add();
+            } else {
+                flow.remove(node);
+            }
+        }
+    }
+
+    private static final class ConnectorDelta implements Delta {
+
+        private final VNode node;
+        private final Connector connector;
+        private final String localId;
+        private final int index;
+        private final boolean added;
+
+        ConnectorDelta(VNode node, Connector connector, int index,
+                boolean added) {
+            this.node = node;
+            this.connector = connector;
+            this.localId = connector.getLocalId();
+            this.index = index;
+            this.added = added;
+        }
+
+        private void add() {
+            List<Connector> connectors = node.getConnectors();
+
+            connectors.add(Math.min(index, connectors.size()), connector);
+
+            // adding assigns a new local id
+            connector.setLocalId(localId);
+        }
+
+        @Override
+        public void undo() {
+            if (added) {
+                node.removeConnector(connector);
+            } else {
+                add();
+            }
+        }
+
+        @Override
+        public void redo() {
+            if (added) {
+                add();
+            } else {
+                node.removeConnector(connector);
+            }
+        }
+    }
+
+    private static final class ConnectionDelta implements Delta {
+
+        private final Connection connection;
+        private final boolean added;
+
+        ConnectionDelta(Connection connection, boolean added) {
+            this.connection = connection;
+            this.added = added;
+        }
+
+        boolean connects(Connector c) {
+            return connection.getSender() == c
+                    || connection.getReceiver() == c;
+        }
+
+        @Override
+        public void undo() {
+            if (added) {
+                connection.getConnections().remove(connection);
+            } else {
+                connection.getConnections().add(connection);
+            }
+        }
+
+        @Override
+        public void redo() {
+            if (added) {
+                connection.getConnections().add(connection);
+            } else {
+                connection.getConnections().remove(connection);
+            }
+        }
+    }
+
+    private static final class PropertyDelta<T> implements Delta {
+
+        private final Property<T> property;
+        private final T oldValue;
+        private final T newValue;
+
+        PropertyDelta(Property<T> property, T oldValue, T newValue) {
+            this.property = property;
+            this.oldValue = oldValue;
+            this.newValue = newValue;
+        }
+
+        @Override
+        public void undo() {
+            property.setValue(oldValue);
+        }
+
+        @Override
+        public void redo() {
+            property.setValue(newValue);
+        }
+    }
+
+    private static final class AttributeDelta implements Delta {
+
+        private final VNode node;
+        private final FlowObserver.Attribute attribute;
+        private final Object oldValue;
+        private final Object newValue;
+
+        AttributeDelta(VNode node, FlowObserver.Attribute attribute,
+                Object oldValue, Object newValue) {
+            this.node = node;
+            this.attribute = attribute;
+            this.oldValue = oldValue;
+            this.newValue = newValue;
+        }
+
+        @Override
+        public void undo() {
+            attribute.set(node, oldValue);
+        }
+
+        @Override
+        public void redo() {
+            attribute.set(node, newValue);
+        }
+    }
+
+    private static final class GeometryDelta implements Delta {
+
+        private final VNode node;
+        private final FlowObserver.Attribute attribute;
+        private final double oldValue;
+        private double newValue;
+
+        GeometryDelta(VNode node, FlowObserver.Attribute attribute,
+                double oldValue, double newValue) {
+            this.node = node;
+            this.attribute = attribute;
+            this.oldValue = oldValue;
+            this.newValue = newValue;
+        }
+
+        @Override
+        public void undo() {
+            attribute.set(node, oldValue);
+        }
+
+        @Override
+        public void redo() {
+            attribute.set(node, newValue);
+        }
+    }
+}
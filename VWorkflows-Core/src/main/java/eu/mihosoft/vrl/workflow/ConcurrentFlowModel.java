@@ -0,0 +1,704 @@
+/*
+ * Copyright 2012-2016 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * Please cite the following publication(s):
+ *
+ * M. Hoffer, C.Poliwoda, G.Wittum. Visual Reflection Library -
+ * A Framework for Declarative GUI Programming on the Java Platform.
+ * Computing and Visualization in Science, 2011, in press.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vrl.workflow;
+
+import javafx.beans.value.ChangeListener;
+import javafx.collections.ListChangeListener;
+import javafx.collections.MapChangeListener;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * A flow model that can be built and modified by several threads. Each flow
+ * (the root flow and each subflow) is guarded by its own lock, i.e., writes
+ * to the same flow are serialized while different subflows of one root can
+ * be written concurrently. Reads use immutable {@link FlowSnapshot}s of the
+ * flow and never lock.
+ *
+ * <p>
+ * <b>Versioned snapshots:</b> while a write modifies the flow, the changes of
+ * the nodes (ids and geometry) and connections of the flow are recorded
+ * (constant time per change). When the outermost write ends, its changes are
+ * appended to an immutable list of changes. A reader that finds changes which
+ * are newer than the last published snapshot applies them to a copy of the
+ * recorded state of that snapshot and publishes the result. This happens
+ * without holding the lock, i.e., readers don't wait for writers and writers
+ * don't wait for snapshots. Building a flow with many small writes costs one
+ * snapshot per read, not one per write. If many changes have been recorded
+ * without being read, the writer creates a snapshot after releasing the lock
+ * to bound the memory of the recorded changes.
+ * </p>
+ *
+ * <p>
+ * <b>Memory model:</b>
+ * </p>
+ * <ul>
+ * <li>Writes ({@link #write(java.util.function.Function)},
+ * {@link #update(java.util.function.Consumer)} and the convenience methods)
+ * hold the lock of the flow. They must only modify this flow, i.e., its
+ * nodes, connectors and connections. Creating a subflow modifies the parent
+ * flow.</li>
+ * <li>Recorded changes are published via volatile fields when the outermost
+ * write ends. Everything a writer did before is visible to threads that
+ * obtain a snapshot afterwards. Snapshots never change.</li>
+ * <li>The live model ({@link #getModel()}, the nodes and connections of a
+ * snapshot) must only be accessed within a write of the flow the objects
+ * belong to. Outside of writes, the nodes and connections of a snapshot may
+ * only be used as identities (e.g. as map keys).</li>
+ * <li>Listeners that are registered on the live model are called by the
+ * writing thread while it holds the lock. JavaFX controllers must therefore
+ * not observe a concurrent model directly.</li>
+ * <li>Nested writes must proceed from parent flows to subflows. Otherwise
+ * threads may deadlock.</li>
+ * </ul>
+ *
+ * <p>
+ * Writes don't batch list notifications (see {@link FlowModel#beginUpdate()})
+ * since batches of a flow include its subflows which may be written by other
+ * threads. Snapshots contain the node order in which nodes have been added.
+ * </p>
+ *
+ * @author Michael Hoffer &lt;info@michaelhoffer.de&gt;
+ */
+public final class ConcurrentFlowModel {
+
+    /**
+     * Minimum number of unread changes after which the writer creates a
+     * snapshot (the limit grows with the size of the flow).
+     */
+    static final int MAX_UNREAD_CHANGES = 4096;
+
+    private final ConcurrentFlowModel parent;
+    private final VFlowModel model;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final ConcurrentMap<VFlowModel, ConcurrentFlowModel> subFlows
+            = new ConcurrentHashMap<>();
+
+    // last change of the completed writes
+    private volatile Change tail;
+    // last published snapshot and the state it has been created from
+    private final AtomicReference<Version> published
+            = new AtomicReference<>();
+    private volatile long version;
+    private volatile boolean initialized;
+    private final AtomicLong snapshotCount = new AtomicLong();
+
+    // changes of the current write (guarded by lock)
+    private Change pendingHead;
+    private Change pendingTail;
+    private long changeCount;
+    // observers of the nodes of this flow (guarded by lock)
+    private final Map<VNode, Object> nodeObservers = new IdentityHashMap<>();
+
+    private final ListChangeListener<VNode> nodesListener = (change) -> {
+        while (change.next()) {
+            if (change.wasPermutated()) {
+                continue;
+            }
+
+            for (VNode n : change.getRemoved()) {
+                // subflows that are removed can't be written via their parent
+                subFlows.remove(n);
+                unobserve(n);
+                record((s) -> s.nodes.remove(n));
+            }
+
+            for (VNode n : change.getAddedSubList()) {
+                observe(n);
+                NodeData data = new NodeData(n);
+                record((s) -> s.nodes.put(n, data));
+            }
+        }
+    };
+
+    private final ListChangeListener<Connection> connectionsListener
+            = (change) -> {
+                while (change.next()) {
+                    if (change.wasPermutated()) {
+                        continue;
+                    }
+
+                    for (Connection c : change.getRemoved()) {
+                        record((s) -> s.connections.remove(c));
+                    }
+
+                    for (Connection c : change.getAddedSubList()) {
+                        ConnectionData data = new ConnectionData(c);
+                        record((s) -> s.connections.put(c, data));
+                    }
+                }
+            };
+
+    private final MapChangeListener<String, Connections> typesListener
+            = (change) -> {
+                String type = change.getKey();
+
+                if (change.wasRemoved()) {
+                    change.getValueRemoved().getConnections().
+                            removeListener(connectionsListener);
+                    record((s) -> {
+                        s.types.remove(type);
+                        s.connections.values().removeIf(
+                                (c) -> type.equals(c.type));
+                    });
+                }
+
+                if (change.wasAdded()) {
+                    Connections cns = change.getValueAdded();
+                    cns.getConnections().addListener(connectionsListener);
+
+                    Map<Connection, ConnectionData> data
+                            = new LinkedHashMap<>();
+
+                    for (Connection c : cns.getConnections()) {
+                        data.put(c, new ConnectionData(c));
+                    }
+
+                    record((s) -> {
+                        s.types.add(type);
+                        s.connections.putAll(data);
+                    });
+                }
+            };
+
+    ConcurrentFlowModel(ConcurrentFlowModel parent, VFlowModel model) {
+        this.parent = parent;
+        this.model = model;
+    }
+
+    /**
+     * Starts recording the changes of this flow (while holding its lock).
+     * Must be called before this flow is used.
+     *
+     * @return this flow
+     */
+    ConcurrentFlowModel initialize() {
+        if (!initialized) {
+            lock.lock();
+            try {
+                initializeLocked();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        return this;
+    }
+
+    private void initializeLocked() {
+        if (initialized) {
+            return;
+        }
+
+        State state = new State();
+
+        model.getNodes().addListener(nodesListener);
+
+        for (VNode n : model.getNodes()) {
+            observe(n);
+            state.nodes.put(n, new NodeData(n));
+        }
+
+        model.getAllConnections().addListener(typesListener);
+
+        for (Map.Entry<String, Connections> e
+                : model.getAllConnections().entrySet()) {
+            state.types.add(e.getKey());
+            e.getValue().getConnections().addListener(connectionsListener);
+
+            for (Connection c : e.getValue().getConnections()) {
+                state.connections.put(c, new ConnectionData(c));
+            }
+        }
+
+        Change first = new Change(0, null);
+        tail = first;
+        published.set(new Version(state, first, null));
+
+        initialized = true;
+    }
+
+    /**
+     * Returns the live model of this flow. It must only be accessed within
+     * writes of this flow.
+     *
+     * @return the live model of this flow
+     */
+    public VFlowModel getModel() {
+        return model;
+    }
+
+    /**
+     * Returns the parent of this flow.
+     *
+     * @return the parent of this flow or {@code null} if this flow is the root
+     * flow
+     */
+    public ConcurrentFlowModel getParent() {
+        return parent;
+    }
+
+    /**
+     * Returns the node lookup of the root flow. Lookups are lock-free. Nodes
+     * are found as soon as the write that created them returns.
+     *
+     * @return the node lookup of the root flow
+     */
+    public NodeLookup getNodeLookup() {
+        return model.getNodeLookup();
+    }
+
+    /**
+     * Returns a snapshot of this flow that contains all completed writes.
+     * This method doesn't lock. If the flow has been written since the last
+     * snapshot, the recorded changes are applied to a copy of the state of
+     * the last snapshot (O(n) for a flow with n nodes and connections) and
+     * the new snapshot is published. Within a write of this flow, the
+     * snapshot is created from the live model (including the changes of the
+     * write) and is not published.
+     *
+     * @return a snapshot of this flow
+     */
+    public FlowSnapshot getSnapshot() {
+        if (lock.isHeldByCurrentThread()) {
+            snapshotCount.incrementAndGet();
+            return FlowSnapshot.of(model);
+        }
+
+        initialize();
+
+        Version v = published.get();
+        Change last = tail;
+
+        if (v.last == last && v.snapshot != null) {
+            return v.snapshot;
+        }
+
+        State state = new State(v.state);
+
+        for (Change c = v.last; c != last;) {
+            c = c.next;
+            c.action.accept(state);
+        }
+
+        Version result = new Version(state, last, state.toSnapshot());
+        snapshotCount.incrementAndGet();
+
+        // readers that applied more changes win
+        while (true) {
+            Version current = published.get();
+
+            if (current.last.sequence > last.sequence
+                    || (current.last == last && current.snapshot != null)) {
+                break;
+            }
+
+            if (published.compareAndSet(current, result)) {
+                break;
+            }
+        }
+
+        return result.snapshot;
+    }
+
+    /**
+     * Returns the number of snapshots that have been created.
+     *
+     * @return the number of snapshots that have been created
+     */
+    long getSnapshotCount() {
+        return snapshotCount.get();
+    }
+
+    /**
+     * Returns the number of writes of this flow. The version is incremented
+     * when a write completes.
+     *
+     * @return the number of writes of this flow
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Modifies this flow while holding its lock.
+     *
+     * @param <T> result type
+     * @param action action that modifies the live model of this flow
+     * @return the result of the action
+     */
+    public <T> T write(Function<? super VFlowModel, ? extends T> action) {
+        boolean outermost = false;
+
+        lock.lock();
+        try {
+            initializeLocked();
+            return action.apply(model);
+        } finally {
+            try {
+                // nested writes publish once
+                outermost = lock.getHoldCount() == 1;
+
+                if (outermost) {
+                    publishChanges();
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            if (outermost) {
+                trimChanges();
+            }
+        }
+    }
+
+    /**
+     * Modifies this flow while holding its lock.
+     *
+     * @param action action that modifies the live model of this flow
+     */
+    public void update(Consumer<? super VFlowModel> action) {
+        write((m) -> {
+            action.accept(m);
+            return null;
+        });
+    }
+
+    /**
+     * Records a change of this flow (guarded by lock).
+     *
+     * @param action applies the change to a recorded state
+     */
+    private void record(Consumer<State> action) {
+        Change c = new Change(++changeCount, action);
+
+        if (pendingTail == null) {
+            pendingHead = c;
+        } else {
+            pendingTail.next = c;
+        }
+
+        pendingTail = c;
+    }
+
+    /**
+     * Publishes the changes of the current write (guarded by lock).
+     */
+    private void publishChanges() {
+        if (pendingHead != null) {
+            tail.next = pendingHead;
+            tail = pendingTail;
+            pendingHead = null;
+            pendingTail = null;
+        }
+
+        // written by the lock holder only
+        version = version + 1;
+    }
+
+    /**
+     * Creates a snapshot if too many changes haven't been read. Called by
+     * writers after releasing the lock.
+     */
+    private void trimChanges() {
+        Version v = published.get();
+        long unread = tail.sequence - v.last.sequence;
+
+        if (unread > Math.max(MAX_UNREAD_CHANGES,
+                v.state.nodes.size() + v.state.connections.size())) {
+            getSnapshot();
+        }
+    }
+
+    /**
+     * Records changes of the id and geometry of the specified node (guarded
+     * by lock). Nodes implemented by {@link VNodeImpl} are observed without
+     * creating their properties.
+     *
+     * @param n node to observe
+     */
+    private void observe(VNode n) {
+        Runnable changed = () -> {
+            NodeData data = new NodeData(n);
+            record((s) -> s.nodes.replace(n, data));
+        };
+
+        VNodeImpl impl = VFlowModelImpl.getNodeImpl(n);
+
+        if (impl != null) {
+            FlowObserver.NodeObserver o = (a, oldValue, newValue) -> {
+                if (a.isGeometry() || a == FlowObserver.Attribute.ID) {
+                    changed.run();
+                }
+            };
+
+            impl.addObserver(o);
+            nodeObservers.put(n, o);
+        } else {
+            ChangeListener<Object> l = (ov, oldValue, newValue) -> {
+                changed.run();
+            };
+
+            n.idProperty().addListener(l);
+            n.xProperty().addListener(l);
+            n.yProperty().addListener(l);
+            n.widthProperty().addListener(l);
+            n.heightProperty().addListener(l);
+            nodeObservers.put(n, l);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void unobserve(VNode n) {
+        Object o = nodeObservers.remove(n);
+
+        if (o instanceof FlowObserver.NodeObserver) {
+            VFlowModelImpl.getNodeImpl(n).removeObserver(
+                    (FlowObserver.NodeObserver) o);
+        } else if (o != null) {
+            ChangeListener<Object> l = (ChangeListener<Object>) o;
+
+            n.idProperty().removeListener(l);
+            n.xProperty().removeListener(l);
+            n.yProperty().removeListener(l);
+            n.widthProperty().removeListener(l);
+            n.heightProperty().removeListener(l);
+        }
+    }
+
+    /**
+     * Creates a new node in this flow.
+     *
+     * @return the new node
+     */
+    public VNode newNode() {
+        return write((m) -> m.newNode());
+    }
+
+    /**
+     * Creates a new node in this flow.
+     *
+     * @param obj value object of the new node
+     * @return the new node
+     */
+    public VNode newNode(ValueObject obj) {
+        return write((m) -> m.newNode(obj));
+    }
+
+    /**
+     * Creates a new subflow of this flow.
+     *
+     * @return the concurrent model of the new subflow
+     */
+    public ConcurrentFlowModel newSubFlow() {
+        return getSubFlow(write((m) -> m.newFlowNode()));
+    }
+
+    /**
+     * Connects the specified connectors. Both connectors must belong to nodes
+     * of this flow.
+     *
+     * @param s sender connector
+     * @param r receiver connector
+     * @return the connection result
+     */
+    public ConnectionResult connect(Connector s, Connector r) {
+        return write((m) -> m.connect(s, r));
+    }
+
+    /**
+     * Removes the specified node from this flow. Subflows must not be removed
+     * while other threads write them.
+     *
+     * @param n node to remove
+     * @return the removed node
+     */
+    public VNode remove(VNode n) {
+        return write((m) -> m.remove(n));
+    }
+
+    /**
+     * Returns the concurrent model of the specified subflow of this flow.
+     *
+     * @param subFlow subflow of this flow (e.g. created via
+     * {@link VFlowModel#newFlowNode()} in a write)
+     * @return the concurrent model of the specified subflow
+     * @throws IllegalArgumentException if the specified flow is no subflow of
+     * this flow
+     */
+    public ConcurrentFlowModel getSubFlow(VFlowModel subFlow) {
+        if (subFlow.getFlow() != model) {
+            throw new IllegalArgumentException("Flow " + subFlow.getId()
+                    + " is no subflow of flow " + model.getId() + ".");
+        }
+
+        // listeners are registered while holding the lock of the subflow,
+        // not within computeIfAbsent()
+        return subFlows.computeIfAbsent(subFlow,
+                (f) -> new ConcurrentFlowModel(this, f)).initialize();
+    }
+
+    /**
+     * Recorded change of a flow. Changes form a list that is only appended
+     * to.
+     */
+    private static final class Change {
+
+        private final long sequence;
+        private final Consumer<State> action;
+        private volatile Change next;
+
+        Change(long sequence, Consumer<State> action) {
+            this.sequence = sequence;
+            this.action = action;
+        }
+    }
+
+    /**
+     * Published snapshot and the state it has been created from. The state is
+     * never modified.
+     */
+    private static final class Version {
+
+        private final State state;
+        private final Change last;
+        // null if no snapshot has been created yet
+        private final FlowSnapshot snapshot;
+
+        Version(State state, Change last, FlowSnapshot snapshot) {
+            this.state = state;
+            this.last = last;
+            this.snapshot = snapshot;
+        }
+    }
+
+    /**
+     * Recorded nodes and connections of a flow.
+     */
+    private static final class State {
+
+        private final Map<VNode, NodeData> nodes;
+        private final Map<Connection, ConnectionData> connections;
+        private final TreeSet<String> types;
+
+        State() {
+            nodes = new LinkedHashMap<>();
+            connections = new LinkedHashMap<>();
+            types = new TreeSet<>();
+        }
+
+        State(State other) {
+            nodes = new LinkedHashMap<>(other.nodes);
+            connections = new LinkedHashMap<>(other.connections);
+            types = new TreeSet<>(other.types);
+        }
+
+        FlowSnapshot toSnapshot() {
+            List<VNode> nodeList = new ArrayList<>(nodes.size());
+            List<String> ids = new ArrayList<>(nodes.size());
+            List<double[]> geometry = new ArrayList<>(nodes.size());
+
+            for (Map.Entry<VNode, NodeData> e : nodes.entrySet()) {
+                nodeList.add(e.getKey());
+                ids.add(e.getValue().id);
+                geometry.add(e.getValue().geometry);
+            }
+
+            List<Connection> connectionList
+                    = new ArrayList<>(connections.size());
+            List<VNode> senders = new ArrayList<>(connections.size());
+            List<VNode> receivers = new ArrayList<>(connections.size());
+            List<String> connectionTypes
+                    = new ArrayList<>(connections.size());
+
+            for (Map.Entry<Connection, ConnectionData> e
+                    : connections.entrySet()) {
+                connectionList.add(e.getKey());
+                senders.add(e.getValue().sender);
+                receivers.add(e.getValue().receiver);
+                connectionTypes.add(e.getValue().type);
+            }
+
+            return FlowSnapshot.of(nodeList, ids, geometry,
+                    types.toArray(new String[types.size()]), connectionList,
+                    senders, receivers, connectionTypes);
+        }
+    }
+
+    /**
+     * Recorded id and geometry of a node.
+     */
+    private static final class NodeData {
+
+        private final String id;
+        private final double[] geometry;
+
+        NodeData(VNode n) {
+            this.id = n.getId();
+            this.geometry = new double[]{
+                n.getX(), n.getY(), n.getWidth(), n.getHeight()};
+        }
+    }
+
+    /**
+     * Recorded sender, receiver and type of a connection.
+     */
+    private static final class ConnectionData {
+
+        private final VNode sender;
+        private final VNode receiver;
+        private final String type;
+
+        ConnectionData(Connection c) {
+            this.sender = c.getSender() == null
+                    ? null : c.getSender().getNode();
+            this.receiver = c.getReceiver() == null
+                    ? null : c.getReceiver().getNode();
+            this.type = c.getType();
+        }
+    }
+}
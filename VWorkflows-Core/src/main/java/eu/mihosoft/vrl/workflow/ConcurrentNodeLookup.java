@@ -0,0 +1,230 @@
+/*
+ * Copyright 2012-2016 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * Please cite the following publication(s):
+ *
+ * M. Hoffer, C.Poliwoda, G.Wittum. Visual Reflection Library -
+ * A Framework for Declarative GUI Programming on the Java Platform.
+ * Computing and Visualization in Science, 2011, in press.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vrl.workflow;
+
+import javafx.beans.value.ChangeListener;
+import javafx.collections.ListChangeListener;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Node lookup of a {@link ConcurrentFlowModel}. Lookups are lock-free. Nodes
+ * and connectors are indexed by id. The index is updated by the threads that
+ * write the flows (via the node lists, the connector lists and the ids of the
+ * indexed nodes), i.e., different subflows can be modified concurrently and
+ * lookups never access the live model. Id changes of {@link VNodeImpl} nodes
+ * are observed without creating their id properties (see
+ * {@link FlowObserver.NodeObserver}).
+ *
+ * <p>
+ * In contrast to {@link NodeLookupImpl}, the index is never rebuilt since
+ * this would require to read all flows. Nodes are indexed as soon as they
+ * are reported by the node list of their flow. Changes of the local ids of
+ * connectors (see {@link Connector#setLocalId(java.lang.String)}) are not
+ * observed.
+ * </p>
+ *
+ * @author Michael Hoffer &lt;info@michaelhoffer.de&gt;
+ */
+class ConcurrentNodeLookup implements NodeLookup {
+
+    private final Map<String, VNode> cache = new ConcurrentHashMap<>();
+    private final Map<String, Connector> connectors
+            = new ConcurrentHashMap<>();
+
+    private final ListChangeListener<VNode> nodesListener = (change) -> {
+        while (change.next()) {
+            if (change.wasRemoved()) {
+                for (VNode n : change.getRemoved()) {
+                    unregister(n);
+                }
+            }
+
+            if (change.wasAdded()) {
+                for (VNode n : change.getAddedSubList()) {
+                    register(n);
+                }
+            }
+        }
+    };
+
+    private final ListChangeListener<Connector> connectorsListener
+            = this::connectorsChanged;
+
+    private final ChangeListener<String> idListener = (ov, oldId, newId) -> {
+        idChanged(oldId, newId);
+    };
+
+    private final FlowObserver.NodeObserver observer
+            = new FlowObserver.NodeObserver() {
+        @Override
+        public void attributeChanged(FlowObserver.Attribute a,
+                Object oldValue, Object newValue) {
+            if (a == FlowObserver.Attribute.ID) {
+                idChanged((String) oldValue, (String) newValue);
+            }
+        }
+
+        @Override
+        public void connectorsChanged(
+                ListChangeListener.Change<? extends Connector> change) {
+            ConcurrentNodeLookup.this.connectorsChanged(change);
+        }
+    };
+
+    ConcurrentNodeLookup(VFlowModel root) {
+        register(root);
+    }
+
+    @Override
+    public Connector getConnectorById(String globalId) {
+        if (!globalId.contains(ConnectorRef.SEPARATOR)) {
+            throw new IllegalArgumentException("wrong connector id format: "
+                    + globalId + ", correct format: node-id:c:connector-id");
+        }
+
+        return connectors.get(globalId);
+    }
+
+    @Override
+    public VNode getById(String globalId) {
+        return cache.get(globalId);
+    }
+
+    private void idChanged(String oldId, String newId) {
+        VNode n = oldId != null ? cache.get(oldId) : null;
+
+        if (n != null && newId != null && newId.equals(n.getId())) {
+            cache.remove(oldId, n);
+            cache.put(newId, n);
+
+            // connector ids are prefixed with the node id
+            for (Connector c : connectorsOf(n)) {
+                connectors.remove(oldId + ConnectorRef.SEPARATOR
+                        + c.getLocalId(), c);
+                connectors.put(c.getId(), c);
+            }
+        }
+    }
+
+    /**
+     * Returns the connectors of the specified node without creating the
+     * connector lists of {@link VNodeImpl} nodes.
+     */
+    private static List<Connector> connectorsOf(VNode n) {
+        VNodeImpl impl = VFlowModelImpl.getNodeImpl(n);
+
+        return impl != null ? impl.peekConnectors() : n.getConnectors();
+    }
+
+    private void connectorsChanged(
+            ListChangeListener.Change<? extends Connector> change) {
+        while (change.next()) {
+            if (change.wasRemoved()) {
+                for (Connector c : change.getRemoved()) {
+                    connectors.remove(c.getId(), c);
+                }
+            }
+
+            if (change.wasAdded()) {
+                for (Connector c : change.getAddedSubList()) {
+                    connectors.put(c.getId(), c);
+                }
+            }
+        }
+    }
+
+    private void register(VNode n) {
+
+        VNodeImpl impl = VFlowModelImpl.getNodeImpl(n);
+
+        if (impl != null) {
+            impl.addObserver(observer);
+        } else {
+            n.idProperty().addListener(idListener);
+            n.getConnectors().addListener(connectorsListener);
+        }
+
+        if (n.getId() != null) {
+            cache.put(n.getId(), n);
+        }
+
+        for (Connector c : connectorsOf(n)) {
+            connectors.put(c.getId(), c);
+        }
+
+        if (n instanceof VFlowModel) {
+            VFlowModel flow = (VFlowModel) n;
+
+            VFlowModelImpl.getLoadedNodes(flow).addListener(nodesListener);
+
+            for (VNode child : VFlowModelImpl.getLoadedNodes(flow)) {
+                register(child);
+            }
+        }
+    }
+
+    private void unregister(VNode n) {
+
+        VNodeImpl impl = VFlowModelImpl.getNodeImpl(n);
+
+        if (impl != null) {
+            impl.removeObserver(observer);
+        } else {
+            n.idProperty().removeListener(idListener);
+            n.getConnectors().removeListener(connectorsListener);
+        }
+
+        if (n.getId() != null) {
+            cache.remove(n.getId(), n);
+        }
+
+        for (Connector c : connectorsOf(n)) {
+            connectors.remove(c.getId(), c);
+        }
+
+        if (n instanceof VFlowModel) {
+            VFlowModel flow = (VFlowModel) n;
+
+            VFlowModelImpl.getLoadedNodes(flow).removeListener(
+                    nodesListener);
+
+            for (VNode child : VFlowModelImpl.getLoadedNodes(flow)) {
+                unregister(child);
+            }
+        }
+    }
+}
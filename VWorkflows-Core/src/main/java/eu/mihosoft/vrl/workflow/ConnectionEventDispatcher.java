@@ -0,0 +1,298 @@
+/*
+ * Copyright 2012-2016 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * Please cite the following publication(s):
+ *
+ * M. Hoffer, C.Poliwoda, G.Wittum. Visual Reflection Library -
+ * A Framework for Declarative GUI Programming on the Java Platform.
+ * Computing and Visualization in Science, 2011, in press.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vrl.workflow;
+
+import javafx.event.EventHandler;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Dispatches connection events to the handlers of the affected connectors.
+ *
+ * <p>
+ * By default, events are dispatched synchronously: event handlers are called
+ * for each event as soon as the connection has been added or removed. If an
+ * executor is specified, events are dispatched asynchronously: the events of
+ * a batch are coalesced and delivered on the executor. Batches are delivered
+ * one after another and in order, even if the executor is multithreaded.
+ * </p>
+ *
+ * <p>
+ * Coalescing groups the events of a batch per connector and drops add/remove
+ * pairs of the same connection. Event list handlers (see
+ * {@link Connector#addConnectionEventsListener(java.util.function.Consumer)})
+ * always receive coalesced events.
+ * </p>
+ *
+ * @author Michael Hoffer &lt;info@michaelhoffer.de&gt;
+ */
+final class ConnectionEventDispatcher {
+
+    private volatile Executor executor;
+
+    // guarded by pending
+    private final Queue<Runnable> pending = new ArrayDeque<>();
+    private boolean draining;
+
+    /**
+     * Defines the executor used to deliver events.
+     *
+     * @param executor executor ({@code null} for synchronous dispatching)
+     */
+    void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Returns the executor used to deliver events.
+     *
+     * @return the executor used to deliver events or {@code null} if events
+     * are dispatched synchronously
+     */
+    Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Fires the specified event. In synchronous mode, the event handlers of
+     * sender and receiver are called immediately. Otherwise, nothing happens
+     * until the batch is completed.
+     *
+     * @param evt event to fire
+     */
+    void fire(ConnectionEvent evt) {
+        if (executor != null) {
+            return;
+        }
+
+        if (evt.getSenderConnector() != null) {
+            deliver(evt.getSenderConnector(), evt);
+        }
+
+        if (evt.getReceiverConnector() != null) {
+            deliver(evt.getReceiverConnector(), evt);
+        }
+    }
+
+    /**
+     * Completes a batch, i.e., coalesces the specified events and delivers
+     * them to the event list handlers (and to the event handlers in
+     * asynchronous mode).
+     *
+     * @param events events of the batch
+     */
+    void batchCompleted(List<ConnectionEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+
+        Executor currentExecutor = executor;
+        boolean async = currentExecutor != null;
+
+        List<Runnable> deliveries = new ArrayList<>();
+
+        for (Map.Entry<Connector, List<ConnectionEvent>> e
+                : coalesce(events).entrySet()) {
+            Connector c = e.getKey();
+            List<ConnectionEvent> connectorEvents
+                    = Collections.unmodifiableList(e.getValue());
+
+            if (connectorEvents.isEmpty()
+                    || !(c instanceof ConnectorImpl)) {
+                continue;
+            }
+
+            ConnectorImpl cImpl = (ConnectorImpl) c;
+
+            // handler lists are copied since they may be modified while we
+            // deliver asynchronously
+            if (async && cImpl.getConnectionEventHandlers() != null) {
+                List<EventHandler<ConnectionEvent>> handlers
+                        = new ArrayList<>(cImpl.getConnectionEventHandlers());
+
+                deliveries.add(() -> {
+                    for (ConnectionEvent evt : connectorEvents) {
+                        deliver(handlers, evt);
+                    }
+                });
+            }
+
+            if (cImpl.getConnectionEventsHandlers() != null) {
+                List<Consumer<? super List<ConnectionEvent>>> handlers
+                        = new ArrayList<>(cImpl.getConnectionEventsHandlers());
+
+                deliveries.add(() -> {
+                    for (Consumer<? super List<ConnectionEvent>> h : handlers) {
+                        try {
+                            h.accept(connectorEvents);
+                        } catch (Throwable tr) {
+                            Logger.getLogger(ConnectionEventDispatcher.class.getName()).log(Level.SEVERE, null, tr);
+                        }
+                    }
+                });
+            }
+        }
+
+        if (deliveries.isEmpty()) {
+            return;
+        }
+
+        Runnable batch = () -> deliveries.forEach(Runnable::run);
+
+        if (async) {
+            submit(currentExecutor, batch);
+        } else {
+            batch.run();
+        }
+    }
+
+    /**
+     * Groups the specified events per connector. Add/remove pairs of the same
+     * connection are dropped.
+     *
+     * @param events events to coalesce
+     * @return events per connector
+     */
+    static Map<Connector, List<ConnectionEvent>> coalesce(
+            List<ConnectionEvent> events) {
+
+        // add and remove of the same connection cancel each other out
+        Map<Connection, ConnectionEvent> unmatched = new IdentityHashMap<>();
+        Map<ConnectionEvent, Boolean> dropped = new IdentityHashMap<>();
+
+        for (ConnectionEvent evt : events) {
+            ConnectionEvent prev = unmatched.get(evt.getConnection());
+
+            if (prev != null && prev.getEventType() != evt.getEventType()) {
+                unmatched.remove(evt.getConnection());
+                dropped.put(prev, true);
+                dropped.put(evt, true);
+            } else {
+                unmatched.put(evt.getConnection(), evt);
+            }
+        }
+
+        Map<Connector, List<ConnectionEvent>> result = new LinkedHashMap<>();
+
+        for (ConnectionEvent evt : events) {
+            if (dropped.containsKey(evt)) {
+                continue;
+            }
+
+            if (evt.getSenderConnector() != null) {
+                result.computeIfAbsent(evt.getSenderConnector(),
+                        k -> new ArrayList<>()).add(evt);
+            }
+
+            if (evt.getReceiverConnector() != null) {
+                result.computeIfAbsent(evt.getReceiverConnector(),
+                        k -> new ArrayList<>()).add(evt);
+            }
+        }
+
+        return result;
+    }
+
+    private void submit(Executor currentExecutor, Runnable batch) {
+        synchronized (pending) {
+            pending.add(batch);
+
+            if (draining) {
+                return;
+            }
+
+            draining = true;
+        }
+
+        try {
+            currentExecutor.execute(this::drain);
+        } catch (RejectedExecutionException ex) {
+            Logger.getLogger(ConnectionEventDispatcher.class.getName()).log(Level.SEVERE, null, ex);
+
+            synchronized (pending) {
+                pending.clear();
+                draining = false;
+            }
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            Runnable batch;
+
+            synchronized (pending) {
+                batch = pending.poll();
+
+                if (batch == null) {
+                    draining = false;
+                    return;
+                }
+            }
+
+            batch.run();
+        }
+    }
+
+    private static void deliver(Connector c, ConnectionEvent evt) {
+        List<EventHandler<ConnectionEvent>> eventHandlers
+                = ((ConnectorImpl) c).getConnectionEventHandlers();
+
+        if (eventHandlers != null) {
+            deliver(eventHandlers, evt);
+        }
+    }
+
+    private static void deliver(List<EventHandler<ConnectionEvent>> handlers,
+            ConnectionEvent evt) {
+        for (EventHandler<ConnectionEvent> evtHandler : handlers) {
+            try {
+                evtHandler.handle(evt);
+            } catch (Throwable tr) {
+                Logger.getLogger(ConnectionEventDispatcher.class.getName()).log(Level.SEVERE, null, tr);
+            }
+        }
+    }
+}
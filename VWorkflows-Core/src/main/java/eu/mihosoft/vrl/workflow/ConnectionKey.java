@@ -0,0 +1,139 @@
+/*
+ * Copyright 2012-2016 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * Please cite the following publication(s):
+ *
+ * M. Hoffer, C.Poliwoda, G.Wittum. Visual Reflection Library -
+ * A Framework for Declarative GUI Programming on the Java Platform.
+ * Computing and Visualization in Science, 2011, in press.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vrl.workflow;
+
+import java.util.Objects;
+
+/**
+ * Immutable key of a connection, i.e., the connection id and references to
+ * sender and receiver connector. Connection keys are used to store
+ * connections and connection skins in hash maps. The hash code is computed
+ * only once.
+ *
+ * @author Michael Hoffer &lt;info@michaelhoffer.de&gt;
+ */
+public final class ConnectionKey {
+
+    private final String id;
+    private final ConnectorRef sender;
+    private final ConnectorRef receiver;
+    private final int hash;
+
+    /**
+     * Constructor.
+     *
+     * @param id connection id
+     * @param sender sender reference
+     * @param receiver receiver reference
+     */
+    public ConnectionKey(String id, ConnectorRef sender, ConnectorRef receiver) {
+        this.id = id;
+        this.sender = sender;
+        this.receiver = receiver;
+
+        int h = Objects.hashCode(id);
+        h = 31 * h + sender.hashCode();
+        h = 31 * h + receiver.hashCode();
+        this.hash = h;
+    }
+
+    /**
+     * Returns the key of the specified connection.
+     *
+     * @param c connection
+     * @return the key of the specified connection
+     */
+    public static ConnectionKey of(Connection c) {
+        return of(c.getId(), c.getSender(), c.getReceiver());
+    }
+
+    /**
+     * Returns the key of the specified connection.
+     *
+     * @param id connection id
+     * @param s sender connector
+     * @param r receiver connector
+     * @return the key of the specified connection
+     */
+    public static ConnectionKey of(String id, Connector s, Connector r) {
+        return new ConnectionKey(id, ConnectorRef.of(s), ConnectorRef.of(r));
+    }
+
+    /**
+     * @return the connection id
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return the sender reference
+     */
+    public ConnectorRef getSender() {
+        return sender;
+    }
+
+    /**
+     * @return the receiver reference
+     */
+    public ConnectorRef getReceiver() {
+        return receiver;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof ConnectionKey)) {
+            return false;
+        }
+        final ConnectionKey other = (ConnectionKey) obj;
+
+        return hash == other.hash
+                && Objects.equals(this.id, other.id)
+                && this.sender.equals(other.sender)
+                && this.receiver.equals(other.receiver);
+    }
+
+    @Override
+    public String toString() {
+        return "id=" + id + ";[" + sender + "]->[" + receiver + "]";
+    }
+}
@@ -171,6 +171,63 @@ public interface Connections extends Model {
      */
     public boolean isOutputConnected(Connector id);
 
+    /**
+     * Returns the number of connections that are connected to the specified
+     * connector, i.e., the size of {@link #getAllWith(Connector)}. The
+     * degree is maintained by this collection and computed in constant time.
+     * The default implementation counts the connections returned by
+     * {@link #getAllWith(Connector)}.
+     *
+     * @param c connector
+     * @return the number of connections that are connected to the specified
+     * connector
+     */
+    public default int degreeOf(Connector c) {
+        return getAllWith(c).size();
+    }
+
+    /**
+     * Returns the number of connections that have the specified connector as
+     * receiver (computed in constant time). The default implementation
+     * counts the connections returned by {@link #getAllWith(Connector)}.
+     *
+     * @param c connector
+     * @return the number of connections that have the specified connector as
+     * receiver
+     */
+    public default int inDegreeOf(Connector c) {
+        int result = 0;
+
+        for (Connection conn : getAllWith(c)) {
+            if (conn.getReceiver() == c) {
+                result++;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the number of connections that have the specified connector as
+     * sender (computed in constant time). The default implementation counts
+     * the connections returned by {@link #getAllWith(Connector)}.
+     *
+     * @param c connector
+     * @return the number of connections that have the specified connector as
+     * sender
+     */
+    public default int outDegreeOf(Connector c) {
+        int result = 0;
+
+        for (Connection conn : getAllWith(c)) {
+            if (conn.getSender() == c) {
+                result++;
+            }
+        }
+
+        return result;
+    }
+
     /**
      * Determines if a connection exists between the specified connectors.
      *
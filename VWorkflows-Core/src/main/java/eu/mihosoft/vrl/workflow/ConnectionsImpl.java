@@ -36,14 +36,15 @@ package eu.mihosoft.vrl.workflow;
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.ReadOnlyProperty;
 import javafx.beans.property.SimpleObjectProperty;
-import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -57,44 +58,174 @@ import java.util.logging.Logger;
 class ConnectionsImpl implements Connections {
 
     private String type;
-    private Map<String, Connection> connections = new HashMap<>();
+    private Map<ConnectionKey, Connection> connections = new HashMap<>();
     private Class<? extends Connection> connectionClass = ConnectionBase.class;
 //    Map<String, Integer> senders = new HashMap<>();
 //    Map<String, Integer> receivers = new HashMap<>();
-    private ObservableList<Connection> observableConnections
-            = FXCollections.observableArrayList();
+    private final ConnectionList observableConnections = new ConnectionList();
     private ObjectProperty<VisualizationRequest> vReqProperty;
 
+    // adjacency index (sender/receiver connector and node -> connections),
+    // kept in sync with the observable connection list
+    private final Map<Connector, List<Connection>> connectionsBySender
+            = new HashMap<>();
+    private final Map<Connector, List<Connection>> connectionsByReceiver
+            = new HashMap<>();
+    private final Map<VNode, List<Connection>> connectionsByNode
+            = new HashMap<>();
+    // number of connections per connector that have the connector as sender
+    // and receiver (not counted twice by degreeOf())
+    private final Map<Connector, Integer> selfConnections = new HashMap<>(0);
+
     //    private ObjectProperty<Skin> skinProperty = new SimpleObjectProperty<>();
     public ConnectionsImpl(String type) {
         this.type = type;
     }
 
-    private static String connectionId(String id, String s, String r) {
-        return "id=" + id + ";[" + s + "]->[" + r + "]";
+    /**
+     * Connection list that updates the id map and the adjacency index. The
+     * connection list may also be modified directly, e.g., by VNodeImpl if
+     * connectors are removed. Therefore, we update the index via the list and
+     * not via add()/remove(). The index is updated immediately, i.e., also
+     * during batched updates.
+     */
+    private final class ConnectionList extends BatchObservableList<Connection> {
+
+        @Override
+        protected void elementAdded(Connection c) {
+            connections.putIfAbsent(ConnectionKey.of(c), c);
+            index(c);
+        }
+
+        @Override
+        protected void elementRemoved(Connection c) {
+            connections.remove(ConnectionKey.of(c), c);
+            unindex(c);
+        }
+    }
+
+    /**
+     * Starts a batched update of this collection (see
+     * {@link BatchObservableList#beginUpdate()}).
+     */
+    void beginUpdate() {
+        observableConnections.beginUpdate();
+    }
+
+    /**
+     * Ends a batched update of this collection (see
+     * {@link BatchObservableList#endUpdate()}).
+     */
+    void endUpdate() {
+        observableConnections.endUpdate();
+    }
+
+    private void index(Connection c) {
+        addToIndex(connectionsBySender, c.getSender(), c);
+        addToIndex(connectionsByReceiver, c.getReceiver(), c);
+
+        if (c.getSender() == c.getReceiver()) {
+            selfConnections.merge(c.getSender(), 1, Integer::sum);
+        }
+
+        VNode sNode = c.getSender().getNode();
+        VNode rNode = c.getReceiver().getNode();
+
+        addToIndex(connectionsByNode, sNode, c);
+
+        if (rNode != sNode) {
+            addToIndex(connectionsByNode, rNode, c);
+        }
+    }
+
+    private void unindex(Connection c) {
+        removeFromIndex(connectionsBySender, c.getSender(), c);
+        removeFromIndex(connectionsByReceiver, c.getReceiver(), c);
+
+        if (c.getSender() == c.getReceiver()) {
+            selfConnections.computeIfPresent(c.getSender(),
+                    (k, v) -> v == 1 ? null : v - 1);
+        }
+
+        VNode sNode = c.getSender().getNode();
+        VNode rNode = c.getReceiver().getNode();
+
+        removeFromIndex(connectionsByNode, sNode, c);
+
+        if (rNode != sNode) {
+            removeFromIndex(connectionsByNode, rNode, c);
+        }
+    }
+
+    private static <K> void addToIndex(
+            Map<K, List<Connection>> index, K key, Connection c) {
+        List<Connection> entries = index.get(key);
+
+        if (entries == null) {
+            entries = new ArrayList<>(1);
+            index.put(key, entries);
+        }
+
+        entries.add(c);
+    }
+
+    private static <K> void removeFromIndex(
+            Map<K, List<Connection>> index, K key, Connection c) {
+        List<Connection> entries = index.get(key);
+
+        if (entries == null) {
+            return;
+        }
+
+        // we compare references since connection equality depends on
+        // mutable ids
+        for (int i = 0; i < entries.size(); i++) {
+            if (entries.get(i) == c) {
+                entries.remove(i);
+                break;
+            }
+        }
+
+        // we throw unused lists away since this can lead to serious memory
+        // overhead for large flows
+        if (entries.isEmpty()) {
+            index.remove(key);
+        }
     }
 
-    private static String connectionId(Connection c) {
-        return connectionId(c.getId(), c.getSender().getId(), c.getReceiver().getId());
+    private static List<Connection> indexed(
+            Map<?, List<Connection>> index, Object key) {
+        List<Connection> entries = index.get(key);
+
+        if (entries == null) {
+            return Collections.emptyList();
+        }
+
+        return entries;
     }
 
     @Override
     public void add(Connection c) {
 
-        checkUniqueness(c);
+        ConnectionKey key = ConnectionKey.of(c);
+
+        checkUniqueness(key);
 
-        connections.put(connectionId(c), c);
+        connections.put(key, c);
         observableConnections.add(c);
     }
 
     @Override
     public Connection add(Connector s, Connector r) {
 
+        ConnectorRef sRef = ConnectorRef.of(s);
+        ConnectorRef rRef = ConnectorRef.of(r);
+
         // search id:
         String id = "0";
         int count = 0;
 
-        while (connections.containsKey(connectionId(id, s.getId(), r.getId()))) {
+        while (connections.containsKey(new ConnectionKey(id, sRef, rRef))) {
             count++;
             id = "" + count;
         }
@@ -116,17 +247,19 @@ class ConnectionsImpl implements Connections {
 
     @Override
     public void remove(Connection c) {
-        connections.remove(connectionId(c));
-
         observableConnections.remove(c);
 
+        // the listener only removes entries of connections that are contained
+        // in the list
+        connections.remove(ConnectionKey.of(c));
+
 //        decSenderCounter(c.getSenderId());
 //        decReceiverCounter(c.getReceiverId());
     }
 
     @Override
     public Connection get(String id, Connector s, Connector r) {
-        return connections.get(connectionId(id, s.getId(), r.getId()));
+        return connections.get(ConnectionKey.of(id, s, r));
     }
 
     @Override
@@ -134,7 +267,7 @@ class ConnectionsImpl implements Connections {
 
         observableConnections.remove(get(id, s, r));
 
-        connections.remove(connectionId(id, s.getId(), r.getId()));
+        connections.remove(ConnectionKey.of(id, s, r));
 
 //        decSenderCounter(s);
 //        decReceiverCounter(r);
@@ -192,11 +325,17 @@ class ConnectionsImpl implements Connections {
     @Override
     public Collection<Connection> getAllWith(Connector c) {
 
-        Collection<Connection> result = new ArrayList<>();
+        List<Connection> sent = indexed(connectionsBySender, c);
+        List<Connection> received = indexed(connectionsByReceiver, c);
+
+        Collection<Connection> result
+                = new ArrayList<>(sent.size() + received.size());
 
-        for (Connection conn : getConnections()) {
-            if (conn.getSender().getId().equals(c.getId())
-                    || conn.getReceiver().getId().equals(c.getId())) {
+        result.addAll(sent);
+
+        for (Connection conn : received) {
+            // self-connections are already contained
+            if (conn.getSender() != c) {
                 result.add(conn);
             }
         }
@@ -206,22 +345,12 @@ class ConnectionsImpl implements Connections {
 
     @Override
     public Collection<Connection> getAllWithNode(VNode n) {
-
-        Collection<Connection> result = new ArrayList<>();
-
-        for (Connection conn : getConnections()) {
-            // TODO: reference check (==) ok? 20.11.2013
-            if (conn.getSender().getNode() == n || conn.getReceiver().getNode() == n) {
-                result.add(conn);
-            }
-        }
-
-        return result;
+        return new ArrayList<>(indexed(connectionsByNode, n));
     }
 
-    private void checkUniqueness(Connection c) {
+    private void checkUniqueness(ConnectionKey key) {
 
-        if (connections.containsKey(connectionId(c))) {
+        if (connections.containsKey(key)) {
             throw new IllegalStateException(
                     "Cannot add connection: a connection with equal id already added!");
         }
@@ -233,9 +362,8 @@ class ConnectionsImpl implements Connections {
 
         Collection<Connection> result = new ArrayList<>();
 
-        for (Connection c : connections.values()) {
-            if (c.getSender().getId().equals(s.getId())
-                    && c.getReceiver().getId().equals(r.getId())) {
+        for (Connection c : indexed(connectionsBySender, s)) {
+            if (c.getReceiver() == r) {
                 result.add(c);
             }
         }
@@ -246,14 +374,7 @@ class ConnectionsImpl implements Connections {
     @Override
     public void removeAll(Connector s, Connector r) {
 
-        Collection<Connection> delList = new ArrayList<>();
-
-        for (Connection c : connections.values()) {
-            if (c.getSender().getId().equals(s.getId())
-                    && c.getReceiver().getId().equals(r.getId())) {
-                delList.add(c);
-            }
-        }
+        Collection<Connection> delList = getAll(s, r);
 
         for (Connection connection : delList) {
             remove(connection);
@@ -292,23 +413,34 @@ class ConnectionsImpl implements Connections {
 
     @Override
     public boolean isInputConnected(Connector input) {
-        Collection<Connection> connectionsWith = getAllWith(input);
+        return connectionsByReceiver.containsKey(input);
+    }
 
-        for (Connection connection : connectionsWith) {
-            if (connection.getReceiver().getId().equals(input.getId())) {
-                return true;
-            }
-        }
+    @Override
+    public boolean isOutputConnected(Connector output) {
+        return connectionsBySender.containsKey(output);
+    }
 
-        return false;
+    @Override
+    public int degreeOf(Connector c) {
+        return outDegreeOf(c) + inDegreeOf(c)
+                - selfConnections.getOrDefault(c, 0);
     }
 
     @Override
-    public boolean isOutputConnected(Connector output) {
-        Collection<Connection> connectionsWith = getAllWith(output);
+    public int inDegreeOf(Connector c) {
+        return indexed(connectionsByReceiver, c).size();
+    }
 
-        for (Connection connection : connectionsWith) {
-            if (connection.getSender().getId().equals(output.getId())) {
+    @Override
+    public int outDegreeOf(Connector c) {
+        return indexed(connectionsBySender, c).size();
+    }
+
+    @Override
+    public boolean contains(Connector s, Connector r) {
+        for (Connection c : indexed(connectionsBySender, s)) {
+            if (c.getReceiver() == r) {
                 return true;
             }
         }
@@ -316,11 +448,6 @@ class ConnectionsImpl implements Connections {
         return false;
     }
 
-    @Override
-    public boolean contains(Connector s, Connector r) {
-        return getAll(s, r).iterator().hasNext();
-    }
-
     /**
      * @return the type
      */
@@ -36,6 +36,9 @@ package eu.mihosoft.vrl.workflow;
 import javafx.beans.property.ObjectProperty;
 import javafx.event.EventHandler;
 
+import java.util.List;
+import java.util.function.Consumer;
+
 /**
  * This interface describes a connector. A connector is used to link nodes
  * together. It serves as the input or output for the node. Methods allow you to
@@ -132,6 +135,32 @@ public interface Connector extends Model {
      */
     public void removeConnectionEventListener(EventHandler<ConnectionEvent> handler);
 
+    /**
+     * Adds the specified connection-event list listener to this connector.
+     * The listener is notified once per batch of connection changes with the
+     * events of this connector. Events of connections that have been added
+     * and removed within the same batch cancel each other out. The default
+     * implementation ignores the listener, i.e., connectors that don't
+     * support event lists never notify it.
+     *
+     * @param handler the listener to add
+     */
+    public default void addConnectionEventsListener(
+            Consumer<? super List<ConnectionEvent>> handler) {
+        // event lists are not supported
+    }
+
+    /**
+     * Removes the specified connection-event list listener from this
+     * connector.
+     *
+     * @param handler the listener to remove
+     */
+    public default void removeConnectionEventsListener(
+            Consumer<? super List<ConnectionEvent>> handler) {
+        // event lists are not supported
+    }
+
     /**
      * Adds the specified click-event listener to this connector.
      * @param handler the listener to add
@@ -40,6 +40,7 @@ import javafx.event.EventHandler;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * This class provides the default implementation of a {@code Connector} in
@@ -55,13 +56,16 @@ class ConnectorImpl implements Connector {
     private ObjectProperty<VisualizationRequest> vReqProperty;
     private boolean input;
     private boolean output;
-    private final ObjectProperty<ValueObject> valueObjectProperty = 
-            new SimpleObjectProperty<>();
+    // the property is only created if requested (see valueObjectProperty())
+    private ValueObject valueObject;
+    private ObjectProperty<ValueObject> valueObjectProperty;
     private transient List<EventHandler<ConnectionEvent>> connectionEventHandlers;
+    private transient List<Consumer<? super List<ConnectionEvent>>> connectionEventsHandlers;
     private transient List<EventHandler<ClickEvent>> clickEventHandlers;
     
     private final int maxNumberOfConnectionsDefault = Integer.MAX_VALUE;
     private ObjectProperty<Integer> maxNumberOfConnectionsProperty;
+    private transient ConnectorRef ref;
 
     public ConnectorImpl(VNode node, String type, String localId, boolean input) {
         this.type = type;
@@ -83,7 +87,28 @@ class ConnectorImpl implements Connector {
 
     @Override
     public String getId() {
-        return this.node.getId() + ":c:" + this.localId;
+        return getRef().getId();
+    }
+
+    /**
+     * Returns the reference of this connector. The reference is cached as long
+     * as the node id and the local id of this connector don't change.
+     *
+     * @return the reference of this connector
+     */
+    ConnectorRef getRef() {
+        String nodeId = this.node.getId();
+        ConnectorRef result = this.ref;
+
+        // we compare references since ids are only replaced, never modified
+        if (result == null
+                || result.getNodeId() != nodeId
+                || result.getLocalId() != this.localId) {
+            result = new ConnectorRef(nodeId, this.localId);
+            this.ref = result;
+        }
+
+        return result;
     }
 
     @Override
@@ -149,16 +174,29 @@ class ConnectorImpl implements Connector {
 
     @Override
     public final void setValueObject(ValueObject vObj) {
-        valueObjectProperty().set(vObj);
+        if (valueObjectProperty != null) {
+            valueObjectProperty.set(vObj);
+        } else {
+            this.valueObject = vObj;
+        }
     }
 
     @Override
     public ValueObject getValueObject() {
-        return valueObjectProperty().get();
+        if (valueObjectProperty != null) {
+            return valueObjectProperty.get();
+        }
+
+        return this.valueObject;
     }
 
     @Override
     public ObjectProperty<ValueObject> valueObjectProperty() {
+        if (valueObjectProperty == null) {
+            valueObjectProperty = new SimpleObjectProperty<>(valueObject);
+            valueObject = null;
+        }
+
         return this.valueObjectProperty;
     }
 
@@ -193,6 +231,38 @@ class ConnectorImpl implements Connector {
         return connectionEventHandlers;
     }
 
+    @Override
+    public void addConnectionEventsListener(
+            Consumer<? super List<ConnectionEvent>> handler) {
+        if (connectionEventsHandlers == null) {
+            connectionEventsHandlers = new ArrayList<>();
+        }
+
+        connectionEventsHandlers.add(handler);
+    }
+
+    @Override
+    public void removeConnectionEventsListener(
+            Consumer<? super List<ConnectionEvent>> handler) {
+        if (connectionEventsHandlers == null) {
+            return;
+        }
+
+        connectionEventsHandlers.remove(handler);
+
+        // see removeConnectionEventListener()
+        if (connectionEventsHandlers.isEmpty()) {
+            connectionEventsHandlers = null;
+        }
+    }
+
+    /**
+     * @return the connectionEventsHandlers
+     */
+    List<Consumer<? super List<ConnectionEvent>>> getConnectionEventsHandlers() {
+        return connectionEventsHandlers;
+    }
+
     @Override
     public void addClickEventListener(EventHandler<ClickEvent> handler) {
         getClickEventHandlers().add(handler);
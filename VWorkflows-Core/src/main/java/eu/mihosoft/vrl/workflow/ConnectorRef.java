@@ -0,0 +1,140 @@
+/*
+ * Copyright 2012-2016 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * Please cite the following publication(s):
+ *
+ * M. Hoffer, C.Poliwoda, G.Wittum. Visual Reflection Library -
+ * A Framework for Declarative GUI Programming on the Java Platform.
+ * Computing and Visualization in Science, 2011, in press.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vrl.workflow;
+
+import java.util.Objects;
+
+/**
+ * Immutable reference to a connector, i.e., the id of the connector's node
+ * and the local id of the connector. The hash code and the global id of the
+ * reference are computed only once.
+ *
+ * @author Michael Hoffer &lt;info@michaelhoffer.de&gt;
+ */
+public final class ConnectorRef {
+
+    static final String SEPARATOR = ":c:";
+
+    private final String nodeId;
+    private final String localId;
+    private final int hash;
+    private String id;
+
+    /**
+     * Constructor.
+     *
+     * @param nodeId id of the node that contains the connector
+     * @param localId local id of the connector
+     */
+    public ConnectorRef(String nodeId, String localId) {
+        this.nodeId = nodeId;
+        this.localId = localId;
+        this.hash = 31 * Objects.hashCode(nodeId) + Objects.hashCode(localId);
+    }
+
+    /**
+     * Returns a reference to the specified connector.
+     *
+     * @param c connector
+     * @return reference to the specified connector
+     */
+    public static ConnectorRef of(Connector c) {
+        if (c instanceof ConnectorImpl) {
+            return ((ConnectorImpl) c).getRef();
+        }
+
+        return new ConnectorRef(c.getNode().getId(), c.getLocalId());
+    }
+
+    /**
+     * Returns the id of the node that contains the connector.
+     *
+     * @return node id
+     */
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Returns the local id of the connector.
+     *
+     * @return local connector id
+     */
+    public String getLocalId() {
+        return localId;
+    }
+
+    /**
+     * Returns the global id of the connector
+     * ({@code <node id>:c:<connector id>}).
+     *
+     * @return global connector id
+     */
+    public String getId() {
+        // benign race: the id is immutable and might be computed twice
+        String result = id;
+
+        if (result == null) {
+            result = nodeId + SEPARATOR + localId;
+            id = result;
+        }
+
+        return result;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof ConnectorRef)) {
+            return false;
+        }
+        final ConnectorRef other = (ConnectorRef) obj;
+
+        return hash == other.hash
+                && Objects.equals(this.nodeId, other.nodeId)
+                && Objects.equals(this.localId, other.localId);
+    }
+
+    @Override
+    public String toString() {
+        return getId();
+    }
+}
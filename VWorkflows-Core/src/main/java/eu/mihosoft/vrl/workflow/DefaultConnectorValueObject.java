@@ -102,7 +102,7 @@ public class DefaultConnectorValueObject implements ValueObject {
                 boolean compatibleType = false;
 
                 int numConnectionsOfReceiver = getParent().getFlow().
-                        getConnections(flowType).getAllWith(c).size();
+                        getConnections(flowType).degreeOf(c);
 
                 boolean lessThanMaxNumberOfConnections = true;
 
@@ -119,7 +119,7 @@ public class DefaultConnectorValueObject implements ValueObject {
 
                     int numConnectionsOfSender = senderConnectorVObj.parent.
                             getFlow().getConnections(flowType).
-                            getAllWith(senderConnectorVObj.c).size();
+                            degreeOf(senderConnectorVObj.c);
 
                     maxNumConnections = Math.min(c.getMaxNumberOfConnections(),
                             senderConnectorVObj.c.getMaxNumberOfConnections());
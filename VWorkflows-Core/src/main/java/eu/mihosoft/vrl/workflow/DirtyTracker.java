@@ -0,0 +1,214 @@
+/*
+ * Copyright 2012-2016 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * Please cite the following publication(s):
+ *
+ * M. Hoffer, C.Poliwoda, G.Wittum. Visual Reflection Library -
+ * A Framework for Declarative GUI Programming on the Java Platform.
+ * Computing and Visualization in Science, 2011, in press.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vrl.workflow;
+
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.ReadOnlyBooleanWrapper;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Tracks which flows of a flow hierarchy have been changed, e.g., to only
+ * save the changed flows. The tracker observes the flow and all of its
+ * subflows.
+ *
+ * <p>
+ * A flow is dirty if nodes or connections have been added to or removed from
+ * the flow or if a node of the flow has been changed (title, id, geometry,
+ * value object, value, connectors and visibility of subflows). Changes of
+ * the root node itself mark the root flow as dirty. Subflows that are added
+ * to an observed flow are dirty, including their subflows. Loading content
+ * on demand (see {@link VFlowModel#setContentLoader(java.util.function.Consumer)})
+ * doesn't mark flows as dirty. Changes of visualization requests are not
+ * tracked (see {@link #markDirty(eu.mihosoft.vrl.workflow.VFlowModel)}).
+ * The flow is observed without creating the properties of its nodes (see
+ * {@link VNodeImpl}).
+ * </p>
+ *
+ * @author Michael Hoffer &lt;info@michaelhoffer.de&gt;
+ */
+public final class DirtyTracker {
+
+    private final Set<VFlowModel> dirtyFlows
+            = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final ReadOnlyBooleanWrapper dirty = new ReadOnlyBooleanWrapper();
+
+    private final FlowObserver observer;
+
+    /**
+     * Constructor. Initially, no flow is dirty.
+     *
+     * @param flow flow to observe
+     */
+    public DirtyTracker(VFlowModel flow) {
+        observer = new FlowObserver(flow, new Tracker());
+    }
+
+    /**
+     * Indicates whether a flow of the observed hierarchy is dirty.
+     *
+     * @return {@code true} if a flow is dirty; {@code false} otherwise
+     */
+    public boolean isDirty() {
+        return dirty.get();
+    }
+
+    /**
+     * Indicates whether a flow of the observed hierarchy is dirty.
+     *
+     * @return property that indicates whether a flow is dirty
+     */
+    public ReadOnlyBooleanProperty dirtyProperty() {
+        return dirty.getReadOnlyProperty();
+    }
+
+    /**
+     * Indicates whether the specified flow is dirty.
+     *
+     * @param f flow
+     * @return {@code true} if the specified flow is dirty; {@code false}
+     * otherwise
+     */
+    public boolean isDirty(VFlowModel f) {
+        return dirtyFlows.contains(f);
+    }
+
+    /**
+     * Returns the dirty flows.
+     *
+     * @return the dirty flows (unmodifiable)
+     */
+    public Set<VFlowModel> getDirtyFlows() {
+        return Collections.unmodifiableSet(dirtyFlows);
+    }
+
+    /**
+     * Marks the specified flow as dirty, e.g., after changing the
+     * visualization request of one of its nodes.
+     *
+     * @param f flow to mark
+     */
+    public void markDirty(VFlowModel f) {
+        dirtyFlows.add(f);
+        dirty.set(true);
+    }
+
+    /**
+     * Marks all flows as clean, e.g., after the flow has been saved.
+     */
+    public void markClean() {
+        dirtyFlows.clear();
+        dirty.set(false);
+    }
+
+    /**
+     * Stops observing the flow.
+     */
+    public void dispose() {
+        observer.dispose();
+    }
+
+    private void markAllDirty(VFlowModel f) {
+        markDirty(f);
+
+        for (VNode n : VFlowModelImpl.getLoadedNodes(f)) {
+            if (n instanceof VFlowModel) {
+                markAllDirty((VFlowModel) n);
+            }
+        }
+    }
+
+    /**
+     * Marks the flows that are changed by the changes reported by the flow
+     * observer. Changes of a node change the flow that contains the node.
+     */
+    private final class Tracker implements FlowObserver.Listener {
+
+        @Override
+        public void nodeAdded(VFlowModel f, VNode n, int index) {
+            if (n instanceof VFlowModel) {
+                markAllDirty((VFlowModel) n);
+            }
+
+            markDirty(f);
+        }
+
+        @Override
+        public void nodeRemoved(VFlowModel f, VNode n, int index) {
+            markDirty(f);
+        }
+
+        @Override
+        public void connectionAdded(VFlowModel f, Connection c) {
+            markDirty(f);
+        }
+
+        @Override
+        public void connectionRemoved(VFlowModel f, Connection c) {
+            markDirty(f);
+        }
+
+        @Override
+        public void connectorAdded(VFlowModel owner, VNode n,
+                Connector c, int index) {
+            markDirty(owner);
+        }
+
+        @Override
+        public void connectorRemoved(VFlowModel owner, VNode n,
+                Connector c, int index) {
+            markDirty(owner);
+        }
+
+        @Override
+        public void attributeChanged(VFlowModel owner, VNode n,
+                FlowObserver.Attribute a, Object oldValue, Object newValue) {
+            markDirty(owner);
+
+            // ids of the nodes of a flow might be stored relative to the id
+            // of the flow
+            if (a == FlowObserver.Attribute.ID && n instanceof VFlowModel) {
+                markDirty((VFlowModel) n);
+            }
+        }
+
+        @Override
+        public void valueChanged(VFlowModel owner, VNode n,
+                ValueObject vObj, Object oldValue, Object newValue) {
+            markDirty(owner);
+        }
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright 2012-2016 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * Please cite the following publication(s):
+ *
+ * M. Hoffer, C.Poliwoda, G.Wittum. Visual Reflection Library -
+ * A Framework for Declarative GUI Programming on the Java Platform.
+ * Computing and Visualization in Science, 2011, in press.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vrl.workflow;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Structural difference between two versions of a flow. Nodes are matched by
+ * id and connections by id, sender and receiver. Subtrees with equal hashes
+ * (see {@link FlowHash}) are skipped without visiting them.
+ *
+ * <p>
+ * <b>Cost:</b> comparing two hash trees via
+ * {@link #compute(FlowHash, FlowHash)} skips subflows with equal hashes in
+ * constant time. For each flow whose hash differs, all of its direct children
+ * and (if its connections differ) all of its connections are compared, i.e.,
+ * the cost depends on the size of the changed flows rather than on the size
+ * of the whole hierarchy. Moving a single node of a flat flow with k nodes
+ * therefore takes O(k). {@link #compute(VFlowModel, VFlowModel)} additionally
+ * hashes both versions (see {@link FlowHash#of(VFlowModel)}). This takes O(n)
+ * for n nodes and connections unless the flows are observed by a
+ * {@link FlowHashTracker}.
+ * </p>
+ *
+ * <p>
+ * If a subflow has been added or removed, only the subflow is reported, not
+ * its children and connections. A subflow is reported as modified only if its
+ * own properties changed.
+ * </p>
+ *
+ * @author Michael Hoffer &lt;info@michaelhoffer.de&gt;
+ */
+public final class FlowDiff {
+
+    private final List<VNode> addedNodes = new ArrayList<>();
+    private final List<VNode> removedNodes = new ArrayList<>();
+    private final List<VNode> modifiedNodes = new ArrayList<>();
+    private final List<Connection> addedConnections = new ArrayList<>();
+    private final List<Connection> removedConnections = new ArrayList<>();
+
+    private FlowDiff() {
+        //
+    }
+
+    /**
+     * Computes the difference between the specified flows. Flows that are
+     * not observed by a {@link FlowHashTracker} are hashed completely (O(n),
+     * see {@link FlowHash#of(VFlowModel)}).
+     *
+     * @param oldFlow old version
+     * @param newFlow new version
+     * @return the difference between the specified flows
+     */
+    public static FlowDiff compute(VFlowModel oldFlow, VFlowModel newFlow) {
+        return compute(FlowHash.of(oldFlow), FlowHash.of(newFlow));
+    }
+
+    /**
+     * Computes the difference between the specified hash trees. Identical
+     * subtrees are skipped in constant time. The children (and connections)
+     * of flows with different hashes are compared.
+     *
+     * @param oldFlow hash tree of the old version
+     * @param newFlow hash tree of the new version
+     * @return the difference between the specified hash trees
+     */
+    public static FlowDiff compute(FlowHash oldFlow, FlowHash newFlow) {
+        FlowDiff result = new FlowDiff();
+        result.diff(oldFlow, newFlow);
+        return result;
+    }
+
+    private void diff(FlowHash a, FlowHash b) {
+        if (a.getTreeHash() == b.getTreeHash()) {
+            return;
+        }
+
+        if (a.isFlow() != b.isFlow()) {
+            removedNodes.add(a.getNode());
+            addedNodes.add(b.getNode());
+            return;
+        }
+
+        if (a.getNodeHash() != b.getNodeHash()) {
+            modifiedNodes.add(b.getNode());
+        }
+
+        if (!a.isFlow()) {
+            return;
+        }
+
+        Map<String, FlowHash> aChildren = a.getChildren();
+        Map<String, FlowHash> bChildren = b.getChildren();
+
+        for (Map.Entry<String, FlowHash> e : aChildren.entrySet()) {
+            FlowHash bChild = bChildren.get(e.getKey());
+
+            if (bChild == null) {
+                removedNodes.add(e.getValue().getNode());
+            } else {
+                diff(e.getValue(), bChild);
+            }
+        }
+
+        for (Map.Entry<String, FlowHash> e : bChildren.entrySet()) {
+            if (!aChildren.containsKey(e.getKey())) {
+                addedNodes.add(e.getValue().getNode());
+            }
+        }
+
+        if (a.connectionsHash() != b.connectionsHash()) {
+            diffConnections(a.connections(), b.connections());
+        }
+    }
+
+    private void diffConnections(
+            Map<String, Map<ConnectionKey, Connection>> a,
+            Map<String, Map<ConnectionKey, Connection>> b) {
+
+        for (Map.Entry<String, Map<ConnectionKey, Connection>> e
+                : a.entrySet()) {
+            Map<ConnectionKey, Connection> bCns = b.get(e.getKey());
+
+            for (Map.Entry<ConnectionKey, Connection> c
+                    : e.getValue().entrySet()) {
+                if (bCns == null || !bCns.containsKey(c.getKey())) {
+                    removedConnections.add(c.getValue());
+                }
+            }
+        }
+
+        for (Map.Entry<String, Map<ConnectionKey, Connection>> e
+                : b.entrySet()) {
+            Map<ConnectionKey, Connection> aCns = a.get(e.getKey());
+
+            for (Map.Entry<ConnectionKey, Connection> c
+                    : e.getValue().entrySet()) {
+                if (aCns == null || !aCns.containsKey(c.getKey())) {
+                    addedConnections.add(c.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the nodes that have been added (nodes of the new version).
+     *
+     * @return the nodes that have been added
+     */
+    public List<VNode> getAddedNodes() {
+        return Collections.unmodifiableList(addedNodes);
+    }
+
+    /**
+     * Returns the nodes that have been removed (nodes of the old version).
+     *
+     * @return the nodes that have been removed
+     */
+    public List<VNode> getRemovedNodes() {
+        return Collections.unmodifiableList(removedNodes);
+    }
+
+    /**
+     * Returns the nodes whose title, geometry, value or connectors have been
+     * modified (nodes of the new version).
+     *
+     * @return the nodes that have been modified
+     */
+    public List<VNode> getModifiedNodes() {
+        return Collections.unmodifiableList(modifiedNodes);
+    }
+
+    /**
+     * Returns the connections that have been added (connections of the new
+     * version).
+     *
+     * @return the connections that have been added
+     */
+    public List<Connection> getAddedConnections() {
+        return Collections.unmodifiableList(addedConnections);
+    }
+
+    /**
+     * Returns the connections that have been removed (connections of the old
+     * version).
+     *
+     * @return the connections that have been removed
+     */
+    public List<Connection> getRemovedConnections() {
+        return Collections.unmodifiableList(removedConnections);
+    }
+
+    /**
+     * Indicates whether both versions are equal.
+     *
+     * @return {@code true} if both versions are equal; {@code false}
+     * otherwise
+     */
+    public boolean isEmpty() {
+        return addedNodes.isEmpty() && removedNodes.isEmpty()
+                && modifiedNodes.isEmpty() && addedConnections.isEmpty()
+                && removedConnections.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "[added nodes: " + addedNodes.size()
+                + ", removed nodes: " + removedNodes.size()
+                + ", modified nodes: " + modifiedNodes.size()
+                + ", added connections: " + addedConnections.size()
+                + ", removed connections: " + removedConnections.size() + "]";
+    }
+}
@@ -71,6 +71,19 @@ public class FlowFactory {
         return flow;
     }
 
+    /**
+     * Creates a new flow model that can be written by several threads (see
+     * {@link ConcurrentFlowModel}). It uses a thread-safe node lookup.
+     *
+     * @return the new concurrent flow model
+     */
+    public static ConcurrentFlowModel newConcurrentFlowModel() {
+        VFlowModel result = newFlowModel();
+        result.setIdGenerator(newIdGenerator());
+        result.setNodeLookup(new ConcurrentNodeLookup(result));
+        return new ConcurrentFlowModel(null, result).initialize();
+    }
+
     /**
      * Creates a new flow model
      * @return 
@@ -88,4 +101,13 @@ public class FlowFactory {
     public static IdGenerator newIdGenerator() {
         return new IdGeneratorImpl();
     }
+
+    /**
+     * Returns a new (empty) visualization request, e.g., to add connections
+     * via {@link Connections#add(java.lang.String, eu.mihosoft.vrl.workflow.Connector, eu.mihosoft.vrl.workflow.Connector, eu.mihosoft.vrl.workflow.VisualizationRequest)}.
+     * @return visualization request
+     */
+    public static VisualizationRequest newVisualizationRequest() {
+        return new VisualizationRequestImpl();
+    }
 }
@@ -0,0 +1,320 @@
+/*
+ * Copyright 2012-2016 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * Please cite the following publication(s):
+ *
+ * M. Hoffer, C.Poliwoda, G.Wittum. Visual Reflection Library -
+ * A Framework for Declarative GUI Programming on the Java Platform.
+ * Computing and Visualization in Science, 2011, in press.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vrl.workflow;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * Merkle tree of a flow. Each node is hashed by its title, geometry, value
+ * and connectors. Each flow is additionally hashed by the hashes of its
+ * children and by its connections. Flows with equal hashes are (with very
+ * high probability) equal, i.e., {@link FlowDiff} skips them without
+ * visiting their children.
+ *
+ * <p>
+ * Child and connection hashes are combined independently of their order.
+ * Values are hashed via {@link Object#hashCode()}, i.e., value objects should
+ * provide content-based hash codes. A hash tree refers to the nodes and
+ * connections of the hashed flow and is immutable, i.e., it describes the
+ * version of the flow at the time it has been computed.
+ * </p>
+ *
+ * <p>
+ * <b>Cost:</b> without a {@link FlowHashTracker}, {@link #of(VFlowModel)}
+ * visits every node and connection of the flow (including all subflows),
+ * i.e., it takes O(n) time and memory for a flow with n nodes and
+ * connections. A tracker keeps the hash trees of a flow up to date and only
+ * recomputes the changed nodes and the flows that contain them. Hash trees of
+ * unchanged subflows are reused.
+ * </p>
+ *
+ * @author Michael Hoffer &lt;info@michaelhoffer.de&gt;
+ */
+public final class FlowHash {
+
+    private final VNode node;
+    private final long nodeHash;
+    private final long treeHash;
+
+    // only defined for flows
+    private final Map<String, FlowHash> children;
+    private final Map<String, Map<ConnectionKey, Connection>> connections;
+    private final long connectionsHash;
+
+    private FlowHash(VNode node, long nodeHash) {
+        this.node = node;
+        this.nodeHash = nodeHash;
+        this.treeHash = nodeHash;
+        this.children = null;
+        this.connections = null;
+        this.connectionsHash = 0;
+    }
+
+    private FlowHash(VFlowModel flow, long nodeHash,
+            Map<String, FlowHash> children,
+            Map<String, Map<ConnectionKey, Connection>> connections,
+            long childrenHash, long connectionsHash) {
+        this.node = flow;
+        this.nodeHash = nodeHash;
+        this.children = children;
+        this.connections = connections;
+        this.connectionsHash = connectionsHash;
+        this.treeHash = mix(mix(nodeHash, childrenHash), connectionsHash);
+    }
+
+    /**
+     * Returns the hash tree of the specified flow. If the flow is observed by
+     * a {@link FlowHashTracker}, the tree of the tracker is returned (see
+     * {@link FlowHashTracker#getHash()}). Otherwise, this visits all nodes
+     * and connections of the flow and of its subflows (O(n)).
+     *
+     * @param flow flow to hash
+     * @return the hash tree of the specified flow
+     */
+    public static FlowHash of(VFlowModel flow) {
+        FlowHashTracker tracker = VFlowModelImpl.getHashTracker(flow);
+
+        if (tracker != null) {
+            return tracker.getHash();
+        }
+
+        return hashFlow(flow);
+    }
+
+    private static FlowHash hashNode(VNode n) {
+        if (n instanceof VFlowModel) {
+            return hashFlow((VFlowModel) n);
+        }
+
+        return new FlowHash(n, nodeHash(n));
+    }
+
+    private static FlowHash hashFlow(VFlowModel flow) {
+        return hashFlow(flow, nodeHash(flow), FlowHash::hashNode, null);
+    }
+
+    /**
+     * Computes the hash tree of the specified flow from the hash trees of its
+     * children.
+     *
+     * @param flow flow to hash
+     * @param nodeHash hash of the node properties of the flow
+     * @param hashChild returns the hash tree of a child
+     * @param connectionsOf previous hash tree of the flow whose connections
+     * are unchanged (may be {@code null})
+     * @return the hash tree of the specified flow
+     */
+    static FlowHash hashFlow(VFlowModel flow, long nodeHash,
+            Function<VNode, FlowHash> hashChild, FlowHash connectionsOf) {
+        List<VNode> nodes = flow.getNodes();
+
+        Map<String, FlowHash> children = new LinkedHashMap<>(
+                nodes.size() * 4 / 3 + 1);
+        long childrenHash = 0;
+
+        for (VNode n : nodes) {
+            FlowHash child = hashChild.apply(n);
+            children.put(n.getId(), child);
+
+            // sum is independent of the order
+            childrenHash += mix(hash(n.getId()), child.treeHash);
+        }
+
+        if (connectionsOf != null && connectionsOf.isFlow()) {
+            return new FlowHash(flow, nodeHash, children,
+                    connectionsOf.connections, childrenHash,
+                    connectionsOf.connectionsHash);
+        }
+
+        Map<String, Map<ConnectionKey, Connection>> connections
+                = new HashMap<>();
+        long connectionsHash = 0;
+
+        for (Map.Entry<String, Connections> e
+                : flow.getAllConnections().entrySet()) {
+            List<Connection> cns = e.getValue().getConnections();
+
+            if (cns.isEmpty()) {
+                continue;
+            }
+
+            Map<ConnectionKey, Connection> byKey = new HashMap<>(
+                    cns.size() * 4 / 3 + 1);
+            long typeHash = hash(e.getKey());
+
+            for (Connection c : cns) {
+                ConnectionKey key = ConnectionKey.of(c);
+                byKey.put(key, c);
+                connectionsHash += mix(typeHash, connectionHash(key));
+            }
+
+            connections.put(e.getKey(), byKey);
+        }
+
+        return new FlowHash(flow, nodeHash, children, connections,
+                childrenHash, connectionsHash);
+    }
+
+    /**
+     * Computes the hash tree of the specified node that is no flow.
+     *
+     * @param n node to hash
+     * @param nodeHash hash of the node properties
+     * @return the hash tree of the specified node
+     */
+    static FlowHash hashLeaf(VNode n, long nodeHash) {
+        return new FlowHash(n, nodeHash);
+    }
+
+    static long nodeHash(VNode n) {
+        long h = hash(n.getTitle());
+
+        h = mix(h, Double.doubleToLongBits(n.getX()));
+        h = mix(h, Double.doubleToLongBits(n.getY()));
+        h = mix(h, Double.doubleToLongBits(n.getWidth()));
+        h = mix(h, Double.doubleToLongBits(n.getHeight()));
+
+        ValueObject vObj = n.getValueObject();
+        h = mix(h, vObj == null ? 0 : Objects.hashCode(vObj.getValue()));
+
+        for (Connector c : n.getConnectors()) {
+            h = mix(h, hash(c.getType()));
+            h = mix(h, hash(c.getLocalId()));
+            h = mix(h, c.isInput() ? 1 : 2);
+            h = mix(h, c.getMaxNumberOfConnections());
+        }
+
+        return h;
+    }
+
+    private static long connectionHash(ConnectionKey key) {
+        long h = hash(key.getId());
+        h = mix(h, hash(key.getSender().getId()));
+        return mix(h, hash(key.getReceiver().getId()));
+    }
+
+    /**
+     * 64 bit FNV-1a hash of the specified string.
+     */
+    static long hash(String s) {
+        if (s == null) {
+            return 0;
+        }
+
+        long h = 0xcbf29ce484222325L;
+
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+
+        return h;
+    }
+
+    /**
+     * Combines the specified hashes (SplitMix64 finalizer).
+     */
+    static long mix(long h, long value) {
+        long z = h * 31 + value + 0x9e3779b97f4a7c15L;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Returns the hashed node.
+     *
+     * @return the hashed node
+     */
+    public VNode getNode() {
+        return node;
+    }
+
+    /**
+     * Returns the hash of the node properties (title, geometry, value and
+     * connectors).
+     *
+     * @return the hash of the node properties
+     */
+    public long getNodeHash() {
+        return nodeHash;
+    }
+
+    /**
+     * Returns the hash of the node properties and (for flows) of all children
+     * and connections.
+     *
+     * @return the hash of the node properties and (for flows) of all
+     * children and connections
+     */
+    public long getTreeHash() {
+        return treeHash;
+    }
+
+    /**
+     * Indicates whether the hashed node is a flow.
+     *
+     * @return {@code true} if the hashed node is a flow; {@code false}
+     * otherwise
+     */
+    public boolean isFlow() {
+        return children != null;
+    }
+
+    /**
+     * Returns the hash trees of the children (node id -&gt; hash tree).
+     *
+     * @return the hash trees of the children (empty if the hashed node is no
+     * flow)
+     */
+    public Map<String, FlowHash> getChildren() {
+        return children == null
+                ? Collections.emptyMap()
+                : Collections.unmodifiableMap(children);
+    }
+
+    Map<String, Map<ConnectionKey, Connection>> connections() {
+        return connections;
+    }
+
+    long connectionsHash() {
+        return connectionsHash;
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2012-2016 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * Please cite the following publication(s):
+ *
+ * M. Hoffer, C.Poliwoda, G.Wittum. Visual Reflection Library -
+ * A Framework for Declarative GUI Programming on the Java Platform.
+ * Computing and Visualization in Science, 2011, in press.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vrl.workflow;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the hash tree (see {@link FlowHash}) of a flow hierarchy up to date.
+ * The tracker observes the flow and all of its subflows (see
+ * {@link DirtyTracker}) and invalidates the hash trees of changed nodes and
+ * of the flows that contain them. {@link #getHash()} only recomputes the
+ * invalidated hash trees and reuses the hash trees of unchanged nodes and
+ * subflows, i.e., hashing an unchanged subflow takes constant time.
+ *
+ * <p>
+ * <b>Cost:</b> recomputing a changed flow visits its direct children (and its
+ * connections if they have been changed). Changing a node of a flow with k
+ * children therefore takes O(k) per ancestor flow, not O(n) for the whole
+ * hierarchy. Hashing the flow initially takes O(n). The tracker keeps one hash
+ * tree per node.
+ * </p>
+ *
+ * <p>
+ * While the tracker is active, {@link FlowHash#of(VFlowModel)} and
+ * {@link FlowDiff#compute(VFlowModel, VFlowModel)} use the hash tree of the
+ * tracker for the observed flow. Changes of visualization requests don't
+ * affect hash trees.
+ * </p>
+ *
+ * @author Michael Hoffer &lt;info@michaelhoffer.de&gt;
+ */
+public final class FlowHashTracker {
+
+    private final VFlowModel flow;
+    private final FlowObserver observer;
+
+    // last computed hash trees (outdated if contained in invalidNodes)
+    private final Map<VNode, FlowHash> hashes = new IdentityHashMap<>();
+    // flow that contains a node (only for nodes that have been hashed)
+    private final Map<VNode, VFlowModel> owners = new IdentityHashMap<>();
+    // nodes whose hash trees are outdated (including all of their owners)
+    private final Set<VNode> invalidNodes
+            = Collections.newSetFromMap(new IdentityHashMap<>());
+    // nodes whose properties have been changed
+    private final Set<VNode> changedNodes
+            = Collections.newSetFromMap(new IdentityHashMap<>());
+    // flows whose connections have been changed
+    private final Set<VFlowModel> changedConnections
+            = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /**
+     * Constructor. The flow is hashed on demand (see {@link #getHash()}).
+     *
+     * @param flow flow to observe
+     */
+    public FlowHashTracker(VFlowModel flow) {
+        this.flow = flow;
+        this.observer = new FlowObserver(flow, new Tracker());
+
+        VFlowModelImpl.setHashTracker(flow, this);
+    }
+
+    /**
+     * Returns the current hash tree of the observed flow. Only the hash trees
+     * of nodes and flows that have been changed since the last call are
+     * recomputed.
+     *
+     * @return the current hash tree of the observed flow
+     */
+    public FlowHash getHash() {
+        return hash(flow);
+    }
+
+    /**
+     * Stops observing the flow.
+     */
+    public void dispose() {
+        observer.dispose();
+
+        if (VFlowModelImpl.getHashTracker(flow) == this) {
+            VFlowModelImpl.setHashTracker(flow, null);
+        }
+
+        hashes.clear();
+        owners.clear();
+        invalidNodes.clear();
+        changedNodes.clear();
+        changedConnections.clear();
+    }
+
+    private FlowHash hash(VNode n) {
+        FlowHash previous = hashes.get(n);
+
+        if (previous != null && !invalidNodes.contains(n)) {
+            return previous;
+        }
+
+        long nodeHash = previous != null && !changedNodes.contains(n)
+                ? previous.getNodeHash() : FlowHash.nodeHash(n);
+
+        FlowHash result;
+
+        if (n instanceof VFlowModel) {
+            VFlowModel f = (VFlowModel) n;
+
+            result = FlowHash.hashFlow(f, nodeHash, (child) -> {
+                owners.put(child, f);
+                return hash(child);
+            }, changedConnections.contains(f) ? null : previous);
+
+            changedConnections.remove(f);
+        } else {
+            result = FlowHash.hashLeaf(n, nodeHash);
+        }
+
+        hashes.put(n, result);
+        invalidNodes.remove(n);
+        changedNodes.remove(n);
+
+        return result;
+    }
+
+    /**
+     * Invalidates the hash tree of the specified node and of all flows that
+     * contain the node.
+     *
+     * @param n node
+     */
+    private void invalidate(VNode n) {
+        // owners of invalid nodes are invalid
+        while (n != null && invalidNodes.add(n)) {
+            n = owners.get(n);
+        }
+    }
+
+    /**
+     * Discards the hash trees of the specified node and of its children.
+     *
+     * @param n node that has been removed
+     */
+    private void discard(VNode n) {
+        hashes.remove(n);
+        owners.remove(n);
+        invalidNodes.remove(n);
+        changedNodes.remove(n);
+
+        if (n instanceof VFlowModel) {
+            changedConnections.remove((VFlowModel) n);
+
+            for (VNode child : VFlowModelImpl.getLoadedNodes((VFlowModel) n)) {
+                discard(child);
+            }
+        }
+    }
+
+    /**
+     * Invalidates the hash trees that are affected by the changes reported by
+     * the flow observer.
+     */
+    private final class Tracker implements FlowObserver.Listener {
+
+        @Override
+        public void nodeAdded(VFlowModel f, VNode n, int index) {
+            invalidate(f);
+        }
+
+        @Override
+        public void nodeRemoved(VFlowModel f, VNode n, int index) {
+            discard(n);
+            invalidate(f);
+        }
+
+        @Override
+        public void connectionAdded(VFlowModel f, Connection c) {
+            changedConnections.add(f);
+            invalidate(f);
+        }
+
+        @Override
+        public void connectionRemoved(VFlowModel f, Connection c) {
+            changedConnections.add(f);
+            invalidate(f);
+        }
+
+        @Override
+        public void connectorAdded(VFlowModel owner, VNode n,
+                Connector c, int index) {
+            nodeChanged(owner, n);
+        }
+
+        @Override
+        public void connectorRemoved(VFlowModel owner, VNode n,
+                Connector c, int index) {
+            nodeChanged(owner, n);
+        }
+
+        @Override
+        public void attributeChanged(VFlowModel owner, VNode n,
+                FlowObserver.Attribute a, Object oldValue, Object newValue) {
+            if (a == FlowObserver.Attribute.VISIBLE) {
+                // not hashed
+                return;
+            }
+
+            // the ids of connectors and connections depend on the node id
+            if (a == FlowObserver.Attribute.ID && owner != n) {
+                changedConnections.add(owner);
+            }
+
+            nodeChanged(owner, n);
+        }
+
+        @Override
+        public void valueChanged(VFlowModel owner, VNode n,
+                ValueObject vObj, Object oldValue, Object newValue) {
+            nodeChanged(owner, n);
+        }
+
+        private void nodeChanged(VFlowModel owner, VNode n) {
+            changedNodes.add(n);
+            invalidate(n);
+            invalidate(owner);
+        }
+    }
+}
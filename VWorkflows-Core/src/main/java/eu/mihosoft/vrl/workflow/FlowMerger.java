@@ -0,0 +1,361 @@
+/*
+ * Copyright 2012-2016 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * Please cite the following publication(s):
+ *
+ * M. Hoffer, C.Poliwoda, G.Wittum. Visual Reflection Library -
+ * A Framework for Declarative GUI Programming on the Java Platform.
+ * Computing and Visualization in Science, 2011, in press.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vrl.workflow;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Merges flows into other flows. The source flow is copied as new subflow of
+ * the target flow. Nodes, connectors, thru connectors and connections are
+ * copied directly, i.e., without looking them up by id. Merging is therefore
+ * linear in the size of the source flow.
+ *
+ * <p>
+ * Copied nodes get new ids that are unique in the target flow. The mapping
+ * from the ids of the source nodes to the ids of their copies is computed
+ * while the nodes are copied and can be requested via
+ * {@link #merge(VFlowModel, VFlowModel, Map)}. Values are not cloned, i.e.,
+ * copies and source nodes share their values.
+ * </p>
+ *
+ * <p>
+ * Value objects are copied by creating a new instance of the class of the
+ * source value object. Custom value objects must therefore provide a public
+ * no-arg constructor. Otherwise, merging fails before the target flow is
+ * modified.
+ * </p>
+ *
+ * @author Michael Hoffer &lt;info@michaelhoffer.de&gt;
+ */
+public final class FlowMerger {
+
+    // source connector -> copy
+    private final Map<Connector, Connector> connectors
+            = new IdentityHashMap<>();
+    // source flow -> copy (in the order of copying)
+    private final Map<VFlowModel, VFlowModel> flows = new LinkedHashMap<>();
+    // source node id -> id of the copy
+    private final Map<String, String> ids;
+    // value object class -> no-arg constructor
+    private final Map<Class<?>, Constructor<?>> valueObjectConstructors
+            = new HashMap<>();
+
+    private FlowMerger(Map<String, String> ids) {
+        this.ids = ids;
+    }
+
+    /**
+     * Merges the specified source flow into the specified target flow. The
+     * source flow is copied as new subflow of the target flow. The source flow
+     * is not modified.
+     *
+     * @param source flow to merge
+     * @param target flow that shall contain the copy of the source flow
+     * @return the copy of the source flow
+     */
+    public static VFlowModel merge(VFlowModel source, VFlowModel target) {
+        return merge(source, target, new HashMap<>());
+    }
+
+    /**
+     * Merges the specified source flow into the specified target flow. The
+     * source flow is copied as new subflow of the target flow. The source flow
+     * is not modified.
+     *
+     * @param source flow to merge
+     * @param target flow that shall contain the copy of the source flow
+     * @param idMap map that receives the mapping from the ids of all source
+     * nodes (including the source flow) to the ids of their copies
+     * @return the copy of the source flow
+     * @throws IllegalArgumentException if a value object of the source flow
+     * cannot be copied, i.e., if its class has no public no-arg constructor
+     */
+    public static VFlowModel merge(VFlowModel source, VFlowModel target,
+            Map<String, String> idMap) {
+
+        if (source == target) {
+            throw new IllegalArgumentException(
+                    "Cannot merge flow into itself");
+        }
+
+        FlowMerger merger = new FlowMerger(idMap);
+
+        // fail before the target flow is modified
+        merger.checkValueObjects(source);
+
+        target.beginUpdate();
+        try {
+            VFlowModel result = merger.copyFlow(source, target);
+            merger.copyConnections();
+            return result;
+        } finally {
+            target.endUpdate();
+        }
+    }
+
+    private VFlowModel copyFlow(VFlowModel source, VFlowModel parent) {
+        VFlowModel flow = parent.newFlowNode(newValueObject(source));
+        flow.getValueObject().setParent(flow);
+        flow.setVisible(source.isVisible());
+
+        flows.put(source, flow);
+        copyProperties(source, flow);
+
+        // thru connectors are created together with their inner nodes
+        // (see VFlowModel.addThruInput()). we must not copy the inner nodes
+        // again when we copy the children
+        Map<VNode, VNode> innerNodes = new IdentityHashMap<>();
+
+        for (Connector c : source.getConnectors()) {
+            if (c instanceof ThruConnector) {
+                ThruConnector sC = (ThruConnector) c;
+                ThruConnector tC = c.isInput()
+                        ? flow.addThruInput(c.getType())
+                        : flow.addThruOutput(c.getType());
+
+                copyConnector(sC, tC);
+                copyConnector(sC.getInnerConnector(), tC.getInnerConnector());
+
+                innerNodes.put(sC.getInnerNode(), tC.getInnerNode());
+            } else {
+                copyConnector(c, flow);
+            }
+        }
+
+        copyMainConnectors(source, flow);
+
+        for (VNode n : source.getNodes()) {
+            VNode innerNode = innerNodes.get(n);
+
+            if (innerNode != null) {
+                copyProperties(n, innerNode);
+
+                for (Connector c : n.getConnectors()) {
+                    if (!connectors.containsKey(c)) {
+                        copyConnector(c, innerNode);
+                    }
+                }
+
+                copyMainConnectors(n, innerNode);
+            } else if (n instanceof VFlowModel) {
+                copyFlow((VFlowModel) n, flow);
+            } else {
+                copyNode(n, flow);
+            }
+        }
+
+        return flow;
+    }
+
+    private void copyNode(VNode source, VFlowModel flow) {
+        VNode n = flow.newNode(newValueObject(source));
+        n.getValueObject().setParent(n);
+
+        copyProperties(source, n);
+
+        for (Connector c : source.getConnectors()) {
+            copyConnector(c, n);
+        }
+
+        copyMainConnectors(source, n);
+    }
+
+    private void copyProperties(VNode source, VNode n) {
+        ids.put(source.getId(), n.getId());
+
+        n.setTitle(source.getTitle());
+        n.setX(source.getX());
+        n.setY(source.getY());
+        n.setWidth(source.getWidth());
+        n.setHeight(source.getHeight());
+
+        if (source.isVisualizationRequestInitialized()) {
+            copyVisualizationRequest(source.getVisualizationRequest(),
+                    n.getVisualizationRequest());
+        }
+    }
+
+    private void copyConnector(Connector c, VNode n) {
+        Connector copy = c.isInput()
+                ? n.addInput(c.getType())
+                : n.addOutput(c.getType());
+
+        copyConnector(c, copy);
+    }
+
+    private void copyConnector(Connector c, Connector copy) {
+        connectors.put(c, copy);
+
+        if (c.getMaxNumberOfConnections()
+                != copy.getMaxNumberOfConnections()) {
+            copy.setMaxNumberOfConnections(c.getMaxNumberOfConnections());
+        }
+
+        if (c.isVisualizationRequestInitialized()) {
+            copyVisualizationRequest(c.getVisualizationRequest(),
+                    copy.getVisualizationRequest());
+        }
+    }
+
+    private void copyMainConnectors(VNode source, VNode n) {
+        for (String type : source.getMainInputTypes()) {
+            Connector c = connectors.get(source.getMainInput(type));
+
+            if (c != null) {
+                n.setMainInput(c);
+            }
+        }
+
+        for (String type : source.getMainOutputTypes()) {
+            Connector c = connectors.get(source.getMainOutput(type));
+
+            if (c != null) {
+                n.setMainOutput(c);
+            }
+        }
+    }
+
+    private void copyConnections() {
+        for (Map.Entry<VFlowModel, VFlowModel> e : flows.entrySet()) {
+            for (Map.Entry<String, Connections> cns
+                    : e.getKey().getAllConnections().entrySet()) {
+
+                List<Connection> sourceConnections
+                        = cns.getValue().getConnections();
+
+                if (sourceConnections.isEmpty()) {
+                    continue;
+                }
+
+                Connections target = e.getValue().getConnections(cns.getKey());
+
+                for (Connection c : sourceConnections) {
+                    Connector s = connectors.get(c.getSender());
+                    Connector r = connectors.get(c.getReceiver());
+
+                    // connections to nodes outside of the source flow are
+                    // not copied
+                    if (s == null || r == null) {
+                        continue;
+                    }
+
+                    VisualizationRequest vReq = new VisualizationRequestImpl();
+
+                    if (c.isVisualizationRequestInitialized()) {
+                        copyVisualizationRequest(
+                                c.getVisualizationRequest(), vReq);
+                    }
+
+                    target.add(c.getId(), s, r, vReq);
+                }
+            }
+        }
+    }
+
+    private void checkValueObjects(VFlowModel flow) {
+        getValueObjectConstructor(flow);
+
+        for (VNode n : flow.getNodes()) {
+            if (n instanceof VFlowModel) {
+                checkValueObjects((VFlowModel) n);
+            } else {
+                getValueObjectConstructor(n);
+            }
+        }
+    }
+
+    private Constructor<?> getValueObjectConstructor(VNode source) {
+        ValueObject vObj = source.getValueObject();
+
+        if (vObj == null) {
+            return null;
+        }
+
+        return valueObjectConstructors.computeIfAbsent(vObj.getClass(),
+                (cls) -> {
+                    try {
+                        return cls.getConstructor();
+                    } catch (NoSuchMethodException | SecurityException ex) {
+                        throw new IllegalArgumentException(
+                                "Cannot copy value object of node "
+                                + source.getId() + ": " + cls.getName()
+                                + " has no public no-arg constructor", ex);
+                    }
+                });
+    }
+
+    private ValueObject newValueObject(VNode source) {
+        ValueObject vObj = source.getValueObject();
+
+        if (vObj == null) {
+            return new DefaultValueObject();
+        }
+
+        ValueObject result;
+
+        try {
+            result = (ValueObject) getValueObjectConstructor(source)
+                    .newInstance();
+        } catch (InstantiationException | IllegalAccessException
+                | InvocationTargetException ex) {
+            throw new IllegalArgumentException(
+                    "Cannot copy value object of node " + source.getId()
+                    + ": " + vObj.getClass().getName()
+                    + " cannot be instantiated", ex);
+        }
+
+        result.setValue(vObj.getValue());
+        copyVisualizationRequest(vObj.getVisualizationRequest(),
+                result.getVisualizationRequest());
+
+        return result;
+    }
+
+    private static void copyVisualizationRequest(
+            VisualizationRequest source, VisualizationRequest target) {
+        if (source == null || target == null) {
+            return;
+        }
+
+        for (String key : source.getKeys()) {
+            source.get(key).ifPresent(v -> target.set(key, v));
+        }
+    }
+}
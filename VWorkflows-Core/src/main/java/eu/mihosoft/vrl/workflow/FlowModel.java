@@ -183,4 +183,36 @@ interface FlowModel extends Model, VisibleState {
      */
     public NodeLookup getNodeLookup();
 
+    /**
+     * Starts a batched update of this flow. Changes of the node and
+     * connection lists of this flow and of its subflows are not reported
+     * before the corresponding call to {@link #endUpdate()}. Listeners are
+     * then notified with one consolidated change per list. Updates can be
+     * nested. The default implementation does nothing, i.e., changes are
+     * reported immediately.
+     */
+    public default void beginUpdate() {
+        // changes are not batched
+    }
+
+    /**
+     * Ends a batched update of this flow (see {@link #beginUpdate()}). The
+     * default implementation does nothing.
+     *
+     * @throws IllegalStateException if no update is in progress
+     */
+    public default void endUpdate() {
+        // changes are not batched
+    }
+
+    /**
+     * Determines whether a batched update of this flow is in progress.
+     *
+     * @return {@code true} if an update is in progress; {@code false}
+     * otherwise (the default implementation always returns {@code false})
+     */
+    public default boolean isUpdating() {
+        return false;
+    }
+
 }
@@ -44,8 +44,10 @@ import java.lang.reflect.Constructor;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -61,8 +63,8 @@ public class FlowModelImpl implements FlowModel {
             = FXCollections.observableHashMap();
     private final ObservableMap<String, Connections> readOnlyObservableConnections
             = FXCollections.unmodifiableObservableMap(connections);
-    private final ObservableList<VNode> observableNodes
-            = FXCollections.observableArrayList();
+    private final BatchObservableList<VNode> observableNodes
+            = new BatchObservableList<>();
     private final ObservableList<VNode> readOnlyObservableNodes
             = FXCollections.unmodifiableObservableList(observableNodes);
     private final Map<String, VNode> nodes = new HashMap<>();
@@ -71,6 +73,12 @@ public class FlowModelImpl implements FlowModel {
     private IdGenerator idGenerator;
     private NodeLookup nodeLookup;
 
+    // batched updates
+    private int updateDepth;
+    private final Set<ConnectionsImpl> updatingConnections
+            = new LinkedHashSet<>();
+    private final Set<FlowModel> updatingSubFlows = new LinkedHashSet<>();
+
     @Override
     public BooleanProperty visibleProperty() {
         return visibleProperty;
@@ -86,16 +94,6 @@ public class FlowModelImpl implements FlowModel {
         return visibleProperty.get();
     }
 
-    // TODO duplicated code
-    private static String connectionId(String id, String s, String r) {
-        return "id=" + id + ";[" + s + "]->[" + r + "]";
-    }
-
-    // TODO duplicated code
-    private static String connectionId(Connection c) {
-        return connectionId(c.getId(), c.getSender().getId(), c.getReceiver().getId());
-    }
-
     @Override
     public ConnectionResult tryConnect(VNode s, VNode r, String type) {
 
@@ -175,8 +173,13 @@ public class FlowModelImpl implements FlowModel {
     public void clear() {
         List<VNode> delList = new ArrayList<>(observableNodes);
 
-        for (VNode n : delList) {
-            remove(n);
+        beginUpdate();
+        try {
+            for (VNode n : delList) {
+                remove(n);
+            }
+        } finally {
+            endUpdate();
         }
     }
 
@@ -187,7 +190,11 @@ public class FlowModelImpl implements FlowModel {
 //            ((FlowModel)n).clear();
 //        }
         VNode result = nodes.remove(n.getId());
-        observableNodes.remove(n);
+        boolean removed = observableNodes.remove(n);
+
+        if (removed && getNodeLookup() instanceof NodeLookupImpl) {
+            ((NodeLookupImpl) getNodeLookup()).nodeRemoved(n);
+        }
 
 //        removeNodeSkin(n);
         for (Connections cns : getAllConnections().values()) {
@@ -263,13 +270,121 @@ public class FlowModelImpl implements FlowModel {
 
         nodes.put(id, result);
         observableNodes.add(result);
+        nodeAdded(result);
+
+        if (isUpdating() && result instanceof FlowModel) {
+            beginSubFlowUpdate((FlowModel) result);
+        }
 
         return result;
     }
 
+    /**
+     * Adds a node that has previously been removed from this flow. The node
+     * keeps its id.
+     *
+     * @param n node to restore
+     * @param index index in the node list (clamped to the size of the list)
+     */
+    void restore(VNode n, int index) {
+        nodes.put(n.getId(), n);
+        observableNodes.add(
+                Math.max(0, Math.min(index, observableNodes.size())), n);
+        nodeAdded(n);
+
+        if (isUpdating() && n instanceof FlowModel) {
+            beginSubFlowUpdate((FlowModel) n);
+        }
+    }
+
+    private void nodeAdded(VNode n) {
+        // node lists don't report nodes before batched updates end
+        if (getNodeLookup() instanceof NodeLookupImpl) {
+            ((NodeLookupImpl) getNodeLookup()).nodeAdded(n);
+        }
+    }
+
     @Override
     public void addConnections(Connections connections, String flowType) {
         this.connections.put(flowType, connections);
+
+        if (isUpdating()) {
+            beginConnectionsUpdate(connections);
+        }
+    }
+
+    @Override
+    public void beginUpdate() {
+        updateDepth++;
+
+        if (updateDepth > 1) {
+            return;
+        }
+
+        observableNodes.beginUpdate();
+
+        for (Connections cns : connections.values()) {
+            beginConnectionsUpdate(cns);
+        }
+
+        for (VNode n : observableNodes) {
+            if (n instanceof FlowModel) {
+                beginSubFlowUpdate((FlowModel) n);
+            }
+        }
+    }
+
+    @Override
+    public void endUpdate() {
+        if (updateDepth == 0) {
+            throw new IllegalStateException(
+                    "endUpdate() called without beginUpdate()");
+        }
+
+        updateDepth--;
+
+        if (updateDepth > 0) {
+            return;
+        }
+
+        List<ConnectionsImpl> cnsToEnd = new ArrayList<>(updatingConnections);
+        List<FlowModel> flowsToEnd = new ArrayList<>(updatingSubFlows);
+        updatingConnections.clear();
+        updatingSubFlows.clear();
+
+        // nodes first, connections refer to them
+        try {
+            observableNodes.endUpdate();
+        } finally {
+            try {
+                for (ConnectionsImpl cns : cnsToEnd) {
+                    cns.endUpdate();
+                }
+            } finally {
+                for (FlowModel f : flowsToEnd) {
+                    f.endUpdate();
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean isUpdating() {
+        return updateDepth > 0;
+    }
+
+    private void beginConnectionsUpdate(Connections cns) {
+        // custom implementations notify their listeners immediately
+        if (cns instanceof ConnectionsImpl
+                && updatingConnections.add((ConnectionsImpl) cns)) {
+            ((ConnectionsImpl) cns).beginUpdate();
+        }
+    }
+
+    private void beginSubFlowUpdate(FlowModel subFlow) {
+        if (updatingSubFlows.add(subFlow)) {
+            subFlow.beginUpdate();
+        }
     }
 
     @Override
@@ -160,7 +160,11 @@ public class FlowNodeSkinLookupImpl implements FlowNodeSkinLookup {
 
         // support for connector ids, we wan't to return node skin if connector
         // id is given
-        globalId = globalId.split(":c:")[0];
+        int separatorIndex = globalId.indexOf(ConnectorRef.SEPARATOR);
+
+        if (separatorIndex >= 0) {
+            globalId = globalId.substring(0, separatorIndex);
+        }
 
         VNodeSkin result = getNodeByGlobalId(skinFactory, root, globalId);
 
@@ -175,11 +179,11 @@ public class FlowNodeSkinLookupImpl implements FlowNodeSkinLookup {
     @Override
     public ConnectionSkin<?> getById(SkinFactory skinFactory, Connection c) {
 
-        String sender = c.getSender().getId();
-        String receiver = c.getReceiver().getId();
+        ConnectorRef sender = ConnectorRef.of(c.getSender());
+        ConnectorRef receiver = ConnectorRef.of(c.getReceiver());
 
-        VFlowModel senderFlow = root.getNodeLookup().getById(sender.split(":c:")[0]).getFlow();
-        VFlowModel receiverFlow = root.getNodeLookup().getById(receiver.split(":c:")[0]).getFlow();
+        VFlowModel senderFlow = root.getNodeLookup().getById(sender.getNodeId()).getFlow();
+        VFlowModel receiverFlow = root.getNodeLookup().getById(receiver.getNodeId()).getFlow();
 
         if (senderFlow != receiverFlow) {
             throw new UnsupportedOperationException(
@@ -199,11 +203,11 @@ public class FlowNodeSkinLookupImpl implements FlowNodeSkinLookup {
         VFlowImpl flowImpl = (VFlowImpl) flow;
 
         ConnectionSkin<Connection> skin = flowImpl.getConnectionSkinMap(skinFactory).get(
-                VFlowImpl.connectionId(c));
+                ConnectionKey.of(c));
 
-//        for (String key : flowImpl.getConnectionSkinMap(skinFactory).keySet()) {
+//        for (ConnectionKey key : flowImpl.getConnectionSkinMap(skinFactory).keySet()) {
 //            ConnectionSkin<Connection> skinI = flowImpl.getConnectionSkinMap(skinFactory).get(key);
-//            System.out.println(" --> skin  " + skinI + ": " + key + "==" + VFlowImpl.connectionId(c));
+//            System.out.println(" --> skin  " + skinI + ": " + key + "==" + ConnectionKey.of(c));
 //        }
 //        
 //        System.out.println("skin for connection " + c + ": " + skin);
@@ -0,0 +1,471 @@
+/*
+ * Copyright 2012-2016 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * Please cite the following publication(s):
+ *
+ * M. Hoffer, C.Poliwoda, G.Wittum. Visual Reflection Library -
+ * A Framework for Declarative GUI Programming on the Java Platform.
+ * Computing and Visualization in Science, 2011, in press.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vrl.workflow;
+
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
+import javafx.collections.ListChangeListener;
+import javafx.collections.MapChangeListener;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Observes a flow and all of its subflows and reports structural changes and
+ * changes of node attributes to a listener (see {@link CommandLog},
+ * {@link DirtyTracker} and {@link FlowHashTracker}). Only content that has been loaded is observed (see
+ * {@link VFlowModel#setContentLoader(java.util.function.Consumer)}). Changes
+ * that are caused by loading content are not reported.
+ *
+ * <p>
+ * Attributes of {@link VNodeImpl} nodes are observed without creating their
+ * properties, i.e., observing a flow doesn't increase the memory footprint of
+ * its nodes. Other nodes are observed via their properties.
+ * </p>
+ *
+ * @author Michael Hoffer &lt;info@michaelhoffer.de&gt;
+ */
+final class FlowObserver {
+
+    /**
+     * Observed attributes of nodes.
+     */
+    enum Attribute {
+
+        TITLE {
+            @Override
+            void set(VNode n, Object value) {
+                n.setTitle((String) value);
+            }
+        },
+        ID {
+            @Override
+            void set(VNode n, Object value) {
+                n.setId((String) value);
+            }
+        },
+        X {
+            @Override
+            void set(VNode n, Object value) {
+                n.setX(((Number) value).doubleValue());
+            }
+        },
+        Y {
+            @Override
+            void set(VNode n, Object value) {
+                n.setY(((Number) value).doubleValue());
+            }
+        },
+        WIDTH {
+            @Override
+            void set(VNode n, Object value) {
+                n.setWidth(((Number) value).doubleValue());
+            }
+        },
+        HEIGHT {
+            @Override
+            void set(VNode n, Object value) {
+                n.setHeight(((Number) value).doubleValue());
+            }
+        },
+        VALUE_OBJECT {
+            @Override
+            void set(VNode n, Object value) {
+                n.setValueObject((ValueObject) value);
+            }
+        },
+        /**
+         * Visibility of flows.
+         */
+        VISIBLE {
+            @Override
+            void set(VNode n, Object value) {
+                ((VFlowModel) n).setVisible((Boolean) value);
+            }
+        };
+
+        /**
+         * Sets the value of this attribute of the specified node.
+         *
+         * @param n node
+         * @param value value to set
+         */
+        abstract void set(VNode n, Object value);
+
+        /**
+         * Indicates whether this attribute is part of the geometry of nodes.
+         *
+         * @return {@code true} if this attribute is x, y, width or height;
+         * {@code false} otherwise
+         */
+        boolean isGeometry() {
+            return this == X || this == Y || this == WIDTH || this == HEIGHT;
+        }
+    }
+
+    /**
+     * Observer of a {@link VNodeImpl} (see
+     * {@link VNodeImpl#addObserver(FlowObserver.NodeObserver)}).
+     */
+    interface NodeObserver {
+
+        /**
+         * Called if an attribute of the node has been changed.
+         *
+         * @param a attribute
+         * @param oldValue old value
+         * @param newValue new value
+         */
+        void attributeChanged(Attribute a, Object oldValue, Object newValue);
+
+        /**
+         * Called if the default value object of the node has been created.
+         * Creating the default value object is no change.
+         *
+         * @param vObj the default value object
+         */
+        default void valueObjectInitialized(ValueObject vObj) {
+        }
+
+        /**
+         * Called if the connectors of the node have been changed.
+         *
+         * @param change change of the connector list
+         */
+        default void connectorsChanged(
+                ListChangeListener.Change<? extends Connector> change) {
+        }
+    }
+
+    /**
+     * Receives the changes of the observed flow. The owner of a node is the
+     * flow that contains the node (the root flow is its own owner).
+     */
+    interface Listener {
+
+        default void nodeAdded(VFlowModel flow, VNode n, int index) {
+        }
+
+        default void nodeRemoved(VFlowModel flow, VNode n, int index) {
+        }
+
+        default void connectionAdded(VFlowModel flow, Connection c) {
+        }
+
+        default void connectionRemoved(VFlowModel flow, Connection c) {
+        }
+
+        default void connectorAdded(VFlowModel owner, VNode n,
+                Connector c, int index) {
+        }
+
+        default void connectorRemoved(VFlowModel owner, VNode n,
+                Connector c, int index) {
+        }
+
+        default void attributeChanged(VFlowModel owner, VNode n,
+                Attribute a, Object oldValue, Object newValue) {
+        }
+
+        default void valueChanged(VFlowModel owner, VNode n,
+                ValueObject vObj, Object oldValue, Object newValue) {
+        }
+    }
+
+    private final Listener listener;
+
+    // node -> listeners that have been registered by this observer
+    private final Map<VNode, Registration> registrations
+            = new IdentityHashMap<>();
+
+    /**
+     * Constructor.
+     *
+     * @param flow flow to observe
+     * @param listener listener that receives the changes of the flow
+     */
+    FlowObserver(VFlowModel flow, Listener listener) {
+        this.listener = listener;
+
+        register(flow, flow);
+    }
+
+    /**
+     * Stops observing the flow.
+     */
+    void dispose() {
+        for (Registration r : new ArrayList<>(registrations.values())) {
+            r.dispose();
+        }
+
+        registrations.clear();
+    }
+
+    private void register(VNode n, VFlowModel owner) {
+        if (registrations.containsKey(n)) {
+            return;
+        }
+
+        registrations.put(n, new Registration(n, owner));
+    }
+
+    private void unregister(VNode n) {
+        Registration r = registrations.remove(n);
+
+        if (r != null) {
+            r.dispose();
+        }
+    }
+
+    /**
+     * Listeners that have been registered on one node (and on its nodes and
+     * connections if the node is a flow).
+     */
+    private final class Registration implements NodeObserver {
+
+        private final VNode node;
+        private final VFlowModel owner;
+        private final VNodeImpl impl;
+
+        private final ChangeListener<Object> valueListener;
+        private ValueObject valueObject;
+
+        // observed properties (nodes that are no VNodeImpl and visibility)
+        private final Map<ObservableValue<?>, Attribute> properties
+                = new IdentityHashMap<>(2);
+        private final ChangeListener<Object> propertyListener;
+        private ListChangeListener<Connector> connectorsListener;
+
+        private ListChangeListener<VNode> nodesListener;
+        private ListChangeListener<Connection> connectionsListener;
+        private MapChangeListener<String, Connections> allConnectionsListener;
+
+        Registration(VNode n, VFlowModel owner) {
+            this.node = n;
+            this.owner = owner;
+            this.impl = VFlowModelImpl.getNodeImpl(n);
+
+            valueListener = (ov, oldV, newV) -> listener.valueChanged(
+                    owner, node, valueObject, oldV, newV);
+            propertyListener = (ov, oldV, newV) -> attributeChanged(
+                    properties.get(ov), oldV, newV);
+
+            if (impl != null) {
+                impl.addObserver(this);
+                observeValue(impl.peekValueObject());
+            } else {
+                observe(n.titleProperty(), Attribute.TITLE);
+                observe(n.idProperty(), Attribute.ID);
+                observe(n.xProperty(), Attribute.X);
+                observe(n.yProperty(), Attribute.Y);
+                observe(n.widthProperty(), Attribute.WIDTH);
+                observe(n.heightProperty(), Attribute.HEIGHT);
+                observe(n.valueObjectProperty(), Attribute.VALUE_OBJECT);
+                observeValue(n.getValueObject());
+
+                connectorsListener = this::connectorsChanged;
+                n.getConnectors().addListener(connectorsListener);
+            }
+
+            if (n instanceof VFlowModel) {
+                registerFlow((VFlowModel) n);
+            }
+        }
+
+        private void observe(ObservableValue<?> p, Attribute a) {
+            properties.put(p, a);
+            p.addListener(propertyListener);
+        }
+
+        private void observeValue(ValueObject vObj) {
+            if (valueObject != null) {
+                valueObject.valueProperty().removeListener(valueListener);
+            }
+
+            valueObject = vObj;
+
+            if (vObj != null) {
+                vObj.valueProperty().addListener(valueListener);
+            }
+        }
+
+        private void registerFlow(VFlowModel f) {
+            observe(f.visibleProperty(), Attribute.VISIBLE);
+
+            nodesListener = (change) -> {
+                // loading content on demand doesn't change the flow
+                boolean loading = VFlowModelImpl.isLoadingContent(f);
+
+                while (change.next()) {
+                    if (change.wasPermutated()) {
+                        continue;
+                    }
+
+                    int index = change.getFrom();
+
+                    for (VNode child : change.getRemoved()) {
+                        unregister(child);
+                        if (!loading) {
+                            listener.nodeRemoved(f, child, index);
+                        }
+                    }
+
+                    for (int i = change.getFrom(); i < change.getTo(); i++) {
+                        VNode child = change.getList().get(i);
+                        register(child, f);
+                        if (!loading) {
+                            listener.nodeAdded(f, child, i);
+                        }
+                    }
+                }
+            };
+            VFlowModelImpl.getLoadedNodes(f).addListener(nodesListener);
+
+            connectionsListener = (change) -> {
+                if (VFlowModelImpl.isLoadingContent(f)) {
+                    return;
+                }
+
+                while (change.next()) {
+                    if (change.wasPermutated()) {
+                        continue;
+                    }
+
+                    for (Connection c : change.getRemoved()) {
+                        listener.connectionRemoved(f, c);
+                    }
+
+                    for (Connection c : change.getAddedSubList()) {
+                        listener.connectionAdded(f, c);
+                    }
+                }
+            };
+
+            allConnectionsListener = (change) -> {
+                if (change.wasRemoved()) {
+                    change.getValueRemoved().getConnections().
+                            removeListener(connectionsListener);
+                }
+
+                if (change.wasAdded()) {
+                    change.getValueAdded().getConnections().
+                            addListener(connectionsListener);
+                }
+            };
+            VFlowModelImpl.getLoadedConnections(f).
+                    addListener(allConnectionsListener);
+
+            for (Connections cns
+                    : VFlowModelImpl.getLoadedConnections(f).values()) {
+                cns.getConnections().addListener(connectionsListener);
+            }
+
+            for (VNode child : VFlowModelImpl.getLoadedNodes(f)) {
+                register(child, f);
+            }
+        }
+
+        @Override
+        public void attributeChanged(Attribute a,
+                Object oldValue, Object newValue) {
+            if (a == Attribute.VALUE_OBJECT) {
+                observeValue((ValueObject) newValue);
+            }
+
+            listener.attributeChanged(owner, node, a, oldValue, newValue);
+        }
+
+        @Override
+        public void valueObjectInitialized(ValueObject vObj) {
+            observeValue(vObj);
+        }
+
+        @Override
+        public void connectorsChanged(
+                ListChangeListener.Change<? extends Connector> change) {
+            while (change.next()) {
+                if (change.wasPermutated()) {
+                    continue;
+                }
+
+                int index = change.getFrom();
+
+                for (Connector c : change.getRemoved()) {
+                    listener.connectorRemoved(owner, node, c, index);
+                }
+
+                for (int i = change.getFrom(); i < change.getTo(); i++) {
+                    listener.connectorAdded(owner, node,
+                            change.getList().get(i), i);
+                }
+            }
+        }
+
+        void dispose() {
+            if (impl != null) {
+                impl.removeObserver(this);
+            } else {
+                node.getConnectors().removeListener(connectorsListener);
+            }
+
+            observeValue(null);
+
+            for (ObservableValue<?> p : properties.keySet()) {
+                p.removeListener(propertyListener);
+            }
+
+            properties.clear();
+
+            if (nodesListener == null) {
+                return;
+            }
+
+            VFlowModel f = (VFlowModel) node;
+
+            VFlowModelImpl.getLoadedNodes(f).removeListener(nodesListener);
+            VFlowModelImpl.getLoadedConnections(f).
+                    removeListener(allConnectionsListener);
+
+            for (Connections cns
+                    : VFlowModelImpl.getLoadedConnections(f).values()) {
+                cns.getConnections().removeListener(connectionsListener);
+            }
+
+            for (VNode child : VFlowModelImpl.getLoadedNodes(f)) {
+                unregister(child);
+            }
+        }
+    }
+}
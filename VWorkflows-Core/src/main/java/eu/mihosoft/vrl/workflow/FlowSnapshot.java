@@ -0,0 +1,698 @@
+/*
+ * Copyright 2012-2016 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * Please cite the following publication(s):
+ *
+ * M. Hoffer, C.Poliwoda, G.Wittum. Visual Reflection Library -
+ * A Framework for Declarative GUI Programming on the Java Platform.
+ * Computing and Visualization in Science, 2011, in press.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vrl.workflow;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable snapshot of a flow. Nodes and connections are addressed by dense
+ * {@code int} indices. Incoming and outgoing connections are stored in
+ * compressed sparse row (CSR) format, i.e., the connections of node
+ * {@code i} are stored at the positions
+ * {@code offsets[i] ... offsets[i+1]-1} of the corresponding target/edge
+ * arrays. Node geometry is stored in primitive arrays.
+ *
+ * <p>
+ * A snapshot doesn't observe the flow it has been created from. It must be
+ * created by the thread that modifies the flow (usually the JavaFX
+ * application thread). Afterwards it can be shared by arbitrary threads.
+ * </p>
+ *
+ * @author Michael Hoffer &lt;info@michaelhoffer.de&gt;
+ */
+public final class FlowSnapshot {
+
+    private final VNode[] nodes;
+    private final int[] parents;
+    private final double[] x;
+    private final double[] y;
+    private final double[] width;
+    private final double[] height;
+
+    private final String[] types;
+    private final Connection[] edges;
+    private final int[] edgeSenders;
+    private final int[] edgeReceivers;
+    private final int[] edgeTypes;
+
+    private final int[] outOffsets;
+    private final int[] outTargets;
+    private final int[] outEdges;
+    private final int[] inOffsets;
+    private final int[] inTargets;
+    private final int[] inEdges;
+
+    private final Map<VNode, Integer> nodeIndices;
+    private final Map<String, Integer> nodeIdIndices;
+    private final Map<Connection, Integer> edgeIndices;
+
+    /**
+     * Creates a snapshot of the specified flow containing all connection
+     * types. Subflows are not included, i.e., they are represented by their
+     * flow nodes.
+     *
+     * @param flow flow
+     * @return snapshot of the specified flow
+     */
+    public static FlowSnapshot of(VFlowModel flow) {
+        return of(flow, false);
+    }
+
+    /**
+     * Creates a snapshot of the specified flow.
+     *
+     * @param flow flow
+     * @param recursive defines whether to include the nodes and connections
+     * of subflows
+     * @param types connection types to include (all types are included if no
+     * type is specified)
+     * @return snapshot of the specified flow
+     */
+    public static FlowSnapshot of(VFlowModel flow, boolean recursive,
+            String... types) {
+
+        // collect nodes (depth first, subflow nodes precede their children)
+        List<VNode> nodeList = new ArrayList<>();
+        List<Integer> parentList = new ArrayList<>();
+        List<VFlowModel> flows = new ArrayList<>();
+        flows.add(flow);
+        collectNodes(flow, -1, recursive, nodeList, parentList, flows);
+
+        String[] typeArray = types(flows, types);
+
+        List<List<Connection>> connections = new ArrayList<>();
+
+        for (String type : typeArray) {
+            List<Connection> connectionsOfType = new ArrayList<>();
+
+            for (VFlowModel f : flows) {
+                Connections cns = f.getAllConnections().get(type);
+
+                if (cns != null) {
+                    connectionsOfType.addAll(cns.getConnections());
+                }
+            }
+
+            connections.add(connectionsOfType);
+        }
+
+        return create(nodeList, parentList, typeArray, connections);
+    }
+
+    /**
+     * Creates a snapshot that only contains the specified nodes and the
+     * connections between them. The nodes may belong to different flows. The
+     * connections are collected via the connection index of the flows, i.e.,
+     * the size of the flows doesn't matter.
+     *
+     * @param nodes nodes to include
+     * @param types connection types to include (all types are included if no
+     * type is specified)
+     * @return snapshot of the specified nodes
+     */
+    public static FlowSnapshot of(Collection<? extends VNode> nodes,
+            String... types) {
+
+        List<VNode> nodeList = new ArrayList<>(nodes);
+        Map<VNode, Integer> indices = new IdentityHashMap<>();
+        List<VFlowModel> flows = new ArrayList<>();
+        Set<VFlowModel> flowSet = Collections.newSetFromMap(
+                new IdentityHashMap<>());
+
+        for (int i = 0; i < nodeList.size(); i++) {
+            VNode n = nodeList.get(i);
+            indices.put(n, i);
+
+            if (n.getFlow() != null && flowSet.add(n.getFlow())) {
+                flows.add(n.getFlow());
+            }
+        }
+
+        List<Integer> parentList = new ArrayList<>(nodeList.size());
+
+        for (VNode n : nodeList) {
+            Integer parent = indices.get(n.getFlow());
+            parentList.add(parent == null ? -1 : parent);
+        }
+
+        String[] typeArray = types(flows, types);
+
+        List<List<Connection>> connections = new ArrayList<>();
+
+        for (String type : typeArray) {
+            List<Connection> connectionsOfType = new ArrayList<>();
+            Set<Connection> visited = Collections.newSetFromMap(
+                    new IdentityHashMap<>());
+
+            for (VNode n : nodeList) {
+                if (n.getFlow() == null) {
+                    continue;
+                }
+
+                Connections cns = n.getFlow().getAllConnections().get(type);
+
+                if (cns == null) {
+                    continue;
+                }
+
+                for (Connection c : cns.getAllWithNode(n)) {
+                    if (visited.add(c)) {
+                        connectionsOfType.add(c);
+                    }
+                }
+            }
+
+            connections.add(connectionsOfType);
+        }
+
+        return create(nodeList, parentList, typeArray, connections);
+    }
+
+    private static String[] types(List<VFlowModel> flows,
+            String... connectionTypes) {
+        List<String> typeList = new ArrayList<>();
+
+        if (connectionTypes != null && connectionTypes.length > 0) {
+            typeList.addAll(Arrays.asList(connectionTypes));
+        } else {
+            for (VFlowModel f : flows) {
+                for (String type : f.getAllConnections().keySet()) {
+                    if (!typeList.contains(type)) {
+                        typeList.add(type);
+                    }
+                }
+            }
+            Collections.sort(typeList);
+        }
+
+        return typeList.toArray(new String[typeList.size()]);
+    }
+
+    private static FlowSnapshot create(List<VNode> nodeList,
+            List<Integer> parentList, String[] types,
+            List<List<Connection>> connections) {
+
+        int n = nodeList.size();
+
+        VNode[] nodes = nodeList.toArray(new VNode[n]);
+        int[] parents = new int[n];
+        String[] ids = new String[n];
+        double[] x = new double[n];
+        double[] y = new double[n];
+        double[] width = new double[n];
+        double[] height = new double[n];
+        Map<VNode, Integer> nodeIndices = new IdentityHashMap<>(n);
+
+        for (int i = 0; i < n; i++) {
+            VNode node = nodes[i];
+            parents[i] = parentList.get(i);
+            ids[i] = node.getId();
+            x[i] = node.getX();
+            y[i] = node.getY();
+            width[i] = node.getWidth();
+            height[i] = node.getHeight();
+            nodeIndices.put(node, i);
+        }
+
+        // connections to nodes outside of this snapshot are skipped
+        List<Connection> edgeList = new ArrayList<>();
+        List<int[]> edgeData = new ArrayList<>();
+
+        for (int t = 0; t < types.length; t++) {
+            for (Connection c : connections.get(t)) {
+                Integer s = c.getSender() == null
+                        ? null : nodeIndices.get(c.getSender().getNode());
+                Integer r = c.getReceiver() == null
+                        ? null : nodeIndices.get(c.getReceiver().getNode());
+
+                if (s == null || r == null) {
+                    continue;
+                }
+
+                edgeList.add(c);
+                edgeData.add(new int[]{s, r, t});
+            }
+        }
+
+        return new FlowSnapshot(nodes, parents, ids, x, y, width, height,
+                nodeIndices, types, edgeList, edgeData);
+    }
+
+    /**
+     * Creates a snapshot of a flow from recorded data, i.e., without
+     * accessing the flow (see {@link ConcurrentFlowModel}). Nodes and
+     * connections are only used as identities. Subflows are represented by
+     * their flow nodes. Connections to nodes that are not included are
+     * skipped.
+     *
+     * @param nodeList nodes
+     * @param ids ids of the nodes
+     * @param geometry geometry of the nodes ({@code x, y, width, height})
+     * @param types connection types
+     * @param connections connections
+     * @param senders sender nodes of the connections
+     * @param receivers receiver nodes of the connections
+     * @param connectionTypes types of the connections
+     * @return snapshot of the recorded data
+     */
+    static FlowSnapshot of(List<VNode> nodeList, List<String> ids,
+            List<double[]> geometry, String[] types,
+            List<Connection> connections, List<VNode> senders,
+            List<VNode> receivers, List<String> connectionTypes) {
+
+        int n = nodeList.size();
+
+        VNode[] nodes = nodeList.toArray(new VNode[n]);
+        int[] parents = new int[n];
+        double[] x = new double[n];
+        double[] y = new double[n];
+        double[] width = new double[n];
+        double[] height = new double[n];
+        Map<VNode, Integer> nodeIndices = new IdentityHashMap<>(n);
+
+        for (int i = 0; i < n; i++) {
+            double[] g = geometry.get(i);
+            parents[i] = -1;
+            x[i] = g[0];
+            y[i] = g[1];
+            width[i] = g[2];
+            height[i] = g[3];
+            nodeIndices.put(nodes[i], i);
+        }
+
+        Map<String, Integer> typeIndices = new HashMap<>();
+
+        for (int t = 0; t < types.length; t++) {
+            typeIndices.put(types[t], t);
+        }
+
+        List<Connection> edgeList = new ArrayList<>();
+        List<int[]> edgeData = new ArrayList<>();
+
+        for (int e = 0; e < connections.size(); e++) {
+            Integer s = nodeIndices.get(senders.get(e));
+            Integer r = nodeIndices.get(receivers.get(e));
+            Integer t = typeIndices.get(connectionTypes.get(e));
+
+            if (s == null || r == null || t == null) {
+                continue;
+            }
+
+            edgeList.add(connections.get(e));
+            edgeData.add(new int[]{s, r, t});
+        }
+
+        return new FlowSnapshot(nodes, parents,
+                ids.toArray(new String[n]), x, y, width, height,
+                nodeIndices, types, edgeList, edgeData);
+    }
+
+    private FlowSnapshot(VNode[] nodes, int[] parents, String[] ids,
+            double[] x, double[] y, double[] width, double[] height,
+            Map<VNode, Integer> nodeIndices, String[] types,
+            List<Connection> edgeList, List<int[]> edgeData) {
+
+        int n = nodes.length;
+
+        this.nodes = nodes;
+        this.parents = parents;
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+        this.nodeIndices = nodeIndices;
+        this.nodeIdIndices = new HashMap<>(n * 2);
+
+        for (int i = 0; i < n; i++) {
+            nodeIdIndices.put(ids[i], i);
+        }
+
+        this.types = types;
+
+        int m = edgeList.size();
+
+        edges = edgeList.toArray(new Connection[m]);
+        edgeSenders = new int[m];
+        edgeReceivers = new int[m];
+        edgeTypes = new int[m];
+        edgeIndices = new IdentityHashMap<>(m);
+
+        for (int e = 0; e < m; e++) {
+            int[] data = edgeData.get(e);
+            edgeSenders[e] = data[0];
+            edgeReceivers[e] = data[1];
+            edgeTypes[e] = data[2];
+            edgeIndices.put(edges[e], e);
+        }
+
+        // build csr arrays
+        outOffsets = new int[n + 1];
+        inOffsets = new int[n + 1];
+
+        for (int e = 0; e < m; e++) {
+            outOffsets[edgeSenders[e] + 1]++;
+            inOffsets[edgeReceivers[e] + 1]++;
+        }
+
+        for (int i = 0; i < n; i++) {
+            outOffsets[i + 1] += outOffsets[i];
+            inOffsets[i + 1] += inOffsets[i];
+        }
+
+        outTargets = new int[m];
+        outEdges = new int[m];
+        inTargets = new int[m];
+        inEdges = new int[m];
+
+        int[] outPos = Arrays.copyOf(outOffsets, n);
+        int[] inPos = Arrays.copyOf(inOffsets, n);
+
+        for (int e = 0; e < m; e++) {
+            int s = edgeSenders[e];
+            int r = edgeReceivers[e];
+
+            outTargets[outPos[s]] = r;
+            outEdges[outPos[s]++] = e;
+
+            inTargets[inPos[r]] = s;
+            inEdges[inPos[r]++] = e;
+        }
+    }
+
+    private static void collectNodes(VFlowModel flow, int parent,
+            boolean recursive, List<VNode> nodeList, List<Integer> parentList,
+            List<VFlowModel> flows) {
+        for (VNode node : flow.getNodes()) {
+            int index = nodeList.size();
+            nodeList.add(node);
+            parentList.add(parent);
+
+            if (recursive && node instanceof VFlowModel) {
+                flows.add((VFlowModel) node);
+                collectNodes((VFlowModel) node, index, recursive,
+                        nodeList, parentList, flows);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of nodes.
+     *
+     * @return the number of nodes
+     */
+    public int getNodeCount() {
+        return nodes.length;
+    }
+
+    /**
+     * Returns the number of connections.
+     *
+     * @return the number of connections
+     */
+    public int getConnectionCount() {
+        return edges.length;
+    }
+
+    /**
+     * Returns the node with the specified index.
+     *
+     * @param node node index
+     * @return the node with the specified index
+     */
+    public VNode getNode(int node) {
+        return nodes[node];
+    }
+
+    /**
+     * Returns the index of the specified node.
+     *
+     * @param node node
+     * @return the index of the specified node or {@code -1} if the node is not
+     * part of this snapshot
+     */
+    public int indexOf(VNode node) {
+        Integer result = nodeIndices.get(node);
+        return result == null ? -1 : result;
+    }
+
+    /**
+     * Returns the index of the node with the specified id.
+     *
+     * @param id node id
+     * @return the index of the node with the specified id or {@code -1} if no
+     * such node is part of this snapshot
+     */
+    public int indexOf(String id) {
+        Integer result = nodeIdIndices.get(id);
+        return result == null ? -1 : result;
+    }
+
+    /**
+     * Returns the index of the subflow node that contains the specified node.
+     *
+     * @param node node index
+     * @return the index of the subflow node that contains the specified node
+     * or {@code -1} if the node belongs to the flow this snapshot has been
+     * created from
+     */
+    public int getParent(int node) {
+        return parents[node];
+    }
+
+    /**
+     * Returns the x coordinate of the specified node at the time this snapshot
+     * has been created.
+     *
+     * @param node node index
+     * @return the x coordinate of the specified node
+     */
+    public double getX(int node) {
+        return x[node];
+    }
+
+    /**
+     * Returns the y coordinate of the specified node at the time this snapshot
+     * has been created.
+     *
+     * @param node node index
+     * @return the y coordinate of the specified node
+     */
+    public double getY(int node) {
+        return y[node];
+    }
+
+    /**
+     * Returns the width of the specified node at the time this snapshot
+     * has been created.
+     *
+     * @param node node index
+     * @return the width of the specified node
+     */
+    public double getWidth(int node) {
+        return width[node];
+    }
+
+    /**
+     * Returns the height of the specified node at the time this snapshot
+     * has been created.
+     *
+     * @param node node index
+     * @return the height of the specified node
+     */
+    public double getHeight(int node) {
+        return height[node];
+    }
+
+    /**
+     * Returns the connection with the specified index.
+     *
+     * @param edge connection index
+     * @return the connection with the specified index
+     */
+    public Connection getConnection(int edge) {
+        return edges[edge];
+    }
+
+    /**
+     * Returns the index of the specified connection.
+     *
+     * @param c connection
+     * @return the index of the specified connection or {@code -1} if the
+     * connection is not part of this snapshot
+     */
+    public int indexOf(Connection c) {
+        Integer result = edgeIndices.get(c);
+        return result == null ? -1 : result;
+    }
+
+    /**
+     * Returns the sender node index of the specified connection.
+     *
+     * @param edge connection index
+     * @return the sender node index of the specified connection
+     */
+    public int getSender(int edge) {
+        return edgeSenders[edge];
+    }
+
+    /**
+     * Returns the receiver node index of the specified connection.
+     *
+     * @param edge connection index
+     * @return the receiver node index of the specified connection
+     */
+    public int getReceiver(int edge) {
+        return edgeReceivers[edge];
+    }
+
+    /**
+     * Returns the type of the specified connection.
+     *
+     * @param edge connection index
+     * @return the type of the specified connection
+     */
+    public String getType(int edge) {
+        return types[edgeTypes[edge]];
+    }
+
+    /**
+     * Returns the connection types of this snapshot.
+     *
+     * @return the connection types of this snapshot
+     */
+    public List<String> getTypes() {
+        return Collections.unmodifiableList(Arrays.asList(types));
+    }
+
+    /**
+     * Returns the number of outgoing connections of the specified node.
+     *
+     * @param node node index
+     * @return the number of outgoing connections of the specified node
+     */
+    public int getOutDegree(int node) {
+        return outOffsets[node + 1] - outOffsets[node];
+    }
+
+    /**
+     * Returns the number of incoming connections of the specified node.
+     *
+     * @param node node index
+     * @return the number of incoming connections of the specified node
+     */
+    public int getInDegree(int node) {
+        return inOffsets[node + 1] - inOffsets[node];
+    }
+
+    /**
+     * Returns the receiver of the k-th outgoing connection of the specified
+     * node.
+     *
+     * @param node node index
+     * @param k connection number ({@code 0 <= k < getOutDegree(node)})
+     * @return the receiver node index
+     */
+    public int getOutTarget(int node, int k) {
+        return outTargets[outOffsets[node] + k];
+    }
+
+    /**
+     * Returns the index of the k-th outgoing connection of the specified
+     * node.
+     *
+     * @param node node index
+     * @param k connection number ({@code 0 <= k < getOutDegree(node)})
+     * @return the connection index
+     */
+    public int getOutEdge(int node, int k) {
+        return outEdges[outOffsets[node] + k];
+    }
+
+    /**
+     * Returns the sender of the k-th incoming connection of the specified
+     * node.
+     *
+     * @param node node index
+     * @param k connection number ({@code 0 <= k < getInDegree(node)})
+     * @return the sender node index
+     */
+    public int getInTarget(int node, int k) {
+        return inTargets[inOffsets[node] + k];
+    }
+
+    /**
+     * Returns the index of the k-th incoming connection of the specified
+     * node.
+     *
+     * @param node node index
+     * @param k connection number ({@code 0 <= k < getInDegree(node)})
+     * @return the connection index
+     */
+    public int getInEdge(int node, int k) {
+        return inEdges[inOffsets[node] + k];
+    }
+
+    // raw csr arrays for algorithms of this package. must not be modified.
+    int[] outOffsets() {
+        return outOffsets;
+    }
+
+    int[] outTargets() {
+        return outTargets;
+    }
+
+    int[] outEdges() {
+        return outEdges;
+    }
+
+    int[] inOffsets() {
+        return inOffsets;
+    }
+
+    int[] inTargets() {
+        return inTargets;
+    }
+
+    int[] inEdges() {
+        return inEdges;
+    }
+}
@@ -34,20 +34,46 @@
 package eu.mihosoft.vrl.workflow;
 
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * This class generates ids for nodes and connectors
+ * This class generates ids for nodes and connectors.
+ *
+ * <p>
+ * For each prefix the generator keeps a high-water counter. Ids are therefore
+ * generated in amortized constant time. Ids that have been added via
+ * {@link #addId(java.lang.String)} (e.g. ids from files) are skipped.
+ * </p>
+ *
+ * <p>
+ * Child generators (see {@link #newChild()}) manage their own ids but never
+ * generate ids that are already used by one of their ancestors.
+ * </p>
+ *
+ * <p>
+ * This class is thread-safe. Ids are reserved via lock-free concurrent
+ * collections, i.e., several threads may generate ids at the same time
+ * without blocking each other.
+ * </p>
  *
  * @author Michael Hoffer &lt;info@michaelhoffer.de&gt;
  */
 class IdGeneratorImpl implements IdGenerator {
 
-    private Set<String> ids = new HashSet<>();
-//    private int lastId = 0;
+    private final Set<String> ids = ConcurrentHashMap.newKeySet();
+    private final Map<String, AtomicInteger> counters
+            = new ConcurrentHashMap<>();
+    private final IdGeneratorImpl parent;
 
     public IdGeneratorImpl() {
-        //
+        this(null);
+    }
+
+    private IdGeneratorImpl(IdGeneratorImpl parent) {
+        this.parent = parent;
     }
 
     @Override
@@ -63,29 +89,46 @@ class IdGeneratorImpl implements IdGenerator {
     @Override
     public String newId(String prefix) {
 
-        // TODO improve id generation
-        // Question: do we really want strings as id?
-        int counter = 0;//lastId + 1;
-       
-        
-        if (prefix != null && !prefix.isEmpty() && !prefix.endsWith(":")) {
+        if (prefix == null) {
+            prefix = "";
+        }
+
+        if (!prefix.isEmpty() && !prefix.endsWith(":")) {
             prefix = prefix + "-";
         }
 
-        String id = prefix + counter;
+        AtomicInteger counter = counters.get(prefix);
 
-        while (ids.contains(id)) {
-            id = prefix + counter;
-            counter++;
+        if (counter == null) {
+            counters.putIfAbsent(prefix, new AtomicInteger());
+            counter = counters.get(prefix);
         }
 
-        ids.add(id);
+        // ids added via addId() are skipped. ids.add() is atomic, i.e.,
+        // concurrent callers never get the same id
+        String id;
 
-//        lastId = counter;
+        do {
+            id = prefix + counter.getAndIncrement();
+        } while (isUsedByAncestor(id) || !ids.add(id));
 
         return id;
     }
 
+    private boolean isUsedByAncestor(String id) {
+        IdGeneratorImpl ancestor = parent;
+
+        while (ancestor != null) {
+            if (ancestor.ids.contains(id)) {
+                return true;
+            }
+
+            ancestor = ancestor.parent;
+        }
+
+        return false;
+    }
+
     @Override
     public String newId() {
         return newId("");
@@ -99,7 +142,7 @@ class IdGeneratorImpl implements IdGenerator {
 
     @Override
     public IdGenerator newChild() {
-        return this;
+        return new IdGeneratorImpl(this);
     }
 
 }
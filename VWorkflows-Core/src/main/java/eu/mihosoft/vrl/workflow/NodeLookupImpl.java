@@ -33,7 +33,14 @@
  */
 package eu.mihosoft.vrl.workflow;
 
-import java.util.Objects;
+import javafx.beans.value.ChangeListener;
+import javafx.collections.ListChangeListener;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * This class allows nodes to be looked up by id.
@@ -41,30 +48,78 @@ import java.util.Objects;
  * 
  * The class can also be used to look up connectors.
  *
+ * <p>
+ * Nodes are indexed by id. The index is updated incrementally via the node
+ * lists of the root flow and all nested flows (including subflows that are
+ * added later) and via the ids of the indexed nodes. Id changes of
+ * {@link VNodeImpl} nodes are observed without creating their id properties
+ * (see {@link FlowObserver.NodeObserver}). Lookups
+ * therefore don't depend on the size of the flow. Nodes that are created or
+ * removed during a batched update (of the root flow or of a subflow) are
+ * indexed immediately since the node lists report them after the update
+ * ends. Nodes of subflows whose content hasn't been
+ * loaded yet (see {@link VFlowModel#setContentLoader(java.util.function.Consumer)})
+ * are indexed as soon as they are loaded, i.e., lookups don't load content.
+ * </p>
+ *
  * @author Michael Hoffer  &lt;info@michaelhoffer.de&gt;
  */
 public class NodeLookupImpl implements NodeLookup {
 
     private final VFlowModel root;
-//    private final Map<String, VNode> cache = new HashMap<>();
+    private final Map<String, VNode> cache = new HashMap<>();
+    private final Set<VNode> registered
+            = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    // listeners are shared by all nodes/flows to keep the memory footprint
+    // of the index small
+    private final ListChangeListener<VNode> nodesListener = (change) -> {
+        while (change.next()) {
+            if (change.wasRemoved()) {
+                for (VNode n : change.getRemoved()) {
+                    unregister(n);
+                }
+            }
+
+            if (change.wasAdded()) {
+                for (VNode n : change.getAddedSubList()) {
+                    register(n);
+                }
+            }
+        }
+    };
+
+    private final ChangeListener<String> idListener = (ov, oldId, newId) -> {
+        idChanged(oldId, newId);
+    };
+
+    private final FlowObserver.NodeObserver idObserver
+            = (a, oldValue, newValue) -> {
+                if (a == FlowObserver.Attribute.ID) {
+                    idChanged((String) oldValue, (String) newValue);
+                }
+            };
 
     public NodeLookupImpl(VFlowModel root) {
         this.root = root;
+
+        register(root);
     }
 
     @Override
     public Connector getConnectorById(String globalId) {
-        String[] ids = globalId.split(":c:");
+        int separatorIndex = globalId.indexOf(ConnectorRef.SEPARATOR);
 
-        if (ids.length < 2) {
+        if (separatorIndex < 0) {
             throw new IllegalArgumentException("wrong connector id format: "
                     + globalId + ", correct format: node-id:c:connector-id");
         }
 
-        String nodeId = ids[0];
+        String nodeId = globalId.substring(0, separatorIndex);
 
         VNode node = getById(nodeId);
-        String connectorId = ids[1];
+        String connectorId = globalId.substring(
+                separatorIndex + ConnectorRef.SEPARATOR.length());
 
         if (node == null) {
             return null;
@@ -75,38 +130,119 @@ public class NodeLookupImpl implements NodeLookup {
 
     @Override
     public VNode getById(String globalId) {
-        
-//        VNode result = cache.get(globalId);
-        
-//        if (result!=null)return result;
+        return cache.get(globalId);
+    }
 
-        VNode result = getNodeByGlobalId(root, globalId);
-        
-//        cache.put(globalId, result);
+    /**
+     * Indexes a node that has just been added to its flow. Called by the flow
+     * since node lists don't report nodes before batched updates end.
+     *
+     * @param n node that has been added
+     */
+    void nodeAdded(VNode n) {
+        // nodes of flows that are not part of the indexed tree are ignored
+        if (n.getFlow() != null && registered.contains(n.getFlow())) {
+            register(n);
+        }
+    }
 
-        return result;
+    /**
+     * Removes a node that has just been removed from its flow from the index.
+     *
+     * @param n node that has been removed
+     */
+    void nodeRemoved(VNode n) {
+        unregister(n);
     }
 
-    private VNode getNodeByGlobalId(VFlowModel parent, String id) {
-        
-        if (Objects.equals(parent.getId(),id)) {
-            return parent;
+    private void register(VNode n) {
+
+        // nodes added during batched updates are reported twice
+        if (!registered.add(n)) {
+            return;
         }
 
-        for (VNode n : parent.getNodes()) {
-            if (n.getId().equals(id)) {
-                return n;
+        VNodeImpl impl = VFlowModelImpl.getNodeImpl(n);
+
+        if (impl != null) {
+            impl.addObserver(idObserver);
+        } else {
+            n.idProperty().addListener(idListener);
+        }
+
+        if (n.getId() != null) {
+            cache.put(n.getId(), n);
+        }
+
+        if (n instanceof VFlowModel) {
+            VFlowModel flow = (VFlowModel) n;
+
+            VFlowModelImpl.getLoadedNodes(flow).addListener(nodesListener);
+
+            for (VNode child : VFlowModelImpl.getLoadedNodes(flow)) {
+                register(child);
             }
+        }
+    }
 
-            if (n instanceof FlowModel) {
-                VNode result = getNodeByGlobalId((VFlowModel) n, id);
-                if (result != null) {
-                    return result;
-                }
+    private void unregister(VNode n) {
+
+        if (!registered.remove(n)) {
+            return;
+        }
+
+        VNodeImpl impl = VFlowModelImpl.getNodeImpl(n);
+
+        if (impl != null) {
+            impl.removeObserver(idObserver);
+        } else {
+            n.idProperty().removeListener(idListener);
+        }
+
+        if (n.getId() != null && cache.get(n.getId()) == n) {
+            cache.remove(n.getId());
+        }
+
+        if (n instanceof VFlowModel) {
+            VFlowModel flow = (VFlowModel) n;
+
+            VFlowModelImpl.getLoadedNodes(flow).removeListener(
+                    nodesListener);
+
+            for (VNode child : VFlowModelImpl.getLoadedNodes(flow)) {
+                unregister(child);
             }
         }
+    }
+
+    private void idChanged(String oldId, String newId) {
+        VNode n = oldId != null ? cache.get(oldId) : null;
 
+        if (n != null && newId != null && newId.equals(n.getId())) {
+            cache.remove(oldId);
+            cache.put(newId, n);
+        } else {
+            // the changed node is not (or not uniquely) known by its old id,
+            // e.g., because ids have been temporarily duplicated
+            rebuild();
+        }
+    }
 
-        return null;
+    private void rebuild() {
+        cache.clear();
+        rebuild(root);
+    }
+
+    private void rebuild(VNode n) {
+        if (n.getId() != null) {
+            cache.putIfAbsent(n.getId(), n);
+        }
+
+        if (n instanceof VFlowModel) {
+            for (VNode child
+                    : VFlowModelImpl.getLoadedNodes((VFlowModel) n)) {
+                rebuild(child);
+            }
+        }
     }
 }
@@ -34,6 +34,8 @@
 package eu.mihosoft.vrl.workflow;
 
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 
 import javafx.collections.FXCollections;
 import javafx.collections.MapChangeListener;
@@ -48,7 +50,9 @@ import java.util.Optional;
  */
 class PropertyStorageImpl implements PropertyStorage {
 
-    private final ObservableMap<String, Object> map = FXCollections.observableHashMap();
+    private final Map<String, Object> map = new HashMap<>();
+    // observable view of the map, only created if listeners are added
+    private ObservableMap<String, Object> observableMap;
 
     /**
      * Constructor. Creates a new property storage.
@@ -65,7 +69,11 @@ class PropertyStorageImpl implements PropertyStorage {
      */
     @Override
     public <T> void set(String key, T property) {
-        map.put(key, property);
+        if (observableMap != null) {
+            observableMap.put(key, property);
+        } else {
+            map.put(key, property);
+        }
     }
 
     /**
@@ -95,7 +103,11 @@ class PropertyStorageImpl implements PropertyStorage {
      */
     @Override
     public void remove(String key) {
-        map.remove(key);
+        if (observableMap != null) {
+            observableMap.remove(key);
+        } else {
+            map.remove(key);
+        }
     }
 
     /**
@@ -116,7 +128,11 @@ class PropertyStorageImpl implements PropertyStorage {
      */
     @Override
     public void addListener(MapChangeListener<String, Object> l) {
-        map.addListener(l);
+        if (observableMap == null) {
+            observableMap = FXCollections.observableMap(map);
+        }
+
+        observableMap.addListener(l);
     }
     
     /**
@@ -125,7 +141,9 @@ class PropertyStorageImpl implements PropertyStorage {
      */
     @Override
     public void removeListener(MapChangeListener<String, Object> l) {
-        map.removeListener(l);
+        if (observableMap != null) {
+            observableMap.removeListener(l);
+        }
     }
 
     @Override
@@ -0,0 +1,579 @@
+/*
+ * Copyright 2012-2016 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * Please cite the following publication(s):
+ *
+ * M. Hoffer, C.Poliwoda, G.Wittum. Visual Reflection Library -
+ * A Framework for Declarative GUI Programming on the Java Platform.
+ * Computing and Visualization in Science, 2011, in press.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vrl.workflow;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maintains a topological order of the nodes of a flow for one connection
+ * type. The order is updated incrementally whenever nodes or connections are
+ * added or removed (Pearce-Kelly algorithm), i.e., only the nodes between the
+ * sender and the receiver of a new connection are visited and reordered.
+ *
+ * <p>
+ * Connections that would close a cycle are not included in the order. They
+ * are reported via {@link #getCycleConnections()} as soon as they have been
+ * added. If a cycle is broken later on, the corresponding connection is
+ * included again. The order is therefore always a valid topological order of
+ * the flow without the cycle connections.
+ * </p>
+ *
+ * <p>
+ * Like the model, this class is not thread-safe. It must be used by the
+ * thread that modifies the flow. Call {@link #dispose()} to stop observing the
+ * flow.
+ * </p>
+ *
+ * @author Michael Hoffer &lt;info@michaelhoffer.de&gt;
+ */
+public final class TopologicalOrder {
+
+    private final VFlowModel flow;
+    private final String type;
+    private final ObservableList<Connection> connectionList;
+
+    private final Map<VNode, NodeInfo> nodes = new IdentityHashMap<>();
+    private final Map<Connection, Edge> edges = new IdentityHashMap<>();
+    // position -> node (removed nodes leave holes until the order is compacted)
+    private final List<NodeInfo> order = new ArrayList<>();
+    private int holes;
+
+    private final ObservableList<Connection> cycleConnections
+            = FXCollections.observableArrayList();
+    private final ObservableList<Connection> readOnlyCycleConnections
+            = FXCollections.unmodifiableObservableList(cycleConnections);
+
+    private final ListChangeListener<VNode> nodesListener = (change) -> {
+        while (change.next()) {
+            if (change.wasRemoved()) {
+                for (VNode n : change.getRemoved()) {
+                    removeNode(n);
+                }
+            }
+            if (change.wasAdded()) {
+                for (VNode n : change.getAddedSubList()) {
+                    addNode(n);
+                }
+            }
+        }
+    };
+
+    private final ListChangeListener<Connection> connectionsListener = (change) -> {
+        while (change.next()) {
+            if (change.wasRemoved()) {
+                for (Connection c : change.getRemoved()) {
+                    removeConnection(c);
+                }
+            }
+            if (change.wasAdded()) {
+                for (Connection c : change.getAddedSubList()) {
+                    addConnection(c);
+                }
+            }
+        }
+    };
+
+    private static final class NodeInfo {
+
+        final VNode node;
+        int ord;
+        boolean visited;
+        final List<Edge> out = new ArrayList<>(2);
+        final List<Edge> in = new ArrayList<>(2);
+
+        NodeInfo(VNode node) {
+            this.node = node;
+        }
+    }
+
+    private static final class Edge {
+
+        final Connection connection;
+        final NodeInfo sender;
+        final NodeInfo receiver;
+        boolean cyclic;
+
+        Edge(Connection connection, NodeInfo sender, NodeInfo receiver) {
+            this.connection = connection;
+            this.sender = sender;
+            this.receiver = receiver;
+        }
+    }
+
+    private static final Comparator<NodeInfo> BY_ORD
+            = (a, b) -> Integer.compare(a.ord, b.ord);
+
+    /**
+     * Creates a topological order of the specified flow that is updated
+     * whenever the flow changes.
+     *
+     * @param flow flow
+     * @param connectionType connection type (e.g. "data" or "control")
+     * @return topological order of the specified flow
+     */
+    public static TopologicalOrder of(VFlowModel flow, String connectionType) {
+        return new TopologicalOrder(flow, connectionType);
+    }
+
+    private TopologicalOrder(VFlowModel flow, String type) {
+        this.flow = flow;
+        this.type = type;
+        this.connectionList = flow.getConnections(type).getConnections();
+
+        init();
+
+        flow.getNodes().addListener(nodesListener);
+        connectionList.addListener(connectionsListener);
+    }
+
+    private void init() {
+        for (VNode n : flow.getNodes()) {
+            nodes.put(n, new NodeInfo(n));
+        }
+
+        // initial order (Kahn), nodes on cycles are appended in list order.
+        // afterwards, most connections can be added without reordering.
+        Map<NodeInfo, Integer> inDegree = new IdentityHashMap<>();
+        Map<NodeInfo, List<NodeInfo>> successors = new IdentityHashMap<>();
+
+        for (Connection c : connectionList) {
+            NodeInfo s = info(c.getSender());
+            NodeInfo r = info(c.getReceiver());
+
+            if (s == null || r == null) {
+                continue;
+            }
+
+            inDegree.merge(r, 1, Integer::sum);
+            successors.computeIfAbsent(s, k -> new ArrayList<>()).add(r);
+        }
+
+        Deque<NodeInfo> ready = new ArrayDeque<>();
+
+        for (VNode n : flow.getNodes()) {
+            NodeInfo i = nodes.get(n);
+            if (!inDegree.containsKey(i)) {
+                ready.add(i);
+            }
+        }
+
+        while (!ready.isEmpty()) {
+            NodeInfo i = ready.poll();
+            i.visited = true;
+            i.ord = order.size();
+            order.add(i);
+
+            for (NodeInfo r : successors.getOrDefault(i, new ArrayList<>())) {
+                if (inDegree.merge(r, -1, Integer::sum) == 0) {
+                    ready.add(r);
+                }
+            }
+        }
+
+        for (VNode n : flow.getNodes()) {
+            NodeInfo i = nodes.get(n);
+            if (!i.visited) {
+                i.ord = order.size();
+                order.add(i);
+            }
+            i.visited = false;
+        }
+
+        for (Connection c : connectionList) {
+            addConnection(c);
+        }
+    }
+
+    /**
+     * Stops observing the flow. The order won't be updated afterwards.
+     */
+    public void dispose() {
+        flow.getNodes().removeListener(nodesListener);
+        connectionList.removeListener(connectionsListener);
+    }
+
+    /**
+     * Returns the connection type of this order.
+     *
+     * @return the connection type of this order
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * Returns the connections that close cycles, i.e., connections that are
+     * ignored by this order. Listeners are notified as soon as a cycle
+     * appears or disappears.
+     *
+     * @return the connections that close cycles (read-only)
+     */
+    public ObservableList<Connection> getCycleConnections() {
+        return readOnlyCycleConnections;
+    }
+
+    /**
+     * Indicates whether the flow contains cycles.
+     *
+     * @return {@code true} if the flow contains cycles; {@code false}
+     * otherwise
+     */
+    public boolean hasCycles() {
+        return !cycleConnections.isEmpty();
+    }
+
+    /**
+     * Returns the position of the specified node. Positions are not
+     * necessarily consecutive. They are only meant to be compared with each
+     * other.
+     *
+     * @param n node
+     * @return position of the specified node or {@code -1} if the node is not
+     * part of the flow
+     */
+    public int getPosition(VNode n) {
+        NodeInfo i = nodes.get(n);
+        return i == null ? -1 : i.ord;
+    }
+
+    /**
+     * Compares the positions of the specified nodes.
+     *
+     * @param a first node
+     * @param b second node
+     * @return a negative integer, zero, or a positive integer if the first
+     * node precedes, equals, or succeeds the second node
+     * @throws IllegalArgumentException if one of the nodes is not part of the
+     * flow
+     */
+    public int compare(VNode a, VNode b) {
+        NodeInfo iA = nodes.get(a);
+        NodeInfo iB = nodes.get(b);
+
+        if (iA == null || iB == null) {
+            throw new IllegalArgumentException(
+                    "Nodes must be part of flow " + flow.getId());
+        }
+
+        return Integer.compare(iA.ord, iB.ord);
+    }
+
+    /**
+     * Returns the nodes of the flow in topological order.
+     *
+     * @return the nodes of the flow in topological order
+     */
+    public List<VNode> getSortedNodes() {
+        List<VNode> result = new ArrayList<>(nodes.size());
+
+        for (NodeInfo i : order) {
+            if (i != null) {
+                result.add(i.node);
+            }
+        }
+
+        return result;
+    }
+
+    private NodeInfo info(Connector c) {
+        if (c == null) {
+            return null;
+        }
+
+        VNode n = c.getNode();
+        NodeInfo result = nodes.get(n);
+
+        // connections may be reported before the nodes if the lists are
+        // observed in a different order
+        if (result == null && n != null && n.getFlow() == flow) {
+            result = addNode(n);
+        }
+
+        return result;
+    }
+
+    private NodeInfo addNode(VNode n) {
+        NodeInfo result = nodes.get(n);
+
+        if (result == null) {
+            result = new NodeInfo(n);
+            result.ord = order.size();
+            order.add(result);
+            nodes.put(n, result);
+        }
+
+        return result;
+    }
+
+    private void removeNode(VNode n) {
+        NodeInfo i = nodes.remove(n);
+
+        if (i == null) {
+            return;
+        }
+
+        boolean removedOrderedEdge = false;
+
+        List<Edge> nodeEdges = new ArrayList<>(i.out);
+        nodeEdges.addAll(i.in);
+
+        for (Edge e : nodeEdges) {
+            removedOrderedEdge |= !unlink(e);
+        }
+
+        order.set(i.ord, null);
+        holes++;
+
+        if (holes > order.size() / 2) {
+            compact();
+        }
+
+        if (removedOrderedEdge) {
+            retryCycleConnections();
+        }
+    }
+
+    private void compact() {
+        List<NodeInfo> compacted = new ArrayList<>(nodes.size());
+
+        for (NodeInfo i : order) {
+            if (i != null) {
+                i.ord = compacted.size();
+                compacted.add(i);
+            }
+        }
+
+        order.clear();
+        order.addAll(compacted);
+        holes = 0;
+    }
+
+    private void addConnection(Connection c) {
+        if (edges.containsKey(c)) {
+            return;
+        }
+
+        NodeInfo s = info(c.getSender());
+        NodeInfo r = info(c.getReceiver());
+
+        if (s == null || r == null) {
+            return;
+        }
+
+        Edge e = new Edge(c, s, r);
+        edges.put(c, e);
+        s.out.add(e);
+        r.in.add(e);
+
+        if (!insert(e)) {
+            e.cyclic = true;
+            cycleConnections.add(c);
+        }
+    }
+
+    private void removeConnection(Connection c) {
+        Edge e = edges.get(c);
+
+        if (e == null) {
+            return;
+        }
+
+        if (!unlink(e)) {
+            // removing a connection that is part of the order might break
+            // cycles
+            retryCycleConnections();
+        }
+    }
+
+    /**
+     * Removes the specified edge.
+     *
+     * @return {@code true} if the edge was a cycle connection
+     */
+    private boolean unlink(Edge e) {
+        edges.remove(e.connection);
+        e.sender.out.remove(e);
+        e.receiver.in.remove(e);
+
+        if (e.cyclic) {
+            cycleConnections.remove(e.connection);
+        }
+
+        return e.cyclic;
+    }
+
+    private void retryCycleConnections() {
+        if (cycleConnections.isEmpty()) {
+            return;
+        }
+
+        for (Connection c : new ArrayList<>(cycleConnections)) {
+            Edge e = edges.get(c);
+            e.cyclic = false;
+
+            if (insert(e)) {
+                cycleConnections.remove(c);
+            } else {
+                e.cyclic = true;
+            }
+        }
+    }
+
+    /**
+     * Updates the order for the specified (non-cyclic) edge.
+     *
+     * @return {@code false} if the edge closes a cycle; {@code true} otherwise
+     */
+    private boolean insert(Edge e) {
+        NodeInfo s = e.sender;
+        NodeInfo r = e.receiver;
+
+        if (s == r) {
+            return false;
+        }
+
+        if (s.ord < r.ord) {
+            return true;
+        }
+
+        int lowerBound = r.ord;
+        int upperBound = s.ord;
+
+        // nodes reachable from the receiver within the affected region
+        List<NodeInfo> deltaF = new ArrayList<>();
+        boolean cycle = !search(r, upperBound, true, s, deltaF);
+
+        if (cycle) {
+            reset(deltaF);
+            return false;
+        }
+
+        // nodes that reach the sender within the affected region
+        List<NodeInfo> deltaB = new ArrayList<>();
+        search(s, lowerBound, false, null, deltaB);
+
+        reorder(deltaB, deltaF);
+
+        return true;
+    }
+
+    /**
+     * Depth first search restricted to the affected region.
+     *
+     * @return {@code false} if the target has been reached; {@code true}
+     * otherwise
+     */
+    private boolean search(NodeInfo start, int bound, boolean forward,
+            NodeInfo target, List<NodeInfo> visited) {
+
+        Deque<NodeInfo> stack = new ArrayDeque<>();
+        start.visited = true;
+        visited.add(start);
+        stack.push(start);
+
+        while (!stack.isEmpty()) {
+            NodeInfo i = stack.pop();
+
+            for (Edge e : forward ? i.out : i.in) {
+                if (e.cyclic) {
+                    continue;
+                }
+
+                NodeInfo w = forward ? e.receiver : e.sender;
+
+                if (w == target) {
+                    return false;
+                }
+
+                boolean inRegion = forward ? w.ord < bound : w.ord > bound;
+
+                if (!w.visited && inRegion) {
+                    w.visited = true;
+                    visited.add(w);
+                    stack.push(w);
+                }
+            }
+        }
+
+        return true;
+    }
+
+    private void reset(List<NodeInfo> visited) {
+        for (NodeInfo i : visited) {
+            i.visited = false;
+        }
+    }
+
+    private void reorder(List<NodeInfo> deltaB, List<NodeInfo> deltaF) {
+        deltaB.sort(BY_ORD);
+        deltaF.sort(BY_ORD);
+
+        int[] positions = new int[deltaB.size() + deltaF.size()];
+        int k = 0;
+
+        for (NodeInfo i : deltaB) {
+            positions[k++] = i.ord;
+        }
+        for (NodeInfo i : deltaF) {
+            positions[k++] = i.ord;
+        }
+
+        Arrays.sort(positions);
+
+        // nodes that reach the sender precede the nodes reachable from the
+        // receiver
+        k = 0;
+        for (NodeInfo i : deltaB) {
+            i.visited = false;
+            i.ord = positions[k++];
+            order.set(i.ord, i);
+        }
+        for (NodeInfo i : deltaF) {
+            i.visited = false;
+            i.ord = positions[k++];
+            order.set(i.ord, i);
+        }
+    }
+}
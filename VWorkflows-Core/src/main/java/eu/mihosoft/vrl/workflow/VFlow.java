@@ -45,6 +45,8 @@ import javafx.collections.ObservableMap;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 
 /**
  * The {@code VFlow} interface describes a workflow controller. A workflow is a
@@ -168,6 +170,42 @@ public interface VFlow {
      */
     public void clear();
 
+    /**
+     * Starts a batched update of this flow. Changes of the nodes and
+     * connections of this flow (including subflows) are not reported before
+     * the corresponding call to {@link #endUpdate()}. Skins are then created
+     * and removed in one pass per list. Updates can be nested. The default
+     * implementation starts a batched update of the model.
+     */
+    public default void beginUpdate() {
+        getModel().beginUpdate();
+    }
+
+    /**
+     * Ends a batched update of this flow (see {@link #beginUpdate()}). The
+     * default implementation ends the batched update of the model.
+     *
+     * @throws IllegalStateException if no update is in progress
+     */
+    public default void endUpdate() {
+        getModel().endUpdate();
+    }
+
+    /**
+     * Performs the specified changes as one batched update (see
+     * {@link #beginUpdate()}).
+     *
+     * @param tx transaction that modifies this flow
+     */
+    public default void batch(Consumer<? super VFlow> tx) {
+        beginUpdate();
+        try {
+            tx.accept(this);
+        } finally {
+            endUpdate();
+        }
+    }
+
     /**
      * Returns the sender of the specified connection.
      *
@@ -378,4 +416,34 @@ public interface VFlow {
     public ObservableList<ThruConnector> getThruInputs();
 
     public ObservableList<ThruConnector> getThruOutputs();
+
+    /**
+     * Defines the executor used to deliver connection events of this flow and
+     * its subflows. By default ({@code null}), connection event handlers are
+     * called synchronously for each event. If an executor is specified, the
+     * events of a batch are coalesced per connector and delivered on the
+     * executor (in order). The default implementation only supports
+     * synchronous delivery.
+     *
+     * @param executor executor ({@code null} for synchronous delivery)
+     * @throws UnsupportedOperationException if an executor is specified but
+     * not supported by this flow
+     */
+    public default void setConnectionEventExecutor(Executor executor) {
+        if (executor != null) {
+            throw new UnsupportedOperationException(
+                    "Asynchronous connection events are not supported by "
+                    + getClass().getName());
+        }
+    }
+
+    /**
+     * Returns the executor used to deliver connection events.
+     *
+     * @return the executor used to deliver connection events or {@code null}
+     * if events are delivered synchronously
+     */
+    public default Executor getConnectionEventExecutor() {
+        return null;
+    }
 }
@@ -48,7 +48,6 @@ import javafx.collections.ListChangeListener;
 import javafx.collections.MapChangeListener;
 import javafx.collections.ObservableList;
 import javafx.collections.ObservableMap;
-import javafx.event.EventHandler;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -58,8 +57,8 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.WeakHashMap;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 
 /**
  * An implementation of the {@code VFlow} interface. This class manages the
@@ -72,9 +71,10 @@ class VFlowImpl implements VFlow {
     final ObjectProperty<VFlowModel> modelProperty = new SimpleObjectProperty<>();
     private ListChangeListener<VNode> nodesListener;
     private ListChangeListener<Connection> connectionsListener;
+    private final ConnectionEventDispatcher connectionEventDispatcher = new ConnectionEventDispatcher();
     private final ObservableList<SkinFactory<? extends ConnectionSkin, ? extends VNodeSkin>> skinFactories = FXCollections.observableArrayList();
     private final Map<SkinFactory, Map<String, VNodeSkin>> nodeSkins = new WeakHashMap<>();
-    private final Map<SkinFactory, Map<String, ConnectionSkin>> connectionSkins = new WeakHashMap<>();
+    private final Map<SkinFactory, Map<ConnectionKey, ConnectionSkin>> connectionSkins = new WeakHashMap<>();
     private final ObservableMap<String, VFlow> subControllers = FXCollections.observableHashMap();
     private ChangeListener<Boolean> visibilityListener;
     private IdGenerator idGenerator;
@@ -143,62 +143,46 @@ class VFlowImpl implements VFlow {
         setIdGenerator(new IdGeneratorImpl());
         setNodeSkinLookup(new FlowNodeSkinLookupImpl(this));
 
+        // changes of batched updates (see beginUpdate()) are reported as one
+        // change per list. therefore, removed and added ranges are processed
+        // independently (replacements report both) and in one pass.
         nodesListener = new ListChangeListener<VNode>() {
             @Override
             public void onChanged(ListChangeListener.Change<? extends VNode> change) {
+
+                List<VNode> removedNodes = new ArrayList<>();
+                List<VNode> addedNodes = new ArrayList<>();
+
                 while (change.next()) {
                     if (change.wasPermutated()) {
                         for (int i = change.getFrom(); i < change.getTo(); ++i) {
                             //permutate
                             String action = "permutate"; // TODO: implement
                         }
+                        continue;
                     } else if (change.wasUpdated()) {
                         //update item
                         String action = "update"; // TODO: implement
-                    } else if (change.wasRemoved()) {
-                        // removed
-                        for (VNode n : change.getRemoved()) {
-//                            if (nodeSkins.containsKey(n.getId())) {
-                            if (!getNodeSkinsById(n.getId()).isEmpty()) {
-
-                                removeNodeSkinFromAllSkinFactories(n);
-
-                                for (Connector connector : n.getConnectors()) {
-
-//                                    System.out.println("conn: " + connector);
-                                    Collection<Connection> connections
-                                            = getConnections(connector.getType()).
-                                            getAllWith(connector);
-
-                                    for (Connection connection : connections) {
-                                        VFlowImpl.this.getConnections(connector.getType()).
-                                                remove(connection);
-                                    }
-                                }
-
-//                                System.out.println("remove node: " + n.getId());
-                            }
+                        continue;
+                    }
 
-                            if (n instanceof FlowModel) {
-                                subControllers.remove(n.getId());
-                            }
+                    if (change.wasRemoved()) {
+                        removedNodes.addAll(change.getRemoved());
+                    }
 
-                        }
-                    } else if (change.wasAdded()) {
-                        // added
-                        for (VNode n : change.getAddedSubList()) {
-//                            if (!nodeSkins.containsKey(n.getId())) {
-                            if (getNodeSkinsById(n.getId()).isEmpty()) {
-                                createNodeSkins(n, skinFactories);
-//                                System.out.println("add node: " + n.getId() + ", title: " + n.getTitle());
-                            } else {
-                                String action = "handle error"; // TODO: implement
-//                                System.out.println("can't add node: " + n.getId() + ", title: " + n.getTitle());
-                            }
-                        }
+                    if (change.wasAdded()) {
+                        addedNodes.addAll(change.getAddedSubList());
                     }
 
                 } // end while change.next()
+
+                if (!removedNodes.isEmpty()) {
+                    nodesRemoved(removedNodes);
+                }
+
+                if (!addedNodes.isEmpty()) {
+                    nodesAdded(addedNodes);
+                }
             }
         };
 
@@ -206,61 +190,30 @@ class VFlowImpl implements VFlow {
             @Override
             public void onChanged(ListChangeListener.Change<? extends Connection> change) {
 
+                List<ConnectionEvent> events = new ArrayList<>();
+
                 while (change.next()) {
                     if (change.wasPermutated()) {
                         for (int i = change.getFrom(); i < change.getTo(); ++i) {
                             //permutate
                             String action = "permutate"; // TODO: implement
                         }
+                        continue;
                     } else if (change.wasUpdated()) {
                         //update item
                         String action = "update"; // TODO: implement
-                    } else if (change.wasRemoved()) {
+                        continue;
+                    }
+
+                    if (change.wasRemoved()) {
                         // removed
                         for (Connection c : change.getRemoved()) {
 
                             // fire events <begin>
-                            // 07.09.2013
-                            // TODO add connector references to connections
-                            //      reason: lookup is too expensive
-//                            Connector s = getNodeLookup().getConnectorById(c.getSenderId());
-//                            Connector r = getNodeLookup().getConnectorById(c.getReceiverId());
-                            Connector s = c.getSender();
-                            Connector r = c.getReceiver();
-
-                            ConnectionEvent evt = new ConnectionEvent(ConnectionEvent.REMOVE, s, r, c);
-
-                            if (s != null) {
-
-                                Collection<EventHandler<ConnectionEvent>> eventHandlersS
-                                        = ((ConnectorImpl) s).getConnectionEventHandlers();
-
-                                if (eventHandlersS != null) {
-                                    for (EventHandler<ConnectionEvent> evtHandler : eventHandlersS) {
-                                        try {
-                                            evtHandler.handle(evt);
-                                        } catch (Throwable tr) {
-                                            Logger.getLogger(VFlowImpl.class.getName()).log(Level.SEVERE, null, tr);
-                                        }
-                                    }
-                                }
-                            }
+                            ConnectionEvent evt = new ConnectionEvent(ConnectionEvent.REMOVE, c.getSender(), c.getReceiver(), c);
 
-                            if (r != null) {
-
-                                Collection<EventHandler<ConnectionEvent>> eventHandlersR
-                                        = ((ConnectorImpl) r).getConnectionEventHandlers();
-
-                                if (eventHandlersR != null) {
-                                    for (EventHandler<ConnectionEvent> evtHandler : eventHandlersR) {
-                                        try {
-                                            evtHandler.handle(evt);
-                                        } catch (Throwable tr) {
-                                            Logger.getLogger(VFlowImpl.class.getName()).log(Level.SEVERE, null, tr);
-                                        }
-                                    }
-                                }
-                            }
+                            events.add(evt);
+                            connectionEventDispatcher.fire(evt);
 
                             // fire events <end>
                             // remove skins for each connection 
@@ -268,46 +221,17 @@ class VFlowImpl implements VFlow {
                             removeConnectionSkinFromAllSkinFactories(c);
 //                            System.out.println("remove skin: " + c);
                         }
-                    } else if (change.wasAdded()) {
+                    }
+
+                    if (change.wasAdded()) {
                         // added
                         for (Connection c : change.getAddedSubList()) {
 
                             // fire events <begin>
-                            // 07.09.2013
-                            // TODO add connector references to connections
-                            //      reason: lookup is too expensive
-//                            Connector s = getNodeLookup().getConnectorById(c.getSenderId());
-//                            Connector r = getNodeLookup().getConnectorById(c.getReceiverId());
-                            Connector s = c.getSender();
-                            Connector r = c.getReceiver();
-
-                            ConnectionEvent evt = new ConnectionEvent(ConnectionEvent.ADD, s, r, c);
-
-                            Collection<EventHandler<ConnectionEvent>> eventHandlersS
-                                    = ((ConnectorImpl) s).getConnectionEventHandlers();
-
-                            if (eventHandlersS != null) {
-                                for (EventHandler<ConnectionEvent> evtHandler : eventHandlersS) {
-                                    try {
-                                        evtHandler.handle(evt);
-                                    } catch (Throwable tr) {
-                                        Logger.getLogger(VFlowImpl.class.getName()).log(Level.SEVERE, null, tr);
-                                    }
-                                }
-                            }
+                            ConnectionEvent evt = new ConnectionEvent(ConnectionEvent.ADD, c.getSender(), c.getReceiver(), c);
 
-                            Collection<EventHandler<ConnectionEvent>> eventHandlersR
-                                    = ((ConnectorImpl) r).getConnectionEventHandlers();
-
-                            if (eventHandlersR != null) {
-                                for (EventHandler<ConnectionEvent> evtHandler : eventHandlersR) {
-                                    try {
-                                        evtHandler.handle(evt);
-                                    } catch (Throwable tr) {
-                                        Logger.getLogger(VFlowImpl.class.getName()).log(Level.SEVERE, null, tr);
-                                    }
-                                }
-                            }
+                            events.add(evt);
+                            connectionEventDispatcher.fire(evt);
 
                             // fire events <end>
                             // create skins for added connections
@@ -317,6 +241,8 @@ class VFlowImpl implements VFlow {
                     }
                 }
 
+                // coalesced events of this change
+                connectionEventDispatcher.batchCompleted(events);
             }
         };
 
@@ -346,11 +272,13 @@ class VFlowImpl implements VFlow {
                 if (t != null) {
 
                     if (nodesListener != null) {
-                        t.getNodes().removeListener(nodesListener);
+                        VFlowModelImpl.getLoadedNodes(t).
+                                removeListener(nodesListener);
                     }
 
                     if (connectionsListener != null) {
-                        for (Connections conn : t.getAllConnections().values()) {
+                        for (Connections conn
+                                : VFlowModelImpl.getLoadedConnections(t).values()) {
                             System.out.println("listener for conn-type removed: " + conn.getType());
                             conn.getConnections().removeListener(connectionsListener);
                         }
@@ -367,14 +295,16 @@ class VFlowImpl implements VFlow {
                     _updateNodeLookup();
 
                     if (nodesListener != null) {
-                        t1.getNodes().addListener(nodesListener);
+                        VFlowModelImpl.getLoadedNodes(t1).
+                                addListener(nodesListener);
                     }
 
-                    for (Connections conn : t1.getAllConnections().values()) {
+                    for (Connections conn
+                            : VFlowModelImpl.getLoadedConnections(t1).values()) {
                         conn.getConnections().addListener(connectionsListener);
                     }
 
-                    t1.getAllConnections().addListener(new MapChangeListener<String, Connections>() {
+                    VFlowModelImpl.getLoadedConnections(t1).addListener(new MapChangeListener<String, Connections>() {
                         @Override
                         public void onChanged(MapChangeListener.Change<? extends String, ? extends Connections> change) {
                             if (change.wasAdded()) {
@@ -405,14 +335,100 @@ class VFlowImpl implements VFlow {
         getModel().setNodeLookup(getNodeLookup());
     }
 
-    // TODO duplicated code
-    public static String connectionId(String id, String s, String r) {
-        return "id=" + id + ";[" + s + "]->[" + r + "]";
+    private void nodesRemoved(List<VNode> removedNodes) {
+
+        // connections of removed nodes, grouped by type
+        Map<String, List<Connection>> connectionsToRemove = new HashMap<>();
+
+        for (VNode n : removedNodes) {
+//            if (nodeSkins.containsKey(n.getId())) {
+            if (!getNodeSkinsById(n.getId()).isEmpty()) {
+
+                removeNodeSkinFromAllSkinFactories(n);
+
+                for (Connector connector : n.getConnectors()) {
+
+                    Collection<Connection> connections
+                            = getConnections(connector.getType()).
+                            getAllWith(connector);
+
+                    if (!connections.isEmpty()) {
+                        connectionsToRemove.computeIfAbsent(
+                                connector.getType(),
+                                type -> new ArrayList<>()).addAll(connections);
+                    }
+                }
+
+//                System.out.println("remove node: " + n.getId());
+            }
+
+            if (n instanceof FlowModel) {
+                subControllers.remove(n.getId());
+            }
+        }
+
+        for (Map.Entry<String, List<Connection>> e
+                : connectionsToRemove.entrySet()) {
+            Connections connections = getConnections(e.getKey());
+
+            // report the removed connections as one change
+            if (connections instanceof ConnectionsImpl) {
+                ((ConnectionsImpl) connections).beginUpdate();
+            }
+
+            try {
+                for (Connection connection : e.getValue()) {
+                    connections.remove(connection);
+                }
+            } finally {
+                if (connections instanceof ConnectionsImpl) {
+                    ((ConnectionsImpl) connections).endUpdate();
+                }
+            }
+        }
     }
 
-    // TODO duplicated code
-    public static String connectionId(Connection c) {
-        return connectionId(c.getId(), c.getSender().getId(), c.getReceiver().getId());
+    private void nodesAdded(List<VNode> addedNodes) {
+
+        SkinFactory[] factories = getSkinFactories().toArray(
+                new SkinFactory[getSkinFactories().size()]);
+
+        for (VNode n : addedNodes) {
+            createNodeSkins(n, factories);
+//            System.out.println("add node: " + n.getId() + ", title: " + n.getTitle());
+
+            // subflows that have been created during a batched update don't
+            // have child skin factories yet since the node skins of the
+            // subflows didn't exist
+            if (n instanceof VFlowModel) {
+                VFlow subFlow = subControllers.get(n.getId());
+
+                // subflows of content that is loaded on demand
+                if (subFlow == null
+                        && VFlowModelImpl.isLoadingContent(getModel())) {
+                    subFlow = newSubFlow((VFlowModel) n);
+                }
+
+                if (subFlow != null && subFlow.getSkinFactories().isEmpty()) {
+                    subFlow.addSkinFactories(
+                            createChildSkinFactories((VFlowModel) n));
+                }
+            }
+        }
+    }
+
+    @Override
+    public void setConnectionEventExecutor(Executor executor) {
+        connectionEventDispatcher.setExecutor(executor);
+
+        for (VFlow subFlow : subControllers.values()) {
+            subFlow.setConnectionEventExecutor(executor);
+        }
+    }
+
+    @Override
+    public Executor getConnectionEventExecutor() {
+        return connectionEventDispatcher.getExecutor();
     }
 
     @Override
@@ -480,6 +496,26 @@ class VFlowImpl implements VFlow {
         return getModel().getAllConnections();
     }
 
+    @Override
+    public void beginUpdate() {
+        getModel().beginUpdate();
+    }
+
+    @Override
+    public void endUpdate() {
+        getModel().endUpdate();
+    }
+
+    @Override
+    public void batch(Consumer<? super VFlow> tx) {
+        beginUpdate();
+        try {
+            tx.accept(this);
+        } finally {
+            endUpdate();
+        }
+    }
+
     @Override
     public Connections getConnections(String type) {
         return getModel().getConnections(type);
@@ -537,6 +573,12 @@ class VFlowImpl implements VFlow {
                 continue;
             }
 
+            // skins might already exist, e.g., if skin factories have been
+            // added during a batched update
+            if (getNodeSkin(skinFactory, n.getId()) != null) {
+                continue;
+            }
+
 //            System.out.println(" --> adding to skinfsctory: " + skinFactory);
             VNodeSkin skin = skinFactory.createSkin(n, this);
 
@@ -588,14 +630,7 @@ class VFlowImpl implements VFlow {
         }
 
         // if id references a subflow, remove all node skins from the subflow that
-        VFlow flow = null;
-
-        for (VFlow subFlow : getSubControllers()) {
-            if (subFlow.getModel().getId().equals(id)) {
-                flow = subFlow;
-                break;
-            }
-        }
+        VFlow flow = subControllers.get(id);
 
         if (flow != null) {
             // remove child skinfactories
@@ -612,9 +647,9 @@ class VFlowImpl implements VFlow {
     }
 
     private void putConnectionSkin(SkinFactory skinFactory, ConnectionSkin<Connection> skin) {
-        Map<String, ConnectionSkin> connectionSkinMap = getConnectionSkinMap(skinFactory);
+        Map<ConnectionKey, ConnectionSkin> connectionSkinMap = getConnectionSkinMap(skinFactory);
 
-        connectionSkinMap.put(connectionId(skin.getModel()), skin);
+        connectionSkinMap.put(ConnectionKey.of(skin.getModel()), skin);
     }
 
     public List<ConnectionSkin> getAllConnectionSkins() {
@@ -628,9 +663,9 @@ class VFlowImpl implements VFlow {
     }
 
     private ConnectionSkin<Connection> removeConnectionSkinFromFactory(SkinFactory skinFactory, Connection c) {
-        Map<String, ConnectionSkin> connectionSkinsMap = getConnectionSkinMap(skinFactory);
+        Map<ConnectionKey, ConnectionSkin> connectionSkinsMap = getConnectionSkinMap(skinFactory);
 
-        ConnectionSkin skin = connectionSkinsMap.remove(connectionId(c));
+        ConnectionSkin skin = connectionSkinsMap.remove(ConnectionKey.of(c));
 
         if (skin != null) {
             skin.remove();
@@ -664,9 +699,13 @@ class VFlowImpl implements VFlow {
                 return null;
             }
 
+            if (getConnectionSkinMap(skinFactory).containsKey(ConnectionKey.of(c))) {
+                continue;
+            }
+
             ConnectionSkin skin = skinFactory.createSkin(c, this, type);
 
-//            connectionSkins.put(connectionId(c), skin);
+//            connectionSkins.put(ConnectionKey.of(c), skin);
             putConnectionSkin(skinFactory, skin);
 
             skin.add();
@@ -761,12 +800,15 @@ class VFlowImpl implements VFlow {
 
         if (skinFactories.length > 0) {
 
-            for (VNode n : getNodes()) {
+            // content that hasn't been loaded yet gets skins when it is
+            // added (see VFlowModel.setContentLoader())
+            for (VNode n : VFlowModelImpl.getLoadedNodes(getModel())) {
 
                 createNodeSkins(n, skinFactories);
             }
 
-            for (Connections cns : getAllConnections().values()) {
+            for (Connections cns
+                    : VFlowModelImpl.getLoadedConnections(getModel()).values()) {
                 for (Connection c : cns.getConnections()) {
                     createConnectionSkins(c, c.getType(), skinFactories);
                 }
@@ -848,7 +890,7 @@ class VFlowImpl implements VFlow {
     public final void setModel(VFlowModel flow) {
         modelProperty.set(flow);
 
-        for (VNode n : flow.getNodes()) {
+        for (VNode n : VFlowModelImpl.getLoadedNodes(flow)) {
             if (n instanceof VFlowModel) {
                 newSubFlow((VFlowModel) n);
             }
@@ -868,22 +910,14 @@ class VFlowImpl implements VFlow {
 
     private VFlow newSubFlow(VFlowModel flowNode) {
 
-        Collection<SkinFactory<? extends ConnectionSkin, ? extends VNodeSkin>> childFactories = new ArrayList<>();
-
-        if (isVisible()) {
-
-            for (SkinFactory<? extends ConnectionSkin, ? extends VNodeSkin> skinFactory : getSkinFactories()) {
-
-                VNodeSkin<VNode> skin = getNodeSkin(skinFactory, flowNode.getId());//nodeSkins.get(flowNode.getId());
-
-//                System.out.println("skin: " + skin + ", node: " + flowNode.getId());
-                SkinFactory<? extends ConnectionSkin, ? extends VNodeSkin> childFactory = null;
+        Collection<SkinFactory<? extends ConnectionSkin, ? extends VNodeSkin>> childFactories;
 
-                if (skinFactory != null) {
-                    childFactory = skinFactory.createChild(skin);
-                    childFactories.add(childFactory);
-                }
-            }
+        if (getModel().isUpdating()) {
+            // the node skins of the subflow don't exist before the update
+            // ends. child skin factories are added by the nodes listener.
+            childFactories = new ArrayList<>();
+        } else {
+            childFactories = createChildSkinFactories(flowNode);
         }
 
         VFlow controller = new VFlowImpl(this, flowNode, childFactories);
@@ -891,9 +925,11 @@ class VFlowImpl implements VFlow {
         controller.setIdGenerator(getIdGenerator());
         controller.setNodeLookup(getNodeLookup());
         controller.setNodeSkinLookup(getNodeSkinLookup());
+        controller.setConnectionEventExecutor(getConnectionEventExecutor());
 
         for (String connectionType : getAllConnections().keySet()) {
-            if (flowNode.getConnections(connectionType) == null) {
+            if (VFlowModelImpl.getLoadedConnections(flowNode).
+                    get(connectionType) == null) {
                 controller.addConnections(
                         VConnections.newConnections(connectionType),
                         connectionType);
@@ -905,6 +941,29 @@ class VFlowImpl implements VFlow {
         return controller;
     }
 
+    private Collection<SkinFactory<? extends ConnectionSkin, ? extends VNodeSkin>> createChildSkinFactories(VFlowModel flowNode) {
+
+        Collection<SkinFactory<? extends ConnectionSkin, ? extends VNodeSkin>> childFactories = new ArrayList<>();
+
+        if (isVisible()) {
+
+            for (SkinFactory<? extends ConnectionSkin, ? extends VNodeSkin> skinFactory : getSkinFactories()) {
+
+                VNodeSkin<VNode> skin = getNodeSkin(skinFactory, flowNode.getId());//nodeSkins.get(flowNode.getId());
+
+//                System.out.println("skin: " + skin + ", node: " + flowNode.getId());
+                SkinFactory<? extends ConnectionSkin, ? extends VNodeSkin> childFactory = null;
+
+                if (skinFactory != null) {
+                    childFactory = skinFactory.createChild(skin);
+                    childFactories.add(childFactory);
+                }
+            }
+        }
+
+        return childFactories;
+    }
+
     @Override
     public VFlow newSubFlow(ValueObject obj) {
         return newSubFlow(getModel().newFlowNode(obj));
@@ -1019,8 +1078,8 @@ class VFlowImpl implements VFlow {
         return nodeSkinMap;
     }
 
-    public synchronized Map<String, ConnectionSkin> getConnectionSkinMap(SkinFactory skinFactory) {
-        Map<String, ConnectionSkin> connectionSkinMap = connectionSkins.get(skinFactory);
+    public synchronized Map<ConnectionKey, ConnectionSkin> getConnectionSkinMap(SkinFactory skinFactory) {
+        Map<ConnectionKey, ConnectionSkin> connectionSkinMap = connectionSkins.get(skinFactory);
         if (connectionSkinMap == null) {
             connectionSkinMap = new HashMap<>();
             connectionSkins.put(skinFactory, connectionSkinMap);
@@ -35,6 +35,8 @@ package eu.mihosoft.vrl.workflow;
 
 import javafx.collections.ObservableList;
 
+import java.util.function.Consumer;
+
 /**
  *
  * @author Michael Hoffer  &lt;info@michaelhoffer.de&gt;
@@ -55,5 +57,53 @@ public interface VFlowModel extends FlowModel, VNode {
     
     public ObservableList<ThruConnector> getThruInputs();
     public ObservableList<ThruConnector> getThruOutputs();
+
+    /**
+     * Performs the specified changes as one batched update, i.e., listeners
+     * are notified with one consolidated change per list after the specified
+     * transaction has been performed (see {@link #beginUpdate()}).
+     *
+     * @param tx transaction that modifies this flow
+     */
+    public default void batch(Consumer<? super VFlowModel> tx) {
+        beginUpdate();
+        try {
+            tx.accept(this);
+        } finally {
+            endUpdate();
+        }
+    }
+
+    /**
+     * Defines a loader that creates the nodes and connections of this flow
+     * on demand. The loader is called once, as soon as this flow is made
+     * visible or its nodes or connections are accessed (including the
+     * creation of nodes and connections). Until then, this flow is empty.
+     * The loader is called with this flow as batched update (see
+     * {@link #batch(java.util.function.Consumer)}).
+     *
+     * The default implementation doesn't support lazy loading, i.e., it
+     * calls the loader immediately.
+     *
+     * @param loader loader that creates the content of this flow or
+     * {@code null} if the content shall not be loaded
+     */
+    public default void setContentLoader(Consumer<? super VFlowModel> loader) {
+        if (loader != null) {
+            batch(loader);
+        }
+    }
+
+    /**
+     * Indicates whether the content of this flow has been loaded (see
+     * {@link #setContentLoader(java.util.function.Consumer)}).
+     *
+     * @return {@code true} if the content has been loaded or if no loader
+     * has been defined; {@code false} otherwise (the default implementation
+     * always returns {@code true})
+     */
+    public default boolean isContentLoaded() {
+        return true;
+    }
 }
 
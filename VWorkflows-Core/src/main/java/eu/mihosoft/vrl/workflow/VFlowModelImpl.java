@@ -47,6 +47,7 @@ import javafx.collections.ObservableMap;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.util.Collection;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -68,6 +69,13 @@ class VFlowModelImpl implements VFlowModel {
     private final ObservableList<ThruConnector> unmodifiableThruOutputs
             = FXCollections.unmodifiableObservableList(thruOutputs);
 
+    // creates nodes and connections on demand (see setContentLoader())
+    private Consumer<? super VFlowModel> contentLoader;
+    private boolean loadingContent;
+
+    // keeps the hash tree of this flow up to date (see FlowHash.of())
+    private FlowHashTracker hashTracker;
+
     @Override
     public BooleanProperty visibleProperty() {
         return flow.visibleProperty();
@@ -75,6 +83,9 @@ class VFlowModelImpl implements VFlowModel {
 
     @Override
     public void setVisible(boolean b) {
+        if (b) {
+            loadContent();
+        }
         flow.setVisible(b);
     }
 
@@ -123,6 +134,21 @@ class VFlowModelImpl implements VFlowModel {
                             }
                         }
 
+                        // thru connectors are also re-added if a removal is
+                        // undone (see CommandLog)
+                        for (Connector connector : c.getAddedSubList()) {
+                            if (connector instanceof ThruConnector) {
+
+                                ThruConnector tC = (ThruConnector) connector;
+
+                                if (tC.isInput()) {
+                                    thruInputs.add(tC);
+                                } else if (tC.isOutput()) {
+                                    thruOutputs.add(tC);
+                                }
+                            }
+                        }
+
                     }
                 });
 
@@ -130,46 +156,85 @@ class VFlowModelImpl implements VFlowModel {
 
     @Override
     public ConnectionResult tryConnect(VNode s, VNode r, String flowType) {
+        loadContent();
         return flow.tryConnect(s, r, flowType);
     }
 
     @Override
     public ConnectionResult connect(VNode s, VNode r, String flowType) {
+        loadContent();
         return flow.connect(s, r, flowType);
     }
 
     @Override
     public ConnectionResult tryConnect(Connector s, Connector r) {
+        loadContent();
         return flow.tryConnect(s, r);
     }
 
     @Override
     public ConnectionResult connect(Connector s, Connector r) {
+        loadContent();
         return flow.connect(s, r);
     }
 
     @Override
     public VNode remove(VNode n) {
+        loadContent();
         return flow.remove(n);
     }
 
     @Override
     public void clear() {
+        loadContent();
         flow.clear();
     }
 
+    void restore(VNode n, int index) {
+        loadContent();
+        flow.restore(n, index);
+    }
+
     @Override
     public ObservableList<VNode> getNodes() {
+        loadContent();
         return flow.getNodes();
     }
 
+    @Override
+    public void beginUpdate() {
+        flow.beginUpdate();
+    }
+
+    @Override
+    public void endUpdate() {
+        flow.endUpdate();
+    }
+
+    @Override
+    public boolean isUpdating() {
+        return flow.isUpdating();
+    }
+
+    @Override
+    public void batch(Consumer<? super VFlowModel> tx) {
+        beginUpdate();
+        try {
+            tx.accept(this);
+        } finally {
+            endUpdate();
+        }
+    }
+
     @Override
     public VNode getSender(Connection c) {
+        loadContent();
         return flow.getSender(c);
     }
 
     @Override
     public VNode getReceiver(Connection c) {
+        loadContent();
         return flow.getReceiver(c);
     }
 
@@ -180,14 +245,144 @@ class VFlowModelImpl implements VFlowModel {
 
     @Override
     public Connections getConnections(String flowType) {
+        loadContent();
         return flow.getConnections(flowType);
     }
 
     @Override
     public ObservableMap<String, Connections> getAllConnections() {
+        loadContent();
         return flow.getAllConnections();
     }
 
+    @Override
+    public void setContentLoader(Consumer<? super VFlowModel> loader) {
+        this.contentLoader = loader;
+    }
+
+    @Override
+    public boolean isContentLoaded() {
+        return contentLoader == null;
+    }
+
+    /**
+     * Calls the content loader (if any). The content is added as one batched
+     * update.
+     */
+    private void loadContent() {
+        Consumer<? super VFlowModel> loader = contentLoader;
+
+        if (loader == null) {
+            return;
+        }
+
+        // the loader uses the methods of this flow
+        contentLoader = null;
+        loadingContent = true;
+
+        try {
+            batch(loader);
+        } finally {
+            loadingContent = false;
+        }
+    }
+
+    /**
+     * Indicates whether the content of the specified flow is currently being
+     * loaded (see {@link #setContentLoader(java.util.function.Consumer)}).
+     * Changes that are reported while loading are not caused by the user.
+     *
+     * @param f flow
+     * @return {@code true} if the content is being loaded; {@code false}
+     * otherwise
+     */
+    static boolean isLoadingContent(VFlowModel f) {
+        return f instanceof VFlowModelImpl
+                && ((VFlowModelImpl) f).loadingContent;
+    }
+
+    /**
+     * Returns the nodes of the specified flow without loading its content
+     * (see {@link #setContentLoader(java.util.function.Consumer)}), e.g., to
+     * register listeners.
+     *
+     * @param f flow
+     * @return the nodes that have been loaded so far
+     */
+    static ObservableList<VNode> getLoadedNodes(FlowModel f) {
+        if (f instanceof VFlowModelImpl) {
+            return ((VFlowModelImpl) f).flow.getNodes();
+        }
+
+        return f.getNodes();
+    }
+
+    /**
+     * Returns the connections of the specified flow without loading its
+     * content (see {@link #setContentLoader(java.util.function.Consumer)}).
+     *
+     * @param f flow
+     * @return the connections that have been loaded so far
+     */
+    static ObservableMap<String, Connections> getLoadedConnections(
+            FlowModel f) {
+        if (f instanceof VFlowModelImpl) {
+            return ((VFlowModelImpl) f).flow.getAllConnections();
+        }
+
+        return f.getAllConnections();
+    }
+
+    /**
+     * Returns the implementation of the specified node, e.g., to observe its
+     * attributes without creating its properties (see {@link FlowObserver}).
+     *
+     * @param n node
+     * @return the implementation of the specified node or {@code null} if
+     * the node is not implemented by {@link VNodeImpl}
+     */
+    static VNodeImpl getNodeImpl(VNode n) {
+        if (n instanceof VFlowModelImpl) {
+            return ((VFlowModelImpl) n).node;
+        }
+
+        if (n instanceof VNodeImpl) {
+            return (VNodeImpl) n;
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the tracker that keeps the hash tree of the specified flow up
+     * to date (see {@link FlowHash#of(VFlowModel)}).
+     *
+     * @param f flow
+     * @return the tracker of the specified flow or {@code null} if the flow
+     * is not tracked
+     */
+    static FlowHashTracker getHashTracker(VFlowModel f) {
+        if (f instanceof VFlowModelImpl) {
+            return ((VFlowModelImpl) f).hashTracker;
+        }
+
+        return null;
+    }
+
+    /**
+     * Defines the tracker that keeps the hash tree of the specified flow up
+     * to date (see {@link FlowHash#of(VFlowModel)}). Flows that are not
+     * implemented by this class can't be associated with a tracker.
+     *
+     * @param f flow
+     * @param tracker tracker to associate (may be {@code null})
+     */
+    static void setHashTracker(VFlowModel f, FlowHashTracker tracker) {
+        if (f instanceof VFlowModelImpl) {
+            ((VFlowModelImpl) f).hashTracker = tracker;
+        }
+    }
+
     @Override
     public void setFlowNodeClass(Class<? extends VNode> cls) {
         flow.setFlowNodeClass(cls);
@@ -334,13 +529,19 @@ class VFlowModelImpl implements VFlowModel {
 //    }
     @Override
     public VFlowModel newFlowNode(ValueObject obj) {
+        loadContent();
+
         VFlowModel flowNode = new VFlowModelImpl(this);
 
+        flowNode.setNodeLookup(getNodeLookup());
+
         return (VFlowModel) flow.newNode(flowNode, obj, getId());
     }
 
     @Override
     public VFlowModel newFlowNode() {
+        loadContent();
+
         VFlowModel flowNode = new VFlowModelImpl(this);
 
         flowNode.setNodeLookup(getNodeLookup());
@@ -358,6 +559,8 @@ class VFlowModelImpl implements VFlowModel {
     @Override
     public VNode newNode(ValueObject obj) {
 
+        loadContent();
+
         VNode result = null;
 
         try {
@@ -540,8 +743,6 @@ class VFlowModelImpl implements VFlowModel {
         ThruConnector tC = node.addThruInput(
                 node, type, innerNode, innerConnector);
 
-        thruInputs.add(tC);
-
         return tC;
     }
 
@@ -559,8 +760,6 @@ class VFlowModelImpl implements VFlowModel {
         ThruConnector tC = node.addThruOutput(
                 node, type, innerNode, innerConnector);
 
-        thruOutputs.add(tC);
-
         return tC;
     }
 
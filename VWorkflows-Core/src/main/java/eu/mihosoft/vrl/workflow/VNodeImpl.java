@@ -49,9 +49,13 @@ import javafx.collections.FXCollections;
 import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 /**
  *
@@ -59,115 +63,244 @@ import java.util.Map;
  */
 class VNodeImpl implements VNode {
 
-    private final ObservableList<Connector> connectors
-            = FXCollections.observableArrayList();
-    private ObservableList<Connector> inputs
-            = FXCollections.observableArrayList();
-    private ObservableList<Connector> outputs
-            = FXCollections.observableArrayList();
-    private final ObservableList<Connector> unmodifiableInputs
-            = FXCollections.unmodifiableObservableList(inputs);
-    private final ObservableList<Connector> unmodifiableOutputs
-            = FXCollections.unmodifiableObservableList(outputs);
-    private final StringProperty idProperty = new SimpleStringProperty();
-    private final StringProperty titleProperty = new SimpleStringProperty();
-    private final DoubleProperty xProperty = new SimpleDoubleProperty();
-    private final DoubleProperty yProperty = new SimpleDoubleProperty();
-    private final DoubleProperty widthProperty = new SimpleDoubleProperty();
-    private final DoubleProperty heightProperty = new SimpleDoubleProperty();
-
-    private final BooleanProperty selectedProperty = new SimpleBooleanProperty(false);
-    private final BooleanProperty selectableProperty = new SimpleBooleanProperty(true);
-
-    private final ObjectProperty<ValueObject> valueObjectProperty
-            = new SimpleObjectProperty<>();
+    // values are stored in plain fields. the corresponding properties are
+    // only created if requested, e.g., if a skin binds to them. this reduces
+    // the memory footprint of large flows significantly.
+    private String id;
+    private String title = "Node";
+    private double x;
+    private double y;
+    private double width = 200;
+    private double height = 150;
+    private boolean selected;
+    private boolean selectable = true;
+    private ValueObject valueObject;
+    private boolean valueObjectInitialized;
+
+    private StringProperty idProperty;
+    private StringProperty titleProperty;
+    private DoubleProperty xProperty;
+    private DoubleProperty yProperty;
+    private DoubleProperty widthProperty;
+    private DoubleProperty heightProperty;
+    private BooleanProperty selectedProperty;
+    private BooleanProperty selectableProperty;
+    private ObjectProperty<ValueObject> valueObjectProperty;
+
+    // observers of the attributes (see FlowObserver). they are notified
+    // whether or not the corresponding properties have been created
+    private List<FlowObserver.NodeObserver> observers;
+    private ChangeListener<Object> propertyObserver;
+
+    // connector lists are created on demand (see connectors())
+    private ObservableList<Connector> connectors;
+    private ObservableList<Connector> inputs;
+    private ObservableList<Connector> outputs;
+    private ObservableList<Connector> unmodifiableInputs;
+    private ObservableList<Connector> unmodifiableOutputs;
+
     private VFlowModel flow;
 
-    private IdGenerator connectorIdGenerator = new IdGeneratorImpl();
-    private final Map<String, Connector> mainInputs = new HashMap<>();
-    private final Map<String, Connector> mainOutputs = new HashMap<>();
+    private IdGenerator connectorIdGenerator;
+    private Map<String, Connector> mainInputs;
+    private Map<String, Connector> mainOutputs;
     private ObjectProperty<VisualizationRequest> vReqProperty;
 
     public VNodeImpl(VFlowModel flow) {
-
         this.flow = flow;
+    }
 
-        setWidth(200);
-        setHeight(150);
+    private ObservableList<Connector> connectors() {
+        if (connectors == null) {
+            connectors = FXCollections.observableArrayList();
+            inputs = FXCollections.observableArrayList();
+            outputs = FXCollections.observableArrayList();
+            unmodifiableInputs
+                    = FXCollections.unmodifiableObservableList(inputs);
+            unmodifiableOutputs
+                    = FXCollections.unmodifiableObservableList(outputs);
+
+            connectors.addListener(new ListChangeListener<Connector>() {
+                @Override
+                public void onChanged(Change<? extends Connector> change) {
+                    connectorsChanged(change);
+                    fireConnectorsChanged(change);
+                }
+            });
+        }
 
-        setTitle("Node");
+        return connectors;
+    }
 
-        setValueObject(new DefaultValueObject(this));
+    /**
+     * Adds the specified observer. Observing a node doesn't create its
+     * properties.
+     *
+     * @param o observer to add
+     */
+    void addObserver(FlowObserver.NodeObserver o) {
+        if (observers == null) {
+            observers = new ArrayList<>(1);
+        }
+
+        observers.add(o);
+    }
+
+    /**
+     * Removes the specified observer.
+     *
+     * @param o observer to remove
+     */
+    void removeObserver(FlowObserver.NodeObserver o) {
+        if (observers == null) {
+            return;
+        }
+
+        observers.remove(o);
+
+        if (observers.isEmpty()) {
+            observers = null;
+        }
+    }
+
+    /**
+     * Returns the value object of this node without creating the default
+     * value object.
+     *
+     * @return the value object of this node or {@code null} if it has not
+     * been initialized yet
+     */
+    ValueObject peekValueObject() {
+        if (valueObjectProperty != null) {
+            return valueObjectProperty.get();
+        }
+
+        return valueObject;
+    }
+
+    /**
+     * Returns the connectors of this node without creating the connector
+     * lists.
+     *
+     * @return the connectors of this node (empty if no connector has been
+     * added yet)
+     */
+    List<Connector> peekConnectors() {
+        return connectors != null
+                ? connectors : Collections.<Connector>emptyList();
+    }
 
-        valueObjectProperty.addListener(new ChangeListener<ValueObject>() {
-            @Override
-            public void changed(ObservableValue<? extends ValueObject> ov, ValueObject t, ValueObject t1) {
-                if (t1 != null) {
-                    t1.setParent(VNodeImpl.this);
+    private void fireAttributeChanged(FlowObserver.Attribute a,
+            Object oldValue, Object newValue) {
+        if (observers == null || Objects.equals(oldValue, newValue)) {
+            return;
+        }
+
+        for (FlowObserver.NodeObserver o
+                : observers.toArray(new FlowObserver.NodeObserver[0])) {
+            o.attributeChanged(a, oldValue, newValue);
+        }
+    }
+
+    private void fireConnectorsChanged(
+            ListChangeListener.Change<? extends Connector> change) {
+        if (observers == null) {
+            return;
+        }
+
+        for (FlowObserver.NodeObserver o
+                : observers.toArray(new FlowObserver.NodeObserver[0])) {
+            change.reset();
+            o.connectorsChanged(change);
+        }
+    }
+
+    private ChangeListener<Object> propertyObserver() {
+        if (propertyObserver == null) {
+            propertyObserver = (ov, oldV, newV) -> {
+                if (observers != null) {
+                    fireAttributeChanged(attributeOf(ov), oldV, newV);
+                }
+            };
+        }
+
+        return propertyObserver;
+    }
+
+    private FlowObserver.Attribute attributeOf(ObservableValue<?> p) {
+        if (p == titleProperty) {
+            return FlowObserver.Attribute.TITLE;
+        } else if (p == idProperty) {
+            return FlowObserver.Attribute.ID;
+        } else if (p == xProperty) {
+            return FlowObserver.Attribute.X;
+        } else if (p == yProperty) {
+            return FlowObserver.Attribute.Y;
+        } else if (p == widthProperty) {
+            return FlowObserver.Attribute.WIDTH;
+        } else if (p == heightProperty) {
+            return FlowObserver.Attribute.HEIGHT;
+        } else {
+            return FlowObserver.Attribute.VALUE_OBJECT;
+        }
+    }
+
+    private IdGenerator connectorIdGenerator() {
+        if (connectorIdGenerator == null) {
+            connectorIdGenerator = new IdGeneratorImpl();
+        }
+
+        return connectorIdGenerator;
+    }
+
+    private void connectorsChanged(ListChangeListener.Change<? extends Connector> change) {
+        while (change.next()) {
+            if (change.wasPermutated()) {
+                for (int i = change.getFrom(); i < change.getTo(); ++i) {
+                    //permutate
+                    String action = "permutate"; // TODO: implement
                 }
             }
-        });
-
-        connectors.addListener(new ListChangeListener<Connector>() {
-            @Override
-            public void onChanged(Change<? extends Connector> change) {
-                while (change.next()) {
-                    if (change.wasPermutated()) {
-                        for (int i = change.getFrom(); i < change.getTo(); ++i) {
-                            //permutate
-                            String action = "permutate"; // TODO: implement
-                        }
-                    }
-//                    else if (change.wasUpdated()) {
-//                        //TODO: update item
+//            else if (change.wasUpdated()) {
+//                //TODO: update item
 //
-//                    } 
-                    else if (change.wasRemoved()) {
-                        for (Connector connector : change.getRemoved()) {
-                            if (connector.isInput()) {
-                                inputs.remove(connector);
-
-                            }
-
-                            if (connector.isOutput()) {
-                                outputs.remove(connector);
-                            }
-
-                            Connections connections = getFlow().getConnections(connector.getType());
-                            connections.getConnections().removeAll(connections.getAllWith(connector));
-
-                            connectorIdGenerator.getIds().remove(connector.getId());
-                        }
-                    } else if (change.wasAdded()) {
-                        for (Connector connector : change.getAddedSubList()) {
-                            if (connector.isInput()) {
-                                inputs.add(connector);
-//                                    System.out.println("added input:" + unmodifiableInputs.size());
-                            }
-
-                            if (connector.isOutput()) {
-                                outputs.add(connector);
-//                                    System.out.println("added output:" + unmodifiableOutputs.size());
-                            }
-
-                            if (connector instanceof ThruConnector) {
-                                connector.setLocalId(connectorIdGenerator.newId("thru"));
-                            } else {
-                                connector.setLocalId(connectorIdGenerator.newId());
-                            }
-                        }
+//            } 
+            else if (change.wasRemoved()) {
+                for (Connector connector : change.getRemoved()) {
+                    if (connector.isInput()) {
+                        inputs.remove(connector);
+
+                    }
+
+                    if (connector.isOutput()) {
+                        outputs.remove(connector);
                     }
+
+                    Connections connections = getFlow().getConnections(connector.getType());
+                    connections.getConnections().removeAll(connections.getAllWith(connector));
+
+                    connectorIdGenerator().getIds().remove(connector.getId());
                 }
-            }
-        });
+            } else if (change.wasAdded()) {
+                for (Connector connector : change.getAddedSubList()) {
+                    if (connector.isInput()) {
+                        inputs.add(connector);
+//                            System.out.println("added input:" + unmodifiableInputs.size());
+                    }
 
-//
-//        outputs.addListener(new ListChangeListener<Connector<FlowNode>>() {
-//            @Override
-//            public void onChanged(Change<? extends Connector<FlowNode>> change) {
-//                throw new UnsupportedOperationException("Not supported yet.");
-//            }
-//        });
+                    if (connector.isOutput()) {
+                        outputs.add(connector);
+//                            System.out.println("added output:" + unmodifiableOutputs.size());
+                    }
+
+                    if (connector instanceof ThruConnector) {
+                        connector.setLocalId(connectorIdGenerator().newId("thru"));
+                    } else {
+                        connector.setLocalId(connectorIdGenerator().newId());
+                    }
+                }
+            }
+        }
     }
 
 //    @Override
@@ -181,92 +314,152 @@ class VNodeImpl implements VNode {
 //    }
     @Override
     public StringProperty titleProperty() {
+        if (titleProperty == null) {
+            titleProperty = new SimpleStringProperty(title);
+            titleProperty.addListener(propertyObserver());
+        }
         return titleProperty;
     }
 
     @Override
     public final void setTitle(String title) {
-        titleProperty.set(title);
+        if (titleProperty != null) {
+            titleProperty.set(title);
+        } else {
+            String old = this.title;
+            this.title = title;
+            fireAttributeChanged(FlowObserver.Attribute.TITLE, old, title);
+        }
     }
 
     @Override
     public String getTitle() {
-        return titleProperty.get();
+        return titleProperty != null ? titleProperty.get() : title;
     }
 
     @Override
     public StringProperty idProperty() {
+        if (idProperty == null) {
+            idProperty = new SimpleStringProperty(id);
+            idProperty.addListener(propertyObserver());
+        }
         return idProperty;
     }
 
     @Override
     public void setId(String id) {
-        idProperty.set(id);
+        if (idProperty != null) {
+            idProperty.set(id);
+        } else {
+            String old = this.id;
+            this.id = id;
+            fireAttributeChanged(FlowObserver.Attribute.ID, old, id);
+        }
     }
 
     @Override
     public String getId() {
-        return idProperty.get();
+        return idProperty != null ? idProperty.get() : id;
     }
 
     @Override
     public DoubleProperty xProperty() {
+        if (xProperty == null) {
+            xProperty = new SimpleDoubleProperty(x);
+            xProperty.addListener(propertyObserver());
+        }
         return xProperty;
     }
 
     @Override
     public DoubleProperty yProperty() {
+        if (yProperty == null) {
+            yProperty = new SimpleDoubleProperty(y);
+            yProperty.addListener(propertyObserver());
+        }
         return yProperty;
     }
 
     @Override
     public void setX(double x) {
-        xProperty.set(x);
+        if (xProperty != null) {
+            xProperty.set(x);
+        } else {
+            double old = this.x;
+            this.x = x;
+            fireAttributeChanged(FlowObserver.Attribute.X, old, x);
+        }
     }
 
     @Override
     public void setY(double y) {
-        yProperty.set(y);
+        if (yProperty != null) {
+            yProperty.set(y);
+        } else {
+            double old = this.y;
+            this.y = y;
+            fireAttributeChanged(FlowObserver.Attribute.Y, old, y);
+        }
     }
 
     @Override
     public double getX() {
-        return xProperty.get();
+        return xProperty != null ? xProperty.get() : x;
     }
 
     @Override
     public double getY() {
-        return yProperty.get();
+        return yProperty != null ? yProperty.get() : y;
     }
 
     @Override
     public DoubleProperty widthProperty() {
+        if (widthProperty == null) {
+            widthProperty = new SimpleDoubleProperty(width);
+            widthProperty.addListener(propertyObserver());
+        }
         return widthProperty;
     }
 
     @Override
     public DoubleProperty heightProperty() {
+        if (heightProperty == null) {
+            heightProperty = new SimpleDoubleProperty(height);
+            heightProperty.addListener(propertyObserver());
+        }
         return heightProperty;
     }
 
     @Override
     public final void setWidth(double w) {
-        widthProperty.set(w);
+        if (widthProperty != null) {
+            widthProperty.set(w);
+        } else {
+            double old = this.width;
+            this.width = w;
+            fireAttributeChanged(FlowObserver.Attribute.WIDTH, old, w);
+        }
     }
 
     @Override
     public final void setHeight(double h) {
-        heightProperty.set(h);
+        if (heightProperty != null) {
+            heightProperty.set(h);
+        } else {
+            double old = this.height;
+            this.height = h;
+            fireAttributeChanged(FlowObserver.Attribute.HEIGHT, old, h);
+        }
     }
 
     @Override
     public double getWidth() {
-        return widthProperty.get();
+        return widthProperty != null ? widthProperty.get() : width;
     }
 
     @Override
     public double getHeight() {
-        return heightProperty.get();
+        return heightProperty != null ? heightProperty.get() : height;
     }
 
 //    @Override
@@ -275,16 +468,63 @@ class VNodeImpl implements VNode {
 //    }
     @Override
     public ValueObject getValueObject() {
-        return valueObjectProperty.get();
+        if (valueObjectProperty != null) {
+            return valueObjectProperty.get();
+        }
+
+        // the default value object is usually replaced by the flow.
+        // therefore, we only create it if it is actually requested
+        if (!valueObjectInitialized) {
+            valueObject = new DefaultValueObject(this);
+            valueObjectInitialized = true;
+
+            // creating the default value object is no change
+            if (observers != null) {
+                for (FlowObserver.NodeObserver o
+                        : observers.toArray(new FlowObserver.NodeObserver[0])) {
+                    o.valueObjectInitialized(valueObject);
+                }
+            }
+        }
+
+        return valueObject;
     }
 
     @Override
     public final void setValueObject(ValueObject o) {
-        valueObjectProperty.set(o);
+        if (valueObjectProperty != null) {
+            valueObjectProperty.set(o);
+        } else {
+            ValueObject old = this.valueObject;
+            this.valueObject = o;
+            this.valueObjectInitialized = true;
+
+            if (o != null) {
+                o.setParent(this);
+            }
+
+            fireAttributeChanged(
+                    FlowObserver.Attribute.VALUE_OBJECT, old, o);
+        }
     }
 
     @Override
     public ObjectProperty<ValueObject> valueObjectProperty() {
+        if (valueObjectProperty == null) {
+            valueObjectProperty = new SimpleObjectProperty<>(getValueObject());
+            valueObject = null;
+
+            valueObjectProperty.addListener(new ChangeListener<ValueObject>() {
+                @Override
+                public void changed(ObservableValue<? extends ValueObject> ov, ValueObject t, ValueObject t1) {
+                    if (t1 != null) {
+                        t1.setParent(VNodeImpl.this);
+                    }
+                }
+            });
+            valueObjectProperty.addListener(propertyObserver());
+        }
+
         return valueObjectProperty;
     }
 
@@ -379,43 +619,43 @@ class VNodeImpl implements VNode {
     Connector addInput(VNode node, String type) {
         Connector c = new ConnectorImpl(
                 node, type, null, true);
-        connectors.add(c);
+        connectors().add(c);
         return c;
     }
 
     Connector addOutput(VNode node, String type) {
         Connector c = new ConnectorImpl(
                 node, type, null, false);
-        connectors.add(c);
+        connectors().add(c);
         return c;
     }
 
     ThruConnector addThruInput(VNode node, String type, VNode innerNode, Connector innerConnector) {
         ThruConnector c = new ThruConnectorImpl(
                 node, type, null, true, innerNode, innerConnector);
-        connectors.add(c);
+        connectors().add(c);
         return c;
     }
 
     ThruConnector addThruOutput(VNode node, String type, VNode innerNode, Connector innerConnector) {
         ThruConnector c = new ThruConnectorImpl(
                 node, type, null, false, innerNode, innerConnector);
-        connectors.add(c);
+        connectors().add(c);
         return c;
     }
 
     Connector addConnector(VNode node, Connector c) {
         String localId = c.getLocalId();
 
-        if (connectorIdGenerator.getIds().contains(localId)) {
+        if (connectorIdGenerator().getIds().contains(localId)) {
             throw new IllegalArgumentException(
                     "Cannot add connector: id \"" + localId + "\" already in use");
         }
 
         Connector result = new ConnectorImpl(node, c);
-        connectors.add(result);
+        connectors().add(result);
 
-        connectorIdGenerator.addId(localId);
+        connectorIdGenerator().addId(localId);
 
         return result;
     }
@@ -467,38 +707,54 @@ class VNodeImpl implements VNode {
 //    }
     @Override
     public Connector getMainInput(String type) {
-        return mainInputs.get(type);
+        return mainInputs != null ? mainInputs.get(type) : null;
     }
 
     @Override
     public Connector getMainOutput(String type) {
-        return mainOutputs.get(type);
+        return mainOutputs != null ? mainOutputs.get(type) : null;
     }
 
     @Override
     public Collection<String> getMainInputTypes() {
+        if (mainInputs == null) {
+            return Collections.emptySet();
+        }
         return mainInputs.keySet();
     }
 
     @Override
     public Collection<String> getMainOutputTypes() {
+        if (mainOutputs == null) {
+            return Collections.emptySet();
+        }
         return mainOutputs.keySet();
     }
 
     @Override
     public Connector setMainInput(Connector connector) {
+        if (mainInputs == null) {
+            mainInputs = new HashMap<>();
+        }
         mainInputs.put(connector.getType(), connector);
         return connector;
     }
 
     @Override
     public Connector setMainOutput(Connector connector) {
+        if (mainOutputs == null) {
+            mainOutputs = new HashMap<>();
+        }
         mainOutputs.put(connector.getType(), connector);
         return connector;
     }
 
     @Override
     public Connector getConnector(String localId) {
+        if (connectors == null) {
+            return null;
+        }
+
         for (Connector c : connectors) {
             if (c.getLocalId().equals(localId)) {
                 return c;
@@ -510,33 +766,43 @@ class VNodeImpl implements VNode {
 
     @Override
     public ObservableList<Connector> getConnectors() {
-        return this.connectors;
+        return connectors();
     }
 
     @Override
     public ObservableList<Connector> getInputs() {
+        connectors();
         return this.unmodifiableInputs;
     }
 
     @Override
     public ObservableList<Connector> getOutputs() {
+        connectors();
         return this.unmodifiableOutputs;
     }
 
     @Override
     public final boolean isSelected() {
-        return selectedProperty().get();
+        return selectedProperty != null ? selectedProperty.get() : selected;
+    }
+
+    private void setSelected(boolean selected) {
+        if (selectedProperty != null) {
+            selectedProperty.set(selected);
+        } else {
+            this.selected = selected;
+        }
     }
 
     @Override
     public final boolean requestSelection(boolean select) {
 
         if (!select) {
-            selectedProperty.set(false);
+            setSelected(false);
         }
 
         if (isSelectable()) {
-            selectedProperty.set(select);
+            setSelected(select);
             return true;
         } else {
             return false;
@@ -545,21 +811,32 @@ class VNodeImpl implements VNode {
 
     @Override
     public final ReadOnlyBooleanProperty selectedProperty() {
+        if (selectedProperty == null) {
+            selectedProperty = new SimpleBooleanProperty(selected);
+        }
         return this.selectedProperty;
     }
 
     @Override
     public final BooleanProperty selectableProperty() {
+        if (selectableProperty == null) {
+            selectableProperty = new SimpleBooleanProperty(selectable);
+        }
         return selectableProperty;
     }
 
     @Override
     public final boolean isSelectable() {
-        return selectableProperty().get();
+        return selectableProperty != null
+                ? selectableProperty.get() : selectable;
     }
 
     public final void setSelectable(boolean b) {
-        selectableProperty().set(b);
+        if (selectableProperty != null) {
+            selectableProperty.set(b);
+        } else {
+            this.selectable = b;
+        }
     }
 
     @Override
@@ -569,6 +846,9 @@ class VNodeImpl implements VNode {
 
     @Override
     public boolean removeConnector(Connector c) {
+        if (connectors == null) {
+            return false;
+        }
         return this.connectors.remove(c);
     }
 
@@ -70,9 +70,9 @@ public class WorkflowUtil {
     public static Predicate<Connector> connectorConnected(String connectionType) {
         return (Connector c) -> {
             return c.getType().equals(connectionType)
-                    && !c.getNode().getFlow().
+                    && c.getNode().getFlow().
                     getConnections(connectionType).
-                    getAllWith(c).isEmpty();
+                    degreeOf(c) > 0;
         };
     }
 
@@ -103,8 +103,8 @@ public class WorkflowUtil {
      */
     public static Predicate<VNode> nodeConnected(String connectionType) {
         return (VNode n) -> {
-            return !n.getInputs().filtered(connectorConnected(connectionType)).
-                    isEmpty();
+            return n.getInputs().stream().
+                    anyMatch(connectorConnected(connectionType));
         };
     }
 
@@ -140,7 +140,7 @@ public class WorkflowUtil {
             return c.getType().equals(connectionType)
                     && c.getNode().getFlow().
                     getConnections(connectionType).
-                    getAllWith(c).size() > expectedNumConn;
+                    degreeOf(c) > expectedNumConn;
         };
     }
 
@@ -163,7 +163,7 @@ public class WorkflowUtil {
             return c.getType().equals(connectionType)
                     && c.getNode().getFlow().
                     getConnections(connectionType).
-                    getAllWith(c).size() < expectedNumConn;
+                    degreeOf(c) < expectedNumConn;
         };
     }
 
@@ -185,24 +185,13 @@ public class WorkflowUtil {
             return c.getType().equals(connectionType)
                     && c.getNode().getFlow().
                     getConnections(connectionType).
-                    getAllWith(c).size() == expectedNumConn;
+                    degreeOf(c) == expectedNumConn;
         };
     }
     
     public static boolean isRoot(VNode node, String connectionType) {
 
-        Predicate<Connector> notConnected = (Connector c) -> {
-            return c.getType().equals(connectionType)
-                    && !c.getNode().getFlow().
-                    getConnections(connectionType).
-                    getAllWith(c).isEmpty();
-        };
-
-        Predicate<VNode> rootNode = (VNode n) -> {
-            return n.getInputs().filtered(notConnected).isEmpty();
-        };
-
-        return rootNode.test(node);
+        return nodeNotConnected(connectionType).test(node);
     }
     
     public static List<VNode> getPathInLayerFromRoot(VNode sender, String connectionType) {
@@ -0,0 +1,423 @@
+/*
+ * Copyright 2012-2016 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * Please cite the following publication(s):
+ *
+ * M. Hoffer, C.Poliwoda, G.Wittum. Visual Reflection Library -
+ * A Framework for Declarative GUI Programming on the Java Platform.
+ * Computing and Visualization in Science, 2011, in press.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vrl.workflow.execution;
+
+import eu.mihosoft.vrl.workflow.FlowSnapshot;
+import eu.mihosoft.vrl.workflow.VFlowModel;
+import eu.mihosoft.vrl.workflow.VNode;
+import eu.mihosoft.vrl.workflow.ValueObject;
+import eu.mihosoft.vrl.workflow.WorkflowUtil;
+import eu.mihosoft.vrl.workflow.execution.ExecutionResult.Status;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Function;
+
+/**
+ * Executes flows. A node is scheduled as soon as all nodes it depends on
+ * (via data and control connections) have been computed. Independent nodes
+ * are therefore computed in parallel. The result of a node is propagated
+ * along its data connections, i.e., it is passed to the functions of the
+ * receivers. Results are kept by the engine while the flow is executed. They
+ * are only assigned to the value objects of the receiving connectors via
+ * {@link ExecutionResult#publish()} (which {@link #execute(VFlowModel)} calls
+ * on the calling thread).
+ *
+ * <p>
+ * The function of a node is resolved via its value object. Nodes without a
+ * function are treated as computed with a {@code null} result. Subflows are
+ * not entered, i.e., they are computed like regular nodes.
+ * </p>
+ *
+ * <p>
+ * <b>Note:</b> the flow is frozen (see {@link FlowSnapshot}) by the thread
+ * that starts the execution. The functions are called by the threads of the
+ * executor. The model (e.g. its value objects and their listeners) is not
+ * accessed by these threads.
+ * </p>
+ *
+ * @author Michael Hoffer &lt;info@michaelhoffer.de&gt;
+ */
+public class ExecutionEngine {
+
+    private final Function<? super ValueObject, ? extends NodeFunction> functions;
+    private final Executor executor;
+
+    /**
+     * Creates a new engine that uses the common fork/join pool.
+     *
+     * @param functions resolves the function of a node by its value object
+     */
+    public ExecutionEngine(
+            Function<? super ValueObject, ? extends NodeFunction> functions) {
+        this(functions, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a new engine.
+     *
+     * @param functions resolves the function of a node by its value object
+     * @param executor executor used to compute the nodes
+     */
+    public ExecutionEngine(
+            Function<? super ValueObject, ? extends NodeFunction> functions,
+            Executor executor) {
+        this.functions = functions;
+        this.executor = executor;
+    }
+
+    /**
+     * Executes the specified flow and waits for the execution to finish. The
+     * results are published to the receiving connectors (see
+     * {@link ExecutionResult#publish()}) by the calling thread.
+     *
+     * @param flow flow to execute
+     * @return the execution result
+     */
+    public ExecutionResult execute(VFlowModel flow) {
+        ExecutionResult result = executeAsync(flow).join();
+        result.publish();
+        return result;
+    }
+
+    /**
+     * Executes the specified flow. The future is completed by a thread of
+     * the executor. Results are not published to the receiving connectors,
+     * i.e., {@link ExecutionResult#publish()} has to be called by the thread
+     * that modifies the flow.
+     *
+     * @param flow flow to execute
+     * @return a future that is completed with the execution result
+     */
+    public CompletableFuture<ExecutionResult> executeAsync(VFlowModel flow) {
+        FlowSnapshot snapshot = FlowSnapshot.of(flow, false,
+                WorkflowUtil.DATA_FLOW, WorkflowUtil.CONTROL_FLOW);
+
+        return new Execution(snapshot, resolveFunctions(snapshot), null).
+                start();
+    }
+
+    /**
+     * Executes the nodes of the specified snapshot.
+     *
+     * @param snapshot nodes to execute
+     * @param externalInputs input values from nodes outside of the snapshot
+     * (per node index, entries may be {@code null})
+     * @return a future that is completed with the execution result
+     */
+    CompletableFuture<ExecutionResult> executeAsync(FlowSnapshot snapshot,
+            Map<String, Object>[] externalInputs) {
+        return new Execution(snapshot, resolveFunctions(snapshot),
+                externalInputs).start();
+    }
+
+    NodeFunction[] resolveFunctions(FlowSnapshot snapshot) {
+        NodeFunction[] result = new NodeFunction[snapshot.getNodeCount()];
+
+        for (int i = 0; i < result.length; i++) {
+            result[i] = functions.apply(snapshot.getNode(i).getValueObject());
+        }
+
+        return result;
+    }
+
+    /**
+     * State of one execution.
+     */
+    private final class Execution {
+
+        private final FlowSnapshot snapshot;
+        private final NodeFunction[] nodeFunctions;
+        private final Map<String, Object>[] externalInputs;
+        private final boolean[] dataEdges;
+
+        private final AtomicIntegerArray pending;
+        private final AtomicInteger remaining = new AtomicInteger();
+        private final CompletableFuture<ExecutionResult> future
+                = new CompletableFuture<>();
+
+        // written before the pending counters of the receivers are
+        // decremented, i.e., visible to the threads that compute them
+        private final Object[] results;
+        private final Status[] states;
+        private final Throwable[] errors;
+        private final long[] startTimes;
+        private final long[] durations;
+        private final boolean[] upstreamFailed;
+
+        private long startTime;
+
+        Execution(FlowSnapshot snapshot, NodeFunction[] nodeFunctions,
+                Map<String, Object>[] externalInputs) {
+            this.snapshot = snapshot;
+            this.nodeFunctions = nodeFunctions;
+            this.externalInputs = externalInputs;
+
+            int n = snapshot.getNodeCount();
+            int m = snapshot.getConnectionCount();
+
+            dataEdges = new boolean[m];
+
+            for (int e = 0; e < m; e++) {
+                dataEdges[e] = WorkflowUtil.DATA_FLOW.equals(
+                        snapshot.getType(e));
+            }
+
+            int[] inDegrees = new int[n];
+
+            for (int i = 0; i < n; i++) {
+                inDegrees[i] = snapshot.getInDegree(i);
+            }
+
+            pending = new AtomicIntegerArray(inDegrees);
+            results = new Object[n];
+            states = new Status[n];
+            errors = new Throwable[n];
+            startTimes = new long[n];
+            durations = new long[n];
+            upstreamFailed = new boolean[n];
+
+            Arrays.fill(startTimes, -1);
+        }
+
+        CompletableFuture<ExecutionResult> start() {
+            int n = snapshot.getNodeCount();
+
+            // nodes that are part of or depend on cycles never get ready
+            boolean[] schedulable = schedulableNodes(snapshot);
+            int numSchedulable = 0;
+
+            for (int i = 0; i < n; i++) {
+                if (schedulable[i]) {
+                    numSchedulable++;
+                } else {
+                    states[i] = Status.SKIPPED;
+                    errors[i] = new IllegalStateException("Node "
+                            + snapshot.getNode(i).getId()
+                            + " is part of or depends on a cycle.");
+                }
+            }
+
+            remaining.set(numSchedulable);
+            startTime = System.nanoTime();
+
+            if (numSchedulable == 0) {
+                complete();
+                return future;
+            }
+
+            for (int i = 0; i < n; i++) {
+                if (schedulable[i] && snapshot.getInDegree(i) == 0) {
+                    submit(i);
+                }
+            }
+
+            return future;
+        }
+
+        private void submit(int node) {
+            try {
+                executor.execute(() -> run(node));
+            } catch (RejectedExecutionException ex) {
+                future.completeExceptionally(ex);
+            }
+        }
+
+        private void run(int node) {
+            try {
+                if (upstreamFailed[node]) {
+                    states[node] = Status.SKIPPED;
+                } else {
+                    compute(node);
+                }
+            } catch (Throwable tr) {
+                // failures of the value objects are reported as node errors
+                states[node] = Status.FAILED;
+                errors[node] = tr;
+            }
+
+            boolean failed = states[node] != Status.COMPLETED;
+
+            for (int k = 0; k < snapshot.getOutDegree(node); k++) {
+                int r = snapshot.getOutTarget(node, k);
+
+                if (failed) {
+                    upstreamFailed[r] = true;
+                }
+
+                if (pending.decrementAndGet(r) == 0) {
+                    submit(r);
+                }
+            }
+
+            if (remaining.decrementAndGet() == 0) {
+                complete();
+            }
+        }
+
+        private void compute(int node) throws Exception {
+            VNode n = snapshot.getNode(node);
+            Map<String, Object> inputs = inputs(node);
+            NodeFunction f = nodeFunctions[node];
+
+            long t0 = System.nanoTime();
+            startTimes[node] = t0 - startTime;
+
+            try {
+                results[node] = f == null ? null : f.compute(n, inputs);
+                states[node] = Status.COMPLETED;
+            } catch (Exception ex) {
+                states[node] = Status.FAILED;
+                errors[node] = ex;
+                return;
+            } finally {
+                durations[node] = System.nanoTime() - t0;
+            }
+        }
+
+        private Map<String, Object> inputs(int node) {
+            Map<String, Object> result = new LinkedHashMap<>();
+
+            if (externalInputs != null && externalInputs[node] != null) {
+                for (Map.Entry<String, Object> input
+                        : externalInputs[node].entrySet()) {
+                    addInput(result, input.getKey(), input.getValue());
+                }
+            }
+
+            for (int k = 0; k < snapshot.getInDegree(node); k++) {
+                int e = snapshot.getInEdge(node, k);
+
+                if (!dataEdges[e]) {
+                    continue;
+                }
+
+                String key = snapshot.getConnection(e).getReceiver().getLocalId();
+                Object value = results[snapshot.getInTarget(node, k)];
+
+                addInput(result, key, value);
+            }
+
+            return result;
+        }
+
+        private void complete() {
+            future.complete(new ExecutionResult(snapshot, results, states,
+                    errors, startTimes, durations,
+                    System.nanoTime() - startTime));
+        }
+    }
+
+    /**
+     * Returns the nodes that are neither part of nor depend on a cycle.
+     *
+     * @param snapshot snapshot
+     * @return the nodes that are neither part of nor depend on a cycle (per
+     * node index)
+     */
+    static boolean[] schedulableNodes(FlowSnapshot snapshot) {
+        int n = snapshot.getNodeCount();
+        int[] inDegrees = new int[n];
+        boolean[] result = new boolean[n];
+        Deque<Integer> ready = new ArrayDeque<>();
+
+        for (int i = 0; i < n; i++) {
+            inDegrees[i] = snapshot.getInDegree(i);
+            if (inDegrees[i] == 0) {
+                ready.add(i);
+            }
+        }
+
+        while (!ready.isEmpty()) {
+            int i = ready.poll();
+            result[i] = true;
+
+            for (int k = 0; k < snapshot.getOutDegree(i); k++) {
+                int r = snapshot.getOutTarget(i, k);
+                if (--inDegrees[r] == 0) {
+                    ready.add(r);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Adds the specified input value. Values of inputs that are connected to
+     * more than one sender are collected in a list.
+     *
+     * @param inputs inputs
+     * @param key local id of the receiving connector
+     * @param value value to add
+     */
+    @SuppressWarnings("unchecked")
+    static void addInput(Map<String, Object> inputs, String key, Object value) {
+        if (!inputs.containsKey(key)) {
+            inputs.put(key, value);
+        } else {
+            Object prev = inputs.get(key);
+            List<Object> values;
+
+            if (prev instanceof MultipleValues) {
+                values = (List<Object>) prev;
+            } else {
+                values = new MultipleValues();
+                values.add(prev);
+                inputs.put(key, values);
+            }
+
+            values.add(value);
+        }
+    }
+
+    /**
+     * Values of an input that is connected to more than one sender.
+     */
+    private static final class MultipleValues extends ArrayList<Object> {
+
+        private static final long serialVersionUID = 1L;
+    }
+}
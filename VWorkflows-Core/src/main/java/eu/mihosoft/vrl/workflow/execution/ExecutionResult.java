@@ -0,0 +1,245 @@
+/*
+ * Copyright 2012-2016 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * Please cite the following publication(s):
+ *
+ * M. Hoffer, C.Poliwoda, G.Wittum. Visual Reflection Library -
+ * A Framework for Declarative GUI Programming on the Java Platform.
+ * Computing and Visualization in Science, 2011, in press.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vrl.workflow.execution;
+
+import eu.mihosoft.vrl.workflow.Connector;
+import eu.mihosoft.vrl.workflow.FlowSnapshot;
+import eu.mihosoft.vrl.workflow.VNode;
+import eu.mihosoft.vrl.workflow.WorkflowUtil;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The result of an execution, i.e., the results, states and timings of the
+ * nodes of the executed flow.
+ *
+ * @author Michael Hoffer &lt;info@michaelhoffer.de&gt;
+ */
+public final class ExecutionResult {
+
+    /**
+     * Execution status of a node.
+     */
+    public static enum Status {
+
+        /**
+         * The node has been computed successfully.
+         */
+        COMPLETED,
+        /**
+         * The function of the node failed.
+         */
+        FAILED,
+        /**
+         * The node has not been computed because a node it depends on failed
+         * or because it is part of (or depends on) a cycle.
+         */
+        SKIPPED
+    }
+
+    private final FlowSnapshot snapshot;
+    private final Object[] results;
+    private final Status[] states;
+    private final Throwable[] errors;
+    private final long[] startTimes;
+    private final long[] durations;
+    private final long totalDuration;
+
+    ExecutionResult(FlowSnapshot snapshot, Object[] results, Status[] states,
+            Throwable[] errors, long[] startTimes, long[] durations,
+            long totalDuration) {
+        this.snapshot = snapshot;
+        this.results = results;
+        this.states = states;
+        this.errors = errors;
+        this.startTimes = startTimes;
+        this.durations = durations;
+        this.totalDuration = totalDuration;
+    }
+
+    private int index(VNode n) {
+        int result = snapshot.indexOf(n);
+
+        if (result < 0) {
+            throw new IllegalArgumentException(
+                    "Node " + n.getId() + " has not been executed.");
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the snapshot of the flow that has been executed.
+     *
+     * @return the snapshot of the flow that has been executed
+     */
+    public FlowSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Returns the result of the specified node.
+     *
+     * @param n node
+     * @return the result of the specified node or {@code null} if the node
+     * has not been computed successfully
+     */
+    public Object getResult(VNode n) {
+        return results[index(n)];
+    }
+
+    /**
+     * Returns the status of the specified node.
+     *
+     * @param n node
+     * @return the status of the specified node
+     */
+    public Status getStatus(VNode n) {
+        return states[index(n)];
+    }
+
+    /**
+     * Returns the error of the specified node.
+     *
+     * @param n node
+     * @return the error of the specified node or {@code null} if the node
+     * didn't fail
+     */
+    public Throwable getError(VNode n) {
+        return errors[index(n)];
+    }
+
+    /**
+     * Returns the start time of the specified node relative to the start of
+     * the execution.
+     *
+     * @param n node
+     * @return the start time in nanoseconds or {@code -1} if the node has not
+     * been computed
+     */
+    public long getStartTime(VNode n) {
+        return startTimes[index(n)];
+    }
+
+    /**
+     * Returns the time it took to compute the specified node.
+     *
+     * @param n node
+     * @return the duration in nanoseconds ({@code 0} if the node has not been
+     * computed)
+     */
+    public long getDuration(VNode n) {
+        return durations[index(n)];
+    }
+
+    /**
+     * Returns the duration of the whole execution (wall-clock time).
+     *
+     * @return the duration of the whole execution in nanoseconds
+     */
+    public long getTotalDuration() {
+        return totalDuration;
+    }
+
+    /**
+     * Indicates whether all nodes have been computed successfully.
+     *
+     * @return {@code true} if all nodes have been computed successfully;
+     * {@code false} otherwise
+     */
+    public boolean isSuccessful() {
+        for (Status s : states) {
+            if (s != Status.COMPLETED) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the nodes with the specified status.
+     *
+     * @param status status
+     * @return the nodes with the specified status
+     */
+    public List<VNode> getNodes(Status status) {
+        List<VNode> result = new ArrayList<>();
+
+        for (int i = 0; i < states.length; i++) {
+            if (states[i] == status) {
+                result.add(snapshot.getNode(i));
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Assigns the results to the value objects of the receiving connectors of
+     * the data connections. Connectors with more than one sender receive the
+     * list of values (as passed to the node functions). Results of nodes that
+     * have not been computed successfully are not published.
+     *
+     * <p>
+     * <b>Note:</b> this method modifies the flow, i.e., it must be called by
+     * the thread that modifies the flow (usually the JavaFX application
+     * thread).
+     * </p>
+     */
+    public void publish() {
+        Map<String, Object> values = new LinkedHashMap<>();
+        Map<String, Connector> receivers = new LinkedHashMap<>();
+
+        for (int e = 0; e < snapshot.getConnectionCount(); e++) {
+            int s = snapshot.getSender(e);
+
+            if (!WorkflowUtil.DATA_FLOW.equals(snapshot.getType(e))
+                    || states[s] != Status.COMPLETED) {
+                continue;
+            }
+
+            Connector r = snapshot.getConnection(e).getReceiver();
+            receivers.put(r.getId(), r);
+            ExecutionEngine.addInput(values, r.getId(), results[s]);
+        }
+
+        for (Map.Entry<String, Connector> r : receivers.entrySet()) {
+            r.getValue().getValueObject().setValue(values.get(r.getKey()));
+        }
+    }
+}
@@ -0,0 +1,493 @@
+/*
+ * Copyright 2012-2016 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * Please cite the following publication(s):
+ *
+ * M. Hoffer, C.Poliwoda, G.Wittum. Visual Reflection Library -
+ * A Framework for Declarative GUI Programming on the Java Platform.
+ * Computing and Visualization in Science, 2011, in press.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vrl.workflow.execution;
+
+import eu.mihosoft.vrl.workflow.Connection;
+import eu.mihosoft.vrl.workflow.Connections;
+import eu.mihosoft.vrl.workflow.Connector;
+import eu.mihosoft.vrl.workflow.FlowSnapshot;
+import eu.mihosoft.vrl.workflow.VFlowModel;
+import eu.mihosoft.vrl.workflow.VNode;
+import eu.mihosoft.vrl.workflow.ValueObject;
+import eu.mihosoft.vrl.workflow.WorkflowUtil;
+import eu.mihosoft.vrl.workflow.execution.ExecutionResult.Status;
+import javafx.beans.value.ChangeListener;
+import javafx.collections.ListChangeListener;
+import javafx.collections.MapChangeListener;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Recomputes only the parts of a flow that are affected by changes. Nodes
+ * become stale if the value of their value object changes, if they are added
+ * or if their data/control inputs are connected or disconnected. All nodes
+ * that are reachable from a stale node via data or control connections are
+ * stale as well. {@link #recompute()} computes the stale nodes in dependency
+ * order. The inputs from up-to-date nodes are taken from previous results.
+ *
+ * <p>
+ * Initially, all nodes are stale. Nodes whose computation fails (or is
+ * skipped) stay stale. The flow must be modified by one thread (usually the
+ * JavaFX application thread) that also starts the recomputations.
+ * </p>
+ *
+ * @author Michael Hoffer &lt;info@michaelhoffer.de&gt;
+ */
+public final class IncrementalExecution {
+
+    private static final String[] TYPES
+            = {WorkflowUtil.DATA_FLOW, WorkflowUtil.CONTROL_FLOW};
+
+    private final ExecutionEngine engine;
+    private final VFlowModel flow;
+
+    // guarded by this
+    private final Set<VNode> staleNodes = new LinkedHashSet<>();
+    private final Map<VNode, Object> results = new HashMap<>();
+    private boolean running;
+
+    // modified by the flow thread only, guarded by this
+    private final Map<VNode, NodeListeners> nodeListeners = new HashMap<>();
+
+    private final ListChangeListener<VNode> nodesListener = (change) -> {
+        while (change.next()) {
+            if (change.wasRemoved()) {
+                for (VNode n : change.getRemoved()) {
+                    unwatch(n);
+                }
+            }
+            if (change.wasAdded()) {
+                for (VNode n : change.getAddedSubList()) {
+                    watch(n);
+                    markStale(n);
+                }
+            }
+        }
+    };
+
+    private final ListChangeListener<Connection> connectionsListener = (change) -> {
+        while (change.next()) {
+            if (change.wasRemoved()) {
+                for (Connection c : change.getRemoved()) {
+                    markStale(c.getReceiver().getNode());
+                }
+            }
+            if (change.wasAdded()) {
+                for (Connection c : change.getAddedSubList()) {
+                    markStale(c.getReceiver().getNode());
+                }
+            }
+        }
+    };
+
+    private final MapChangeListener<String, Connections> typesListener = (change) -> {
+        if (!isObservedType(change.getKey())) {
+            return;
+        }
+        if (change.wasRemoved()) {
+            unwatch(change.getValueRemoved());
+        }
+        if (change.wasAdded()) {
+            watch(change.getValueAdded());
+        }
+    };
+
+    /**
+     * Listeners of one node (value object and its value).
+     */
+    private final class NodeListeners {
+
+        final VNode node;
+        ValueObject valueObject;
+
+        final ChangeListener<Object> valueListener;
+        final ChangeListener<ValueObject> valueObjectListener;
+
+        NodeListeners(VNode node) {
+            this.node = node;
+
+            valueListener = (ov, oldV, newV) -> markStale(node);
+            valueObjectListener = (ov, oldV, newV) -> {
+                bind(newV);
+                markStale(node);
+            };
+        }
+
+        void bind(ValueObject vObj) {
+            if (valueObject != null) {
+                valueObject.valueProperty().removeListener(valueListener);
+            }
+
+            valueObject = vObj;
+
+            if (valueObject != null) {
+                valueObject.valueProperty().addListener(valueListener);
+            }
+        }
+
+        void attach() {
+            node.valueObjectProperty().addListener(valueObjectListener);
+            bind(node.getValueObject());
+        }
+
+        void detach() {
+            node.valueObjectProperty().removeListener(valueObjectListener);
+            bind(null);
+        }
+    }
+
+    /**
+     * Creates a new incremental execution of the specified flow.
+     *
+     * @param engine engine used to compute stale nodes
+     * @param flow flow to observe
+     */
+    public IncrementalExecution(ExecutionEngine engine, VFlowModel flow) {
+        this.engine = engine;
+        this.flow = flow;
+
+        for (VNode n : flow.getNodes()) {
+            watch(n);
+        }
+
+        synchronized (this) {
+            staleNodes.addAll(flow.getNodes());
+        }
+
+        flow.getNodes().addListener(nodesListener);
+
+        // we don't use getConnections(type) since it creates missing types
+        flow.getAllConnections().addListener(typesListener);
+
+        for (String type : TYPES) {
+            Connections cns = flow.getAllConnections().get(type);
+
+            if (cns != null) {
+                cns.getConnections().addListener(connectionsListener);
+            }
+        }
+    }
+
+    /**
+     * Stops observing the flow.
+     */
+    public void dispose() {
+        flow.getNodes().removeListener(nodesListener);
+        flow.getAllConnections().removeListener(typesListener);
+
+        for (String type : TYPES) {
+            Connections cns = flow.getAllConnections().get(type);
+
+            if (cns != null) {
+                cns.getConnections().removeListener(connectionsListener);
+            }
+        }
+
+        List<NodeListeners> listeners;
+
+        synchronized (this) {
+            listeners = new ArrayList<>(nodeListeners.values());
+            nodeListeners.clear();
+        }
+
+        for (NodeListeners l : listeners) {
+            l.detach();
+        }
+    }
+
+    private void watch(VNode n) {
+        if (!nodeListeners.containsKey(n)) {
+            NodeListeners l = new NodeListeners(n);
+            synchronized (this) {
+                nodeListeners.put(n, l);
+            }
+            l.attach();
+        }
+    }
+
+    /**
+     * Observes connections of an observed type that have been added to the
+     * flow. Receivers of existing connections become stale.
+     *
+     * @param cns connections
+     */
+    private void watch(Connections cns) {
+        cns.getConnections().addListener(connectionsListener);
+
+        for (Connection c : cns.getConnections()) {
+            markStale(c.getReceiver().getNode());
+        }
+    }
+
+    /**
+     * Stops observing connections of an observed type that have been
+     * removed from the flow. Receivers of these connections become stale.
+     *
+     * @param cns connections
+     */
+    private void unwatch(Connections cns) {
+        cns.getConnections().removeListener(connectionsListener);
+
+        for (Connection c : cns.getConnections()) {
+            markStale(c.getReceiver().getNode());
+        }
+    }
+
+    private void unwatch(VNode n) {
+        NodeListeners l;
+
+        synchronized (this) {
+            l = nodeListeners.remove(n);
+            staleNodes.remove(n);
+            results.remove(n);
+        }
+
+        if (l != null) {
+            l.detach();
+        }
+    }
+
+    /**
+     * Marks the specified node and all nodes that depend on it as stale.
+     *
+     * @param n node
+     */
+    public void markStale(VNode n) {
+        if (n == null || !nodeListeners.containsKey(n)) {
+            return;
+        }
+
+        Deque<VNode> stack = new ArrayDeque<>();
+        stack.push(n);
+
+        synchronized (this) {
+            while (!stack.isEmpty()) {
+                VNode current = stack.pop();
+
+                // nodes that depend on a stale node are stale as well,
+                // i.e., we don't have to visit them again
+                if (!staleNodes.add(current)) {
+                    continue;
+                }
+
+                for (VNode r : receivers(current)) {
+                    if (!staleNodes.contains(r)) {
+                        stack.push(r);
+                    }
+                }
+            }
+        }
+    }
+
+    private List<VNode> receivers(VNode n) {
+        List<VNode> result = new ArrayList<>();
+
+        for (Connector c : n.getOutputs()) {
+            Connections cns = flow.getAllConnections().get(c.getType());
+
+            if (cns == null || !isObservedType(c.getType())) {
+                continue;
+            }
+
+            for (Connection conn : cns.getAllWith(c)) {
+                if (conn.getSender() == c
+                        && nodeListeners.containsKey(conn.getReceiver().getNode())) {
+                    result.add(conn.getReceiver().getNode());
+                }
+            }
+        }
+
+        return result;
+    }
+
+    private static boolean isObservedType(String type) {
+        for (String t : TYPES) {
+            if (t.equals(type)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Indicates whether the specified node is stale.
+     *
+     * @param n node
+     * @return {@code true} if the specified node is stale; {@code false}
+     * otherwise
+     */
+    public synchronized boolean isStale(VNode n) {
+        return staleNodes.contains(n);
+    }
+
+    /**
+     * Returns the stale nodes.
+     *
+     * @return the stale nodes (copy)
+     */
+    public synchronized Set<VNode> getStaleNodes() {
+        return Collections.unmodifiableSet(new LinkedHashSet<>(staleNodes));
+    }
+
+    /**
+     * Returns the most recent result of the specified node.
+     *
+     * @param n node
+     * @return the most recent result of the specified node or {@code null} if
+     * the node has not been computed
+     */
+    public synchronized Object getResult(VNode n) {
+        return results.get(n);
+    }
+
+    /**
+     * Recomputes the stale nodes and waits for the computation to finish.
+     *
+     * @return the result of the stale nodes
+     */
+    public ExecutionResult recompute() {
+        return recomputeAsync().join();
+    }
+
+    /**
+     * Recomputes the stale nodes.
+     *
+     * @return a future that is completed with the result of the stale nodes
+     * @throws IllegalStateException if a recomputation is in progress
+     */
+    @SuppressWarnings("unchecked")
+    public CompletableFuture<ExecutionResult> recomputeAsync() {
+        List<VNode> nodes;
+        FlowSnapshot snapshot;
+        Map<String, Object>[] externalInputs;
+
+        synchronized (this) {
+            if (running) {
+                throw new IllegalStateException(
+                        "A recomputation is already in progress.");
+            }
+
+            nodes = new ArrayList<>(staleNodes);
+
+            snapshot = FlowSnapshot.of(nodes, TYPES);
+            externalInputs = new Map[nodes.size()];
+
+            // inputs from up-to-date nodes
+            for (int i = 0; i < nodes.size(); i++) {
+                externalInputs[i] = externalInputs(snapshot, nodes.get(i));
+            }
+
+            staleNodes.clear();
+            running = true;
+        }
+
+        try {
+            return engine.executeAsync(snapshot, externalInputs).
+                    whenComplete((result, ex) -> completed(snapshot, result));
+        } catch (RuntimeException | Error ex) {
+            // the computation has not been started
+            synchronized (this) {
+                running = false;
+
+                for (VNode n : nodes) {
+                    if (nodeListeners.containsKey(n)) {
+                        staleNodes.add(n);
+                    }
+                }
+            }
+
+            throw ex;
+        }
+    }
+
+    private Map<String, Object> externalInputs(FlowSnapshot snapshot,
+            VNode n) {
+        Connections cns = flow.getAllConnections().get(WorkflowUtil.DATA_FLOW);
+
+        if (cns == null) {
+            return null;
+        }
+
+        Map<String, Object> result = null;
+
+        for (Connection c : cns.getAllWithNode(n)) {
+            VNode sender = c.getSender().getNode();
+
+            if (c.getReceiver().getNode() != n
+                    || snapshot.indexOf(sender) >= 0) {
+                continue;
+            }
+
+            if (result == null) {
+                result = new LinkedHashMap<>();
+            }
+
+            ExecutionEngine.addInput(result, c.getReceiver().getLocalId(),
+                    results.get(sender));
+        }
+
+        return result;
+    }
+
+    private synchronized void completed(FlowSnapshot snapshot,
+            ExecutionResult result) {
+        running = false;
+
+        for (int i = 0; i < snapshot.getNodeCount(); i++) {
+            VNode n = snapshot.getNode(i);
+
+            // removed while computing
+            if (!nodeListeners.containsKey(n)) {
+                continue;
+            }
+
+            if (result != null && result.getStatus(n) == Status.COMPLETED) {
+                results.put(n, result.getResult(n));
+            } else {
+                staleNodes.add(n);
+            }
+        }
+    }
+}
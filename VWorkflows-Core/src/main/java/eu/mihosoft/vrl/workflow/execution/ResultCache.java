@@ -0,0 +1,625 @@
+/*
+ * Copyright 2012-2016 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * Please cite the following publication(s):
+ *
+ * M. Hoffer, C.Poliwoda, G.Wittum. Visual Reflection Library -
+ * A Framework for Declarative GUI Programming on the Java Platform.
+ * Computing and Visualization in Science, 2011, in press.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vrl.workflow.execution;
+
+import eu.mihosoft.vrl.workflow.ValueObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Memoizes node results. Results are keyed by node id and a content digest
+ * (SHA-256) of the node value and the node inputs, i.e., a node function is
+ * only invoked if it has not been invoked with an equal value and equal
+ * inputs before. The digest is computed from the serialized form of the node
+ * value (see {@link ValueObject#getValue()}) and the inputs (ordered by
+ * connector id). Neither is kept. Inputs that are not serializable are not
+ * memoized, i.e., the function is invoked each time. Node values that are
+ * not serializable (e.g. the node function itself) are not part of the
+ * digest.
+ *
+ * <p>
+ * The most recently used results are kept in memory. Results that are
+ * evicted from memory are written to the spill directory (if specified and
+ * if the result is serializable). Each node has its own subdirectory, files
+ * are named by digest. Spilled results can therefore be reused by other
+ * cache instances and JVM runs. Only primitives, strings, boxed values,
+ * {@code java.math} numbers, arrays and the common {@code java.util}
+ * collections of these are read from spill files by default. Other result
+ * classes have to be allowed explicitly (see
+ * {@link #ResultCache(int, java.nio.file.Path, java.util.function.Predicate)}).
+ * Spilled results of other classes are ignored, i.e., the function is
+ * invoked again.
+ * </p>
+ *
+ * <p>
+ * Memoization is only valid for pure node functions. If a node function
+ * changes or if it depends on a node value that is not serializable, the
+ * results of the node must be invalidated via
+ * {@link #invalidate(java.lang.String)} whenever this value changes.
+ * </p>
+ *
+ * @author Michael Hoffer &lt;info@michaelhoffer.de&gt;
+ */
+public final class ResultCache {
+
+    private final int capacity;
+    private final Path spillDirectory;
+    private final Predicate<? super Class<?>> allowedClasses;
+
+    // guarded by this
+    private final LinkedHashMap<Key, Object> entries
+            = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Cache key (node id and input digest).
+     */
+    private static final class Key {
+
+        final String nodeId;
+        final byte[] digest;
+        final int hash;
+
+        Key(String nodeId, byte[] digest) {
+            this.nodeId = nodeId;
+            this.digest = digest;
+            this.hash = 31 * nodeId.hashCode() + Arrays.hashCode(digest);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return hash == other.hash
+                    && nodeId.equals(other.nodeId)
+                    && Arrays.equals(digest, other.digest);
+        }
+    }
+
+    /**
+     * Classes that can always be read from spill files (in addition to
+     * primitives, arrays, boxed values and {@code java.math} numbers).
+     */
+    private static final Set<Class<?>> SAFE_CLASSES = new HashSet<>(
+            Arrays.<Class<?>>asList(String.class, Boolean.class,
+                    Character.class, NullResult.class,
+                    ArrayList.class, LinkedList.class, ArrayDeque.class,
+                    HashMap.class, LinkedHashMap.class, TreeMap.class,
+                    HashSet.class, LinkedHashSet.class, TreeSet.class,
+                    Collections.emptyList().getClass(),
+                    Collections.emptyMap().getClass(),
+                    Collections.emptySet().getClass(),
+                    Collections.singletonList(null).getClass(),
+                    Collections.singletonMap(null, null).getClass(),
+                    Collections.singleton(null).getClass(),
+                    Arrays.asList().getClass()));
+
+    private static boolean isSafe(Class<?> cls) {
+        return cls.isPrimitive()
+                || SAFE_CLASSES.contains(cls)
+                // boxed values, atomics and java.math numbers
+                || (Number.class.isAssignableFrom(cls)
+                && cls.getName().startsWith("java."));
+    }
+
+    /**
+     * Object input stream that only resolves allowed classes.
+     */
+    private final class SpillInputStream extends ObjectInputStream {
+
+        SpillInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc)
+                throws IOException, ClassNotFoundException {
+            Class<?> cls = super.resolveClass(desc);
+
+            Class<?> component = cls;
+
+            while (component.isArray()) {
+                component = component.getComponentType();
+            }
+
+            if (!isSafe(component) && (allowedClasses == null
+                    || !allowedClasses.test(component))) {
+                throw new InvalidClassException(desc.getName(),
+                        "Class not allowed in spill files");
+            }
+
+            return cls;
+        }
+
+        @Override
+        protected Class<?> resolveProxyClass(String[] interfaces)
+                throws IOException {
+            throw new InvalidClassException("Proxy",
+                    "Proxies are not allowed in spill files");
+        }
+    }
+
+    /**
+     * Returns the content digest of the specified node value and inputs.
+     *
+     * @param value node value (only digested if it is serializable)
+     * @param inputs node inputs
+     * @return the content digest of the specified value and inputs or
+     * {@code null} if the inputs are not serializable
+     */
+    static byte[] digest(Object value, Map<String, Object> inputs) {
+        MessageDigest md;
+
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            // every java platform supports SHA-256
+            throw new IllegalStateException(ex);
+        }
+
+        // only the digest is needed
+        OutputStream discard = new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        };
+
+        try (ObjectOutputStream out = new ObjectOutputStream(
+                new DigestOutputStream(discard, md))) {
+            // values that are not serializable are usually the node
+            // function itself (see class documentation)
+            if (value == null || value instanceof Serializable) {
+                out.writeBoolean(true);
+                out.writeObject(value);
+            } else {
+                out.writeBoolean(false);
+            }
+
+            // independent of the order of the input map
+            for (Map.Entry<String, Object> input
+                    : new TreeMap<>(inputs).entrySet()) {
+                out.writeUTF(input.getKey());
+                out.writeObject(input.getValue());
+            }
+        } catch (NotSerializableException ex) {
+            return null;
+        } catch (IOException ex) {
+            // the stream doesn't fail, custom serialization might
+            Logger.getLogger(ResultCache.class.getName()).
+                    log(Level.WARNING, "Cannot digest inputs", ex);
+            return null;
+        }
+
+        return md.digest();
+    }
+
+    /**
+     * Creates a new in-memory result cache.
+     *
+     * @param capacity maximum number of results kept in memory
+     */
+    public ResultCache(int capacity) {
+        this(capacity, null, null);
+    }
+
+    /**
+     * Creates a new result cache.
+     *
+     * @param capacity maximum number of results kept in memory
+     * @param spillDirectory directory for results that are evicted from
+     * memory (may be {@code null})
+     */
+    public ResultCache(int capacity, Path spillDirectory) {
+        this(capacity, spillDirectory, null);
+    }
+
+    /**
+     * Creates a new result cache. Spilled results are only read if all of
+     * their classes are allowed. Primitives, strings, boxed values,
+     * {@code java.math} numbers, arrays and the common {@code java.util}
+     * collections are always allowed. Spill files may be written by other
+     * processes, i.e., the specified predicate must not accept classes whose
+     * deserialization has side effects.
+     *
+     * @param capacity maximum number of results kept in memory
+     * @param spillDirectory directory for results that are evicted from
+     * memory (may be {@code null})
+     * @param allowedClasses additional classes that may be read from spill
+     * files (arrays are checked by component type, may be {@code null})
+     */
+    public ResultCache(int capacity, Path spillDirectory,
+            Predicate<? super Class<?>> allowedClasses) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException(
+                    "Capacity must not be negative: " + capacity);
+        }
+
+        this.capacity = capacity;
+        this.spillDirectory = spillDirectory;
+        this.allowedClasses = allowedClasses;
+
+        if (spillDirectory != null) {
+            try {
+                Files.createDirectories(spillDirectory);
+            } catch (IOException ex) {
+                throw new IllegalArgumentException(
+                        "Cannot create spill directory: " + spillDirectory, ex);
+            }
+        }
+    }
+
+    /**
+     * Returns a function that memoizes the results of the specified function.
+     *
+     * @param function function to memoize
+     * @return memoizing function
+     */
+    public NodeFunction memoize(NodeFunction function) {
+        Objects.requireNonNull(function);
+
+        return (node, inputs) -> {
+            byte[] digest = digest(node.getValueObject().getValue(), inputs);
+
+            if (digest == null) {
+                misses.incrementAndGet();
+                return function.compute(node, inputs);
+            }
+
+            Key key = new Key(node.getId(), digest);
+
+            Object result = get(key);
+
+            if (result != null) {
+                hits.incrementAndGet();
+                return result == NULL ? null : result;
+            }
+
+            misses.incrementAndGet();
+
+            result = function.compute(node, inputs);
+
+            put(key, result == null ? NULL : result);
+
+            return result;
+        };
+    }
+
+    /**
+     * Returns a resolver that memoizes the functions returned by the
+     * specified resolver. It can be passed to an {@link ExecutionEngine}.
+     *
+     * @param resolver resolver to memoize
+     * @return memoizing resolver
+     */
+    public Function<ValueObject, NodeFunction> memoizeAll(
+            Function<? super ValueObject, ? extends NodeFunction> resolver) {
+        Objects.requireNonNull(resolver);
+
+        return (vObj) -> {
+            NodeFunction f = resolver.apply(vObj);
+            return f == null ? null : memoize(f);
+        };
+    }
+
+    /**
+     * Placeholder for {@code null} results.
+     */
+    private static final Object NULL = new NullResult();
+
+    private static final class NullResult implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private Object readResolve() {
+            return NULL;
+        }
+    }
+
+    private Object get(Key key) {
+        synchronized (this) {
+            Object result = entries.get(key);
+
+            if (result != null || spillDirectory == null) {
+                return result;
+            }
+        }
+
+        Object result = read(key);
+
+        if (result != null) {
+            put(key, result);
+        }
+
+        return result;
+    }
+
+    private void put(Key key, Object result) {
+        List<Map.Entry<Key, Object>> evicted = new ArrayList<>();
+
+        synchronized (this) {
+            entries.put(key, result);
+
+            while (entries.size() > capacity) {
+                Map.Entry<Key, Object> eldest
+                        = entries.entrySet().iterator().next();
+                evicted.add(eldest);
+                entries.remove(eldest.getKey());
+            }
+        }
+
+        if (spillDirectory != null) {
+            // we write outside of the lock to keep workers running
+            for (Map.Entry<Key, Object> e : evicted) {
+                write(e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    /**
+     * Returns the spill directory of the specified node. Characters other
+     * than letters, digits and '-' are escaped, i.e., different ids are
+     * mapped to different directories.
+     *
+     * @param nodeId node id
+     * @return the spill directory of the specified node
+     */
+    private Path directory(String nodeId) {
+        StringBuilder name = new StringBuilder("node-");
+
+        for (char c : nodeId.toCharArray()) {
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+                    || (c >= '0' && c <= '9') || c == '-') {
+                name.append(c);
+            } else {
+                name.append('_').append(String.format("%04x", (int) c));
+            }
+        }
+
+        return spillDirectory.resolve(name.toString());
+    }
+
+    private Path file(Key key) {
+        StringBuilder name = new StringBuilder();
+
+        for (byte b : key.digest) {
+            name.append(String.format("%02x", b & 0xff));
+        }
+
+        return directory(key.nodeId).resolve(name + ".result");
+    }
+
+    private Object read(Key key) {
+        Path file = file(key);
+
+        try (InputStream in = Files.newInputStream(file);
+                ObjectInputStream objIn = new SpillInputStream(in)) {
+            String storedId = objIn.readUTF();
+            byte[] storedDigest = (byte[]) objIn.readObject();
+
+            if (!key.equals(new Key(storedId, storedDigest))) {
+                return null;
+            }
+
+            return objIn.readObject();
+        } catch (NoSuchFileException ex) {
+            return null;
+        } catch (IOException | ClassNotFoundException | ClassCastException ex) {
+            Logger.getLogger(ResultCache.class.getName()).
+                    log(Level.WARNING, "Cannot read cached result: " + file, ex);
+            return null;
+        }
+    }
+
+    private void write(Key key, Object result) {
+        Path file = file(key);
+
+        try {
+            Files.createDirectories(file.getParent());
+            Path tmp = Files.createTempFile(file.getParent(), "result", ".tmp");
+
+            try (OutputStream out = Files.newOutputStream(tmp);
+                    ObjectOutputStream objOut = new ObjectOutputStream(out)) {
+                objOut.writeUTF(key.nodeId);
+                objOut.writeObject(key.digest);
+                objOut.writeObject(result);
+            } catch (NotSerializableException ex) {
+                // the result cannot be spilled, we just forget it
+                Files.deleteIfExists(tmp);
+                return;
+            } catch (IOException ex) {
+                Files.deleteIfExists(tmp);
+                throw ex;
+            }
+
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException ex) {
+            Logger.getLogger(ResultCache.class.getName()).
+                    log(Level.WARNING, "Cannot spill result: " + file, ex);
+        }
+    }
+
+    /**
+     * Removes all results of the specified node.
+     *
+     * @param nodeId node id
+     */
+    public void invalidate(String nodeId) {
+        synchronized (this) {
+            entries.keySet().removeIf(k -> k.nodeId.equals(nodeId));
+        }
+
+        if (spillDirectory != null) {
+            deleteResults(directory(nodeId));
+        }
+    }
+
+    /**
+     * Removes all results (including spilled results).
+     */
+    public void clear() {
+        synchronized (this) {
+            entries.clear();
+        }
+
+        if (spillDirectory != null) {
+            try (DirectoryStream<Path> dirs = Files.newDirectoryStream(
+                    spillDirectory, "node-*")) {
+                for (Path dir : dirs) {
+                    deleteResults(dir);
+                }
+            } catch (IOException ex) {
+                Logger.getLogger(ResultCache.class.getName()).
+                        log(Level.WARNING, "Cannot delete cached results", ex);
+            }
+        }
+    }
+
+    /**
+     * Deletes the spilled results in the specified node directory and the
+     * directory itself (if it is empty afterwards).
+     *
+     * @param dir node directory
+     */
+    private void deleteResults(Path dir) {
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+
+        try {
+            try (DirectoryStream<Path> files
+                    = Files.newDirectoryStream(dir, "*.result")) {
+                for (Path p : files) {
+                    Files.deleteIfExists(p);
+                }
+            }
+
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+                if (!files.iterator().hasNext()) {
+                    Files.deleteIfExists(dir);
+                }
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(ResultCache.class.getName()).
+                    log(Level.WARNING, "Cannot delete cached results: " + dir,
+                            ex);
+        }
+    }
+
+    /**
+     * Returns the number of results kept in memory.
+     *
+     * @return the number of results kept in memory
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the number of cache hits.
+     *
+     * @return the number of cache hits
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of cache misses.
+     *
+     * @return the number of cache misses
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Resets hit and miss counters.
+     */
+    public void resetStatistics() {
+        hits.set(0);
+        misses.set(0);
+    }
+}
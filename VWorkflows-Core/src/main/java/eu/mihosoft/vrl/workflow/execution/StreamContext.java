@@ -0,0 +1,86 @@
+/*
+ * Copyright 2012-2016 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * Please cite the following publication(s):
+ *
+ * M. Hoffer, C.Poliwoda, G.Wittum. Visual Reflection Library -
+ * A Framework for Declarative GUI Programming on the Java Platform.
+ * Computing and Visualization in Science, 2011, in press.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vrl.workflow.execution;
+
+import java.util.List;
+
+/**
+ * Connects a {@link StreamStage} to the queues of its data connections. Each
+ * data connection is a bounded queue of batches. If a queue is full, the
+ * sender blocks until the receiver has taken a batch (backpressure).
+ *
+ * @author Michael Hoffer &lt;info@michaelhoffer.de&gt;
+ */
+public interface StreamContext {
+
+    /**
+     * Returns the next batch of any input. Inputs are served round robin.
+     * Blocks until a batch is available.
+     *
+     * @return the next batch or {@code null} if all senders are done
+     * @throws InterruptedException if the execution has been cancelled
+     */
+    public StreamBatch next() throws InterruptedException;
+
+    /**
+     * Emits the specified records to all data outputs. The list must not be
+     * modified after it has been emitted. Empty batches are ignored.
+     *
+     * @param records records to emit
+     * @throws InterruptedException if the execution has been cancelled
+     */
+    public void emit(List<?> records) throws InterruptedException;
+
+    /**
+     * Emits the specified records to the specified data output. The list
+     * must not be modified after it has been emitted. Empty batches are
+     * ignored.
+     *
+     * @param output local id of the output connector
+     * @param records records to emit
+     * @throws InterruptedException if the execution has been cancelled
+     */
+    public void emit(String output, List<?> records)
+            throws InterruptedException;
+
+    /**
+     * Indicates whether any receiver still accepts batches. Sources may use
+     * this to stop producing records that nobody consumes.
+     *
+     * @return {@code true} if a receiver still accepts batches;
+     * {@code false} if all receivers are done or the execution has been
+     * cancelled
+     */
+    public boolean isOpen();
+}
@@ -0,0 +1,475 @@
+/*
+ * Copyright 2012-2016 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * Please cite the following publication(s):
+ *
+ * M. Hoffer, C.Poliwoda, G.Wittum. Visual Reflection Library -
+ * A Framework for Declarative GUI Programming on the Java Platform.
+ * Computing and Visualization in Science, 2011, in press.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vrl.workflow.execution;
+
+import eu.mihosoft.vrl.workflow.Connection;
+import eu.mihosoft.vrl.workflow.FlowSnapshot;
+import eu.mihosoft.vrl.workflow.VFlowModel;
+import eu.mihosoft.vrl.workflow.VNode;
+import eu.mihosoft.vrl.workflow.ValueObject;
+import eu.mihosoft.vrl.workflow.WorkflowUtil;
+import eu.mihosoft.vrl.workflow.execution.ExecutionResult.Status;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Function;
+
+/**
+ * Executes flows as pipelines. Each node is a long-lived {@link StreamStage}
+ * and each data connection is a bounded queue of batches. All stages run
+ * concurrently. If a receiver is slower than its sender, the queue fills up
+ * and the sender blocks, i.e., backpressure propagates upstream and the
+ * memory consumption is bounded by the queue capacity (and the batch size).
+ *
+ * <p>
+ * Stages are resolved via the value objects of the nodes. Nodes without a
+ * stage forward their input batches to all outputs. Nodes that are part of
+ * or depend on a cycle are skipped. If a stage fails, the execution is
+ * cancelled, i.e., the remaining stages are interrupted.
+ * </p>
+ *
+ * <p>
+ * <b>Note:</b> each stage occupies a thread until it is done. Executors must
+ * therefore provide at least one thread per node.
+ * </p>
+ *
+ * @author Michael Hoffer &lt;info@michaelhoffer.de&gt;
+ */
+public class StreamingEngine {
+
+    /**
+     * Marks the end of a stream.
+     */
+    private static final Object END = new Object();
+
+    private final Function<? super ValueObject, ? extends StreamStage> stages;
+    private final int queueCapacity;
+    private final Executor executor;
+
+    /**
+     * Creates a new engine that runs each stage in a new daemon thread.
+     *
+     * @param stages resolves the stage of a node by its value object
+     * @param queueCapacity maximum number of batches per connection
+     */
+    public StreamingEngine(
+            Function<? super ValueObject, ? extends StreamStage> stages,
+            int queueCapacity) {
+        this(stages, queueCapacity, (r) -> {
+            Thread t = new Thread(r, "vworkflows-stream-stage");
+            t.setDaemon(true);
+            t.start();
+        });
+    }
+
+    /**
+     * Creates a new engine.
+     *
+     * @param stages resolves the stage of a node by its value object
+     * @param queueCapacity maximum number of batches per connection
+     * @param executor executor used to run the stages (must provide one
+     * thread per node)
+     */
+    public StreamingEngine(
+            Function<? super ValueObject, ? extends StreamStage> stages,
+            int queueCapacity, Executor executor) {
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException(
+                    "Queue capacity must be positive: " + queueCapacity);
+        }
+
+        this.stages = stages;
+        this.queueCapacity = queueCapacity;
+        this.executor = executor;
+    }
+
+    /**
+     * Executes the specified flow and waits for all stages to finish.
+     *
+     * @param flow flow to execute
+     * @return the execution result (stage results and states)
+     */
+    public ExecutionResult execute(VFlowModel flow) {
+        return executeAsync(flow).join();
+    }
+
+    /**
+     * Executes the specified flow.
+     *
+     * @param flow flow to execute
+     * @return a future that is completed when all stages are finished
+     */
+    public CompletableFuture<ExecutionResult> executeAsync(VFlowModel flow) {
+        FlowSnapshot snapshot = FlowSnapshot.of(flow, false,
+                WorkflowUtil.DATA_FLOW);
+
+        StreamStage[] nodeStages = new StreamStage[snapshot.getNodeCount()];
+
+        for (int i = 0; i < nodeStages.length; i++) {
+            nodeStages[i] = stages.apply(snapshot.getNode(i).getValueObject());
+        }
+
+        return new Run(snapshot, nodeStages).start();
+    }
+
+    /**
+     * State of one execution.
+     */
+    private final class Run {
+
+        private final FlowSnapshot snapshot;
+        private final StreamStage[] nodeStages;
+
+        // per connection, null if the receiver is skipped
+        private final BlockingQueue<Object>[] queues;
+        // connections whose receiver is done (1) or not (0)
+        private final AtomicIntegerArray closed;
+        // number of batches available per receiver
+        private final Semaphore[] available;
+
+        private final Object[] results;
+        private final Status[] states;
+        private final Throwable[] errors;
+        private final long[] startTimes;
+        private final long[] durations;
+
+        // guarded by this
+        private final Thread[] threads;
+        private boolean cancelled;
+
+        private final AtomicInteger remaining = new AtomicInteger();
+        private final CompletableFuture<ExecutionResult> future
+                = new CompletableFuture<>();
+
+        private long startTime;
+
+        @SuppressWarnings("unchecked")
+        Run(FlowSnapshot snapshot, StreamStage[] nodeStages) {
+            this.snapshot = snapshot;
+            this.nodeStages = nodeStages;
+
+            int n = snapshot.getNodeCount();
+
+            queues = new BlockingQueue[snapshot.getConnectionCount()];
+            closed = new AtomicIntegerArray(snapshot.getConnectionCount());
+            available = new Semaphore[n];
+            results = new Object[n];
+            states = new Status[n];
+            errors = new Throwable[n];
+            startTimes = new long[n];
+            durations = new long[n];
+            threads = new Thread[n];
+
+            Arrays.fill(startTimes, -1);
+        }
+
+        CompletableFuture<ExecutionResult> start() {
+            int n = snapshot.getNodeCount();
+
+            // cycles would never terminate
+            boolean[] schedulable = ExecutionEngine.schedulableNodes(snapshot);
+            int numSchedulable = 0;
+
+            for (int i = 0; i < n; i++) {
+                if (schedulable[i]) {
+                    numSchedulable++;
+                    available[i] = new Semaphore(0);
+
+                    for (int k = 0; k < snapshot.getInDegree(i); k++) {
+                        queues[snapshot.getInEdge(i, k)]
+                                = new ArrayBlockingQueue<>(queueCapacity);
+                    }
+                } else {
+                    states[i] = Status.SKIPPED;
+                    errors[i] = new IllegalStateException("Node "
+                            + snapshot.getNode(i).getId()
+                            + " is part of or depends on a cycle.");
+                }
+            }
+
+            remaining.set(numSchedulable);
+            startTime = System.nanoTime();
+
+            if (numSchedulable == 0) {
+                complete();
+                return future;
+            }
+
+            for (int i = 0; i < n; i++) {
+                if (schedulable[i]) {
+                    int node = i;
+                    try {
+                        executor.execute(() -> run(node));
+                    } catch (RejectedExecutionException ex) {
+                        cancel();
+                        future.completeExceptionally(ex);
+                        break;
+                    }
+                }
+            }
+
+            return future;
+        }
+
+        private void run(int node) {
+            synchronized (this) {
+                threads[node] = Thread.currentThread();
+            }
+
+            long t0 = System.nanoTime();
+            startTimes[node] = t0 - startTime;
+
+            Context context = new Context(node);
+
+            try {
+                if (isCancelled()) {
+                    throw new InterruptedException();
+                }
+
+                StreamStage stage = nodeStages[node];
+
+                if (stage == null) {
+                    StreamBatch batch;
+                    while ((batch = context.next()) != null) {
+                        context.emit(batch.getRecords());
+                    }
+                } else {
+                    results[node] = stage.process(
+                            snapshot.getNode(node), context);
+                }
+
+                states[node] = Status.COMPLETED;
+                context.closeOutputs();
+            } catch (InterruptedException ex) {
+                if (isCancelled()) {
+                    states[node] = Status.SKIPPED;
+                    errors[node] = new CancellationException(
+                            "Execution has been cancelled.");
+                } else {
+                    states[node] = Status.FAILED;
+                    errors[node] = ex;
+                    cancel();
+                }
+            } catch (Throwable tr) {
+                states[node] = Status.FAILED;
+                errors[node] = tr;
+                cancel();
+            } finally {
+                durations[node] = System.nanoTime() - t0;
+
+                // senders must not block if we stopped early
+                context.closeInputs();
+
+                synchronized (this) {
+                    threads[node] = null;
+                    // don't leak the cancellation into pooled threads
+                    Thread.interrupted();
+                }
+            }
+
+            if (remaining.decrementAndGet() == 0) {
+                complete();
+            }
+        }
+
+        private synchronized boolean isCancelled() {
+            return cancelled;
+        }
+
+        private synchronized void cancel() {
+            if (cancelled) {
+                return;
+            }
+
+            cancelled = true;
+
+            Thread current = Thread.currentThread();
+
+            for (Thread t : threads) {
+                if (t != null && t != current) {
+                    t.interrupt();
+                }
+            }
+        }
+
+        private void complete() {
+            future.complete(new ExecutionResult(snapshot, results, states,
+                    errors, startTimes, durations,
+                    System.nanoTime() - startTime));
+        }
+
+        /**
+         * Context of one stage.
+         */
+        private final class Context implements StreamContext {
+
+            private final int node;
+            private final boolean[] open;
+            private int numOpen;
+            private int nextInput;
+
+            Context(int node) {
+                this.node = node;
+
+                int inDegree = snapshot.getInDegree(node);
+
+                open = new boolean[inDegree];
+                Arrays.fill(open, true);
+                numOpen = inDegree;
+            }
+
+            @Override
+            public StreamBatch next() throws InterruptedException {
+                while (numOpen > 0) {
+                    // one permit per batch or end of stream
+                    available[node].acquire();
+
+                    int inDegree = open.length;
+
+                    for (int j = 0; j < inDegree; j++) {
+                        int k = (nextInput + j) % inDegree;
+
+                        if (!open[k]) {
+                            continue;
+                        }
+
+                        int e = snapshot.getInEdge(node, k);
+                        Object item = queues[e].poll();
+
+                        if (item == null) {
+                            continue;
+                        }
+
+                        nextInput = k + 1;
+
+                        if (item == END) {
+                            open[k] = false;
+                            numOpen--;
+                            break;
+                        }
+
+                        return new StreamBatch(
+                                snapshot.getConnection(e), (List<?>) item);
+                    }
+                }
+
+                return null;
+            }
+
+            @Override
+            public void emit(List<?> records) throws InterruptedException {
+                emit(null, records);
+            }
+
+            @Override
+            public void emit(String output, List<?> records)
+                    throws InterruptedException {
+                // emit doesn't block if all receivers are done
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+
+                if (records.isEmpty()) {
+                    return;
+                }
+
+                List<?> batch = Collections.unmodifiableList(records);
+
+                for (int k = 0; k < snapshot.getOutDegree(node); k++) {
+                    int e = snapshot.getOutEdge(node, k);
+                    Connection c = snapshot.getConnection(e);
+
+                    if (output == null
+                            || output.equals(c.getSender().getLocalId())) {
+                        put(e, snapshot.getOutTarget(node, k), batch);
+                    }
+                }
+            }
+
+            @Override
+            public boolean isOpen() {
+                if (isCancelled()) {
+                    return false;
+                }
+
+                for (int k = 0; k < snapshot.getOutDegree(node); k++) {
+                    int e = snapshot.getOutEdge(node, k);
+
+                    if (queues[e] != null && closed.get(e) == 0) {
+                        return true;
+                    }
+                }
+
+                return false;
+            }
+
+            void closeOutputs() throws InterruptedException {
+                for (int k = 0; k < snapshot.getOutDegree(node); k++) {
+                    put(snapshot.getOutEdge(node, k),
+                            snapshot.getOutTarget(node, k), END);
+                }
+            }
+
+            void closeInputs() {
+                for (int k = 0; k < snapshot.getInDegree(node); k++) {
+                    int e = snapshot.getInEdge(node, k);
+                    closed.set(e, 1);
+                    // wakes up a blocked sender
+                    queues[e].clear();
+                }
+            }
+
+            private void put(int e, int receiver, Object item)
+                    throws InterruptedException {
+                if (queues[e] == null || closed.get(e) != 0) {
+                    return;
+                }
+
+                // blocks if the receiver is too slow (backpressure)
+                queues[e].put(item);
+                available[receiver].release();
+            }
+        }
+    }
+}
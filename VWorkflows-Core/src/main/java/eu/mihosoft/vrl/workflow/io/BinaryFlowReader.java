@@ -0,0 +1,457 @@
+/*
+ * Copyright 2012-2016 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * Please cite the following publication(s):
+ *
+ * M. Hoffer, C.Poliwoda, G.Wittum. Visual Reflection Library -
+ * A Framework for Declarative GUI Programming on the Java Platform.
+ * Computing and Visualization in Science, 2011, in press.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vrl.workflow.io;
+
+import com.thoughtworks.xstream.XStream;
+import eu.mihosoft.vrl.workflow.Connections;
+import eu.mihosoft.vrl.workflow.Connector;
+import eu.mihosoft.vrl.workflow.DefaultValueObject;
+import eu.mihosoft.vrl.workflow.FlowFactory;
+import eu.mihosoft.vrl.workflow.IdGenerator;
+import eu.mihosoft.vrl.workflow.NodeLookupImpl;
+import eu.mihosoft.vrl.workflow.PropertyStorage;
+import eu.mihosoft.vrl.workflow.VConnections;
+import eu.mihosoft.vrl.workflow.VFlowModel;
+import eu.mihosoft.vrl.workflow.VNode;
+import eu.mihosoft.vrl.workflow.ValueObject;
+import eu.mihosoft.vrl.workflow.VisualizationRequest;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Reads flows in the binary format (see {@link BinaryWorkflowIO}). The
+ * resulting model is equivalent to the model that
+ * {@link WorkflowIO#loadFromXML(java.io.InputStream, eu.mihosoft.vrl.workflow.IdGenerator)}
+ * creates for the same flow, i.e., connectors and main connectors are added
+ * in the same way.
+ *
+ * <p>
+ * The reader can also read the segments of a flow container (see
+ * {@link ContainerWorkflowIO}). In this case, subflows are passed to a
+ * consumer that defines how their content is loaded.
+ * </p>
+ *
+ * @author Michael Hoffer &lt;info@michaelhoffer.de&gt;
+ */
+final class BinaryFlowReader {
+
+    private static final XStream XSTREAM = new XStream();
+
+    static {
+        WorkflowIO.configureStream(XSTREAM);
+    }
+
+    private final DataInputStream in;
+    private final IdGenerator generator;
+
+    // index -> string
+    private final List<String> strings = new ArrayList<>();
+
+    // receives subflows whose content is stored in separate segments
+    private final Consumer<VFlowModel> subflows;
+
+    /**
+     * Constructor.
+     *
+     * @param in input
+     * @param generator id generator of the flow
+     * @param subflows consumer of subflows whose content is stored as
+     * separate segment or {@code null} if the content of subflows is stored
+     * inline
+     */
+    BinaryFlowReader(DataInputStream in, IdGenerator generator,
+            Consumer<VFlowModel> subflows) {
+        this.in = in;
+        this.generator = generator;
+        this.subflows = subflows;
+    }
+
+    /**
+     * Reads a flow from the specified stream. The stream is not closed.
+     *
+     * @param is stream to read
+     * @param generator id generator of the flow
+     * @return the flow
+     * @throws IOException if the stream cannot be read or doesn't contain a
+     * flow in a supported version of the binary format
+     */
+    static VFlowModel read(InputStream is, IdGenerator generator)
+            throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(is));
+
+        byte[] magic = new byte[BinaryWorkflowIO.MAGIC.length];
+        in.readFully(magic);
+
+        if (!Arrays.equals(magic, BinaryWorkflowIO.MAGIC)) {
+            throw new IOException("Not a binary workflow file");
+        }
+
+        BinaryFlowReader reader = new BinaryFlowReader(in, generator, null);
+
+        int version = reader.readVarInt();
+
+        if (version != BinaryWorkflowIO.VERSION) {
+            throw new IOException(
+                    "Unsupported binary workflow version: " + version);
+        }
+
+        return reader.readFlow();
+    }
+
+    /**
+     * Reads a flow without parent.
+     *
+     * @return the flow
+     * @throws IOException if the stream cannot be read or doesn't contain a
+     * flow
+     */
+    VFlowModel readFlow() throws IOException {
+        if (readVarInt() != BinaryWorkflowIO.FLOW) {
+            throw new IOException("Expected flow as root node");
+        }
+
+        return (VFlowModel) readNode(null, null, true);
+    }
+
+    /**
+     * Reads the nodes and connections of the specified flow.
+     *
+     * @param flow flow
+     * @param flowId id of the flow when it has been written (node ids might
+     * be stored relative to the id of their flow)
+     * @throws IOException if the stream cannot be read
+     */
+    void readContent(VFlowModel flow, String flowId) throws IOException {
+        readConnections(flow, readNodes(flow, flowId));
+    }
+
+    private VNode readNode(VFlowModel parent, String parentId, boolean isFlow)
+            throws IOException {
+        boolean inline = subflows == null || parent == null;
+
+        VFlowModel flow = null;
+        VNode node;
+
+        if (parent == null) {
+            flow = FlowFactory.newFlowModel();
+            flow.setIdGenerator(generator);
+            flow.setNodeLookup(new NodeLookupImpl(flow));
+            node = flow;
+        } else if (isFlow) {
+            flow = parent.newFlowNode();
+            node = flow;
+        } else {
+            node = parent.newNode();
+        }
+
+        String id = readId(parentId);
+        node.setId(id);
+        generator.addId(id);
+
+        String title = readString();
+        if (title != null) {
+            node.setTitle(title);
+        }
+
+        node.setX(in.readDouble());
+        node.setY(in.readDouble());
+        node.setWidth(in.readDouble());
+        node.setHeight(in.readDouble());
+
+        ValueObject vObj = readValueObject(node);
+        if (vObj != null) {
+            node.setValueObject(vObj);
+        }
+
+        readProperties(node.getVisualizationRequest());
+
+        boolean visible = false;
+        List<VNode> nodes = null;
+
+        if (flow != null) {
+            visible = in.readBoolean();
+
+            if (inline) {
+                nodes = readNodes(flow, id);
+            } else {
+                subflows.accept(flow);
+            }
+        }
+
+        int numConnectors = readVarInt();
+        for (int i = 0; i < numConnectors; i++) {
+            int flags = readVarInt();
+            String type = readString();
+            String localId = readString();
+            int maxNumConnections = (int) unZigZag(readVarLong());
+
+            node.addConnector(WorkflowIO.newConnector(node, type, localId,
+                    (flags & BinaryWorkflowIO.CONNECTOR_INPUT) != 0,
+                    (flags & BinaryWorkflowIO.CONNECTOR_PASSTHRU) != 0,
+                    maxNumConnections));
+        }
+
+        // main connectors are only restored for flows (as for XML)
+        int numMainInputs = readVarInt();
+        for (int i = 0; i < numMainInputs; i++) {
+            readString();
+            String localId = readString();
+            if (flow != null) {
+                flow.setMainInput(flow.getConnector(localId));
+            }
+        }
+
+        int numMainOutputs = readVarInt();
+        for (int i = 0; i < numMainOutputs; i++) {
+            readString();
+            String localId = readString();
+            if (flow != null) {
+                flow.setMainOutput(flow.getConnector(localId));
+            }
+        }
+
+        if (flow != null) {
+            if (inline) {
+                readConnections(flow, nodes);
+            }
+
+            // might load the content (see VFlowModel.setContentLoader())
+            flow.setVisible(visible);
+        }
+
+        return node;
+    }
+
+    private List<VNode> readNodes(VFlowModel flow, String flowId)
+            throws IOException {
+        int numNodes = readVarInt();
+        List<VNode> nodes = new ArrayList<>(numNodes);
+
+        for (int i = 0; i < numNodes; i++) {
+            int kind = readVarInt();
+            nodes.add(readNode(flow, flowId, kind == BinaryWorkflowIO.FLOW));
+        }
+
+        return nodes;
+    }
+
+    private String readId(String parentId) throws IOException {
+        int kind = readVarInt();
+        String id = readString();
+
+        if (kind == BinaryWorkflowIO.RELATIVE_ID) {
+            return parentId + ":" + id;
+        }
+
+        return id;
+    }
+
+    private ValueObject readValueObject(VNode node) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+
+        ValueObject result = new DefaultValueObject();
+        result.setParent(node);
+        result.setValue(readValue());
+
+        // entries of value objects are stored as returned by the
+        // visualization request, i.e., as optional values (see
+        // PersistentValueObject and XMLFlowReader)
+        int numProperties = readVarInt();
+        if (numProperties != BinaryWorkflowIO.NULL) {
+            VisualizationRequest vReq = result.getVisualizationRequest();
+
+            for (int i = 0; i < numProperties - 1; i++) {
+                String key = readString();
+                vReq.set(key, Optional.ofNullable(readValue()));
+            }
+        }
+
+        return result;
+    }
+
+    private void readConnections(VFlowModel flow, List<VNode> nodes)
+            throws IOException {
+        int numSections = readVarInt();
+
+        for (int i = 0; i < numSections; i++) {
+            String type = readString();
+
+            // empty connections might have been added by flow controllers
+            Connections cns = flow.getConnections(type);
+            boolean add = cns == null || cns.getConnections().isEmpty();
+
+            if (add) {
+                cns = VConnections.newConnections(type);
+            }
+
+            int numConnections = readVarInt();
+            for (int j = 0; j < numConnections; j++) {
+                String id = readString();
+                Connector sender = readEndpoint(flow, nodes);
+                Connector receiver = readEndpoint(flow, nodes);
+
+                VisualizationRequest vReq = null;
+                int numProperties = readVarInt();
+                if (numProperties != BinaryWorkflowIO.NULL) {
+                    vReq = FlowFactory.newVisualizationRequest();
+                    readProperties(vReq, numProperties - 1);
+                }
+
+                cns.add(id, sender, receiver, vReq);
+            }
+
+            if (add) {
+                flow.addConnections(cns, type);
+            }
+        }
+    }
+
+    private Connector readEndpoint(VFlowModel flow, List<VNode> nodes)
+            throws IOException {
+        int index = readVarInt();
+        String id = readString();
+
+        if (index == 0) {
+            return flow.getNodeLookup().getConnectorById(id);
+        }
+
+        return nodes.get(index - 1).getConnector(id);
+    }
+
+    private void readProperties(PropertyStorage target) throws IOException {
+        int numProperties = readVarInt();
+        if (numProperties != BinaryWorkflowIO.NULL) {
+            readProperties(target, numProperties - 1);
+        }
+    }
+
+    private void readProperties(PropertyStorage target, int numProperties)
+            throws IOException {
+        for (int i = 0; i < numProperties; i++) {
+            String key = readString();
+            target.set(key, readValue());
+        }
+    }
+
+    private Object readValue() throws IOException {
+        int tag = readVarInt();
+
+        switch (tag) {
+            case BinaryWorkflowIO.VALUE_NULL:
+                return null;
+            case BinaryWorkflowIO.VALUE_STRING:
+                return readString();
+            case BinaryWorkflowIO.VALUE_TRUE:
+                return Boolean.TRUE;
+            case BinaryWorkflowIO.VALUE_FALSE:
+                return Boolean.FALSE;
+            case BinaryWorkflowIO.VALUE_INT:
+                return (int) unZigZag(readVarLong());
+            case BinaryWorkflowIO.VALUE_LONG:
+                return unZigZag(readVarLong());
+            case BinaryWorkflowIO.VALUE_DOUBLE:
+                return in.readDouble();
+            case BinaryWorkflowIO.VALUE_FLOAT:
+                return in.readFloat();
+            case BinaryWorkflowIO.VALUE_XML:
+                return XSTREAM.fromXML(readString());
+            default:
+                throw new IOException("Unknown value type: " + tag);
+        }
+    }
+
+    private String readString() throws IOException {
+        int ref = readVarInt();
+
+        if (ref == BinaryWorkflowIO.NULL) {
+            return null;
+        }
+
+        if (ref == BinaryWorkflowIO.NEW_STRING) {
+            byte[] bytes = new byte[readVarInt()];
+            in.readFully(bytes);
+            String s = new String(bytes, StandardCharsets.UTF_8);
+            strings.add(s);
+            return s;
+        }
+
+        int index = ref - BinaryWorkflowIO.STRING_INDEX_OFFSET;
+
+        if (index >= strings.size()) {
+            throw new IOException("Invalid string reference: " + index);
+        }
+
+        return strings.get(index);
+    }
+
+    private static long unZigZag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    private int readVarInt() throws IOException {
+        long v = readVarLong();
+
+        if (v < 0 || v > Integer.MAX_VALUE) {
+            throw new IOException("Varint out of range: " + v);
+        }
+
+        return (int) v;
+    }
+
+    private long readVarLong() throws IOException {
+        long result = 0;
+
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            result |= (long) (b & 0x7F) << shift;
+
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+
+        throw new IOException("Malformed varint");
+    }
+}
@@ -0,0 +1,390 @@
+/*
+ * Copyright 2012-2016 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * Please cite the following publication(s):
+ *
+ * M. Hoffer, C.Poliwoda, G.Wittum. Visual Reflection Library -
+ * A Framework for Declarative GUI Programming on the Java Platform.
+ * Computing and Visualization in Science, 2011, in press.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vrl.workflow.io;
+
+import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.io.xml.CompactWriter;
+import eu.mihosoft.vrl.workflow.Connection;
+import eu.mihosoft.vrl.workflow.Connections;
+import eu.mihosoft.vrl.workflow.Connector;
+import eu.mihosoft.vrl.workflow.PropertyStorage;
+import eu.mihosoft.vrl.workflow.ThruConnector;
+import eu.mihosoft.vrl.workflow.VFlowModel;
+import eu.mihosoft.vrl.workflow.VNode;
+import eu.mihosoft.vrl.workflow.ValueObject;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Writes flows in the binary format (see {@link BinaryWorkflowIO}). The flow
+ * is written while it is traversed. Apart from the string table, memory
+ * consumption doesn't depend on the size of the flow.
+ *
+ * <p>
+ * The writer can also write the segments of a flow container (see
+ * {@link ContainerWorkflowIO}). In this case, the nodes and connections of
+ * subflows are not written. Subflows are passed to a consumer instead that
+ * writes them as separate segments.
+ * </p>
+ *
+ * @author Michael Hoffer &lt;info@michaelhoffer.de&gt;
+ */
+final class BinaryFlowWriter {
+
+    private static final XStream XSTREAM = new XStream();
+
+    static {
+        WorkflowIO.configureStream(XSTREAM);
+    }
+
+    private final DataOutputStream out;
+
+    // string -> index in the string table
+    private final Map<String, Integer> strings = new HashMap<>();
+
+    // receives subflows that are written as separate segments
+    private final Consumer<VFlowModel> subflows;
+
+    /**
+     * Constructor.
+     *
+     * @param out output
+     * @param subflows consumer of subflows whose content shall be written
+     * as separate segments or {@code null} if the content of subflows shall
+     * be written inline
+     */
+    BinaryFlowWriter(DataOutputStream out, Consumer<VFlowModel> subflows) {
+        this.out = out;
+        this.subflows = subflows;
+    }
+
+    /**
+     * Writes the specified flow to the specified stream. The stream is
+     * flushed but not closed.
+     *
+     * @param flow flow to write
+     * @param os stream
+     * @throws IOException if writing to the stream fails
+     */
+    static void write(VFlowModel flow, OutputStream os) throws IOException {
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(os));
+
+        out.write(BinaryWorkflowIO.MAGIC);
+
+        BinaryFlowWriter writer = new BinaryFlowWriter(out, null);
+        writer.writeVarInt(BinaryWorkflowIO.VERSION);
+        writer.writeFlow(flow);
+
+        out.flush();
+    }
+
+    /**
+     * Writes the nodes and connections of the specified flow.
+     *
+     * @param flow flow
+     * @throws IOException if writing to the stream fails
+     */
+    void writeContent(VFlowModel flow) throws IOException {
+        writeNodes(flow);
+        writeConnections(flow);
+    }
+
+    /**
+     * Writes the specified flow including its content. The content of
+     * subflows is written inline if no consumer of subflows has been
+     * specified.
+     *
+     * @param flow flow to write
+     * @throws IOException if writing to the stream fails
+     */
+    void writeFlow(VFlowModel flow) throws IOException {
+        writeNode(flow, null);
+    }
+
+    private void writeNode(VNode node, VFlowModel parent) throws IOException {
+        boolean isFlow = node instanceof VFlowModel;
+        boolean inline = subflows == null || parent == null;
+
+        writeVarInt(isFlow ? BinaryWorkflowIO.FLOW : BinaryWorkflowIO.NODE);
+        writeId(node.getId(), parent);
+        writeString(node.getTitle());
+        out.writeDouble(node.getX());
+        out.writeDouble(node.getY());
+        out.writeDouble(node.getWidth());
+        out.writeDouble(node.getHeight());
+        writeValueObject(node.getValueObject());
+        writeProperties(node.getVisualizationRequest());
+
+        VFlowModel flow = null;
+
+        // nodes of flows are written before the connectors since thru
+        // connectors create inner nodes when they are read
+        if (isFlow) {
+            flow = (VFlowModel) node;
+
+            out.writeBoolean(flow.isVisible());
+
+            if (inline) {
+                writeNodes(flow);
+            } else {
+                subflows.accept(flow);
+            }
+        }
+
+        writeVarInt(node.getConnectors().size());
+        for (Connector c : node.getConnectors()) {
+            writeConnector(c);
+        }
+
+        writeVarInt(node.getMainInputTypes().size());
+        for (String type : node.getMainInputTypes()) {
+            writeString(type);
+            writeString(node.getMainInput(type).getLocalId());
+        }
+
+        writeVarInt(node.getMainOutputTypes().size());
+        for (String type : node.getMainOutputTypes()) {
+            writeString(type);
+            writeString(node.getMainOutput(type).getLocalId());
+        }
+
+        if (flow != null && inline) {
+            writeConnections(flow);
+        }
+    }
+
+    private void writeNodes(VFlowModel flow) throws IOException {
+        writeVarInt(flow.getNodes().size());
+        for (VNode n : flow.getNodes()) {
+            writeNode(n, flow);
+        }
+    }
+
+    private void writeId(String id, VFlowModel parent) throws IOException {
+        String parentId = parent == null ? null : parent.getId();
+
+        if (id != null && parentId != null
+                && id.length() > parentId.length() + 1
+                && id.startsWith(parentId)
+                && id.charAt(parentId.length()) == ':') {
+            writeVarInt(BinaryWorkflowIO.RELATIVE_ID);
+            writeString(id.substring(parentId.length() + 1));
+        } else {
+            writeVarInt(BinaryWorkflowIO.ABSOLUTE_ID);
+            writeString(id);
+        }
+    }
+
+    private void writeValueObject(ValueObject vObj) throws IOException {
+        if (vObj == null) {
+            out.writeBoolean(false);
+            return;
+        }
+
+        out.writeBoolean(true);
+        writeValue(vObj.getValue());
+        // the reader restores the entries as optional values like the XML
+        // format (see BinaryFlowReader)
+        writeProperties(vObj.getVisualizationRequest());
+    }
+
+    private void writeConnector(Connector c) throws IOException {
+        int flags = 0;
+
+        if (c.isInput()) {
+            flags |= BinaryWorkflowIO.CONNECTOR_INPUT;
+        }
+
+        if (c.isOutput()) {
+            flags |= BinaryWorkflowIO.CONNECTOR_OUTPUT;
+        }
+
+        if (c instanceof ThruConnector) {
+            flags |= BinaryWorkflowIO.CONNECTOR_PASSTHRU;
+        }
+
+        writeVarInt(flags);
+        writeString(c.getType());
+        writeString(c.getLocalId());
+        writeVarLong(zigZag(c.getMaxNumberOfConnections()));
+    }
+
+    private void writeConnections(VFlowModel flow) throws IOException {
+        List<Connections> sections = new ArrayList<>();
+
+        for (Connections connections : flow.getAllConnections().values()) {
+            if (!connections.getConnections().isEmpty()) {
+                sections.add(connections);
+            }
+        }
+
+        writeVarInt(sections.size());
+
+        if (sections.isEmpty()) {
+            return;
+        }
+
+        // endpoints are referenced via the index of their node in the flow
+        Map<VNode, Integer> indices = new IdentityHashMap<>();
+        int i = 0;
+        for (VNode n : flow.getNodes()) {
+            indices.put(n, i++);
+        }
+
+        for (Connections connections : sections) {
+            Collection<Connection> cns = connections.getConnections();
+
+            writeString(connections.getType());
+            writeVarInt(cns.size());
+
+            for (Connection c : cns) {
+                writeString(c.getId());
+                writeEndpoint(c.getSender(), indices);
+                writeEndpoint(c.getReceiver(), indices);
+                writeProperties(c.getVisualizationRequest());
+            }
+        }
+    }
+
+    private void writeEndpoint(Connector c, Map<VNode, Integer> indices)
+            throws IOException {
+        Integer index = indices.get(c.getNode());
+
+        if (index == null) {
+            writeVarInt(0);
+            writeString(c.getId());
+        } else {
+            writeVarInt(index + 1);
+            writeString(c.getLocalId());
+        }
+    }
+
+    private void writeProperties(PropertyStorage properties)
+            throws IOException {
+        if (properties == null) {
+            writeVarInt(BinaryWorkflowIO.NULL);
+            return;
+        }
+
+        Collection<String> keys = properties.getKeys();
+
+        writeVarInt(keys.size() + 1);
+
+        for (String key : keys) {
+            writeString(key);
+            writeValue(properties.get(key).orElse(null));
+        }
+    }
+
+    private void writeValue(Object value) throws IOException {
+        if (value == null) {
+            writeVarInt(BinaryWorkflowIO.VALUE_NULL);
+        } else if (value instanceof String) {
+            writeVarInt(BinaryWorkflowIO.VALUE_STRING);
+            writeString((String) value);
+        } else if (value instanceof Boolean) {
+            writeVarInt((Boolean) value
+                    ? BinaryWorkflowIO.VALUE_TRUE
+                    : BinaryWorkflowIO.VALUE_FALSE);
+        } else if (value instanceof Integer) {
+            writeVarInt(BinaryWorkflowIO.VALUE_INT);
+            writeVarLong(zigZag((Integer) value));
+        } else if (value instanceof Long) {
+            writeVarInt(BinaryWorkflowIO.VALUE_LONG);
+            writeVarLong(zigZag((Long) value));
+        } else if (value instanceof Double) {
+            writeVarInt(BinaryWorkflowIO.VALUE_DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof Float) {
+            writeVarInt(BinaryWorkflowIO.VALUE_FLOAT);
+            out.writeFloat((Float) value);
+        } else {
+            StringWriter xml = new StringWriter();
+            XSTREAM.marshal(value, new CompactWriter(xml));
+
+            writeVarInt(BinaryWorkflowIO.VALUE_XML);
+            writeString(xml.toString());
+        }
+    }
+
+    private void writeString(String s) throws IOException {
+        if (s == null) {
+            writeVarInt(BinaryWorkflowIO.NULL);
+            return;
+        }
+
+        Integer index = strings.get(s);
+
+        if (index != null) {
+            writeVarInt(index + BinaryWorkflowIO.STRING_INDEX_OFFSET);
+            return;
+        }
+
+        strings.put(s, strings.size());
+
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(BinaryWorkflowIO.NEW_STRING);
+        writeVarInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static long zigZag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    private void writeVarInt(int v) throws IOException {
+        writeVarLong(v & 0xFFFFFFFFL);
+    }
+
+    private void writeVarLong(long v) throws IOException {
+        while ((v & ~0x7FL) != 0) {
+            out.writeByte((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.writeByte((int) v);
+    }
+}
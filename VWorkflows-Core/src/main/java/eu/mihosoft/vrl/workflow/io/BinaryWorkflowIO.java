@@ -0,0 +1,150 @@
+/*
+ * Copyright 2012-2016 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * Please cite the following publication(s):
+ *
+ * M. Hoffer, C.Poliwoda, G.Wittum. Visual Reflection Library -
+ * A Framework for Declarative GUI Programming on the Java Platform.
+ * Computing and Visualization in Science, 2011, in press.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vrl.workflow.io;
+
+import eu.mihosoft.vrl.workflow.FlowFactory;
+import eu.mihosoft.vrl.workflow.IdGenerator;
+import eu.mihosoft.vrl.workflow.VFlow;
+import eu.mihosoft.vrl.workflow.VFlowModel;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Saves and loads flows in a compact binary format. The format contains the
+ * same information as the XML format (see {@link WorkflowIO}), loading a
+ * binary file results in the same model as loading the corresponding XML
+ * file.
+ *
+ * <p>
+ * Layout (all counts, lengths and indices are unsigned LEB128 varints):
+ * </p>
+ * <pre>
+ * file        := "VWFB" version node
+ * node        := kind(0=node, 1=flow) id title x y width height
+ *                valueObject vReq [visible children] connectors
+ *                mainInputs mainOutputs [connections]
+ * id          := 0 string | 1 string (relative to the id of the parent flow)
+ * children    := count node*
+ * connections := count (type count (id endpoint endpoint vReq)*)*
+ * endpoint    := 0 connectorId | (index of the node in the flow + 1) localId
+ * vReq        := 0 (null) | (count + 1) (key value)*
+ * string      := 0 (null) | 1 length utf8 (new table entry) | (index + 2)
+ * </pre>
+ *
+ * <p>
+ * Each distinct string is written once and referenced via its index in the
+ * string table afterwards. Values of value objects and visualization
+ * requests are written with a type tag. Strings, booleans and numbers are
+ * written directly, other objects are written as XML by XStream.
+ * </p>
+ *
+ * @author Michael Hoffer &lt;info@michaelhoffer.de&gt;
+ */
+public class BinaryWorkflowIO {
+
+    static final byte[] MAGIC = {'V', 'W', 'F', 'B'};
+    static final int VERSION = 1;
+
+    static final int NODE = 0;
+    static final int FLOW = 1;
+
+    static final int NULL = 0;
+    static final int NEW_STRING = 1;
+    static final int STRING_INDEX_OFFSET = 2;
+
+    static final int ABSOLUTE_ID = 0;
+    static final int RELATIVE_ID = 1;
+
+    static final int CONNECTOR_INPUT = 1;
+    static final int CONNECTOR_OUTPUT = 1 << 1;
+    static final int CONNECTOR_PASSTHRU = 1 << 2;
+
+    static final int VALUE_NULL = 0;
+    static final int VALUE_STRING = 1;
+    static final int VALUE_TRUE = 2;
+    static final int VALUE_FALSE = 3;
+    static final int VALUE_INT = 4;
+    static final int VALUE_LONG = 5;
+    static final int VALUE_DOUBLE = 6;
+    static final int VALUE_FLOAT = 7;
+    static final int VALUE_XML = 8;
+
+    public static VFlow loadFromBinary(Path p) throws IOException {
+        try (InputStream is = Files.newInputStream(p, StandardOpenOption.READ)) {
+            return loadFromBinary(is);
+        }
+    }
+
+    public static VFlow loadFromBinary(InputStream is) throws IOException {
+        VFlow workflow = FlowFactory.newFlow();
+
+        VFlowModel flow = loadFromBinary(is, workflow.getIdGenerator());
+        workflow.setNodeLookup(flow.getNodeLookup());
+        workflow.setModel(flow);
+
+        return workflow;
+    }
+
+    public static VFlowModel loadFromBinary(Path p, IdGenerator generator)
+            throws IOException {
+        try (InputStream is = Files.newInputStream(p, StandardOpenOption.READ)) {
+            return loadFromBinary(is, generator);
+        }
+    }
+
+    public static VFlowModel loadFromBinary(InputStream is,
+            IdGenerator generator) throws IOException {
+        return BinaryFlowReader.read(is, generator);
+    }
+
+    public static void saveToBinary(Path p, VFlowModel flow)
+            throws IOException {
+        try (OutputStream os = Files.newOutputStream(p,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            saveToBinary(flow, os);
+        }
+    }
+
+    public static void saveToBinary(VFlowModel flow, OutputStream os)
+            throws IOException {
+        BinaryFlowWriter.write(flow, os);
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2012-2016 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * Please cite the following publication(s):
+ *
+ * M. Hoffer, C.Poliwoda, G.Wittum. Visual Reflection Library -
+ * A Framework for Declarative GUI Programming on the Java Platform.
+ * Computing and Visualization in Science, 2011, in press.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vrl.workflow.io;
+
+import eu.mihosoft.vrl.workflow.FlowFactory;
+import eu.mihosoft.vrl.workflow.IdGenerator;
+import eu.mihosoft.vrl.workflow.VFlow;
+import eu.mihosoft.vrl.workflow.VFlowModel;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Saves and loads flows as flow containers. A container stores each flow
+ * (the root flow and each subflow) as separate segment. An index maps the
+ * flow ids to the segments. Loading a container only reads the index and
+ * the root flow. The nodes and connections of invisible subflows are loaded
+ * on demand, i.e., when the subflow is made visible or its content is
+ * accessed (see {@link VFlowModel#setContentLoader(java.util.function.Consumer)}).
+ * Subflows themselves (with title, connectors etc.) are loaded with their
+ * parent flow.
+ *
+ * <p>
+ * Layout (big endian):
+ * </p>
+ * <pre>
+ * container := "VWFC" version:int32 (segment* index trailer)+
+ * segment   := root flow or content (nodes and connections) of a subflow,
+ *              encoded in the binary format (see {@link BinaryWorkflowIO})
+ *              with its own string table
+ * index     := count:int32 (flowId:utf parentId:utf offset:int64 length:int32)*
+ * trailer   := indexOffset:int64 "VWFC"
+ * </pre>
+ *
+ * <p>
+ * The first index entry denotes the root flow (its parent id is empty).
+ * Containers are read via a memory mapped buffer. Therefore, containers must
+ * not be larger than 2 GB. To save a flow repeatedly, e.g., for autosave,
+ * use {@link FlowContainer} which only appends the segments of changed flows
+ * together with a new index and trailer. Only the last index is used.
+ * Segments of previous versions that it doesn't reference are ignored.
+ * </p>
+ *
+ * @author Michael Hoffer &lt;info@michaelhoffer.de&gt;
+ */
+public class ContainerWorkflowIO {
+
+    static final byte[] MAGIC = {'V', 'W', 'F', 'C'};
+    static final int VERSION = 1;
+
+    // header: magic + version
+    static final int HEADER_SIZE = MAGIC.length + 4;
+    // trailer: index offset + magic
+    static final int TRAILER_SIZE = 8 + MAGIC.length;
+
+    public static VFlow loadFromContainer(Path p) throws IOException {
+        VFlow workflow = FlowFactory.newFlow();
+
+        VFlowModel flow = loadFromContainer(p, workflow.getIdGenerator());
+        workflow.setNodeLookup(flow.getNodeLookup());
+        workflow.setModel(flow);
+
+        return workflow;
+    }
+
+    public static VFlowModel loadFromContainer(Path p, IdGenerator generator)
+            throws IOException {
+        return FlowContainerReader.open(p, generator).readRoot();
+    }
+
+    public static void saveToContainer(Path p, VFlowModel flow)
+            throws IOException {
+        FlowContainerWriter.write(flow, p);
+    }
+}
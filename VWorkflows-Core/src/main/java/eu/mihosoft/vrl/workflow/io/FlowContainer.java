@@ -0,0 +1,259 @@
+/*
+ * Copyright 2012-2016 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * Please cite the following publication(s):
+ *
+ * M. Hoffer, C.Poliwoda, G.Wittum. Visual Reflection Library -
+ * A Framework for Declarative GUI Programming on the Java Platform.
+ * Computing and Visualization in Science, 2011, in press.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vrl.workflow.io;
+
+import eu.mihosoft.vrl.workflow.DirtyTracker;
+import eu.mihosoft.vrl.workflow.IdGenerator;
+import eu.mihosoft.vrl.workflow.VFlowModel;
+import javafx.beans.property.ReadOnlyBooleanProperty;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * A flow that is stored in a flow container (see {@link ContainerWorkflowIO}).
+ * Changes of the flow are tracked per flow (see {@link DirtyTracker}). Saving
+ * only appends the segments of flows that have been changed, followed by a
+ * new index and trailer. The segments of unchanged flows (including flows
+ * whose content hasn't been loaded yet) are referenced by the new index
+ * where they are. The cost of saving therefore depends on the size of the
+ * changes, not on the size of the container. This makes frequent saves (e.g.
+ * autosave) of large flows practical.
+ *
+ * <p>
+ * Appending never modifies existing bytes of the container. If appending is
+ * interrupted, the container is read up to its last complete trailer, i.e.,
+ * it is in its previous state.
+ * </p>
+ *
+ * <p>
+ * Segments that have been replaced by appended segments are dead. If the
+ * container contains more dead than live bytes, saving compacts it (see
+ * {@link #compact()}), i.e., the container is written to a temporary file in
+ * the same directory which replaces the container afterwards (atomically if
+ * supported by the file system). On some platforms (e.g. Windows), a file
+ * cannot be replaced while it is memory mapped. Since the container stays
+ * mapped as long as flows that haven't been loaded yet are referenced,
+ * saving appends the changes instead and compaction is retried by the next
+ * save.
+ * </p>
+ *
+ * <p>
+ * Changes of visualization requests are not tracked. Mark the corresponding
+ * flow as dirty via {@link #getTracker()} if necessary.
+ * </p>
+ *
+ * @author Michael Hoffer &lt;info@michaelhoffer.de&gt;
+ */
+public final class FlowContainer {
+
+    private final Path path;
+    private final VFlowModel flow;
+    private final DirtyTracker tracker;
+    private FlowContainerReader reader;
+
+    private FlowContainer(Path path, VFlowModel flow,
+            FlowContainerReader reader) {
+        this.path = path;
+        this.flow = flow;
+        this.reader = reader;
+        this.tracker = new DirtyTracker(flow);
+    }
+
+    /**
+     * Opens the specified container. The content of invisible subflows is
+     * loaded on demand.
+     *
+     * @param p path of the container
+     * @param generator id generator of the flow
+     * @return the container
+     * @throws IOException if the container cannot be read
+     */
+    public static FlowContainer open(Path p, IdGenerator generator)
+            throws IOException {
+        FlowContainerReader reader = FlowContainerReader.open(p, generator);
+
+        return new FlowContainer(p, reader.readRoot(), reader);
+    }
+
+    /**
+     * Creates a container for the specified flow and saves the flow.
+     *
+     * @param p path of the container
+     * @param flow flow to save
+     * @return the container
+     * @throws IOException if the container cannot be written
+     */
+    public static FlowContainer create(Path p, VFlowModel flow)
+            throws IOException {
+        FlowContainer container = new FlowContainer(p, flow, null);
+        container.save();
+
+        return container;
+    }
+
+    /**
+     * Returns the flow of this container.
+     *
+     * @return the flow
+     */
+    public VFlowModel getFlow() {
+        return flow;
+    }
+
+    /**
+     * Returns the path of this container.
+     *
+     * @return the path
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Returns the tracker that observes the changes of the flow.
+     *
+     * @return the tracker
+     */
+    public DirtyTracker getTracker() {
+        return tracker;
+    }
+
+    /**
+     * Indicates whether the flow has been changed since it has been saved.
+     *
+     * @return {@code true} if the flow has been changed; {@code false}
+     * otherwise
+     */
+    public boolean isDirty() {
+        return tracker.isDirty();
+    }
+
+    /**
+     * Indicates whether the flow has been changed since it has been saved.
+     *
+     * @return property that indicates whether the flow has been changed
+     */
+    public ReadOnlyBooleanProperty dirtyProperty() {
+        return tracker.dirtyProperty();
+    }
+
+    /**
+     * Saves the flow. Only the segments of changed flows are written. They
+     * are appended to the container unless the container is compacted (see
+     * {@link #compact()}).
+     *
+     * @throws IOException if the container cannot be written
+     */
+    public void save() throws IOException {
+        if (reader == null) {
+            rewrite();
+            return;
+        }
+
+        long dead = reader.getSize() - reader.getLiveSize();
+
+        if (dead > reader.getLiveSize()) {
+            try {
+                rewrite();
+                return;
+            } catch (FileSystemException ex) {
+                // the container cannot be replaced while it is mapped (e.g.
+                // on Windows). compaction is retried by the next save
+            }
+        }
+
+        FlowContainerWriter.append(flow, path, reader, tracker::isDirty);
+
+        // flows that haven't been loaded yet are loaded from the new version
+        reader.reopen(path);
+
+        tracker.markClean();
+    }
+
+    /**
+     * Saves the flow and removes the dead segments from the container, i.e.,
+     * segments that have been replaced by appended segments. The segments of
+     * unchanged flows are copied.
+     *
+     * @throws IOException if the container cannot be written or replaced
+     * (e.g. on Windows while it is memory mapped)
+     */
+    public void compact() throws IOException {
+        rewrite();
+    }
+
+    private void rewrite() throws IOException {
+        Path dir = path.toAbsolutePath().getParent();
+        Path tmp = Files.createTempFile(dir,
+                path.getFileName().toString(), ".tmp");
+
+        try {
+            FlowContainerWriter.write(flow, tmp, reader, tracker::isDirty);
+            replace(tmp, path);
+        } catch (IOException | RuntimeException ex) {
+            Files.deleteIfExists(tmp);
+            throw ex;
+        }
+
+        // flows that haven't been loaded yet are loaded from the new version
+        if (reader == null) {
+            reader = FlowContainerReader.open(path, flow.getIdGenerator());
+        } else {
+            reader.reopen(path);
+        }
+
+        tracker.markClean();
+    }
+
+    /**
+     * Stops tracking changes of the flow.
+     */
+    public void dispose() {
+        tracker.dispose();
+    }
+
+    private static void replace(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
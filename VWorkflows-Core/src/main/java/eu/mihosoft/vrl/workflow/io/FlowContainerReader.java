@@ -0,0 +1,437 @@
+/*
+ * Copyright 2012-2016 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * Please cite the following publication(s):
+ *
+ * M. Hoffer, C.Poliwoda, G.Wittum. Visual Reflection Library -
+ * A Framework for Declarative GUI Programming on the Java Platform.
+ * Computing and Visualization in Science, 2011, in press.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vrl.workflow.io;
+
+import eu.mihosoft.vrl.workflow.IdGenerator;
+import eu.mihosoft.vrl.workflow.VFlowModel;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads flow containers (see {@link ContainerWorkflowIO}). The container is
+ * mapped into memory. Opening a container only reads its index. Segments are
+ * read when the corresponding flow is loaded. The mapping stays valid as long
+ * as flows that haven't been loaded yet are referenced.
+ *
+ * <p>
+ * If the container is replaced by a new version that contains the segments
+ * of all flows that haven't been loaded yet (see {@link FlowContainer}), the
+ * reader can be reopened. Flows are loaded from the new version afterwards.
+ * The same applies if segments and a new index have been appended to the
+ * container.
+ * </p>
+ *
+ * <p>
+ * The index is located via the trailer at the end of the container. If the
+ * container doesn't end with a complete trailer, e.g., because appending has
+ * been interrupted, the last complete trailer (and its index) is used.
+ * </p>
+ *
+ * @author Michael Hoffer &lt;info@michaelhoffer.de&gt;
+ */
+final class FlowContainerReader {
+
+    private final IdGenerator generator;
+
+    private ByteBuffer buffer;
+    // flow id -> segment
+    private Map<String, Segment> index;
+    // flow id -> ids of the subflows that have a segment
+    private Map<String, List<String>> subflows;
+    private String rootId;
+    // end of the trailer
+    private int end;
+    // number of bytes that are referenced by the index (including header,
+    // index and trailer)
+    private long liveSize;
+
+    private FlowContainerReader(IdGenerator generator) {
+        this.generator = generator;
+    }
+
+    /**
+     * Opens the specified container.
+     *
+     * @param p path of the container
+     * @param generator id generator of the flow
+     * @return a reader for the specified container
+     * @throws IOException if the container cannot be read
+     */
+    static FlowContainerReader open(Path p, IdGenerator generator)
+            throws IOException {
+        FlowContainerReader reader = new FlowContainerReader(generator);
+        reader.reopen(p);
+
+        return reader;
+    }
+
+    /**
+     * Reopens the container, e.g., after it has been replaced by a new
+     * version.
+     *
+     * @param p path of the container
+     * @throws IOException if the container cannot be read
+     */
+    void reopen(Path p) throws IOException {
+        MappedByteBuffer mapped;
+
+        try (FileChannel channel = FileChannel.open(p,
+                StandardOpenOption.READ)) {
+            long size = channel.size();
+
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(
+                        "Container too large to be mapped: " + size);
+            }
+
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+
+        readIndex(mapped);
+    }
+
+    private void readIndex(ByteBuffer mapped) throws IOException {
+        int size = mapped.limit();
+
+        if (size < ContainerWorkflowIO.HEADER_SIZE
+                + ContainerWorkflowIO.TRAILER_SIZE) {
+            throw new IOException("Not a flow container");
+        }
+
+        byte[] magic = new byte[ContainerWorkflowIO.MAGIC.length];
+
+        ByteBuffer header = mapped.duplicate();
+        header.get(magic);
+        int version = header.getInt();
+
+        if (!Arrays.equals(magic, ContainerWorkflowIO.MAGIC)) {
+            throw new IOException("Not a flow container");
+        }
+
+        if (version != ContainerWorkflowIO.VERSION) {
+            throw new IOException(
+                    "Unsupported flow container version: " + version);
+        }
+
+        try {
+            readIndex(mapped, size);
+        } catch (IOException ex) {
+            // appending has been interrupted. search the last complete
+            // trailer
+            for (int e = size - 1; e >= ContainerWorkflowIO.HEADER_SIZE
+                    + ContainerWorkflowIO.TRAILER_SIZE; e--) {
+                if (!isMagic(mapped, e - magic.length)) {
+                    continue;
+                }
+
+                try {
+                    readIndex(mapped, e);
+                    return;
+                } catch (IOException ex2) {
+                    // no trailer
+                }
+            }
+
+            throw ex;
+        }
+    }
+
+    private static boolean isMagic(ByteBuffer mapped, int position) {
+        for (int i = 0; i < ContainerWorkflowIO.MAGIC.length; i++) {
+            if (mapped.get(position + i) != ContainerWorkflowIO.MAGIC[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void readIndex(ByteBuffer mapped, int size) throws IOException {
+        byte[] magic = new byte[ContainerWorkflowIO.MAGIC.length];
+
+        ByteBuffer trailer = mapped.duplicate();
+        trailer.position(size - ContainerWorkflowIO.TRAILER_SIZE);
+        long indexOffset = trailer.getLong();
+
+        trailer.get(magic);
+
+        if (!Arrays.equals(magic, ContainerWorkflowIO.MAGIC)
+                || indexOffset < ContainerWorkflowIO.HEADER_SIZE
+                || indexOffset > size - ContainerWorkflowIO.TRAILER_SIZE) {
+            throw new IOException("Incomplete flow container");
+        }
+
+        DataInputStream in = new DataInputStream(input(mapped,
+                (int) indexOffset, size - ContainerWorkflowIO.TRAILER_SIZE
+                - (int) indexOffset));
+
+        int numSegments = in.readInt();
+
+        Map<String, Segment> newIndex = new HashMap<>();
+        Map<String, List<String>> newSubflows = new HashMap<>();
+        String newRootId = null;
+        long newLiveSize = ContainerWorkflowIO.HEADER_SIZE
+                + size - indexOffset;
+
+        for (int i = 0; i < numSegments; i++) {
+            String id = in.readUTF();
+            String parentId = in.readUTF();
+            long offset = in.readLong();
+            int length = in.readInt();
+
+            if (offset < ContainerWorkflowIO.HEADER_SIZE
+                    || length < 0 || offset + length > indexOffset) {
+                throw new IOException("Invalid segment of flow " + id);
+            }
+
+            if (i == 0) {
+                newRootId = id;
+            } else {
+                newSubflows.computeIfAbsent(parentId,
+                        k -> new ArrayList<>()).add(id);
+            }
+
+            newIndex.put(id, new Segment((int) offset, length));
+            newLiveSize += length;
+        }
+
+        if (newRootId == null) {
+            throw new IOException("Flow container without root flow");
+        }
+
+        if (in.available() != 0) {
+            throw new IOException("Invalid index");
+        }
+
+        buffer = mapped;
+        index = newIndex;
+        subflows = newSubflows;
+        rootId = newRootId;
+        end = size;
+        liveSize = newLiveSize;
+    }
+
+    /**
+     * Returns the size of the container, i.e., the end of its trailer.
+     * Incomplete data after the trailer is not included.
+     *
+     * @return the size of the container
+     */
+    int getSize() {
+        return end;
+    }
+
+    /**
+     * Returns the number of bytes that are referenced by the index, including
+     * header, index and trailer. Segments of previous versions that have been
+     * replaced by appended segments are not referenced.
+     *
+     * @return the number of bytes that are referenced by the index
+     */
+    long getLiveSize() {
+        return liveSize;
+    }
+
+    /**
+     * Reads the root flow. The content of invisible subflows is loaded on
+     * demand.
+     *
+     * @return the root flow
+     * @throws IOException if the root flow cannot be read
+     */
+    VFlowModel readRoot() throws IOException {
+        return newReader(index.get(rootId)).readFlow();
+    }
+
+    /**
+     * Indicates whether the container contains a segment for the specified
+     * flow.
+     *
+     * @param id flow id
+     * @return {@code true} if the container contains a segment for the
+     * specified flow; {@code false} otherwise
+     */
+    boolean hasSegment(String id) {
+        return index.containsKey(id);
+    }
+
+    /**
+     * Returns the ids of the subflows of the specified flow that have a
+     * segment.
+     *
+     * @param id flow id
+     * @return the ids of the subflows
+     */
+    List<String> getSubflowSegments(String id) {
+        return subflows.getOrDefault(id, Collections.emptyList());
+    }
+
+    /**
+     * Returns the segment of the specified flow.
+     *
+     * @param id flow id
+     * @return the segment (read-only)
+     */
+    ByteBuffer getSegment(String id) {
+        Segment segment = index.get(id);
+
+        ByteBuffer b = buffer.asReadOnlyBuffer();
+        b.position(segment.offset);
+        b.limit(segment.offset + segment.length);
+
+        return b;
+    }
+
+    /**
+     * Returns the offset of the segment of the specified flow.
+     *
+     * @param id flow id
+     * @return the offset of the segment
+     */
+    int getSegmentOffset(String id) {
+        return index.get(id).offset;
+    }
+
+    /**
+     * Returns the length of the segment of the specified flow.
+     *
+     * @param id flow id
+     * @return the length of the segment
+     */
+    int getSegmentLength(String id) {
+        return index.get(id).length;
+    }
+
+    private BinaryFlowReader newReader(Segment segment) {
+        return new BinaryFlowReader(
+                new DataInputStream(input(buffer, segment.offset,
+                        segment.length)),
+                generator, this::defer);
+    }
+
+    private void defer(VFlowModel flow) {
+        // the segment is identified by the id the flow had when it was saved
+        String id = flow.getId();
+
+        flow.setContentLoader(f -> load(f, id));
+    }
+
+    private void load(VFlowModel flow, String id) {
+        Segment segment = index.get(id);
+
+        try {
+            if (segment == null) {
+                throw new IOException("No segment for flow " + id);
+            }
+
+            newReader(segment).readContent(flow, id);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static InputStream input(ByteBuffer buffer, int offset,
+            int length) {
+        ByteBuffer b = buffer.duplicate();
+        b.position(offset);
+        b.limit(offset + length);
+
+        return new ByteBufferInputStream(b);
+    }
+    /**
+     * Position of a segment in the container.
+     */
+    private static final class Segment {
+
+        private final int offset;
+        private final int length;
+
+        Segment(int offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Reads the remaining bytes of a buffer.
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,330 @@
+/*
+ * Copyright 2012-2016 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * Please cite the following publication(s):
+ *
+ * M. Hoffer, C.Poliwoda, G.Wittum. Visual Reflection Library -
+ * A Framework for Declarative GUI Programming on the Java Platform.
+ * Computing and Visualization in Science, 2011, in press.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vrl.workflow.io;
+
+import eu.mihosoft.vrl.workflow.VFlowModel;
+import eu.mihosoft.vrl.workflow.VNode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Writes flow containers (see {@link ContainerWorkflowIO}). Segments are
+ * written in breadth-first order, i.e., the segment of the root flow comes
+ * first. Each segment is buffered before it is written.
+ *
+ * <p>
+ * If a previous version of the container is specified, the segments of
+ * unchanged flows are copied from the previous version instead of being
+ * written again. This includes the segments of all subflows of flows whose
+ * content hasn't been loaded (see {@link VFlowModel#isContentLoaded()}).
+ * </p>
+ *
+ * <p>
+ * Alternatively, the segments of changed flows can be appended to the
+ * previous version together with a new index and trailer (see
+ * {@link #append(VFlowModel, Path, FlowContainerReader, Predicate)}). The
+ * new index references the segments of unchanged flows in place. Existing
+ * bytes of the container are not modified.
+ * </p>
+ *
+ * @author Michael Hoffer &lt;info@michaelhoffer.de&gt;
+ */
+final class FlowContainerWriter {
+
+    private final FileChannel out;
+    private final FlowContainerReader previous;
+    private final Predicate<VFlowModel> changed;
+    // true if segments are appended to the previous version
+    private final boolean append;
+
+    // subflows whose segments haven't been written yet
+    private final Deque<VFlowModel> pending = new ArrayDeque<>();
+
+    // flow id -> index entry
+    private final Map<String, IndexEntry> index = new LinkedHashMap<>();
+
+    private FlowContainerWriter(FileChannel out,
+            FlowContainerReader previous, Predicate<VFlowModel> changed,
+            boolean append) {
+        this.out = out;
+        this.previous = previous;
+        this.changed = changed;
+        this.append = append;
+    }
+
+    /**
+     * Writes the specified flow to the specified file.
+     *
+     * @param flow flow to write
+     * @param p path of the container
+     * @throws IOException if the file cannot be written
+     */
+    static void write(VFlowModel flow, Path p) throws IOException {
+        write(flow, p, null, null);
+    }
+
+    /**
+     * Writes the specified flow to the specified file. Unchanged flows are
+     * copied from the specified previous version of the container.
+     *
+     * @param flow flow to write
+     * @param p path of the container
+     * @param previous previous version of the container (may be
+     * {@code null})
+     * @param changed indicates whether a flow has been changed since the
+     * previous version has been written
+     * @throws IOException if the file cannot be written
+     */
+    static void write(VFlowModel flow, Path p,
+            FlowContainerReader previous, Predicate<VFlowModel> changed)
+            throws IOException {
+        try (FileChannel out = FileChannel.open(p,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            new FlowContainerWriter(out, previous, changed, false).
+                    writeContainer(flow);
+        }
+    }
+
+    /**
+     * Appends the segments of the changed flows of the specified flow to the
+     * specified container, followed by a new index and trailer. Existing
+     * bytes of the container are not modified, i.e., buffers that map the
+     * previous version stay valid. If appending fails, the appended bytes
+     * are removed if possible. Otherwise, readers ignore them (see
+     * {@link FlowContainerReader}).
+     *
+     * @param flow flow to write
+     * @param p path of the container
+     * @param previous reader of the current version of the container
+     * @param changed indicates whether a flow has been changed since the
+     * previous version has been written
+     * @throws IOException if the file cannot be written
+     */
+    static void append(VFlowModel flow, Path p,
+            FlowContainerReader previous, Predicate<VFlowModel> changed)
+            throws IOException {
+        try (FileChannel out = FileChannel.open(p,
+                StandardOpenOption.WRITE)) {
+            long size = previous.getSize();
+            out.position(size);
+
+            try {
+                new FlowContainerWriter(out, previous, changed, true).
+                        writeContainer(flow);
+            } catch (IOException | RuntimeException ex) {
+                truncate(out, size);
+                throw ex;
+            }
+
+            // incomplete data of a previous append
+            truncate(out, out.position());
+        }
+    }
+
+    private static void truncate(FileChannel out, long size) {
+        try {
+            if (out.size() > size) {
+                out.truncate(size);
+            }
+        } catch (IOException ex) {
+            // mapped files cannot be truncated on some platforms (e.g.
+            // Windows). readers ignore data after the last trailer
+        }
+    }
+
+    private void writeContainer(VFlowModel flow) throws IOException {
+        if (!append) {
+            ByteBuffer header = ByteBuffer.allocate(
+                    ContainerWorkflowIO.HEADER_SIZE);
+            header.put(ContainerWorkflowIO.MAGIC);
+            header.putInt(ContainerWorkflowIO.VERSION);
+            header.flip();
+            writeFully(header);
+        }
+
+        writeSegment(flow, null);
+
+        while (!pending.isEmpty()) {
+            VFlowModel subflow = pending.poll();
+            writeSegment(subflow, subflow.getFlow().getId());
+        }
+
+        writeIndex();
+    }
+
+    private void writeSegment(VFlowModel flow, String parentId)
+            throws IOException {
+
+        String id = flow.getId();
+
+        if (index.containsKey(id)) {
+            throw new IOException("Duplicate flow id: " + id);
+        }
+
+        if (previous != null && !changed.test(flow)
+                && previous.hasSegment(id)) {
+            copySegment(id, parentId);
+
+            if (flow.isContentLoaded()) {
+                for (VNode n : flow.getNodes()) {
+                    if (n instanceof VFlowModel) {
+                        pending.add((VFlowModel) n);
+                    }
+                }
+            } else {
+                copySubflowSegments(id);
+            }
+
+            return;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(bytes);
+
+        BinaryFlowWriter writer = new BinaryFlowWriter(data, pending::add);
+
+        if (parentId == null) {
+            writer.writeFlow(flow);
+        } else {
+            writer.writeContent(flow);
+        }
+
+        data.flush();
+
+        index.put(id, new IndexEntry(parentId, out.position(), bytes.size()));
+
+        writeFully(ByteBuffer.wrap(bytes.toByteArray()));
+    }
+
+    private void copySubflowSegments(String id) throws IOException {
+        for (String subflowId : previous.getSubflowSegments(id)) {
+            if (index.containsKey(subflowId)) {
+                throw new IOException("Duplicate flow id: " + subflowId);
+            }
+
+            copySegment(subflowId, id);
+            copySubflowSegments(subflowId);
+        }
+    }
+
+    private void copySegment(String id, String parentId) throws IOException {
+        if (append) {
+            // the segment stays where it is
+            index.put(id, new IndexEntry(parentId,
+                    previous.getSegmentOffset(id),
+                    previous.getSegmentLength(id)));
+            return;
+        }
+
+        ByteBuffer segment = previous.getSegment(id);
+
+        index.put(id, new IndexEntry(parentId, out.position(),
+                segment.remaining()));
+
+        writeFully(segment);
+    }
+
+    private void writeIndex() throws IOException {
+        long indexOffset = out.position();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(bytes);
+
+        data.writeInt(index.size());
+
+        for (Map.Entry<String, IndexEntry> e : index.entrySet()) {
+            IndexEntry entry = e.getValue();
+
+            data.writeUTF(e.getKey());
+            data.writeUTF(entry.parentId == null ? "" : entry.parentId);
+            data.writeLong(entry.offset);
+            data.writeInt(entry.length);
+        }
+
+        data.flush();
+        writeFully(ByteBuffer.wrap(bytes.toByteArray()));
+
+        if (append) {
+            // the trailer must not become visible before the segments and
+            // the index it refers to
+            out.force(false);
+        }
+
+        ByteBuffer trailer = ByteBuffer.allocate(
+                ContainerWorkflowIO.TRAILER_SIZE);
+        trailer.putLong(indexOffset);
+        trailer.put(ContainerWorkflowIO.MAGIC);
+        trailer.flip();
+        writeFully(trailer);
+
+        if (append) {
+            out.force(false);
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    /**
+     * Index entry of a segment.
+     */
+    private static final class IndexEntry {
+
+        private final String parentId;
+        private final long offset;
+        private final int length;
+
+        IndexEntry(String parentId, long offset, int length) {
+            this.parentId = parentId;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2012-2016 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * Please cite the following publication(s):
+ *
+ * M. Hoffer, C.Poliwoda, G.Wittum. Visual Reflection Library -
+ * A Framework for Declarative GUI Programming on the Java Platform.
+ * Computing and Visualization in Science, 2011, in press.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vrl.workflow.io;
+
+import com.thoughtworks.xstream.io.AbstractWriter;
+import com.thoughtworks.xstream.io.StreamException;
+import com.thoughtworks.xstream.io.xml.XmlFriendlyNameCoder;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * XStream writer that writes to a StAX stream. The output is formatted like
+ * the output of XStream's {@code PrettyPrintWriter}, i.e., nested elements are
+ * indented by two spaces and elements without content are written as empty
+ * elements.
+ *
+ * @author Michael Hoffer &lt;info@michaelhoffer.de&gt;
+ */
+final class StaxPrettyPrintWriter extends AbstractWriter {
+
+    private static final String INDENT = "  ";
+
+    private final XMLStreamWriter out;
+    private int depth;
+    private boolean readyForNewLine;
+
+    // start tag that has not been written yet (we don't know whether the
+    // element will be empty)
+    private String pendingName;
+    private final List<String> pendingAttributes = new ArrayList<>();
+
+    // name and class attribute of the next node (see aliasNextNode())
+    private String nextName;
+    private String nextClass;
+
+    /**
+     * Constructor.
+     *
+     * @param out stream to write to
+     */
+    StaxPrettyPrintWriter(XMLStreamWriter out) {
+        super(new XmlFriendlyNameCoder());
+        this.out = out;
+    }
+
+    /**
+     * Renames the next node that is started. This allows to write objects
+     * that are marshalled by XStream as fields, i.e., with the field name as
+     * element name and the class of the object as class attribute.
+     *
+     * @param name name of the next node
+     * @param classAttribute class attribute of the next node (may be
+     * {@code null})
+     */
+    void aliasNextNode(String name, String classAttribute) {
+        this.nextName = name;
+        this.nextClass = classAttribute;
+    }
+
+    @Override
+    public void startNode(String name) {
+        String classAttribute = null;
+
+        if (nextName != null) {
+            name = nextName;
+            classAttribute = nextClass;
+            nextName = null;
+            nextClass = null;
+        }
+
+        try {
+            writePendingStartElement();
+
+            if (readyForNewLine) {
+                newLine();
+            }
+        } catch (XMLStreamException ex) {
+            throw new StreamException(ex);
+        }
+
+        pendingName = encodeNode(name);
+        depth++;
+        readyForNewLine = true;
+
+        if (classAttribute != null) {
+            addAttribute("class", classAttribute);
+        }
+    }
+
+    @Override
+    public void addAttribute(String name, String value) {
+        pendingAttributes.add(encodeAttribute(name));
+        pendingAttributes.add(value);
+    }
+
+    @Override
+    public void setValue(String text) {
+        readyForNewLine = false;
+
+        try {
+            writePendingStartElement();
+            out.writeCharacters(text);
+        } catch (XMLStreamException ex) {
+            throw new StreamException(ex);
+        }
+    }
+
+    @Override
+    public void endNode() {
+        depth--;
+
+        try {
+            if (pendingName != null) {
+                out.writeEmptyElement(pendingName);
+                writePendingAttributes();
+                pendingName = null;
+            } else {
+                if (readyForNewLine) {
+                    newLine();
+                }
+
+                out.writeEndElement();
+            }
+
+            readyForNewLine = true;
+
+            if (depth == 0) {
+                out.flush();
+            }
+        } catch (XMLStreamException ex) {
+            throw new StreamException(ex);
+        }
+    }
+
+    @Override
+    public void flush() {
+        try {
+            out.flush();
+        } catch (XMLStreamException ex) {
+            throw new StreamException(ex);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            out.close();
+        } catch (XMLStreamException ex) {
+            throw new StreamException(ex);
+        }
+    }
+
+    private void writePendingStartElement() throws XMLStreamException {
+        if (pendingName == null) {
+            return;
+        }
+
+        out.writeStartElement(pendingName);
+        writePendingAttributes();
+        pendingName = null;
+    }
+
+    private void writePendingAttributes() throws XMLStreamException {
+        for (int i = 0; i < pendingAttributes.size(); i += 2) {
+            out.writeAttribute(pendingAttributes.get(i),
+                    pendingAttributes.get(i + 1));
+        }
+
+        pendingAttributes.clear();
+    }
+
+    private void newLine() throws XMLStreamException {
+        out.writeCharacters("\n");
+
+        for (int i = 0; i < depth; i++) {
+            out.writeCharacters(INDENT);
+        }
+    }
+}
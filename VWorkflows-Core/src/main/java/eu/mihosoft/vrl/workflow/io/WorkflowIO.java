@@ -34,6 +34,7 @@
 package eu.mihosoft.vrl.workflow.io;
 
 import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.io.StreamException;
 import eu.mihosoft.vrl.workflow.Connector;
 import eu.mihosoft.vrl.workflow.DefaultValueObject;
 import eu.mihosoft.vrl.workflow.FlowFactory;
@@ -48,9 +49,16 @@ import eu.mihosoft.vrl.workflow.VFlowModel;
 import eu.mihosoft.vrl.workflow.VNode;
 import eu.mihosoft.vrl.workflow.ValueObject;
 
+import javax.xml.stream.XMLStreamException;
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
@@ -76,11 +84,12 @@ public class WorkflowIO {
     }
     
     public static VFlowModel loadFromXML(String xml, IdGenerator generator) {
-        XStream xstream = new XStream();
-        
-        configureStream(xstream);
-        
-        return flowFromPersistentFlow((PersistentFlow) xstream.fromXML(xml), generator);
+        try {
+            return XMLFlowReader.read(XMLFlowReader.newInputFactory().
+                    createXMLStreamReader(new StringReader(xml)), generator);
+        } catch (XMLStreamException ex) {
+            throw new StreamException(ex);
+        }
     }
     
     public static VFlow loadFromXML(String xml) {
@@ -105,27 +114,21 @@ public class WorkflowIO {
     
     public static VFlowModel loadFromXML(Path p, IdGenerator generator) throws IOException {
         
-        XStream xstream = new XStream();
-        
-        configureStream(xstream);
-        
-        InputStream is = Files.newInputStream(p, StandardOpenOption.READ);
-        
-        PersistentFlow pFlow = (PersistentFlow) xstream.fromXML(is);
-        
-        return flowFromPersistentFlow(pFlow, generator);
+        try (InputStream is = Files.newInputStream(p, StandardOpenOption.READ)) {
+            return loadFromXML(is, generator);
+        }
     }
     
     public static VFlowModel loadFromXML(InputStream xmlStream, IdGenerator generator) {
-        
-        XStream xstream = new XStream();
-        
-        configureStream(xstream);
-        
-        return flowFromPersistentFlow((PersistentFlow) xstream.fromXML(xmlStream), generator);
+        try {
+            return XMLFlowReader.read(XMLFlowReader.newInputFactory().
+                    createXMLStreamReader(xmlStream), generator);
+        } catch (XMLStreamException ex) {
+            throw new StreamException(ex);
+        }
     }
     
-    private static void configureStream(XStream xstream) {
+    static void configureStream(XStream xstream) {
         xstream.alias("flow", PersistentFlow.class);
         xstream.alias("node", PersistentNode.class);
         xstream.alias("connection", PersistentConnection.class);
@@ -137,30 +140,33 @@ public class WorkflowIO {
     
     public static void saveToXML(Path p, VFlowModel flow) throws IOException {
         
-        OutputStream os = Files.newOutputStream(p,
+        try (Writer w = Files.newBufferedWriter(p, StandardCharsets.UTF_8,
                 StandardOpenOption.CREATE,
                 StandardOpenOption.WRITE,
-                StandardOpenOption.TRUNCATE_EXISTING);
-        
-        saveToXML(flow, os);
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            XMLFlowWriter.write(flow, w);
+        }
     }
     
     public static void saveToXML(VFlowModel flow, OutputStream xmlStream) {
-        XStream xstream = new XStream();
+        Writer w = new BufferedWriter(
+                new OutputStreamWriter(xmlStream, StandardCharsets.UTF_8));
         
-        configureStream(xstream);
+        XMLFlowWriter.write(flow, w);
         
-        xstream.toXML(toPersistentNode(flow, null), xmlStream);
+        try {
+            w.flush();
+        } catch (IOException ex) {
+            throw new StreamException(ex);
+        }
     }
     
     public static String saveToXML(VFlowModel flow) {
-        XStream xstream = new XStream();
+        StringWriter w = new StringWriter();
         
-        configureStream(xstream);
+        XMLFlowWriter.write(flow, w);
         
-        String xml = xstream.toXML(toPersistentNode(flow, null));
-        
-        return xml;
+        return w.toString();
     }
     
     public static PersistentNode toPersistentNode(VNode node, PersistentFlow parent) {
@@ -392,34 +398,37 @@ public class WorkflowIO {
     }
     
     public static Connector fromPersistentConnector(PersistentConnector pC, VNode n) {
-
-//        ConnectorIOImpl result
-//                = new ConnectorImpl(n, c.getType(), c.getLocalId(), c.isInput(), c.isOutput());
-//        
+        return newConnector(n, pC.getType(), pC.getLocalId(), pC.isInput(),
+                pC.isPassthru(), pC.getMaxNumConnections());
+    }
+    
+    static Connector newConnector(VNode n, String type, String localId,
+            boolean input, boolean passthru, int maxNumConnections) {
+        
         Connector c;
-        if (pC.isPassthru()) {
+        if (passthru) {
             
             VFlowModel flowModel = (VFlowModel) n;
             
-            if (pC.isInput()) {
+            if (input) {
                 VNode innerNode = flowModel.newNode();
                 Connector innerConnector = innerNode.setMainInput(
-                        innerNode.addInput(pC.getType()));
-                c = new ThruConnectorImpl(n, pC.getType(),
-                        pC.getLocalId(), true, innerNode, innerConnector);
+                        innerNode.addInput(type));
+                c = new ThruConnectorImpl(n, type,
+                        localId, true, innerNode, innerConnector);
             } else {
                 VNode innerNode = flowModel.newNode();
                 Connector innerConnector = innerNode.setMainOutput(
-                        innerNode.addOutput(pC.getType()));
-                c = new ThruConnectorImpl(n, pC.getType(),
-                        pC.getLocalId(), false, innerNode, innerConnector);
+                        innerNode.addOutput(type));
+                c = new ThruConnectorImpl(n, type,
+                        localId, false, innerNode, innerConnector);
             }
             
         } else {
-            c = new IOConnector(n, pC.getType(), pC.getLocalId(), pC.isInput());
+            c = new IOConnector(n, type, localId, input);
         }
         
-        c.setMaxNumberOfConnections(pC.getMaxNumConnections());
+        c.setMaxNumberOfConnections(maxNumConnections);
         
         return c;
     }
@@ -0,0 +1,500 @@
+/*
+ * Copyright 2012-2016 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * Please cite the following publication(s):
+ *
+ * M. Hoffer, C.Poliwoda, G.Wittum. Visual Reflection Library -
+ * A Framework for Declarative GUI Programming on the Java Platform.
+ * Computing and Visualization in Science, 2011, in press.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vrl.workflow.io;
+
+import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.io.StreamException;
+import com.thoughtworks.xstream.io.xml.QNameMap;
+import com.thoughtworks.xstream.io.xml.StaxReader;
+import eu.mihosoft.vrl.workflow.Connections;
+import eu.mihosoft.vrl.workflow.Connector;
+import eu.mihosoft.vrl.workflow.DefaultValueObject;
+import eu.mihosoft.vrl.workflow.FlowFactory;
+import eu.mihosoft.vrl.workflow.IdGenerator;
+import eu.mihosoft.vrl.workflow.NodeLookupImpl;
+import eu.mihosoft.vrl.workflow.VConnections;
+import eu.mihosoft.vrl.workflow.VFlowModel;
+import eu.mihosoft.vrl.workflow.VNode;
+import eu.mihosoft.vrl.workflow.ValueObject;
+import eu.mihosoft.vrl.workflow.VisualizationRequest;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.util.StreamReaderDelegate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads flows from XML (see {@link XMLFlowWriter}). Nodes, connectors and
+ * connections are created while the document is read, i.e., without creating
+ * the persistent representation of the flow (see {@link PersistentFlow})
+ * first. Connection endpoints are resolved via a table of the connectors that
+ * have been read.
+ *
+ * <p>
+ * The resulting model is equivalent to the model that
+ * {@link WorkflowIO#flowFromPersistentFlow(PersistentFlow, IdGenerator)}
+ * creates. Values of value objects and visualization requests are read by
+ * XStream. References between such values (XStream writes them for objects
+ * that occur several times in one object graph) are only supported within
+ * the same value.
+ * </p>
+ *
+ * @author Michael Hoffer &lt;info@michaelhoffer.de&gt;
+ */
+final class XMLFlowReader {
+
+    private static final XStream XSTREAM = new XStream();
+
+    static {
+        WorkflowIO.configureStream(XSTREAM);
+    }
+
+    private final XMLStreamReader in;
+    private final IdGenerator generator;
+
+    // global connector id -> connector
+    private final Map<String, Connector> connectors = new HashMap<>();
+
+    private XMLFlowReader(XMLStreamReader in, IdGenerator generator) {
+        this.in = in;
+        this.generator = generator;
+    }
+
+    /**
+     * Creates a stream reader for reading flows.
+     *
+     * @return a new input factory
+     */
+    static XMLInputFactory newInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(
+                XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    /**
+     * Reads a flow from the specified stream.
+     *
+     * @param in stream to read
+     * @param generator id generator of the flow
+     * @return the flow
+     */
+    static VFlowModel read(XMLStreamReader in, IdGenerator generator) {
+        try {
+            if (in.nextTag() != XMLStreamConstants.START_ELEMENT
+                    || !"flow".equals(in.getLocalName())) {
+                throw new StreamException(
+                        "Expected root element \"flow\", found \""
+                        + in.getLocalName() + "\"");
+            }
+
+            return (VFlowModel) new XMLFlowReader(in, generator).
+                    readNode(null, true);
+        } catch (XMLStreamException ex) {
+            throw new StreamException(ex);
+        }
+    }
+
+    private VNode readNode(VFlowModel parent, boolean isFlow)
+            throws XMLStreamException {
+
+        VFlowModel flow = null;
+        VNode node;
+
+        if (parent == null) {
+            flow = FlowFactory.newFlowModel();
+            flow.setIdGenerator(generator);
+            flow.setNodeLookup(new NodeLookupImpl(flow));
+            node = flow;
+        } else if (isFlow) {
+            flow = parent.newFlowNode();
+            node = flow;
+        } else {
+            node = parent.newNode();
+        }
+
+        // connectors of flows are added after their nodes (thru connectors
+        // create inner nodes), connections after the connectors
+        List<ConnectorEntry> flowConnectors = new ArrayList<>();
+        Map<String, String> mainInputs = null;
+        Map<String, String> mainOutputs = null;
+        Map<String, List<ConnectionEntry>> connections = null;
+
+        while (nextChild()) {
+            switch (in.getLocalName()) {
+                case "x":
+                    node.setX(Double.parseDouble(in.getElementText()));
+                    break;
+                case "y":
+                    node.setY(Double.parseDouble(in.getElementText()));
+                    break;
+                case "width":
+                    node.setWidth(Double.parseDouble(in.getElementText()));
+                    break;
+                case "height":
+                    node.setHeight(Double.parseDouble(in.getElementText()));
+                    break;
+                case "title":
+                    node.setTitle(in.getElementText());
+                    break;
+                case "valueObject":
+                    node.setValueObject(readValueObject(node));
+                    break;
+                case "vReq":
+                    node.setVisualizationRequest(
+                            (VisualizationRequest) readObject());
+                    break;
+                case "id":
+                    String id = in.getElementText();
+                    node.setId(id);
+                    generator.addId(id);
+                    break;
+                case "connectors":
+                    while (nextChild()) {
+                        ConnectorEntry c = readConnector();
+
+                        if (flow != null) {
+                            flowConnectors.add(c);
+                        } else {
+                            addConnector(node, c);
+                        }
+                    }
+                    break;
+                case "mainInputs":
+                    mainInputs = readStringMap();
+                    break;
+                case "mainOutputs":
+                    mainOutputs = readStringMap();
+                    break;
+                case "connections":
+                    connections = readConnections();
+                    break;
+                case "nodes":
+                    while (nextChild()) {
+                        readNode(flow, "flow".equals(in.getLocalName()));
+                    }
+                    break;
+                case "visible":
+                    boolean visible = Boolean.parseBoolean(
+                            in.getElementText());
+                    if (flow != null) {
+                        flow.setVisible(visible);
+                    }
+                    break;
+                default:
+                    // e.g. the parent reference of subflows
+                    skipElement();
+            }
+        }
+
+        if (flow == null) {
+            return node;
+        }
+
+        for (ConnectorEntry c : flowConnectors) {
+            addConnector(flow, c);
+        }
+
+        if (mainInputs != null) {
+            for (String localId : mainInputs.values()) {
+                flow.setMainInput(flow.getConnector(localId));
+            }
+        }
+
+        if (mainOutputs != null) {
+            for (String localId : mainOutputs.values()) {
+                flow.setMainOutput(flow.getConnector(localId));
+            }
+        }
+
+        if (connections != null) {
+            for (Map.Entry<String, List<ConnectionEntry>> e
+                    : connections.entrySet()) {
+                Connections cns = VConnections.newConnections(e.getKey());
+
+                for (ConnectionEntry c : e.getValue()) {
+                    cns.add(c.id, getConnector(flow, c.senderId),
+                            getConnector(flow, c.receiverId), c.vReq);
+                }
+
+                flow.addConnections(cns, e.getKey());
+            }
+        }
+
+        return flow;
+    }
+
+    private ValueObject readValueObject(VNode node)
+            throws XMLStreamException {
+        ValueObject result = new DefaultValueObject();
+        result.setParent(node);
+
+        while (nextChild()) {
+            switch (in.getLocalName()) {
+                case "value":
+                    result.setValue(readObject());
+                    break;
+                case "storage":
+                    while (nextChild()) {
+                        // entry
+                        nextChild();
+                        String key = in.getElementText();
+                        nextChild();
+                        result.getVisualizationRequest().set(
+                                key, readObject());
+                        skipElement();
+                    }
+                    break;
+                default:
+                    skipElement();
+            }
+        }
+
+        return result;
+    }
+
+    private ConnectorEntry readConnector() throws XMLStreamException {
+        ConnectorEntry c = new ConnectorEntry();
+
+        while (nextChild()) {
+            switch (in.getLocalName()) {
+                case "type":
+                    c.type = in.getElementText();
+                    break;
+                case "localId":
+                    c.localId = in.getElementText();
+                    break;
+                case "input":
+                    c.input = Boolean.parseBoolean(in.getElementText());
+                    break;
+                case "passthru":
+                    c.passthru = Boolean.parseBoolean(in.getElementText());
+                    break;
+                case "maxNumConnections":
+                    c.maxNumConnections = Integer.parseInt(
+                            in.getElementText());
+                    break;
+                default:
+                    skipElement();
+            }
+        }
+
+        return c;
+    }
+
+    private void addConnector(VNode node, ConnectorEntry c) {
+        Connector connector = node.addConnector(WorkflowIO.newConnector(
+                node, c.type, c.localId, c.input, c.passthru,
+                c.maxNumConnections));
+
+        connectors.put(connector.getId(), connector);
+    }
+
+    private Connector getConnector(VFlowModel flow, String id) {
+        Connector result = connectors.get(id);
+
+        if (result == null) {
+            result = flow.getNodeLookup().getConnectorById(id);
+        }
+
+        return result;
+    }
+
+    private Map<String, List<ConnectionEntry>> readConnections()
+            throws XMLStreamException {
+        Map<String, List<ConnectionEntry>> result = new HashMap<>();
+
+        while (nextChild()) {
+            ConnectionEntry c = new ConnectionEntry();
+            String type = null;
+
+            while (nextChild()) {
+                switch (in.getLocalName()) {
+                    case "id":
+                        c.id = in.getElementText();
+                        break;
+                    case "senderId":
+                        c.senderId = in.getElementText();
+                        break;
+                    case "receiverId":
+                        c.receiverId = in.getElementText();
+                        break;
+                    case "type":
+                        type = in.getElementText();
+                        break;
+                    case "vReq":
+                        c.vReq = (VisualizationRequest) readObject();
+                        break;
+                    default:
+                        skipElement();
+                }
+            }
+
+            result.computeIfAbsent(type, t -> new ArrayList<>()).add(c);
+        }
+
+        return result;
+    }
+
+    private Map<String, String> readStringMap() throws XMLStreamException {
+        Map<String, String> result = new HashMap<>();
+
+        while (nextChild()) {
+            // entry
+            nextChild();
+            String key = in.getElementText();
+            nextChild();
+            String value = in.getElementText();
+            skipElement();
+
+            result.put(key, value);
+        }
+
+        return result;
+    }
+
+    /**
+     * Reads the current element with XStream.
+     *
+     * @return the object that is stored in the current element
+     */
+    private Object readObject() throws XMLStreamException {
+        SubtreeReader subtree = new SubtreeReader(in);
+
+        Object result = XSTREAM.unmarshal(
+                new StaxReader(new QNameMap(), subtree));
+
+        subtree.skipRest();
+
+        return result;
+    }
+
+    /**
+     * Moves to the next child element of the current element.
+     *
+     * @return {@code true} if the reader is located at the start of a child
+     * element; {@code false} if it is located at the end of the current
+     * element
+     */
+    private boolean nextChild() throws XMLStreamException {
+        while (true) {
+            int event = in.next();
+
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                return true;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Skips the remaining content of the current element, i.e., moves to the
+     * end of the current element.
+     */
+    private void skipElement() throws XMLStreamException {
+        while (nextChild()) {
+            skipElement();
+        }
+    }
+
+    /**
+     * Reader that is restricted to the element at the current location of the
+     * underlying reader. The start of the element is reported by the first
+     * call to {@link #next()}.
+     */
+    private static final class SubtreeReader extends StreamReaderDelegate {
+
+        private boolean started;
+        private int depth;
+
+        SubtreeReader(XMLStreamReader reader) {
+            super(reader);
+        }
+
+        @Override
+        public int next() throws XMLStreamException {
+            int event;
+
+            if (!started) {
+                started = true;
+                event = getEventType();
+            } else if (depth == 0) {
+                return XMLStreamConstants.END_DOCUMENT;
+            } else {
+                event = super.next();
+            }
+
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+
+            return event;
+        }
+
+        /**
+         * Moves the underlying reader to the end of the element.
+         */
+        void skipRest() throws XMLStreamException {
+            while (depth > 0) {
+                next();
+            }
+        }
+    }
+
+    private static final class ConnectorEntry {
+
+        private String type;
+        private String localId;
+        private boolean input;
+        private boolean passthru;
+        private int maxNumConnections;
+    }
+
+    private static final class ConnectionEntry {
+
+        private String id;
+        private String senderId;
+        private String receiverId;
+        private VisualizationRequest vReq;
+    }
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright 2012-2016 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * Please cite the following publication(s):
+ *
+ * M. Hoffer, C.Poliwoda, G.Wittum. Visual Reflection Library -
+ * A Framework for Declarative GUI Programming on the Java Platform.
+ * Computing and Visualization in Science, 2011, in press.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vrl.workflow.io;
+
+import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.io.StreamException;
+import com.thoughtworks.xstream.mapper.Mapper;
+import eu.mihosoft.vrl.workflow.Connection;
+import eu.mihosoft.vrl.workflow.Connections;
+import eu.mihosoft.vrl.workflow.Connector;
+import eu.mihosoft.vrl.workflow.ThruConnector;
+import eu.mihosoft.vrl.workflow.VFlowModel;
+import eu.mihosoft.vrl.workflow.VNode;
+import eu.mihosoft.vrl.workflow.ValueObject;
+import eu.mihosoft.vrl.workflow.VisualizationRequest;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes flows as XML. The flow is written while it is traversed, i.e.,
+ * without creating the persistent representation of the flow (see
+ * {@link PersistentFlow}) first. Memory consumption doesn't depend on the size
+ * of the flow. The XML is equivalent to the XML that XStream creates for the
+ * persistent representation and can be read via
+ * {@link WorkflowIO#loadFromXML(java.lang.String)}.
+ *
+ * <p>
+ * Values of value objects and visualization requests are arbitrary objects.
+ * They are written by XStream. Objects that are referenced several times are
+ * written several times.
+ * </p>
+ *
+ * @author Michael Hoffer &lt;info@michaelhoffer.de&gt;
+ */
+final class XMLFlowWriter {
+
+    private static final XStream XSTREAM = new XStream();
+
+    static {
+        WorkflowIO.configureStream(XSTREAM);
+    }
+
+    private final StaxPrettyPrintWriter writer;
+    private final Mapper mapper = XSTREAM.getMapper();
+
+    private XMLFlowWriter(XMLStreamWriter out) {
+        this.writer = new StaxPrettyPrintWriter(out);
+    }
+
+    /**
+     * Writes the specified flow to the specified writer.
+     *
+     * @param flow flow to write
+     * @param out writer
+     */
+    static void write(VFlowModel flow, Writer out) {
+        try {
+            XMLStreamWriter xmlOut = XMLOutputFactory.newInstance().
+                    createXMLStreamWriter(out);
+
+            new XMLFlowWriter(xmlOut).writeNode(flow, true);
+
+            xmlOut.flush();
+        } catch (XMLStreamException ex) {
+            throw new StreamException(ex);
+        }
+    }
+
+    private void writeNode(VNode node, boolean root) {
+        boolean isFlow = node instanceof VFlowModel;
+
+        writer.startNode(isFlow ? "flow" : "node");
+
+        // fields of PersistentNode
+        writeValue("x", Double.toString(node.getX()));
+        writeValue("y", Double.toString(node.getY()));
+        writeValue("width", Double.toString(node.getWidth()));
+        writeValue("height", Double.toString(node.getHeight()));
+        writeValue("title", node.getTitle());
+        writeValueObject(node.getValueObject());
+        writeField("vReq", VisualizationRequest.class,
+                node.getVisualizationRequest());
+        writeValue("id", node.getId());
+
+        writer.startNode("connectors");
+        for (Connector c : node.getConnectors()) {
+            writeConnector(c);
+        }
+        writer.endNode();
+
+        Map<String, String> mainInputs = new HashMap<>();
+        for (String type : node.getMainInputTypes()) {
+            mainInputs.put(type, node.getMainInput(type).getLocalId());
+        }
+        writeStringMap("mainInputs", mainInputs);
+
+        Map<String, String> mainOutputs = new HashMap<>();
+        for (String type : node.getMainOutputTypes()) {
+            mainOutputs.put(type, node.getMainOutput(type).getLocalId());
+        }
+        writeStringMap("mainOutputs", mainOutputs);
+
+        // fields of PersistentFlow
+        if (isFlow) {
+            VFlowModel flow = (VFlowModel) node;
+
+            writer.startNode("connections");
+            for (Connections connections : flow.getAllConnections().values()) {
+                for (Connection c : connections.getConnections()) {
+                    writeConnection(c);
+                }
+            }
+            writer.endNode();
+
+            writer.startNode("nodes");
+            for (VNode n : flow.getNodes()) {
+                writeNode(n, false);
+            }
+            writer.endNode();
+
+            // relative xpath reference: parent/flow/nodes/parent flow
+            if (!root) {
+                writer.startNode("parent");
+                writer.addAttribute("reference", "../../..");
+                writer.endNode();
+            }
+
+            writeValue("visible", Boolean.toString(flow.isVisible()));
+        }
+
+        writer.endNode();
+    }
+
+    private void writeValueObject(ValueObject vObj) {
+        writer.startNode("valueObject");
+
+        if (vObj.getParent() != null) {
+            writeValue("parentId", vObj.getParent().getId());
+        }
+
+        writeField("value", Object.class, vObj.getValue());
+
+        writer.startNode("storage");
+
+        VisualizationRequest vReq = vObj.getVisualizationRequest();
+
+        if (vReq != null) {
+            for (String key : vReq.getKeys()) {
+                writer.startNode("entry");
+                writeValue("string", key);
+                // values are stored as returned by the visualization request
+                // (see PersistentValueObject)
+                writeItem(vReq.get(key));
+                writer.endNode();
+            }
+        }
+
+        writer.endNode();
+
+        writer.endNode();
+    }
+
+    private void writeConnector(Connector c) {
+        writer.startNode("connector");
+
+        writeValue("type", c.getType());
+        writeValue("localId", c.getLocalId());
+        writeValue("input", Boolean.toString(c.isInput()));
+        writeValue("output", Boolean.toString(c.isOutput()));
+        writeValue("passthru", Boolean.toString(c instanceof ThruConnector));
+        writeValue("maxNumConnections",
+                Integer.toString(c.getMaxNumberOfConnections()));
+
+        writer.endNode();
+    }
+
+    private void writeConnection(Connection c) {
+        writer.startNode("connection");
+
+        writeValue("id", c.getId());
+        writeValue("senderId", c.getSender().getId());
+        writeValue("receiverId", c.getReceiver().getId());
+        writeValue("type", c.getType());
+        writeField("vReq", VisualizationRequest.class,
+                c.getVisualizationRequest());
+
+        writer.endNode();
+    }
+
+    private void writeStringMap(String name, Map<String, String> map) {
+        writer.startNode(name);
+
+        for (Map.Entry<String, String> e : map.entrySet()) {
+            writer.startNode("entry");
+            writeValue("string", e.getKey());
+            writeValue("string", e.getValue());
+            writer.endNode();
+        }
+
+        writer.endNode();
+    }
+
+    private void writeValue(String name, String value) {
+        if (value == null) {
+            return;
+        }
+
+        writer.startNode(name);
+        writer.setValue(value);
+        writer.endNode();
+    }
+
+    /**
+     * Writes an object as XStream writes fields.
+     *
+     * @param name field name
+     * @param declaredType declared type of the field
+     * @param value value to write
+     */
+    private void writeField(String name, Class<?> declaredType, Object value) {
+        if (value == null) {
+            return;
+        }
+
+        Class<?> defaultType = mapper.defaultImplementationOf(declaredType);
+        String classAttribute = null;
+
+        if (!value.getClass().equals(defaultType)) {
+            classAttribute = mapper.serializedClass(value.getClass());
+
+            if (classAttribute.equals(mapper.serializedClass(defaultType))) {
+                classAttribute = null;
+            }
+        }
+
+        writer.aliasNextNode(name, classAttribute);
+        XSTREAM.marshal(value, writer);
+    }
+
+    /**
+     * Writes an object as XStream writes collection items.
+     *
+     * @param value value to write
+     */
+    private void writeItem(Object value) {
+        if (value == null) {
+            writer.startNode(mapper.serializedClass(null));
+            writer.endNode();
+        } else {
+            XSTREAM.marshal(value, writer);
+        }
+    }
+}
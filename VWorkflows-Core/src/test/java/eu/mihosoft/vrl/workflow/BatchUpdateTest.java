@@ -0,0 +1,190 @@
+/*
+ * Copyright 2012-2016 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * Please cite the following publication(s):
+ *
+ * M. Hoffer, C.Poliwoda, G.Wittum. Visual Reflection Library -
+ * A Framework for Declarative GUI Programming on the Java Platform.
+ * Computing and Visualization in Science, 2011, in press.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vrl.workflow;
+
+import javafx.collections.ListChangeListener;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ *
+ * @author Michael Hoffer &lt;info@michaelhoffer.de&gt;
+ */
+public class BatchUpdateTest {
+
+    @Test
+    public void coalescedChangesTest() {
+        VFlow flow = FlowFactory.newFlow();
+
+        VNode first = flow.newNode();
+        first.addOutput("data");
+
+        int[] nodeChanges = {0};
+        int[] addedNodes = {0};
+        int[] connectionChanges = {0};
+
+        flow.getNodes().addListener(
+                (ListChangeListener.Change<? extends VNode> change) -> {
+                    nodeChanges[0]++;
+                    while (change.next()) {
+                        addedNodes[0] += change.getAddedSize();
+                    }
+                });
+        flow.getConnections("data").getConnections().addListener(
+                (ListChangeListener.Change<? extends Connection> change) -> {
+                    connectionChanges[0]++;
+                });
+
+        List<VNode> nodes = new ArrayList<>();
+
+        flow.batch(tx -> {
+            VNode prev = first;
+            for (int i = 0; i < 100; i++) {
+                VNode n = tx.newNode();
+                n.addInput("data");
+                n.addOutput("data");
+
+                Assert.assertTrue(tx.connect(
+                        prev.getOutputs().get(0),
+                        n.getInputs().get(0)).getStatus().isCompatible());
+
+                // the index is updated immediately
+                Assert.assertTrue(tx.getConnections("data").
+                        isInputConnected(n.getInputs().get(0)));
+
+                // the lookup finds nodes that have not been reported yet
+                Assert.assertSame(n, tx.getNodeLookup().getById(n.getId()));
+
+                nodes.add(n);
+                prev = n;
+            }
+
+            Assert.assertEquals(0, nodeChanges[0]);
+            Assert.assertEquals(0, connectionChanges[0]);
+        });
+
+        Assert.assertEquals(1, nodeChanges[0]);
+        Assert.assertEquals(100, addedNodes[0]);
+        Assert.assertEquals(1, connectionChanges[0]);
+        Assert.assertEquals(100, flow.getConnections("data").getConnections().size());
+        Assert.assertFalse(flow.getModel().isUpdating());
+
+        flow.batch(tx -> {
+            for (VNode n : nodes) {
+                tx.remove(n);
+            }
+        });
+
+        Assert.assertEquals(2, nodeChanges[0]);
+        Assert.assertEquals(2, connectionChanges[0]);
+        Assert.assertEquals(1, flow.getNodes().size());
+        Assert.assertEquals(0, flow.getConnections("data").getConnections().size());
+    }
+
+    @Test
+    public void nestedUpdateTest() {
+        VFlow flow = FlowFactory.newFlow();
+
+        int[] nodeChanges = {0};
+
+        flow.getNodes().addListener(
+                (ListChangeListener.Change<? extends VNode> change) -> {
+                    nodeChanges[0]++;
+                });
+
+        flow.beginUpdate();
+        flow.newNode();
+        flow.beginUpdate();
+        flow.newNode();
+        flow.endUpdate();
+
+        Assert.assertEquals(0, nodeChanges[0]);
+
+        flow.endUpdate();
+
+        Assert.assertEquals(1, nodeChanges[0]);
+        Assert.assertEquals(2, flow.getNodes().size());
+
+        try {
+            flow.endUpdate();
+            Assert.fail("unbalanced endUpdate() must be rejected");
+        } catch (IllegalStateException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void batchedSkinTest() {
+        VFlow flow = FlowFactory.newFlow();
+        VNodeSkinFactoryStub skinFactory = new VNodeSkinFactoryStub();
+        flow.setSkinFactories(skinFactory);
+        flow.setVisible(true);
+
+        VNode[] created = new VNode[2];
+        VFlow[] subFlow = new VFlow[1];
+
+        flow.batch(tx -> {
+            created[0] = tx.newNode();
+            created[0].addOutput("data");
+            created[1] = tx.newNode();
+            created[1].addInput("data");
+            tx.connect(created[0].getOutputs().get(0),
+                    created[1].getInputs().get(0));
+
+            subFlow[0] = tx.newSubFlow();
+            subFlow[0].newNode();
+
+            // skins are created after the update
+            Assert.assertTrue(skinFactory.getNodeSkins().isEmpty());
+        });
+
+        Assert.assertNotNull(skinFactory.getNodeSkins().get(created[0]));
+        Assert.assertNotNull(skinFactory.getNodeSkins().get(created[1]));
+        Assert.assertNotNull(
+                skinFactory.getNodeSkins().get(subFlow[0].getModel()));
+        Assert.assertEquals(1, skinFactory.getConnectionSkins().size());
+
+        VNodeSkinFactoryStub childFactory = skinFactory.getChildFactories().
+                values().stream().findFirst().orElse(null);
+
+        Assert.assertNotNull("Child factory must exist.", childFactory);
+
+        subFlow[0].setVisible(true);
+        VNode sn = subFlow[0].getNodes().get(0);
+        Assert.assertNotNull(childFactory.getNodeSkins().get(sn));
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright 2012-2016 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * Please cite the following publication(s):
+ *
+ * M. Hoffer, C.Poliwoda, G.Wittum. Visual Reflection Library -
+ * A Framework for Declarative GUI Programming on the Java Platform.
+ * Computing and Visualization in Science, 2011, in press.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vrl.workflow;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+
+/**
+ *
+ * @author Michael Hoffer &lt;info@michaelhoffer.de&gt;
+ */
+public class CommandLogTest {
+
+    @Test
+    public void addRemoveNodeTest() {
+        VFlow flow = FlowFactory.newFlow();
+        CommandLog log = new CommandLog(flow.getModel());
+
+        VNode a = flow.newNode();
+        a.addOutput("data");
+        VNode b = flow.newNode();
+        b.addInput("data");
+        Connection c = flow.connect(a.getOutputs().get(0),
+                b.getInputs().get(0)).getConnection();
+
+        log.seal();
+        int numCommands = log.getUndoCount();
+
+        // the connection is removed together with the node
+        flow.remove(a);
+        Assert.assertEquals(numCommands + 1, log.getUndoCount());
+        Assert.assertTrue(flow.getConnections("data").
+                getConnections().isEmpty());
+
+        Assert.assertTrue(log.undo());
+        Assert.assertEquals(2, flow.getNodes().size());
+        Assert.assertSame(a, flow.getNodes().get(0));
+        Assert.assertSame(a, flow.getNodeLookup().getById(a.getId()));
+        Assert.assertTrue(flow.getConnections("data").
+                getConnections().contains(c));
+
+        Assert.assertTrue(log.redo());
+        Assert.assertEquals(1, flow.getNodes().size());
+        Assert.assertTrue(flow.getConnections("data").
+                getConnections().isEmpty());
+
+        // undo everything
+        while (log.undo()) {
+            //
+        }
+
+        Assert.assertTrue(flow.getNodes().isEmpty());
+        Assert.assertFalse(log.canUndo());
+        Assert.assertEquals(numCommands + 1, log.getRedoCount());
+
+        // redo everything
+        while (log.redo()) {
+            //
+        }
+
+        Assert.assertEquals(1, flow.getNodes().size());
+        Assert.assertSame(b, flow.getNodes().get(0));
+        Assert.assertEquals(1, b.getInputs().size());
+    }
+
+    @Test
+    public void mergeGeometryTest() {
+        VFlow flow = FlowFactory.newFlow();
+        VNode n = flow.newNode();
+        n.setX(0);
+        n.setY(0);
+
+        CommandLog log = new CommandLog(flow.getModel());
+
+        // drag
+        for (int i = 1; i <= 100; i++) {
+            n.setX(i);
+            n.setY(2 * i);
+        }
+
+        Assert.assertEquals(1, log.getUndoCount());
+
+        log.seal();
+        n.setX(300);
+
+        Assert.assertEquals(2, log.getUndoCount());
+
+        log.undo();
+        Assert.assertEquals(100, n.getX(), 0);
+
+        log.undo();
+        Assert.assertEquals(0, n.getX(), 0);
+        Assert.assertEquals(0, n.getY(), 0);
+
+        log.redo();
+        Assert.assertEquals(100, n.getX(), 0);
+        Assert.assertEquals(200, n.getY(), 0);
+    }
+
+    @Test
+    public void propertiesAndGroupTest() {
+        VFlow flow = FlowFactory.newFlow();
+        VNode n = flow.newNode();
+        n.setTitle("a");
+
+        CommandLog log = new CommandLog(flow.getModel());
+
+        log.group(() -> {
+            n.setTitle("b");
+            n.getValueObject().setValue(42);
+            n.addInput("data");
+        });
+
+        Assert.assertEquals(1, log.getUndoCount());
+
+        log.undo();
+        Assert.assertEquals("a", n.getTitle());
+        Assert.assertNull(n.getValueObject().getValue());
+        Assert.assertTrue(n.getInputs().isEmpty());
+
+        log.redo();
+        Assert.assertEquals("b", n.getTitle());
+        Assert.assertEquals(42, n.getValueObject().getValue());
+        Assert.assertEquals(1, n.getInputs().size());
+    }
+
+    @Test
+    public void capacityTest() {
+        VFlow flow = FlowFactory.newFlow();
+        VNode n = flow.newNode();
+
+        CommandLog log = new CommandLog(flow.getModel(), 10);
+
+        for (int i = 0; i < 100; i++) {
+            n.setTitle("title " + i);
+        }
+
+        Assert.assertEquals(10, log.getUndoCount());
+
+        while (log.undo()) {
+            //
+        }
+
+        Assert.assertEquals("title 89", n.getTitle());
+    }
+
+    @Test
+    public void maxDeltasTest() {
+        VFlow flow = FlowFactory.newFlow();
+        VNode n = flow.newNode();
+
+        CommandLog log = new CommandLog(flow.getModel(), 100, 10);
+
+        for (int i = 0; i < 5; i++) {
+            int cmd = i;
+            log.group(() -> {
+                n.setTitle("title " + cmd);
+                n.setX(cmd);
+                n.setY(cmd);
+            });
+        }
+
+        // 3 deltas per command
+        Assert.assertEquals(3, log.getUndoCount());
+        Assert.assertEquals(9, log.getDeltaCount());
+
+        // a group that exceeds the limit can't be undone
+        log.group(() -> {
+            for (int i = 0; i < 20; i++) {
+                n.setTitle("group " + i);
+            }
+        });
+
+        Assert.assertFalse(log.canUndo());
+        Assert.assertEquals(0, log.getDeltaCount());
+        Assert.assertEquals("group 19", n.getTitle());
+    }
+
+    @Test
+    public void observeWithoutPropertiesTest() throws Exception {
+        VFlow flow = FlowFactory.newFlow();
+        VFlow sub = flow.newSubFlow();
+        VNode n = sub.newNode();
+        n.getValueObject().setValue(1);
+
+        CommandLog log = new CommandLog(flow.getModel());
+        DirtyTracker tracker = new DirtyTracker(flow.getModel());
+
+        n.setTitle("a");
+        n.setX(10);
+        n.setWidth(20);
+        n.getValueObject().setValue(2);
+
+        // x and width are merged
+        Assert.assertEquals(3, log.getUndoCount());
+        Assert.assertTrue(tracker.isDirty(sub.getModel()));
+        Assert.assertFalse(tracker.isDirty(flow.getModel()));
+
+        while (log.undo()) {
+            //
+        }
+
+        Assert.assertEquals("Node", n.getTitle());
+        Assert.assertEquals(0, n.getX(), 0);
+        Assert.assertEquals(200, n.getWidth(), 0);
+        Assert.assertEquals(1, n.getValueObject().getValue());
+
+        // observing and undoing must not create the properties
+        for (String name : new String[]{"titleProperty", "xProperty",
+            "yProperty", "widthProperty", "heightProperty",
+            "valueObjectProperty"}) {
+            Field f = VNodeImpl.class.getDeclaredField(name);
+            f.setAccessible(true);
+            Assert.assertNull(name, f.get(n));
+        }
+
+        // changes of created properties are observed as well
+        n.titleProperty().set("b");
+        Assert.assertEquals(1, log.getUndoCount());
+        log.undo();
+        Assert.assertEquals("Node", n.getTitle());
+
+        log.dispose();
+        tracker.dispose();
+    }
+
+    @Test
+    public void unsupportedFlowTest() {
+        VFlowModel flow = (VFlowModel) Proxy.newProxyInstance(
+                VFlowModel.class.getClassLoader(),
+                new Class<?>[]{VFlowModel.class}, (proxy, m, args) -> {
+                    throw new UnsupportedOperationException(m.getName());
+                });
+
+        // fails early rather than when undoing a node removal
+        try {
+            new CommandLog(flow);
+            Assert.fail("exception expected");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+}
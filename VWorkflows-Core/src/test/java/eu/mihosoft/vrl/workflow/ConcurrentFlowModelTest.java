@@ -0,0 +1,264 @@
+/*
+ * Copyright 2012-2016 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * Please cite the following publication(s):
+ *
+ * M. Hoffer, C.Poliwoda, G.Wittum. Visual Reflection Library -
+ * A Framework for Declarative GUI Programming on the Java Platform.
+ * Computing and Visualization in Science, 2011, in press.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vrl.workflow;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ * @author Michael Hoffer &lt;info@michaelhoffer.de&gt;
+ */
+public class ConcurrentFlowModelTest {
+
+    @Test
+    public void concurrentSubFlowsTest() throws Exception {
+        ConcurrentFlowModel root = FlowFactory.newConcurrentFlowModel();
+
+        int numThreads = 4;
+        int numNodes = 200;
+
+        List<ConcurrentFlowModel> subFlows = new ArrayList<>();
+
+        for (int i = 0; i < numThreads; i++) {
+            subFlows.add(root.newSubFlow());
+        }
+
+        Assert.assertEquals(numThreads, root.getSnapshot().getNodeCount());
+
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        CyclicBarrier barrier = new CyclicBarrier(numThreads);
+
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+
+            for (ConcurrentFlowModel subFlow : subFlows) {
+                futures.add(executor.submit(() -> {
+                    barrier.await(10, TimeUnit.SECONDS);
+
+                    VNode prev = null;
+
+                    for (int i = 0; i < numNodes; i++) {
+                        VNode n = subFlow.newNode();
+
+                        Connector in = subFlow.write(
+                                m -> n.addInput("data"));
+                        Connector out = subFlow.write(
+                                m -> n.addOutput("data"));
+
+                        if (prev != null) {
+                            Connector prevOut = prev.getOutputs().get(0);
+                            Assert.assertTrue(subFlow.connect(prevOut, in).
+                                    getStatus().isCompatible());
+                        }
+
+                        // lock-free reads
+                        Assert.assertSame(n,
+                                root.getNodeLookup().getById(n.getId()));
+
+                        prev = n;
+                    }
+
+                    return null;
+                }));
+            }
+
+            for (Future<?> f : futures) {
+                f.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        List<String> ids = new ArrayList<>();
+
+        for (ConcurrentFlowModel subFlow : subFlows) {
+            FlowSnapshot snapshot = subFlow.getSnapshot();
+
+            Assert.assertEquals(numNodes, snapshot.getNodeCount());
+            Assert.assertEquals(numNodes - 1, snapshot.getConnectionCount());
+            Assert.assertEquals(numNodes - 1, subFlow.getModel().
+                    getConnections("data").getConnections().size());
+
+            for (int i = 0; i < snapshot.getNodeCount(); i++) {
+                ids.add(snapshot.getNode(i).getId());
+            }
+        }
+
+        // ids are unique across subflows
+        Assert.assertEquals(ids.size(), ids.stream().distinct().count());
+    }
+
+    @Test
+    public void snapshotVersionTest() {
+        ConcurrentFlowModel root = FlowFactory.newConcurrentFlowModel();
+
+        FlowSnapshot empty = root.getSnapshot();
+        long version = root.getVersion();
+
+        root.update(m -> {
+            m.newNode();
+            m.newNode();
+        });
+        VNode n = root.newNode();
+
+        // snapshots are immutable
+        Assert.assertEquals(0, empty.getNodeCount());
+        Assert.assertEquals(3, root.getSnapshot().getNodeCount());
+        Assert.assertEquals(version + 2, root.getVersion());
+
+        // nested writes publish once
+        root.update(m -> root.update(m2 -> m2.remove(n)));
+        Assert.assertEquals(version + 3, root.getVersion());
+        Assert.assertEquals(2, root.getSnapshot().getNodeCount());
+
+        ConcurrentFlowModel subFlow = root.newSubFlow();
+        Assert.assertSame(subFlow, root.getSubFlow(subFlow.getModel()));
+        Assert.assertSame(root, subFlow.getParent());
+
+        try {
+            subFlow.getSubFlow(root.getModel());
+            Assert.fail("Root is no subflow");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void snapshotOnDemandTest() {
+        ConcurrentFlowModel root = FlowFactory.newConcurrentFlowModel();
+
+        long count = root.getSnapshotCount();
+
+        // many small writes don't create snapshots
+        for (int i = 0; i < 1000; i++) {
+            root.newNode();
+        }
+
+        Assert.assertEquals(count, root.getSnapshotCount());
+
+        // the first read after the writes creates one snapshot
+        FlowSnapshot snapshot = root.getSnapshot();
+        Assert.assertEquals(1000, snapshot.getNodeCount());
+        Assert.assertSame(snapshot, root.getSnapshot());
+        Assert.assertEquals(count + 1, root.getSnapshotCount());
+
+        root.newNode();
+        Assert.assertEquals(1001, root.getSnapshot().getNodeCount());
+        Assert.assertEquals(count + 2, root.getSnapshotCount());
+
+        // writers bound the number of changes that haven't been read
+        for (int i = 0; i <= ConcurrentFlowModel.MAX_UNREAD_CHANGES; i++) {
+            root.newNode();
+        }
+
+        Assert.assertEquals(count + 3, root.getSnapshotCount());
+    }
+
+    @Test
+    public void lockFreeSnapshotTest() throws Exception {
+        ConcurrentFlowModel root = FlowFactory.newConcurrentFlowModel();
+        VNode n = root.newNode();
+
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+
+        Thread writer = new Thread(() -> root.update(m -> {
+            m.newNode();
+            n.setX(10);
+            writing.countDown();
+
+            try {
+                done.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+
+        writer.start();
+        Assert.assertTrue(writing.await(10, TimeUnit.SECONDS));
+
+        // reads don't wait for the write in progress
+        FlowSnapshot snapshot = root.getSnapshot();
+        Assert.assertEquals(1, snapshot.getNodeCount());
+        Assert.assertEquals(0, snapshot.getX(0), 0);
+
+        done.countDown();
+        writer.join(10000);
+
+        FlowSnapshot after = root.getSnapshot();
+        Assert.assertEquals(2, after.getNodeCount());
+        Assert.assertEquals(10, after.getX(after.indexOf(n)), 0);
+        Assert.assertEquals(0, snapshot.getX(0), 0);
+    }
+
+    @Test
+    public void lookupConnectorsTest() throws Exception {
+        ConcurrentFlowModel root = FlowFactory.newConcurrentFlowModel();
+        ConcurrentFlowModel subFlow = root.newSubFlow();
+        NodeLookup lookup = root.getNodeLookup();
+
+        VNode n = subFlow.newNode();
+        Connector c = subFlow.write(m -> n.addInput("data"));
+
+        // connectors are indexed, i.e., lookups don't access the live model
+        Assert.assertSame(c, lookup.getConnectorById(c.getId()));
+
+        String oldId = c.getId();
+        subFlow.update(m -> n.setId("renamed"));
+
+        Assert.assertNull(lookup.getConnectorById(oldId));
+        Assert.assertSame(n, lookup.getById("renamed"));
+        Assert.assertSame(c, lookup.getConnectorById(
+                "renamed" + ConnectorRef.SEPARATOR + c.getLocalId()));
+
+        subFlow.update(m -> n.removeConnector(c));
+        Assert.assertNull(lookup.getConnectorById(c.getId()));
+
+        // indexing must not create the id properties
+        Field f = VNodeImpl.class.getDeclaredField("idProperty");
+        f.setAccessible(true);
+        Assert.assertNull(f.get(n));
+    }
+}
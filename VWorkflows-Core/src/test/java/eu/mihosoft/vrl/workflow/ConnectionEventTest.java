@@ -41,6 +41,16 @@ import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
 import static org.junit.Assert.*;
 
 /**
@@ -137,4 +147,151 @@ public class ConnectionEventTest {
                 countingListenerOutput.getCounter() == 2 && countingListenerOutput.lastEventType == ConnectionEvent.REMOVE);
     }
 
+    private static VNode newNode(VFlow flow) {
+        VNode n = flow.newNode();
+        n.addInput("data");
+        n.addOutput("data");
+        return n;
+    }
+
+    @Test
+    public void synchronousDispatchTest() {
+        VFlow flow = FlowFactory.newFlow();
+
+        VNode a = newNode(flow);
+        VNode b = newNode(flow);
+        VNode c = newNode(flow);
+
+        Connector out = a.getOutputs().get(0);
+
+        List<ConnectionEvent> events = new ArrayList<>();
+        List<List<ConnectionEvent>> eventLists = new ArrayList<>();
+
+        out.addConnectionEventListener(events::add);
+        out.addConnectionEventsListener(eventLists::add);
+
+        // default: handlers are called immediately
+        Connection ab = flow.connect(out, b.getInputs().get(0)).getConnection();
+
+        assertEquals(1, events.size());
+        assertEquals(ConnectionEvent.ADD, events.get(0).getEventType());
+        assertEquals(1, eventLists.size());
+        assertSame(ab, eventLists.get(0).get(0).getConnection());
+
+        events.clear();
+        eventLists.clear();
+
+        // one list per batch, add/remove pairs cancel each other out
+        flow.batch(tx -> {
+            Connection ac = tx.connect(out, c.getInputs().get(0)).
+                    getConnection();
+            tx.getConnections("data").remove(ac);
+            tx.getConnections("data").remove(ab);
+        });
+
+        assertEquals(1, eventLists.size());
+        assertEquals(1, eventLists.get(0).size());
+        assertSame(ab, eventLists.get(0).get(0).getConnection());
+        assertEquals(ConnectionEvent.REMOVE,
+                eventLists.get(0).get(0).getEventType());
+
+        assertNull(flow.getConnectionEventExecutor());
+    }
+
+    @Test
+    public void coalesceTest() {
+        VFlow flow = FlowFactory.newFlow();
+
+        VNode a = newNode(flow);
+        VNode b = newNode(flow);
+
+        Connector s = a.getOutputs().get(0);
+        Connector r = b.getInputs().get(0);
+
+        Connection x = flow.connect(s, r).getConnection();
+        Connection y = flow.connect(s, r).getConnection();
+
+        List<ConnectionEvent> events = new ArrayList<>();
+        events.add(new ConnectionEvent(ConnectionEvent.ADD, s, r, x));
+        events.add(new ConnectionEvent(ConnectionEvent.ADD, s, r, y));
+        events.add(new ConnectionEvent(ConnectionEvent.REMOVE, s, r, x));
+
+        Map<Connector, List<ConnectionEvent>> result
+                = ConnectionEventDispatcher.coalesce(events);
+
+        assertEquals(2, result.size());
+        assertEquals(1, result.get(s).size());
+        assertSame(y, result.get(s).get(0).getConnection());
+        assertSame(events.get(1), result.get(r).get(0));
+    }
+
+    @Test
+    public void asynchronousDispatchTest() throws Exception {
+        VFlow flow = FlowFactory.newFlow();
+
+        VNode a = newNode(flow);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try {
+            flow.setConnectionEventExecutor(executor);
+
+            VFlow subFlow = flow.newSubFlow();
+            assertSame(executor, subFlow.getConnectionEventExecutor());
+
+            Connector out = a.getOutputs().get(0);
+
+            int numNodes = 50;
+            CountDownLatch latch = new CountDownLatch(numNodes);
+            CountDownLatch blocker = new CountDownLatch(1);
+
+            List<Thread> threads = new CopyOnWriteArrayList<>();
+            List<ConnectionEvent> events = new CopyOnWriteArrayList<>();
+            List<Integer> listSizes = new CopyOnWriteArrayList<>();
+
+            // slow handler must not block the flow
+            out.addConnectionEventListener(evt -> {
+                try {
+                    blocker.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                threads.add(Thread.currentThread());
+                events.add(evt);
+                latch.countDown();
+            });
+            out.addConnectionEventsListener(l -> listSizes.add(l.size()));
+
+            flow.batch(tx -> {
+                for (int i = 0; i < numNodes / 2; i++) {
+                    VNode n = newNode(tx);
+                    tx.connect(out, n.getInputs().get(0));
+                }
+            });
+
+            for (int i = 0; i < numNodes / 2; i++) {
+                VNode n = newNode(flow);
+                flow.connect(out, n.getInputs().get(0));
+            }
+
+            assertTrue(events.isEmpty());
+
+            blocker.countDown();
+
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+            assertFalse(threads.contains(Thread.currentThread()));
+
+            // delivered in order
+            List<Connection> expected = new ArrayList<>(
+                    flow.getConnections("data").getConnections());
+            for (int i = 0; i < numNodes; i++) {
+                assertSame(expected.get(i), events.get(i).getConnection());
+            }
+
+            // the first batch is delivered as one list
+            assertEquals(numNodes / 2, (int) listSizes.get(0));
+        } finally {
+            executor.shutdown();
+        }
+    }
 }
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2012-2016 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * Please cite the following publication(s):
+ *
+ * M. Hoffer, C.Poliwoda, G.Wittum. Visual Reflection Library -
+ * A Framework for Declarative GUI Programming on the Java Platform.
+ * Computing and Visualization in Science, 2011, in press.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vrl.workflow;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collection;
+
+/**
+ *
+ * @author Michael Hoffer &lt;info@michaelhoffer.de&gt;
+ */
+public class ConnectionsTest {
+
+    @Test
+    public void adjacencyIndexTest() {
+        VFlow flow = FlowFactory.newFlow();
+
+        VNode n1 = flow.newNode();
+        VNode n2 = flow.newNode();
+        VNode n3 = flow.newNode();
+
+        Connector out1 = n1.addOutput("data");
+        Connector in2 = n2.addInput("data");
+        Connector out2 = n2.addOutput("data");
+        Connector in3 = n3.addInput("data");
+
+        Connection c12 = flow.connect(out1, in2).getConnection();
+        Connection c23 = flow.connect(out2, in3).getConnection();
+
+        Connections connections = flow.getConnections("data");
+
+        Assert.assertEquals(1, connections.getAllWith(out1).size());
+        Assert.assertEquals(1, connections.getAllWith(in2).size());
+        Assert.assertEquals(2, connections.getAllWithNode(n2).size());
+        Assert.assertTrue(connections.contains(out1, in2));
+        Assert.assertFalse(connections.contains(out1, in3));
+        Assert.assertTrue(connections.isOutputConnected(out1));
+        Assert.assertTrue(connections.isInputConnected(in2));
+
+        connections.remove(c12);
+
+        Assert.assertTrue(connections.getAllWith(out1).isEmpty());
+        Assert.assertFalse(connections.isInputConnected(in2));
+        Assert.assertEquals(1, connections.getAllWithNode(n2).size());
+        Assert.assertNull(connections.get(c12.getId(), out1, in2));
+
+        // modifying the list directly must keep the index in sync
+        Collection<Connection> with3 = connections.getAllWith(in3);
+        connections.getConnections().removeAll(with3);
+
+        Assert.assertTrue(connections.getAllWithNode(n3).isEmpty());
+        Assert.assertNull(connections.get(c23.getId(), out2, in3));
+
+        // removing a node removes its connections
+        flow.connect(out1, in2);
+        flow.connect(out2, in3);
+        flow.remove(n2);
+
+        Assert.assertTrue(connections.getConnections().isEmpty());
+        Assert.assertTrue(connections.getAllWithNode(n1).isEmpty());
+        Assert.assertTrue(connections.getAllWithNode(n3).isEmpty());
+    }
+
+    @Test
+    public void degreeTest() {
+        VFlow flow = FlowFactory.newFlow();
+
+        VNode n1 = flow.newNode();
+        VNode n2 = flow.newNode();
+        VNode n3 = flow.newNode();
+
+        Connector out1 = n1.addOutput("data");
+        Connector in2 = n2.addInput("data");
+        Connector in3 = n3.addInput("data");
+
+        Connections connections = flow.getConnections("data");
+
+        Assert.assertEquals(0, connections.degreeOf(out1));
+
+        Connection c12 = flow.connect(out1, in2).getConnection();
+        flow.connect(out1, in3);
+
+        Assert.assertEquals(2, connections.degreeOf(out1));
+        Assert.assertEquals(2, connections.outDegreeOf(out1));
+        Assert.assertEquals(0, connections.inDegreeOf(out1));
+        Assert.assertEquals(1, connections.degreeOf(in2));
+        Assert.assertEquals(1, connections.inDegreeOf(in2));
+
+        Assert.assertTrue(WorkflowUtil.isRoot(n1, "data"));
+        Assert.assertFalse(WorkflowUtil.isRoot(n2, "data"));
+        Assert.assertTrue(WorkflowUtil.moreThanConnections(1, "data").test(out1));
+        Assert.assertTrue(WorkflowUtil.numberOfConnections(1, "data").test(in3));
+        Assert.assertTrue(WorkflowUtil.nodeConnected("data").test(n3));
+
+        // self-connections are counted once (like getAllWith())
+        Connector self = n2.addOutput("data");
+        connections.add(self, self);
+
+        Assert.assertEquals(connections.getAllWith(self).size(),
+                connections.degreeOf(self));
+
+        // the maximum number of connections is checked via the degree
+        in2.setMaxNumberOfConnections(1);
+        Assert.assertFalse(flow.tryConnect(out1, in2).getStatus().isCompatible());
+
+        connections.remove(c12);
+
+        Assert.assertEquals(1, connections.degreeOf(out1));
+        Assert.assertEquals(0, connections.degreeOf(in2));
+
+        // the limit applies to sender and receiver
+        Assert.assertFalse(flow.tryConnect(out1, in2).getStatus().isCompatible());
+        in2.setMaxNumberOfConnections(2);
+        Assert.assertTrue(flow.tryConnect(out1, in2).getStatus().isCompatible());
+    }
+}
@@ -81,4 +81,21 @@ public class ConnectorTest {
         
         
     }
+
+    @Test
+    public void lazyConnectorValueObjectTest() {
+        VFlowModel model = FlowUtil.newFlowModel();
+        Connector c = model.newNode().addInput("data");
+
+        ValueObject vObj = c.getValueObject();
+        Assert.assertNotNull(vObj);
+
+        // the property reflects the current value once it is requested
+        Assert.assertSame(vObj, c.valueObjectProperty().get());
+
+        ValueObject other = new DefaultConnectorValueObject(c);
+        c.setValueObject(other);
+        Assert.assertSame(other, c.valueObjectProperty().get());
+        Assert.assertSame(other, c.getValueObject());
+    }
 }
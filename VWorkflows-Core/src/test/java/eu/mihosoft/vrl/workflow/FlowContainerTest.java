@@ -0,0 +1,262 @@
+/*
+ * Copyright 2012-2016 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * Please cite the following publication(s):
+ *
+ * M. Hoffer, C.Poliwoda, G.Wittum. Visual Reflection Library -
+ * A Framework for Declarative GUI Programming on the Java Platform.
+ * Computing and Visualization in Science, 2011, in press.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vrl.workflow;
+
+import eu.mihosoft.vrl.workflow.io.ContainerWorkflowIO;
+import eu.mihosoft.vrl.workflow.io.FlowContainer;
+import eu.mihosoft.vrl.workflow.io.WorkflowIO;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ *
+ * @author Michael Hoffer &lt;info@michaelhoffer.de&gt;
+ */
+public class FlowContainerTest {
+
+    @Test
+    public void dirtyTrackingTest() throws IOException {
+        VFlow flow = FlowFactory.newFlow();
+        FlowUtil.createFlow(flow, 3, 5);
+
+        VFlowModel subflow = (VFlowModel) flow.getModel().getNodes().get(0);
+        subflow.setVisible(false);
+
+        Path p = Paths.get("test-flow-02.vwfc");
+        FlowContainer.create(p, flow.getModel()).dispose();
+
+        FlowContainer container = FlowContainer.open(p,
+                FlowFactory.newIdGenerator());
+        VFlowModel root = container.getFlow();
+        Assert.assertFalse(container.isDirty());
+
+        // loading content on demand is not a change
+        VFlowModel s = (VFlowModel) root.getNodes().get(0);
+        Assert.assertFalse(s.isContentLoaded());
+        Assert.assertEquals(subflow.getNodes().size(), s.getNodes().size());
+        Assert.assertFalse(container.isDirty());
+
+        // node changes mark the flow that contains the node
+        s.getNodes().get(1).setX(42);
+        Assert.assertTrue(container.getTracker().isDirty(s));
+        Assert.assertFalse(container.getTracker().isDirty(root));
+
+        // subflow changes (title etc.) are stored in the parent flow
+        s.setTitle("Changed");
+        Assert.assertTrue(container.getTracker().isDirty(root));
+
+        // new subflows are dirty
+        VFlowModel newSubflow = root.newFlowNode();
+        Assert.assertTrue(container.getTracker().isDirty(newSubflow));
+
+        container.save();
+        Assert.assertFalse(container.isDirty());
+
+        container.dispose();
+    }
+
+    @Test
+    public void saveChangedSegmentsTest() throws IOException {
+        VFlow flow = FlowFactory.newFlow();
+        FlowUtil.createFlow(flow, 3, 5);
+
+        for (VNode n : flow.getModel().getNodes()) {
+            if (n instanceof VFlowModel) {
+                ((VFlowModel) n).setVisible(false);
+            }
+        }
+
+        Path p = Paths.get("test-flow-03.vwfc");
+        FlowContainer.create(p, flow.getModel()).dispose();
+
+        FlowContainer container = FlowContainer.open(p,
+                FlowFactory.newIdGenerator());
+        VFlowModel root = container.getFlow();
+
+        // change one subflow, the others are not loaded
+        VFlowModel s1 = (VFlowModel) root.getNodes().get(0);
+        VFlowModel s2 = (VFlowModel) root.getNodes().get(2);
+
+        VNode n = s2.getNodes().get(1);
+        n.setX(42);
+        Assert.assertEquals(1, container.getTracker().getDirtyFlows().size());
+
+        container.save();
+
+        // unchanged segments are copied without loading them
+        Assert.assertFalse(s1.isContentLoaded());
+
+        // same changes in the original flow
+        ((VFlowModel) flow.getModel().getNodes().get(2)).getNodes().get(1).
+                setX(42);
+
+        VFlow expected = WorkflowIO.loadFromXML(
+                WorkflowIO.saveToXML(flow.getModel()));
+        VFlow saved = ContainerWorkflowIO.loadFromContainer(p);
+
+        Assert.assertEquals(WorkflowIO.saveToXML(expected.getModel()),
+                WorkflowIO.saveToXML(saved.getModel()));
+
+        // flows that haven't been loaded before saving are loaded from the
+        // new version of the container
+        Assert.assertEquals(WorkflowIO.saveToXML(expected.getModel()),
+                WorkflowIO.saveToXML(root));
+
+        container.dispose();
+    }
+
+    @Test
+    public void appendChangedSegmentsTest() throws IOException {
+        VFlow flow = createInvisibleSubflows();
+
+        Path p = Paths.get("test-flow-04.vwfc");
+        FlowContainer.create(p, flow.getModel()).dispose();
+        byte[] before = Files.readAllBytes(p);
+
+        FlowContainer container = FlowContainer.open(p,
+                FlowFactory.newIdGenerator());
+
+        VFlowModel s = (VFlowModel) container.getFlow().getNodes().get(2);
+        s.getNodes().get(1).setX(42);
+        container.save();
+
+        byte[] after = Files.readAllBytes(p);
+
+        // existing bytes are not modified. only the changed segment, the
+        // index and the trailer are appended
+        Assert.assertArrayEquals(before, Arrays.copyOf(after, before.length));
+        Assert.assertTrue(after.length - before.length < before.length / 2);
+
+        ((VFlowModel) flow.getModel().getNodes().get(2)).getNodes().get(1).
+                setX(42);
+
+        Assert.assertEquals(toXML(flow),
+                WorkflowIO.saveToXML(
+                        ContainerWorkflowIO.loadFromContainer(p).getModel()));
+
+        container.dispose();
+    }
+
+    @Test
+    public void compactionTest() throws IOException {
+        VFlow flow = createInvisibleSubflows();
+
+        Path p = Paths.get("test-flow-05.vwfc");
+        FlowContainer container = FlowContainer.create(p, flow.getModel());
+
+        long initialSize = Files.size(p);
+        long size = initialSize;
+        boolean compacted = false;
+
+        // dead segments accumulate until the container is compacted
+        for (int i = 0; i < 100 && !compacted; i++) {
+            VFlowModel s = (VFlowModel) flow.getModel().getNodes().get(0);
+            s.getNodes().get(1).setX(i);
+            container.save();
+
+            long newSize = Files.size(p);
+            compacted = newSize < size;
+            size = newSize;
+
+            Assert.assertTrue(size < 3 * initialSize);
+        }
+
+        Assert.assertTrue(compacted);
+
+        Assert.assertEquals(toXML(flow),
+                WorkflowIO.saveToXML(
+                        ContainerWorkflowIO.loadFromContainer(p).getModel()));
+
+        container.dispose();
+    }
+
+    @Test
+    public void interruptedAppendTest() throws IOException {
+        VFlow flow = createInvisibleSubflows();
+
+        Path p = Paths.get("test-flow-06.vwfc");
+        FlowContainer.create(p, flow.getModel()).dispose();
+        String expected = toXML(flow);
+
+        // incomplete segment and index of an interrupted append
+        byte[] bytes = Files.readAllBytes(p);
+        Files.write(p, Arrays.copyOfRange(bytes, 8, bytes.length - 1),
+                StandardOpenOption.APPEND);
+
+        FlowContainer container = FlowContainer.open(p,
+                FlowFactory.newIdGenerator());
+        Assert.assertEquals(expected,
+                WorkflowIO.saveToXML(container.getFlow()));
+
+        // the incomplete data is replaced by the next append
+        VFlowModel s = (VFlowModel) container.getFlow().getNodes().get(2);
+        s.getNodes().get(1).setX(42);
+        container.save();
+
+        ((VFlowModel) flow.getModel().getNodes().get(2)).getNodes().get(1).
+                setX(42);
+
+        Assert.assertEquals(toXML(flow),
+                WorkflowIO.saveToXML(
+                        ContainerWorkflowIO.loadFromContainer(p).getModel()));
+
+        container.dispose();
+    }
+
+    private static VFlow createInvisibleSubflows() {
+        VFlow flow = FlowFactory.newFlow();
+        FlowUtil.createFlow(flow, 3, 5);
+
+        for (VNode n : flow.getModel().getNodes()) {
+            if (n instanceof VFlowModel) {
+                ((VFlowModel) n).setVisible(false);
+            }
+        }
+
+        return flow;
+    }
+
+    private static String toXML(VFlow flow) {
+        // as if loaded from a file
+        return WorkflowIO.saveToXML(WorkflowIO.loadFromXML(
+                WorkflowIO.saveToXML(flow.getModel())).getModel());
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2012-2016 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * Please cite the following publication(s):
+ *
+ * M. Hoffer, C.Poliwoda, G.Wittum. Visual Reflection Library -
+ * A Framework for Declarative GUI Programming on the Java Platform.
+ * Computing and Visualization in Science, 2011, in press.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vrl.workflow;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author Michael Hoffer &lt;info@michaelhoffer.de&gt;
+ */
+public class FlowSnapshotTest {
+
+    @Test
+    public void csrTest() {
+        VFlowModel flow = FlowUtil.newFlowModel();
+
+        VNode a = flow.newNode();
+        VNode b = flow.newNode();
+        VNode c = flow.newNode();
+
+        a.setX(1);
+        b.setY(2);
+
+        Connector aOut = a.addOutput("data");
+        Connector aCtrl = a.addOutput("control");
+        Connector bIn = b.addInput("data");
+        Connector bOut = b.addOutput("data");
+        Connector cIn = c.addInput("data");
+        Connector cCtrl = c.addInput("control");
+
+        Connection ab = flow.connect(aOut, bIn).getConnection();
+        Connection bc = flow.connect(bOut, cIn).getConnection();
+        Connection ac = flow.connect(aCtrl, cCtrl).getConnection();
+
+        FlowSnapshot snapshot = FlowSnapshot.of(flow);
+
+        Assert.assertEquals(3, snapshot.getNodeCount());
+        Assert.assertEquals(3, snapshot.getConnectionCount());
+
+        int ia = snapshot.indexOf(a);
+        int ib = snapshot.indexOf(b.getId());
+        int ic = snapshot.indexOf(c);
+
+        Assert.assertSame(a, snapshot.getNode(ia));
+        Assert.assertEquals(1, snapshot.getX(ia), 0);
+        Assert.assertEquals(2, snapshot.getY(ib), 0);
+        Assert.assertEquals(2, snapshot.getOutDegree(ia));
+        Assert.assertEquals(2, snapshot.getInDegree(ic));
+        Assert.assertEquals(0, snapshot.getInDegree(ia));
+
+        int eab = snapshot.indexOf(ab);
+        Assert.assertSame(ab, snapshot.getConnection(eab));
+        Assert.assertEquals(ia, snapshot.getSender(eab));
+        Assert.assertEquals(ib, snapshot.getReceiver(eab));
+        Assert.assertEquals("data", snapshot.getType(eab));
+        Assert.assertEquals("control", snapshot.getType(snapshot.indexOf(ac)));
+
+        Assert.assertEquals(ic, snapshot.getOutTarget(ib, 0));
+        Assert.assertEquals(snapshot.indexOf(bc), snapshot.getOutEdge(ib, 0));
+        Assert.assertEquals(ia, snapshot.getInTarget(ib, 0));
+        Assert.assertEquals(eab, snapshot.getInEdge(ib, 0));
+
+        // per connection type
+        FlowSnapshot dataOnly = FlowSnapshot.of(flow, false, "data");
+        Assert.assertEquals(2, dataOnly.getConnectionCount());
+        Assert.assertEquals(-1, dataOnly.indexOf(ac));
+        Assert.assertEquals(1, dataOnly.getOutDegree(dataOnly.indexOf(a)));
+
+        // the snapshot is not affected by later modifications
+        flow.remove(b);
+        Assert.assertEquals(3, snapshot.getNodeCount());
+        Assert.assertEquals(2, snapshot.getOutDegree(ia));
+    }
+
+    @Test
+    public void recursiveTest() {
+        VFlowModel flow = FlowUtil.newFlowModel();
+
+        VNode a = flow.newNode();
+        VFlowModel sub = flow.newFlowNode();
+        VNode s1 = sub.newNode();
+        VNode s2 = sub.newNode();
+
+        sub.connect(s1.addOutput("data"), s2.addInput("data"));
+        flow.connect(a.addOutput("data"), sub.addInput("data"));
+
+        FlowSnapshot flat = FlowSnapshot.of(flow);
+        Assert.assertEquals(2, flat.getNodeCount());
+        Assert.assertEquals(1, flat.getConnectionCount());
+        Assert.assertEquals(-1, flat.indexOf(s1));
+
+        FlowSnapshot deep = FlowSnapshot.of(flow, true);
+        Assert.assertEquals(4, deep.getNodeCount());
+        Assert.assertEquals(2, deep.getConnectionCount());
+        Assert.assertEquals(deep.indexOf(sub), deep.getParent(deep.indexOf(s1)));
+        Assert.assertEquals(-1, deep.getParent(deep.indexOf(a)));
+        Assert.assertEquals(deep.indexOf(s2),
+                deep.getOutTarget(deep.indexOf(s1), 0));
+    }
+}
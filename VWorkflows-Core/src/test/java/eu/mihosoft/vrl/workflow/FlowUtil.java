@@ -47,6 +47,19 @@ import java.util.List;
  */
 public class FlowUtil {
 
+    /**
+     * Creates a flow model without controller. It has its own id generator
+     * and node lookup.
+     *
+     * @return the new flow model
+     */
+    public static VFlowModel newFlowModel() {
+        VFlowModel result = FlowFactory.newFlowModel();
+        result.setIdGenerator(FlowFactory.newIdGenerator());
+        result.setNodeLookup(new NodeLookupImpl(result));
+        return result;
+    }
+
     /**
      * Creates a flow with specified width and depth.
      *
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2012-2016 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * Please cite the following publication(s):
+ *
+ * M. Hoffer, C.Poliwoda, G.Wittum. Visual Reflection Library -
+ * A Framework for Declarative GUI Programming on the Java Platform.
+ * Computing and Visualization in Science, 2011, in press.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vrl.workflow;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ *
+ * @author Michael Hoffer &lt;info@michaelhoffer.de&gt;
+ */
+public class IdGeneratorTest {
+
+    @Test
+    public void generateIdsTest() {
+        IdGenerator generator = FlowFactory.newIdGenerator();
+
+        Assert.assertEquals("ROOT:0", generator.newId("ROOT:"));
+        Assert.assertEquals("ROOT:1", generator.newId("ROOT:"));
+        Assert.assertEquals("thru-0", generator.newId("thru"));
+        Assert.assertEquals("0", generator.newId());
+
+        // ids from files must not be generated again
+        generator.addId("ROOT:2");
+        generator.addId("ROOT:3");
+        Assert.assertEquals("ROOT:4", generator.newId("ROOT:"));
+    }
+
+    @Test
+    public void childScopeTest() {
+        IdGenerator parent = FlowFactory.newIdGenerator();
+        parent.addId("ROOT:0:0");
+
+        IdGenerator child = parent.newChild();
+
+        Assert.assertNotSame(parent, child);
+        Assert.assertEquals("ROOT:0:1", child.newId("ROOT:0:"));
+        Assert.assertFalse(parent.getIds().contains("ROOT:0:1"));
+        Assert.assertTrue(child.getIds().contains("ROOT:0:1"));
+    }
+
+    @Test
+    public void concurrentIdsTest() throws InterruptedException {
+        IdGenerator generator = FlowFactory.newIdGenerator();
+        Set<String> ids = ConcurrentHashMap.newKeySet();
+
+        int numThreads = 8;
+        int numIds = 10000;
+
+        List<Thread> threads = new ArrayList<>();
+
+        for (int t = 0; t < numThreads; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < numIds; i++) {
+                    ids.add(generator.newId("ROOT:"));
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Assert.assertEquals("ids must be unique",
+                numThreads * numIds, ids.size());
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2012-2016 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * Please cite the following publication(s):
+ *
+ * M. Hoffer, C.Poliwoda, G.Wittum. Visual Reflection Library -
+ * A Framework for Declarative GUI Programming on the Java Platform.
+ * Computing and Visualization in Science, 2011, in press.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vrl.workflow;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+
+/**
+ *
+ * @author Michael Hoffer &lt;info@michaelhoffer.de&gt;
+ */
+public class NodeLookupTest {
+
+    @Test
+    public void lookupNestedNodesTest() {
+        VFlow flow = FlowFactory.newFlow();
+        NodeLookup lookup = flow.getNodeLookup();
+
+        VNode n1 = flow.newNode();
+        VFlow subFlow = flow.newSubFlow();
+        VNode n2 = subFlow.newNode();
+        VFlow subSubFlow = subFlow.newSubFlow();
+        VNode n3 = subSubFlow.newNode();
+        Connector c3 = n3.addInput("data");
+
+        Assert.assertSame(flow.getModel(), lookup.getById("ROOT"));
+        Assert.assertSame(n1, lookup.getById(n1.getId()));
+        Assert.assertSame(subFlow.getModel(),
+                lookup.getById(subFlow.getModel().getId()));
+        Assert.assertSame(n2, lookup.getById(n2.getId()));
+        Assert.assertSame(n3, lookup.getById(n3.getId()));
+        Assert.assertSame(c3, lookup.getConnectorById(c3.getId()));
+        Assert.assertNull(lookup.getById("ROOT:unknown"));
+
+        // id changes
+        String oldId = n3.getId();
+        n3.setId("ROOT:renamed");
+        Assert.assertNull(lookup.getById(oldId));
+        Assert.assertSame(n3, lookup.getById("ROOT:renamed"));
+
+        // removing a subflow removes all nested nodes
+        flow.remove(subFlow.getModel());
+        Assert.assertNull(lookup.getById(n2.getId()));
+        Assert.assertNull(lookup.getById("ROOT:renamed"));
+        Assert.assertSame(n1, lookup.getById(n1.getId()));
+    }
+
+    @Test
+    public void lookupNodesOfBatchedSubFlowTest() {
+        VFlowModel root = FlowUtil.newFlowModel();
+        NodeLookup lookup = root.getNodeLookup();
+        VFlowModel subFlow = root.newFlowNode();
+        VNode removed = subFlow.newNode();
+
+        // only the subflow is updated, nodes are reported when it ends
+        subFlow.batch(tx -> {
+            for (int i = 0; i < 100; i++) {
+                VNode n = tx.newNode();
+                Assert.assertSame(n, lookup.getById(n.getId()));
+
+                n.setId(subFlow.getId() + ":renamed-" + i);
+                Assert.assertSame(n,
+                        lookup.getById(subFlow.getId() + ":renamed-" + i));
+            }
+
+            VFlowModel subSubFlow = tx.newFlowNode();
+            VNode nested = subSubFlow.newNode();
+            Assert.assertSame(nested, lookup.getById(nested.getId()));
+
+            tx.remove(removed);
+            Assert.assertNull(lookup.getById(removed.getId()));
+        });
+
+        Assert.assertSame(subFlow.getNodes().get(0),
+                lookup.getById(subFlow.getId() + ":renamed-0"));
+        Assert.assertNull(lookup.getById(removed.getId()));
+    }
+
+    @Test
+    public void lookupWithoutIdPropertiesTest() throws Exception {
+        VFlow flow = FlowFactory.newFlow();
+        NodeLookup lookup = flow.getNodeLookup();
+
+        VFlow subFlow = flow.newSubFlow();
+        VNode n = subFlow.newNode();
+
+        String oldId = n.getId();
+        n.setId("renamed");
+
+        Assert.assertNull(lookup.getById(oldId));
+        Assert.assertSame(n, lookup.getById("renamed"));
+
+        // indexing must not create the id properties
+        Field f = VNodeImpl.class.getDeclaredField("idProperty");
+        f.setAccessible(true);
+        Assert.assertNull(f.get(n));
+        Assert.assertNull(f.get(
+                VFlowModelImpl.getNodeImpl(subFlow.getModel())));
+        Assert.assertNull(f.get(VFlowModelImpl.getNodeImpl(flow.getModel())));
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2012-2016 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * Please cite the following publication(s):
+ *
+ * M. Hoffer, C.Poliwoda, G.Wittum. Visual Reflection Library -
+ * A Framework for Declarative GUI Programming on the Java Platform.
+ * Computing and Visualization in Science, 2011, in press.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vrl.workflow;
+
+import javafx.collections.ListChangeListener;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ *
+ * @author Michael Hoffer &lt;info@michaelhoffer.de&gt;
+ */
+public class TopologicalOrderTest {
+
+    private static Connection connect(VFlowModel flow, VNode s, VNode r) {
+        return flow.connect(s.getOutputs().get(0),
+                r.getInputs().get(0)).getConnection();
+    }
+
+    private static VNode newNode(VFlowModel flow) {
+        VNode n = flow.newNode();
+        n.addInput("data");
+        n.addOutput("data");
+        return n;
+    }
+
+    private static void assertValid(VFlowModel flow, TopologicalOrder order) {
+        for (Connection c : flow.getConnections("data").getConnections()) {
+            if (order.getCycleConnections().contains(c)) {
+                continue;
+            }
+            Assert.assertTrue("order violated by " + c,
+                    order.compare(c.getSender().getNode(),
+                            c.getReceiver().getNode()) < 0);
+        }
+    }
+
+    @Test
+    public void incrementalOrderTest() {
+        VFlowModel flow = FlowUtil.newFlowModel();
+
+        VNode a = newNode(flow);
+        VNode b = newNode(flow);
+        VNode c = newNode(flow);
+
+        TopologicalOrder order = TopologicalOrder.of(flow, "data");
+
+        // reversed insertion forces reordering
+        connect(flow, c, b);
+        connect(flow, b, a);
+
+        Assert.assertFalse(order.hasCycles());
+        Assert.assertTrue(order.compare(c, b) < 0);
+        Assert.assertTrue(order.compare(b, a) < 0);
+        Assert.assertEquals(3, order.getSortedNodes().size());
+        Assert.assertSame(c, order.getSortedNodes().get(0));
+
+        // closing a cycle is reported immediately
+        List<Connection> reported = new ArrayList<>();
+        order.getCycleConnections().addListener(
+                (ListChangeListener.Change<? extends Connection> ch) -> {
+                    while (ch.next()) {
+                        reported.addAll(ch.getAddedSubList());
+                    }
+                });
+
+        Connection ac = connect(flow, a, c);
+
+        Assert.assertTrue(order.hasCycles());
+        Assert.assertEquals(1, reported.size());
+        Assert.assertSame(ac, reported.get(0));
+        assertValid(flow, order);
+
+        // breaking the cycle includes the connection again
+        flow.remove(b);
+
+        Assert.assertFalse(order.hasCycles());
+        Assert.assertTrue(order.compare(a, c) < 0);
+        Assert.assertEquals(-1, order.getPosition(b));
+
+        order.dispose();
+    }
+
+    @Test
+    public void randomGraphTest() {
+        VFlowModel flow = FlowUtil.newFlowModel();
+        Random rnd = new Random(42);
+
+        List<VNode> nodes = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            nodes.add(newNode(flow));
+        }
+
+        TopologicalOrder order = TopologicalOrder.of(flow, "data");
+
+        for (int i = 0; i < 200; i++) {
+            VNode s = nodes.get(rnd.nextInt(nodes.size()));
+            VNode r = nodes.get(rnd.nextInt(nodes.size()));
+            if (s != r && !flow.getConnections("data").contains(
+                    s.getOutputs().get(0), r.getInputs().get(0))) {
+                connect(flow, s, r);
+            }
+            assertValid(flow, order);
+        }
+
+        // an order created for the existing flow must be consistent, too
+        TopologicalOrder other = TopologicalOrder.of(flow, "data");
+        assertValid(flow, other);
+
+        List<Connection> connections = new ArrayList<>(
+                flow.getConnections("data").getConnections());
+
+        for (Connection c : connections) {
+            flow.getConnections("data").remove(c);
+            assertValid(flow, order);
+        }
+
+        Assert.assertFalse(order.hasCycles());
+    }
+}
@@ -39,6 +39,7 @@
 package eu.mihosoft.vrl.workflow;
 
 import eu.mihosoft.vrl.workflow.io.WorkflowIO;
+import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.IOException;
@@ -69,6 +70,141 @@ public class VFlowDiffTest {
         }
     }
 
+    @Test
+    public void testHashDiffUnchanged() {
+        VFlow flow = createFlow(10, 5, 3, "control", "data", "event");
+
+        FlowHash h1 = FlowHash.of(flow.getModel());
+        FlowHash h2 = FlowHash.of(flow.getModel());
+
+        Assert.assertEquals(h1.getTreeHash(), h2.getTreeHash());
+        Assert.assertTrue(FlowDiff.compute(h1, h2).isEmpty());
+    }
+
+    @Test
+    public void testHashDiff() {
+        VFlow flow = FlowFactory.newFlow();
+
+        VNode a = flow.newNode();
+        a.addOutput("data");
+        VNode b = flow.newNode();
+        b.addInput("data");
+        b.addOutput("data");
+        VNode x = flow.newNode();
+        x.addInput("data");
+
+        VFlow sub = flow.newSubFlow();
+        VNode c = sub.newNode();
+        c.addInput("data");
+        VNode d = sub.newNode();
+        d.addOutput("data");
+        VNode e = sub.newNode();
+
+        VFlow unchanged = flow.newSubFlow();
+        unchanged.newNode();
+
+        Connection ab = flow.connect(a.getOutputs().get(0),
+                b.getInputs().get(0)).getConnection();
+        Connection dc = sub.connect(d.getOutputs().get(0),
+                c.getInputs().get(0)).getConnection();
+
+        FlowHash before = FlowHash.of(flow.getModel());
+        FlowHash unchangedBefore = before.getChildren().
+                get(unchanged.getModel().getId());
+
+        // modify
+        c.setTitle("modified");
+        a.getValueObject().setValue(42);
+        sub.remove(e);
+        VNode f = sub.newNode();
+        flow.getConnections("data").remove(ab);
+        Connection bx = flow.connect(b.getOutputs().get(0),
+                x.getInputs().get(0)).getConnection();
+        sub.getConnections("data").remove(dc);
+
+        FlowHash after = FlowHash.of(flow.getModel());
+
+        Assert.assertNotEquals(before.getTreeHash(), after.getTreeHash());
+        Assert.assertEquals(unchangedBefore.getTreeHash(),
+                after.getChildren().get(unchanged.getModel().getId()).
+                getTreeHash());
+
+        FlowDiff diff = FlowDiff.compute(before, after);
+
+        Assert.assertEquals(2, diff.getModifiedNodes().size());
+        Assert.assertTrue(diff.getModifiedNodes().contains(a));
+        Assert.assertTrue(diff.getModifiedNodes().contains(c));
+        Assert.assertEquals(1, diff.getRemovedNodes().size());
+        Assert.assertEquals(e, diff.getRemovedNodes().get(0));
+        Assert.assertEquals(1, diff.getAddedNodes().size());
+        Assert.assertEquals(f, diff.getAddedNodes().get(0));
+        Assert.assertEquals(2, diff.getRemovedConnections().size());
+        Assert.assertTrue(diff.getRemovedConnections().contains(ab));
+        Assert.assertTrue(diff.getRemovedConnections().contains(dc));
+        Assert.assertEquals(1, diff.getAddedConnections().size());
+        Assert.assertEquals(bx, diff.getAddedConnections().get(0));
+    }
+
+    @Test
+    public void testTrackedHash() {
+        VFlow flow = FlowFactory.newFlow();
+
+        VNode a = flow.newNode();
+        a.addOutput("data");
+        VNode b = flow.newNode();
+        b.addInput("data");
+
+        VFlow sub = flow.newSubFlow();
+        VNode c = sub.newNode();
+        VNode d = sub.newNode();
+
+        VFlow unchanged = flow.newSubFlow();
+        unchanged.newNode();
+
+        FlowHashTracker tracker = new FlowHashTracker(flow.getModel());
+        FlowHash before = tracker.getHash();
+
+        // unchanged flows are not hashed again
+        Assert.assertSame(before, tracker.getHash());
+        Assert.assertSame(before, FlowHash.of(flow.getModel()));
+
+        // modify
+        c.setX(10);
+        a.getValueObject().setValue(42);
+        sub.remove(d);
+        VNode e = sub.newNode();
+        Connection ab = flow.connect(a.getOutputs().get(0),
+                b.getInputs().get(0)).getConnection();
+        b.setId("renamed");
+
+        FlowHash after = tracker.getHash();
+        String unchangedId = unchanged.getModel().getId();
+
+        // hash trees of unchanged subflows are reused
+        Assert.assertSame(before.getChildren().get(unchangedId),
+                after.getChildren().get(unchangedId));
+
+        FlowDiff diff = FlowDiff.compute(before, after);
+
+        Assert.assertEquals(2, diff.getModifiedNodes().size());
+        Assert.assertTrue(diff.getModifiedNodes().contains(a));
+        Assert.assertTrue(diff.getModifiedNodes().contains(c));
+        Assert.assertEquals(2, diff.getRemovedNodes().size());
+        Assert.assertTrue(diff.getRemovedNodes().contains(b));
+        Assert.assertTrue(diff.getRemovedNodes().contains(d));
+        Assert.assertEquals(2, diff.getAddedNodes().size());
+        Assert.assertTrue(diff.getAddedNodes().contains(b));
+        Assert.assertTrue(diff.getAddedNodes().contains(e));
+        Assert.assertEquals(1, diff.getAddedConnections().size());
+        Assert.assertEquals(ab, diff.getAddedConnections().get(0));
+
+        tracker.dispose();
+
+        // equal to hashing the flow completely
+        Assert.assertEquals(FlowHash.of(flow.getModel()).getTreeHash(),
+                after.getTreeHash());
+    }
+
     private VFlow createFlow(int maxWidth, int depth, int maxNumConnectors, String... types) {
         VFlow root = FlowFactory.newFlow();
         List<VFlow> flows = new ArrayList<>();
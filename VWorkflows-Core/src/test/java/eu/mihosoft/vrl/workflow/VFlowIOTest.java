@@ -37,6 +37,14 @@
  */
 package eu.mihosoft.vrl.workflow;
 
+import com.thoughtworks.xstream.XStream;
+import eu.mihosoft.vrl.workflow.io.BinaryWorkflowIO;
+import eu.mihosoft.vrl.workflow.io.ContainerWorkflowIO;
+import eu.mihosoft.vrl.workflow.io.PersistentConnection;
+import eu.mihosoft.vrl.workflow.io.PersistentConnector;
+import eu.mihosoft.vrl.workflow.io.PersistentFlow;
+import eu.mihosoft.vrl.workflow.io.PersistentNode;
+import eu.mihosoft.vrl.workflow.io.PersistentValueObject;
 import eu.mihosoft.vrl.workflow.io.WorkflowIO;
 import org.junit.After;
 import org.junit.AfterClass;
@@ -47,11 +55,16 @@ import org.junit.Test;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
@@ -215,6 +228,185 @@ public class VFlowIOTest {
         compare(flow1, flow2);
     }
 
+    @Test
+    public void streamedXMLEqualsPersistentXML() {
+
+        VFlow flow1 = FlowFactory.newFlow();
+
+        FlowUtil.createFlow(flow1, 2, 5);
+
+        VFlow subFlow = flow1.getSubControllers().get(0);
+        subFlow.getNodes().get(0).getValueObject().setValue("value <&>");
+        subFlow.getNodes().get(0).setTitle("title <&>");
+
+        // xml of the persistent representation (legacy format)
+        XStream xstream = new XStream();
+        xstream.alias("flow", PersistentFlow.class);
+        xstream.alias("node", PersistentNode.class);
+        xstream.alias("connection", PersistentConnection.class);
+        xstream.alias("vobj", PersistentValueObject.class);
+        xstream.alias("connector", PersistentConnector.class);
+
+        String persistentXml = xstream.toXML(
+                WorkflowIO.toPersistentNode(flow1.getModel(), null));
+
+        String streamedXml = WorkflowIO.saveToXML(flow1.getModel());
+
+        VFlow flow2 = WorkflowIO.loadFromXML(persistentXml);
+        VFlow flow3 = WorkflowIO.loadFromXML(streamedXml);
+
+        compare(flow1, flow3);
+        compare(flow2, flow3);
+
+        VNode n = flow3.getNodeLookup().getById(
+                subFlow.getNodes().get(0).getId());
+
+        assertEquals("value <&>", n.getValueObject().getValue());
+        assertEquals("title <&>", n.getTitle());
+    }
+
+    @Test
+    public void streamedLoadEqualsPersistentLoad() {
+
+        VFlow flow1 = FlowFactory.newFlow();
+
+        FlowUtil.createFlow(flow1, 3, 5);
+
+        String xml = WorkflowIO.saveToXML(flow1.getModel());
+
+        XStream xstream = new XStream();
+        xstream.alias("flow", PersistentFlow.class);
+        xstream.alias("node", PersistentNode.class);
+        xstream.alias("connection", PersistentConnection.class);
+        xstream.alias("vobj", PersistentValueObject.class);
+        xstream.alias("connector", PersistentConnector.class);
+
+        VFlow flow2 = FlowFactory.newFlow();
+        VFlowModel model2 = WorkflowIO.flowFromPersistentFlow(
+                (PersistentFlow) xstream.fromXML(xml),
+                flow2.getIdGenerator());
+        flow2.setNodeLookup(model2.getNodeLookup());
+        flow2.setModel(model2);
+
+        VFlow flow3 = WorkflowIO.loadFromXML(xml);
+
+        compare(flow1, flow3);
+        compare(flow2, flow3);
+
+        assertEquals(WorkflowIO.saveToXML(flow2.getModel()),
+                WorkflowIO.saveToXML(flow3.getModel()));
+    }
+
+    @Test
+    public void binaryLoadEqualsXMLLoad() throws IOException {
+
+        VFlow flow1 = FlowFactory.newFlow();
+
+        FlowUtil.createFlow(flow1, 3, 5);
+
+        VNode n = flow1.getModel().getNodes().get(0);
+        n.getValueObject().setValue(new ArrayList<>(Arrays.asList(1, 2, 3)));
+        n.getVisualizationRequest().set("answer", 42);
+        n.getVisualizationRequest().set("visible", true);
+        n.getVisualizationRequest().set("scale", 1.5);
+        n.getValueObject().getVisualizationRequest().set("color", "red");
+        n.getValueObject().getVisualizationRequest().set("size", 3);
+
+        String xml = WorkflowIO.saveToXML(flow1.getModel());
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        BinaryWorkflowIO.saveToBinary(flow1.getModel(), os);
+        byte[] binary = os.toByteArray();
+
+        assertTrue("Binary format must be several times smaller than XML",
+                binary.length * 3 < xml.getBytes(StandardCharsets.UTF_8).length);
+
+        VFlow flow2 = WorkflowIO.loadFromXML(xml);
+        VFlow flow3 = BinaryWorkflowIO.loadFromBinary(
+                new ByteArrayInputStream(binary));
+
+        compare(flow1, flow3);
+        compare(flow2, flow3);
+
+        // entries of value objects must be restored as by the XML format
+        VisualizationRequest vReq2 = flow2.getModel().getNodes().get(0).
+                getValueObject().getVisualizationRequest();
+        VisualizationRequest vReq3 = flow3.getModel().getNodes().get(0).
+                getValueObject().getVisualizationRequest();
+
+        for (String key : new String[]{"color", "size"}) {
+            assertEquals(vReq2.get(key), vReq3.get(key));
+        }
+
+        assertEquals(WorkflowIO.saveToXML(flow2.getModel()),
+                WorkflowIO.saveToXML(flow3.getModel()));
+    }
+
+    @Test(expected = IOException.class)
+    public void binaryLoadRejectsInvalidVarInt() throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        BinaryWorkflowIO.saveToBinary(FlowFactory.newFlow().getModel(), os);
+        byte[] binary = os.toByteArray();
+
+        // replace the version (first varint after the 4 byte magic number)
+        // by 2^32 + 1 which must not be truncated to the valid version 1
+        int offset = 4;
+        byte[] version = {(byte) 0x81, (byte) 0x80, (byte) 0x80,
+            (byte) 0x80, (byte) 0x10};
+        byte[] invalid = new byte[binary.length + version.length - 1];
+        System.arraycopy(binary, 0, invalid, 0, offset);
+        System.arraycopy(version, 0, invalid, offset, version.length);
+        System.arraycopy(binary, offset + 1, invalid,
+                offset + version.length, binary.length - offset - 1);
+
+        BinaryWorkflowIO.loadFromBinary(new ByteArrayInputStream(invalid));
+    }
+
+    @Test
+    public void containerLoadsSubflowsOnDemand() throws IOException {
+
+        VFlow flow1 = FlowFactory.newFlow();
+
+        FlowUtil.createFlow(flow1, 3, 5);
+
+        VFlowModel subflow1 = (VFlowModel) flow1.getModel().getNodes().get(0);
+        subflow1.setVisible(false);
+
+        Path p = Paths.get("test-flow-01.vwfc");
+        ContainerWorkflowIO.saveToContainer(p, flow1.getModel());
+
+        VFlowModel model = ContainerWorkflowIO.loadFromContainer(p,
+                FlowFactory.newIdGenerator());
+
+        assertEquals(flow1.getModel().getNodes().size(),
+                model.getNodes().size());
+
+        VFlowModel subflow2 = (VFlowModel) model.getNodes().get(0);
+
+        assertEquals(subflow1.getId(), subflow2.getId());
+        assertEquals(subflow1.getConnectors().size(),
+                subflow2.getConnectors().size());
+        assertFalse("Content of invisible subflows must be loaded on demand",
+                subflow2.isContentLoaded());
+
+        VNode n1 = subflow1.getNodes().get(1);
+        assertEquals(subflow1.getNodes().size(), subflow2.getNodes().size());
+        assertTrue(subflow2.isContentLoaded());
+        assertNotNull("Loaded nodes must be indexed",
+                model.getNodeLookup().getById(n1.getId()));
+
+        String xml = WorkflowIO.saveToXML(flow1.getModel());
+
+        VFlow flow2 = WorkflowIO.loadFromXML(xml);
+        VFlow flow3 = ContainerWorkflowIO.loadFromContainer(p);
+
+        // loads the remaining subflows
+        assertEquals(WorkflowIO.saveToXML(flow2.getModel()),
+                WorkflowIO.saveToXML(flow3.getModel()));
+
+        compare(flow1, flow3);
+    }
+
     private void compare(VFlow flow1, VFlow flow2) {
 
         assertEquals("Both flows must have equal id",
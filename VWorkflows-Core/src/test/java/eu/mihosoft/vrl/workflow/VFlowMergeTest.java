@@ -38,7 +38,12 @@
  */
 package eu.mihosoft.vrl.workflow;
 
+import org.junit.Assert;
 import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  *
@@ -60,6 +65,112 @@ public class VFlowMergeTest {
         addNodesToFlow(expectedResult.newSubFlow(), 3, "control", "data");
     }
 
+    @Test
+    public void testMerge() {
+        VFlow parent = FlowFactory.newFlow();
+        VFlow target = parent.newSubFlow();
+        addNodesToFlow(target, 3, "control", "data");
+
+        VFlow source = FlowFactory.newFlow();
+        addNodesToFlow(source, 3, "control", "data");
+        VFlow sourceSub = source.newSubFlow();
+        addNodesToFlow(sourceSub, 2, "data");
+        ThruConnector thru = sourceSub.getModel().addThruInput("data");
+
+        Map<String, String> ids = new HashMap<>();
+        VFlowModel result = FlowMerger.merge(
+                source.getModel(), target.getModel(), ids);
+
+        Assert.assertEquals(result.getId(),
+                ids.get(source.getModel().getId()));
+        Assert.assertTrue(target.getModel().getNodes().contains(result));
+        Assert.assertEquals(source.getModel().getNodes().size(),
+                result.getNodes().size());
+
+        for (VNode n : source.getModel().getNodes()) {
+            VNode copy = parent.getNodeLookup().getById(ids.get(n.getId()));
+            Assert.assertNotNull(copy);
+            Assert.assertEquals(n.getConnectors().size(),
+                    copy.getConnectors().size());
+        }
+
+        for (String type : new String[]{"control", "data"}) {
+            Assert.assertEquals(
+                    source.getConnections(type).getConnections().size(),
+                    result.getConnections(type).getConnections().size());
+        }
+
+        VFlowModel subCopy = (VFlowModel) parent.getNodeLookup().
+                getById(ids.get(sourceSub.getModel().getId()));
+        Assert.assertEquals(sourceSub.getModel().getNodes().size(),
+                subCopy.getNodes().size());
+        Assert.assertEquals(
+                sourceSub.getConnections("data").getConnections().size(),
+                subCopy.getConnections("data").getConnections().size());
+        Assert.assertNotNull(parent.getNodeLookup().
+                getById(ids.get(thru.getInnerNode().getId())));
+
+        // source must not be modified
+        Assert.assertEquals(3 + 1, source.getModel().getNodes().size());
+    }
+
+    @Test
+    public void mergeCustomValueObjectTest() {
+        VFlow parent = FlowFactory.newFlow();
+        VFlow target = parent.newSubFlow();
+
+        VFlow source = FlowFactory.newFlow();
+        VNode n = source.newNode(new CustomValueObject());
+        n.getValueObject().setValue("value");
+        VFlow sourceSub = source.newSubFlow(new CustomValueObject());
+
+        Map<String, String> ids = new HashMap<>();
+        FlowMerger.merge(source.getModel(), target.getModel(), ids);
+
+        VNode copy = parent.getNodeLookup().getById(ids.get(n.getId()));
+        Assert.assertTrue(copy.getValueObject() instanceof CustomValueObject);
+        Assert.assertEquals("value", copy.getValueObject().getValue());
+        Assert.assertSame(copy, copy.getValueObject().getParent());
+
+        VNode subCopy = parent.getNodeLookup().
+                getById(ids.get(sourceSub.getModel().getId()));
+        Assert.assertTrue(
+                subCopy.getValueObject() instanceof CustomValueObject);
+    }
+
+    @Test
+    public void mergeValueObjectWithoutNoArgConstructorTest() {
+        VFlow target = FlowFactory.newFlow();
+
+        VFlow source = FlowFactory.newFlow();
+        source.newNode();
+        source.newNode(new NoDefaultConstructorValueObject("value"));
+
+        try {
+            FlowMerger.merge(source.getModel(), target.getModel());
+            Assert.fail("Value object without no-arg constructor copied");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+
+        // target must not be modified
+        Assert.assertTrue(target.getNodes().isEmpty());
+    }
+
+    public static class CustomValueObject extends DefaultValueObject {
+
+        public CustomValueObject() {
+        }
+    }
+
+    public static class NoDefaultConstructorValueObject
+            extends DefaultValueObject {
+
+        public NoDefaultConstructorValueObject(Object value) {
+            setValue(value);
+        }
+    }
+
     private void addNodesToFlow(VFlow flow, int numNodes, String... types) {
         VNode prevNode = null;
         for (int i = 0; i < numNodes; i++) {
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2012-2016 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * Please cite the following publication(s):
+ *
+ * M. Hoffer, C.Poliwoda, G.Wittum. Visual Reflection Library -
+ * A Framework for Declarative GUI Programming on the Java Platform.
+ * Computing and Visualization in Science, 2011, in press.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vrl.workflow;
+
+import javafx.beans.property.DoubleProperty;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author Michael Hoffer &lt;info@michaelhoffer.de&gt;
+ */
+public class VNodePropertiesTest {
+
+    @Test
+    public void defaultValuesTest() {
+        VNode n = FlowUtil.newFlowModel().newNode();
+
+        Assert.assertEquals("Node", n.getTitle());
+        Assert.assertEquals(200, n.getWidth(), 0);
+        Assert.assertEquals(150, n.getHeight(), 0);
+        Assert.assertTrue(n.isSelectable());
+        Assert.assertFalse(n.isSelected());
+        Assert.assertTrue(n.getConnectors().isEmpty());
+        Assert.assertNull(n.getMainInput("data"));
+        Assert.assertTrue(n.getMainInputTypes().isEmpty());
+        Assert.assertSame(n, n.getValueObject().getParent());
+
+        // properties are initialized with the current values
+        Assert.assertEquals("Node", n.titleProperty().get());
+        Assert.assertEquals(200, n.widthProperty().get(), 0);
+        Assert.assertEquals(n.getId(), n.idProperty().get());
+    }
+
+    @Test
+    public void propertiesReflectValuesTest() {
+        VNode n = FlowUtil.newFlowModel().newNode();
+
+        n.setX(10);
+        n.setTitle("my node");
+
+        DoubleProperty x = n.xProperty();
+        Assert.assertEquals(10, x.get(), 0);
+        Assert.assertEquals("my node", n.titleProperty().get());
+
+        double[] observed = {0};
+        x.addListener((ov, oldV, newV) -> observed[0] = newV.doubleValue());
+
+        n.setX(42);
+        Assert.assertEquals(42, observed[0], 0);
+        Assert.assertEquals(42, n.getX(), 0);
+
+        x.set(7);
+        Assert.assertEquals(7, n.getX(), 0);
+
+        n.selectableProperty().set(false);
+        Assert.assertFalse(n.requestSelection(true));
+        Assert.assertFalse(n.selectedProperty().get());
+
+        n.selectableProperty().set(true);
+        Assert.assertTrue(n.requestSelection(true));
+        Assert.assertTrue(n.selectedProperty().get());
+        Assert.assertTrue(n.isSelected());
+
+        ValueObject vObj = new DefaultValueObject();
+        n.valueObjectProperty().set(vObj);
+        Assert.assertSame(vObj, n.getValueObject());
+        Assert.assertSame(n, vObj.getParent());
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2012-2016 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * Please cite the following publication(s):
+ *
+ * M. Hoffer, C.Poliwoda, G.Wittum. Visual Reflection Library -
+ * A Framework for Declarative GUI Programming on the Java Platform.
+ * Computing and Visualization in Science, 2011, in press.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vrl.workflow.execution;
+
+import eu.mihosoft.vrl.workflow.Connector;
+import eu.mihosoft.vrl.workflow.FlowUtil;
+import eu.mihosoft.vrl.workflow.VFlowModel;
+import eu.mihosoft.vrl.workflow.VNode;
+import eu.mihosoft.vrl.workflow.execution.ExecutionResult.Status;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ * @author Michael Hoffer &lt;info@michaelhoffer.de&gt;
+ */
+public class ExecutionEngineTest {
+
+    static VNode newNode(VFlowModel flow, NodeFunction f) {
+        VNode n = flow.newNode();
+        n.addInput("data");
+        n.addOutput("data");
+        n.getValueObject().setValue(f);
+        return n;
+    }
+
+    static void connect(VFlowModel flow, VNode s, VNode r) {
+        flow.connect(s.getOutputs().get(0), r.getInputs().get(0));
+    }
+
+    static ExecutionEngine newEngine() {
+        return new ExecutionEngine(vObj -> (NodeFunction) vObj.getValue());
+    }
+
+    static int sum(Object value) {
+        if (value instanceof Iterable) {
+            int result = 0;
+            for (Object v : (Iterable<?>) value) {
+                result += (Integer) v;
+            }
+            return result;
+        }
+        return (Integer) value;
+    }
+
+    @Test
+    public void parallelDiamondTest() throws Exception {
+        VFlowModel flow = FlowUtil.newFlowModel();
+
+        // b and c must run concurrently to pass the barrier
+        CyclicBarrier barrier = new CyclicBarrier(2);
+
+        VNode a = newNode(flow, (n, in) -> 1);
+        VNode b = newNode(flow, (n, in) -> {
+            barrier.await(10, TimeUnit.SECONDS);
+            return sum(in.get(n.getInputs().get(0).getLocalId())) + 1;
+        });
+        VNode c = newNode(flow, (n, in) -> {
+            barrier.await(10, TimeUnit.SECONDS);
+            return sum(in.get(n.getInputs().get(0).getLocalId())) + 2;
+        });
+        VNode d = newNode(flow, (n, in) -> {
+            return sum(in.get(n.getInputs().get(0).getLocalId()));
+        });
+
+        connect(flow, a, b);
+        connect(flow, a, c);
+        connect(flow, b, d);
+        connect(flow, c, d);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try {
+            ExecutionResult result = new ExecutionEngine(
+                    vObj -> (NodeFunction) vObj.getValue(), executor).
+                    execute(flow);
+
+            Assert.assertTrue(result.isSuccessful());
+            Assert.assertEquals(5, result.getResult(d));
+            Assert.assertTrue(result.getStartTime(d)
+                    >= result.getStartTime(b) + result.getDuration(b));
+            Assert.assertTrue(result.getTotalDuration() > 0);
+
+            // results are propagated to the receiving connectors
+            Connector inB = b.getInputs().get(0);
+            Assert.assertEquals(1, inB.getValueObject().getValue());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void failureTest() {
+        VFlowModel flow = FlowUtil.newFlowModel();
+
+        VNode a = newNode(flow, (n, in) -> {
+            throw new IllegalStateException("failed");
+        });
+        VNode b = newNode(flow, (n, in) -> 1);
+        VNode c = newNode(flow, (n, in) -> 2);
+
+        connect(flow, a, b);
+
+        ExecutionResult result = newEngine().execute(flow);
+
+        Assert.assertFalse(result.isSuccessful());
+        Assert.assertEquals(Status.FAILED, result.getStatus(a));
+        Assert.assertEquals("failed", result.getError(a).getMessage());
+        Assert.assertEquals(Status.SKIPPED, result.getStatus(b));
+        Assert.assertEquals(Status.COMPLETED, result.getStatus(c));
+        Assert.assertEquals(2, result.getResult(c));
+    }
+
+    @Test
+    public void cycleTest() {
+        VFlowModel flow = FlowUtil.newFlowModel();
+
+        VNode a = newNode(flow, (n, in) -> 1);
+        VNode b = newNode(flow, (n, in) -> 2);
+        VNode c = newNode(flow, (n, in) -> 3);
+        VNode d = newNode(flow, (n, in) -> 4);
+
+        connect(flow, a, b);
+        connect(flow, b, c);
+        connect(flow, c, b);
+        connect(flow, c, d);
+
+        ExecutionResult result = newEngine().execute(flow);
+
+        Assert.assertEquals(Status.COMPLETED, result.getStatus(a));
+        Assert.assertEquals(Status.SKIPPED, result.getStatus(b));
+        Assert.assertEquals(Status.SKIPPED, result.getStatus(d));
+        Assert.assertNotNull(result.getError(d));
+    }
+
+    @Test
+    public void publishOnCallingThreadTest() {
+        VFlowModel flow = FlowUtil.newFlowModel();
+
+        VNode a = newNode(flow, (n, in) -> 1);
+        VNode b = newNode(flow, (n, in) -> 2);
+        VNode c = newNode(flow, (n, in) -> sum(in.get(
+                n.getInputs().get(0).getLocalId())));
+
+        connect(flow, a, c);
+        connect(flow, b, c);
+
+        Connector inC = c.getInputs().get(0);
+        List<Thread> threads = new ArrayList<>();
+        inC.getValueObject().valueProperty().addListener(
+                (ov, oldV, newV) -> threads.add(Thread.currentThread()));
+
+        ExecutionResult result = newEngine().executeAsync(flow).join();
+
+        // the model is not modified by the threads of the executor
+        Assert.assertEquals(3, result.getResult(c));
+        Assert.assertTrue(threads.isEmpty());
+        Assert.assertNull(inC.getValueObject().getValue());
+
+        result.publish();
+
+        Assert.assertEquals(Arrays.asList(Thread.currentThread()), threads);
+        // both senders are published as one list
+        Assert.assertEquals(2,
+                ((List<?>) inC.getValueObject().getValue()).size());
+        Assert.assertEquals(3, sum(inC.getValueObject().getValue()));
+    }
+}
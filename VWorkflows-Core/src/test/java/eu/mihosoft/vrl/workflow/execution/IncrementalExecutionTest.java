@@ -0,0 +1,233 @@
+/*
+ * Copyright 2012-2016 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * Please cite the following publication(s):
+ *
+ * M. Hoffer, C.Poliwoda, G.Wittum. Visual Reflection Library -
+ * A Framework for Declarative GUI Programming on the Java Platform.
+ * Computing and Visualization in Science, 2011, in press.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vrl.workflow.execution;
+
+import eu.mihosoft.vrl.workflow.FlowUtil;
+import eu.mihosoft.vrl.workflow.VFlowModel;
+import eu.mihosoft.vrl.workflow.VNode;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static eu.mihosoft.vrl.workflow.execution.ExecutionEngineTest.connect;
+import static eu.mihosoft.vrl.workflow.execution.ExecutionEngineTest.newEngine;
+import static eu.mihosoft.vrl.workflow.execution.ExecutionEngineTest.newNode;
+import static eu.mihosoft.vrl.workflow.execution.ExecutionEngineTest.sum;
+
+/**
+ *
+ * @author Michael Hoffer &lt;info@michaelhoffer.de&gt;
+ */
+public class IncrementalExecutionTest {
+
+    private static NodeFunction add(List<VNode> computed, int value) {
+        return (n, in) -> {
+            computed.add(n);
+            Object input = in.get(n.getInputs().get(0).getLocalId());
+            return (input == null ? 0 : sum(input)) + value;
+        };
+    }
+
+    @Test
+    public void dirtyPropagationTest() {
+        VFlowModel flow = FlowUtil.newFlowModel();
+
+        List<VNode> computed = new CopyOnWriteArrayList<>();
+
+        VNode a = newNode(flow, add(computed, 1));
+        VNode b = newNode(flow, add(computed, 10));
+        VNode c = newNode(flow, add(computed, 100));
+        VNode d = newNode(flow, add(computed, 1000));
+
+        connect(flow, a, b);
+        connect(flow, b, c);
+
+        IncrementalExecution execution
+                = new IncrementalExecution(newEngine(), flow);
+
+        try {
+            // initially, everything is stale
+            Assert.assertEquals(4, execution.getStaleNodes().size());
+            Assert.assertTrue(execution.recompute().isSuccessful());
+            Assert.assertEquals(4, computed.size());
+            Assert.assertEquals(111, execution.getResult(c));
+            Assert.assertTrue(execution.getStaleNodes().isEmpty());
+
+            // changing b invalidates b and its dependents only
+            computed.clear();
+            b.getValueObject().setValue(add(computed, 20));
+
+            Assert.assertEquals(new HashSet<>(Arrays.asList(b, c)),
+                    execution.getStaleNodes());
+
+            ExecutionResult result = execution.recompute();
+
+            Assert.assertEquals(2, result.getSnapshot().getNodeCount());
+            Assert.assertEquals(new HashSet<>(Arrays.asList(b, c)),
+                    new HashSet<>(computed));
+            Assert.assertEquals(121, execution.getResult(c));
+            Assert.assertEquals(1, execution.getResult(a));
+            Assert.assertEquals(1000, execution.getResult(d));
+
+            // connecting invalidates the receiver
+            computed.clear();
+            connect(flow, d, c);
+
+            Assert.assertEquals(new HashSet<>(Arrays.asList(c)),
+                    execution.getStaleNodes());
+            execution.recompute();
+            Assert.assertEquals(Arrays.asList(c), computed);
+            Assert.assertEquals(1121, execution.getResult(c));
+
+            // removed nodes are forgotten
+            flow.remove(d);
+            Assert.assertNull(execution.getResult(d));
+            Assert.assertTrue(execution.isStale(c));
+        } finally {
+            execution.dispose();
+        }
+    }
+
+    @Test
+    public void failedNodesStayStaleTest() {
+        VFlowModel flow = FlowUtil.newFlowModel();
+
+        VNode a = newNode(flow, (n, in) -> {
+            throw new IllegalStateException("failure");
+        });
+        VNode b = newNode(flow, (n, in) -> 1);
+
+        connect(flow, a, b);
+
+        IncrementalExecution execution
+                = new IncrementalExecution(newEngine(), flow);
+
+        try {
+            Assert.assertFalse(execution.recompute().isSuccessful());
+            Assert.assertTrue(execution.isStale(a));
+            Assert.assertTrue(execution.isStale(b));
+
+            a.getValueObject().setValue((NodeFunction) (n, in) -> 2);
+
+            Assert.assertTrue(execution.recompute().isSuccessful());
+            Assert.assertTrue(execution.getStaleNodes().isEmpty());
+            Assert.assertEquals(2, execution.getResult(a));
+        } finally {
+            execution.dispose();
+        }
+    }
+
+    @Test
+    public void failedStartKeepsStaleNodesTest() {
+        VFlowModel flow = FlowUtil.newFlowModel();
+
+        VNode a = newNode(flow, (n, in) -> 1);
+        VNode b = newNode(flow, (n, in) -> 2);
+
+        connect(flow, a, b);
+
+        // the executor fails synchronously
+        ExecutionEngine failingEngine = new ExecutionEngine(
+                vObj -> (NodeFunction) vObj.getValue(), (r) -> {
+                    throw new IllegalStateException("executor failure");
+                });
+
+        IncrementalExecution execution
+                = new IncrementalExecution(failingEngine, flow);
+
+        try {
+            try {
+                execution.recomputeAsync();
+                Assert.fail("exception expected");
+            } catch (IllegalStateException ex) {
+                Assert.assertEquals("executor failure", ex.getMessage());
+            }
+
+            Assert.assertEquals(new HashSet<>(Arrays.asList(a, b)),
+                    execution.getStaleNodes());
+
+            // no recomputation is in progress
+            try {
+                execution.recomputeAsync();
+                Assert.fail("exception expected");
+            } catch (IllegalStateException ex) {
+                Assert.assertEquals("executor failure", ex.getMessage());
+            }
+        } finally {
+            execution.dispose();
+        }
+    }
+
+    @Test
+    public void connectionTypesAddedLaterTest() {
+        VFlowModel flow = FlowUtil.newFlowModel();
+
+        VNode a = newNode(flow, (n, in) -> 1);
+        VNode b = newNode(flow, (n, in) -> 2);
+
+        Set<String> types = new HashSet<>(flow.getAllConnections().keySet());
+
+        IncrementalExecution execution
+                = new IncrementalExecution(newEngine(), flow);
+
+        try {
+            // observing the flow doesn't create connection types
+            Assert.assertEquals(types, flow.getAllConnections().keySet());
+
+            Assert.assertTrue(execution.recompute().isSuccessful());
+            Assert.assertTrue(execution.getStaleNodes().isEmpty());
+
+            // the first data connection creates the connection type
+            connect(flow, a, b);
+
+            Assert.assertEquals(new HashSet<>(Arrays.asList(b)),
+                    execution.getStaleNodes());
+        } finally {
+            execution.dispose();
+        }
+
+        // neither does disposing it
+        VFlowModel empty = FlowUtil.newFlowModel();
+        types = new HashSet<>(empty.getAllConnections().keySet());
+
+        new IncrementalExecution(newEngine(), empty).dispose();
+
+        Assert.assertEquals(types, empty.getAllConnections().keySet());
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright 2012-2016 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * Please cite the following publication(s):
+ *
+ * M. Hoffer, C.Poliwoda, G.Wittum. Visual Reflection Library -
+ * A Framework for Declarative GUI Programming on the Java Platform.
+ * Computing and Visualization in Science, 2011, in press.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vrl.workflow.execution;
+
+import eu.mihosoft.vrl.workflow.FlowUtil;
+import eu.mihosoft.vrl.workflow.VFlowModel;
+import eu.mihosoft.vrl.workflow.VNode;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static eu.mihosoft.vrl.workflow.execution.ExecutionEngineTest.connect;
+import static eu.mihosoft.vrl.workflow.execution.ExecutionEngineTest.newNode;
+import static eu.mihosoft.vrl.workflow.execution.ExecutionEngineTest.sum;
+import static java.util.Collections.singletonMap;
+
+/**
+ *
+ * @author Michael Hoffer &lt;info@michaelhoffer.de&gt;
+ */
+public class ResultCacheTest {
+
+    @Test
+    public void memoizedFlowTest() {
+        VFlowModel flow = FlowUtil.newFlowModel();
+
+        AtomicInteger invocations = new AtomicInteger();
+
+        VNode a = newNode(flow, (n, in) -> {
+            invocations.incrementAndGet();
+            return 1;
+        });
+        VNode b = newNode(flow, (n, in) -> {
+            invocations.incrementAndGet();
+            return sum(in.get(n.getInputs().get(0).getLocalId())) + 1;
+        });
+
+        connect(flow, a, b);
+
+        ResultCache cache = new ResultCache(16);
+        ExecutionEngine engine = new ExecutionEngine(cache.memoizeAll(
+                vObj -> (NodeFunction) vObj.getValue()));
+
+        Assert.assertEquals(2, engine.execute(flow).getResult(b));
+        Assert.assertEquals(2, invocations.get());
+        Assert.assertEquals(0, cache.getHitCount());
+        Assert.assertEquals(2, cache.getMissCount());
+
+        // unchanged flow: no invocations
+        Assert.assertEquals(2, engine.execute(flow).getResult(b));
+        Assert.assertEquals(2, invocations.get());
+        Assert.assertEquals(2, cache.getHitCount());
+
+        cache.invalidate(a.getId());
+
+        Assert.assertEquals(2, engine.execute(flow).getResult(b));
+        Assert.assertEquals(3, invocations.get());
+        Assert.assertEquals(3, cache.getHitCount());
+        Assert.assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void lruAndSpillTest() throws Exception {
+        Path dir = Files.createTempDirectory("result-cache");
+
+        VFlowModel flow = FlowUtil.newFlowModel();
+        VNode n = flow.newNode();
+
+        AtomicInteger invocations = new AtomicInteger();
+
+        NodeFunction f = (node, in) -> {
+            invocations.incrementAndGet();
+            return (Integer) in.get("x") * 2;
+        };
+
+        ResultCache memCache = new ResultCache(1);
+        NodeFunction mem = memCache.memoize(f);
+
+        mem.compute(n, singletonMap("x", 1));
+        mem.compute(n, singletonMap("x", 2));
+        Assert.assertEquals(1, memCache.size());
+
+        // evicted, no spill directory
+        Assert.assertEquals(2, mem.compute(n,
+                singletonMap("x", 1)));
+        Assert.assertEquals(3, invocations.get());
+
+        invocations.set(0);
+
+        ResultCache diskCache = new ResultCache(1, dir);
+        NodeFunction disk = diskCache.memoize(f);
+
+        disk.compute(n, singletonMap("x", 1));
+        disk.compute(n, singletonMap("x", 2));
+
+        // evicted and spilled
+        Assert.assertEquals(2, disk.compute(n,
+                singletonMap("x", 1)));
+        Assert.assertEquals(2, invocations.get());
+        Assert.assertEquals(1, diskCache.getHitCount());
+
+        // spilled results survive the cache instance
+        ResultCache otherCache = new ResultCache(1, dir);
+        Assert.assertEquals(4, otherCache.memoize(f).compute(n,
+                singletonMap("x", 2)));
+        Assert.assertEquals(2, invocations.get());
+
+        otherCache.clear();
+        diskCache.clear();
+
+        try (Stream<Path> files = Files.list(dir)) {
+            Assert.assertEquals(0, files.count());
+        }
+
+        Files.delete(dir);
+    }
+
+    @Test
+    public void contentDigestTest() throws Exception {
+        Path dir = Files.createTempDirectory("result-cache");
+
+        VFlowModel flow = FlowUtil.newFlowModel();
+        VNode a = flow.newNode();
+        VNode b = flow.newNode();
+        a.setId("a-1");
+        b.setId("a-1-2");
+
+        AtomicInteger invocations = new AtomicInteger();
+
+        NodeFunction f = (node, in) -> {
+            invocations.incrementAndGet();
+            return ((int[]) in.get("x")).length;
+        };
+
+        ResultCache cache = new ResultCache(0, dir);
+        NodeFunction memoized = cache.memoize(f);
+
+        // arrays are compared by content
+        memoized.compute(a, singletonMap("x", new int[]{1, 2}));
+        memoized.compute(b, singletonMap("x", new int[]{1, 2}));
+        Assert.assertEquals(2, memoized.compute(a,
+                singletonMap("x", new int[]{1, 2})));
+        Assert.assertEquals(2, invocations.get());
+        Assert.assertEquals(1, cache.getHitCount());
+
+        // ids are matched exactly, "a-1" is a prefix of "a-1-2"
+        cache.invalidate(a.getId());
+
+        memoized.compute(b, singletonMap("x", new int[]{1, 2}));
+        Assert.assertEquals(2, invocations.get());
+        memoized.compute(a, singletonMap("x", new int[]{1, 2}));
+        Assert.assertEquals(3, invocations.get());
+
+        // inputs that cannot be serialized are not memoized
+        NodeFunction g = cache.memoize((node, in) -> {
+            invocations.incrementAndGet();
+            return 0;
+        });
+        Object notSerializable = new Object();
+        g.compute(a, singletonMap("x", notSerializable));
+        g.compute(a, singletonMap("x", notSerializable));
+        Assert.assertEquals(5, invocations.get());
+
+        cache.clear();
+
+        try (Stream<Path> files = Files.list(dir)) {
+            Assert.assertEquals(0, files.count());
+        }
+
+        Files.delete(dir);
+    }
+
+    private static final class Payload implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    @Test
+    public void spillAllowListTest() throws Exception {
+        Path dir = Files.createTempDirectory("result-cache");
+
+        VFlowModel flow = FlowUtil.newFlowModel();
+        VNode n = flow.newNode();
+
+        AtomicInteger invocations = new AtomicInteger();
+
+        NodeFunction f = (node, in) -> {
+            invocations.incrementAndGet();
+            return new Payload();
+        };
+        NodeFunction g = (node, in) -> {
+            invocations.incrementAndGet();
+            return Arrays.asList("a", 1L, new int[]{1});
+        };
+
+        ResultCache cache = new ResultCache(0, dir);
+        cache.memoize(f).compute(n, singletonMap("x", 1));
+        cache.memoize(g).compute(n, singletonMap("x", 2));
+        Assert.assertEquals(2, invocations.get());
+
+        // classes that are not allowed are not deserialized
+        ResultCache defaultCache = new ResultCache(0, dir);
+        defaultCache.memoize(f).compute(n, singletonMap("x", 1));
+        Assert.assertEquals(3, invocations.get());
+
+        // common classes are allowed by default
+        defaultCache.memoize(g).compute(n, singletonMap("x", 2));
+        Assert.assertEquals(3, invocations.get());
+
+        ResultCache allowingCache = new ResultCache(0, dir,
+                Payload.class::equals);
+        Assert.assertTrue(allowingCache.memoize(f).compute(
+                n, singletonMap("x", 1)) instanceof Payload);
+        Assert.assertEquals(3, invocations.get());
+
+        cache.clear();
+        Files.delete(dir);
+    }
+
+    @Test
+    public void nodeValueTest() throws Exception {
+        VFlowModel flow = FlowUtil.newFlowModel();
+        VNode n = flow.newNode();
+        n.getValueObject().setValue(2);
+
+        AtomicInteger invocations = new AtomicInteger();
+
+        ResultCache cache = new ResultCache(16);
+        NodeFunction f = cache.memoize((node, in) -> {
+            invocations.incrementAndGet();
+            return (Integer) node.getValueObject().getValue()
+                    * (Integer) in.get("x");
+        });
+
+        Assert.assertEquals(6, f.compute(n, singletonMap("x", 3)));
+        Assert.assertEquals(6, f.compute(n, singletonMap("x", 3)));
+        Assert.assertEquals(1, invocations.get());
+
+        // the node value is part of the key
+        n.getValueObject().setValue(4);
+        Assert.assertEquals(12, f.compute(n, singletonMap("x", 3)));
+        Assert.assertEquals(2, invocations.get());
+    }
+}
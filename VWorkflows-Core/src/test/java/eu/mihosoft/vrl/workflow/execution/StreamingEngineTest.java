@@ -0,0 +1,235 @@
+/*
+ * Copyright 2012-2016 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * Please cite the following publication(s):
+ *
+ * M. Hoffer, C.Poliwoda, G.Wittum. Visual Reflection Library -
+ * A Framework for Declarative GUI Programming on the Java Platform.
+ * Computing and Visualization in Science, 2011, in press.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vrl.workflow.execution;
+
+import eu.mihosoft.vrl.workflow.FlowUtil;
+import eu.mihosoft.vrl.workflow.VFlowModel;
+import eu.mihosoft.vrl.workflow.VNode;
+import eu.mihosoft.vrl.workflow.execution.ExecutionResult.Status;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static eu.mihosoft.vrl.workflow.execution.ExecutionEngineTest.connect;
+
+/**
+ *
+ * @author Michael Hoffer &lt;info@michaelhoffer.de&gt;
+ */
+public class StreamingEngineTest {
+
+    static VNode newStage(VFlowModel flow, StreamStage stage) {
+        VNode n = flow.newNode();
+        n.addInput("data");
+        n.addOutput("data");
+        n.getValueObject().setValue(stage);
+        return n;
+    }
+
+    static StreamingEngine newEngine(int queueCapacity) {
+        return new StreamingEngine(
+                vObj -> (StreamStage) vObj.getValue(), queueCapacity);
+    }
+
+    @Test
+    public void pipelineTest() {
+        VFlowModel flow = FlowUtil.newFlowModel();
+
+        int numBatches = 200;
+        int queueCapacity = 2;
+
+        AtomicInteger emitted = new AtomicInteger();
+        AtomicInteger consumed = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+
+        VNode source = newStage(flow, (n, ctx) -> {
+            for (int b = 0; b < numBatches; b++) {
+                List<Integer> batch = new ArrayList<>();
+                for (int i = 0; i < 10; i++) {
+                    batch.add(b * 10 + i);
+                }
+                ctx.emit(batch);
+                int inFlight = emitted.incrementAndGet() - consumed.get();
+                maxInFlight.accumulateAndGet(inFlight, Math::max);
+            }
+            return null;
+        });
+
+        VNode map = newStage(flow, (n, ctx) -> {
+            StreamBatch batch;
+            while ((batch = ctx.next()) != null) {
+                List<Integer> result = new ArrayList<>();
+                for (Object v : batch.getRecords()) {
+                    result.add((Integer) v * 2);
+                }
+                ctx.emit(result);
+            }
+            return null;
+        });
+
+        // slow consumer
+        VNode sink = newStage(flow, (n, ctx) -> {
+            long sum = 0;
+            StreamBatch batch;
+            while ((batch = ctx.next()) != null) {
+                TimeUnit.MICROSECONDS.sleep(200);
+                for (Object v : batch.getRecords()) {
+                    sum += (Integer) v;
+                }
+                consumed.incrementAndGet();
+            }
+            return sum;
+        });
+
+        connect(flow, source, map);
+        connect(flow, map, sink);
+
+        ExecutionResult result = newEngine(queueCapacity).execute(flow);
+
+        Assert.assertTrue(result.isSuccessful());
+
+        long expected = 0;
+        for (int i = 0; i < numBatches * 10; i++) {
+            expected += 2 * i;
+        }
+
+        Assert.assertEquals(expected, result.getResult(sink));
+        Assert.assertEquals(numBatches, consumed.get());
+
+        // bounded by two queues, the batch held by the map stage and the
+        // batch held by the sink
+        Assert.assertTrue("in flight: " + maxInFlight.get(),
+                maxInFlight.get() <= 2 * queueCapacity + 2);
+    }
+
+    @Test
+    public void mergeAndForwardTest() {
+        VFlowModel flow = FlowUtil.newFlowModel();
+
+        VNode a = newStage(flow, (n, ctx) -> {
+            ctx.emit(Arrays.asList(1, 2));
+            return null;
+        });
+        VNode b = newStage(flow, (n, ctx) -> {
+            ctx.emit(Arrays.asList(3));
+            ctx.emit(Arrays.asList(4));
+            return null;
+        });
+
+        // no stage, forwards its inputs
+        VNode forward = newStage(flow, null);
+
+        VNode sink = newStage(flow, (n, ctx) -> {
+            int sum = 0;
+            StreamBatch batch;
+            while ((batch = ctx.next()) != null) {
+                Assert.assertEquals("data", batch.getConnection().
+                        getReceiver().getType());
+                for (Object v : batch.getRecords()) {
+                    sum += (Integer) v;
+                }
+            }
+            return sum;
+        });
+
+        connect(flow, a, forward);
+        connect(flow, b, forward);
+        connect(flow, forward, sink);
+
+        ExecutionResult result = newEngine(1).execute(flow);
+
+        Assert.assertTrue(result.isSuccessful());
+        Assert.assertEquals(10, result.getResult(sink));
+    }
+
+    @Test
+    public void cancellationTest() {
+        VFlowModel flow = FlowUtil.newFlowModel();
+
+        // endless source, must be cancelled
+        VNode source = newStage(flow, (n, ctx) -> {
+            while (true) {
+                ctx.emit(Arrays.asList(1));
+            }
+        });
+
+        VNode sink = newStage(flow, (n, ctx) -> {
+            ctx.next();
+            throw new IllegalStateException("failure");
+        });
+
+        connect(flow, source, sink);
+
+        ExecutionResult result = newEngine(1).execute(flow);
+
+        Assert.assertEquals(Status.FAILED, result.getStatus(sink));
+        Assert.assertEquals(Status.SKIPPED, result.getStatus(source));
+        Assert.assertFalse(result.isSuccessful());
+
+        // a receiver that stops early doesn't block its sender
+        VFlowModel flow2 = FlowUtil.newFlowModel();
+
+        VNode source2 = newStage(flow2, (n, ctx) -> {
+            for (int i = 0; i < 100; i++) {
+                ctx.emit(Arrays.asList(i));
+            }
+            return null;
+        });
+        VNode take2 = newStage(flow2, (n, ctx) -> ctx.next().size());
+
+        connect(flow2, source2, take2);
+
+        // endless source, stops if nobody consumes its records
+        VNode source3 = newStage(flow2, (n, ctx) -> {
+            while (ctx.isOpen()) {
+                ctx.emit(Arrays.asList(1));
+            }
+            return null;
+        });
+        VNode take3 = newStage(flow2, (n, ctx) -> ctx.next().size());
+
+        connect(flow2, source3, take3);
+
+        ExecutionResult result2 = newEngine(1).execute(flow2);
+
+        Assert.assertTrue(result2.isSuccessful());
+        Assert.assertEquals(1, result2.getResult(take2));
+        Assert.assertEquals(1, result2.getResult(take3));
+    }
+}
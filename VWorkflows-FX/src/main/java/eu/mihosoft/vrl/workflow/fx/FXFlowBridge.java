@@ -0,0 +1,436 @@
+/*
+ * Copyright 2012-2016 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * Please cite the following publication(s):
+ *
+ * M. Hoffer, C.Poliwoda, G.Wittum. Visual Reflection Library -
+ * A Framework for Declarative GUI Programming on the Java Platform.
+ * Computing and Visualization in Science, 2011, in press.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vrl.workflow.fx;
+
+import eu.mihosoft.vrl.workflow.Connector;
+import eu.mihosoft.vrl.workflow.VFlowModel;
+import eu.mihosoft.vrl.workflow.VNode;
+import eu.mihosoft.vrl.workflow.ValueObject;
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import javafx.util.Duration;
+
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Transfers model changes from background threads to the JavaFX application
+ * thread. Changes are queued by arbitrary threads and applied once per pulse
+ * in batched updates of the flow model (see
+ * {@link VFlowModel#beginUpdate()}), i.e., skins are not created and updated
+ * once per change. If the pending changes cannot be applied within the frame
+ * budget, the remaining changes are applied during the next pulses.
+ *
+ * <p>
+ * Location and size changes are coalesced per node (last write wins). All
+ * other changes are applied in the order they have been queued. Each applied
+ * change (including location and size changes) counts against the frame
+ * budget. This includes the cost of ending the batched update, i.e., of
+ * creating the skins of added nodes and connections. Therefore, a pulse may
+ * consist of several batched updates. Structural, location and size changes are applied alternately,
+ * i.e., none of them delays the others indefinitely.
+ * </p>
+ *
+ * <p>
+ * <b>Note:</b> the flow must only be modified by the JavaFX application
+ * thread, e.g., via this bridge.
+ * </p>
+ *
+ * @author Michael Hoffer &lt;info@michaelhoffer.de&gt;
+ */
+public final class FXFlowBridge {
+
+    private final VFlowModel flow;
+    private final Executor fxExecutor;
+    private final LongSupplier clock;
+    // nanoseconds
+    private volatile long frameBudget = 8_000_000L;
+    // estimated cost of ending an update per structural change (nanoseconds,
+    // negative if unknown), only accessed by the fx thread
+    private long updateCost = -1;
+
+    // guarded by lock
+    private final Object lock = new Object();
+    private final Queue<Consumer<? super VFlowModel>> operations = new ArrayDeque<>();
+    private final Map<VNode, double[]> locations = new LinkedHashMap<>();
+    private final Map<VNode, double[]> sizes = new LinkedHashMap<>();
+    private boolean scheduled;
+    private boolean disposed;
+
+    // only accessed by the fx thread
+    private AnimationTimer timer;
+
+    /**
+     * Creates a new bridge.
+     *
+     * @param flow flow to modify (usually the root flow)
+     */
+    public FXFlowBridge(VFlowModel flow) {
+        this(flow, Platform::runLater, System::nanoTime);
+    }
+
+    /**
+     * Creates a new bridge.
+     *
+     * @param flow flow to modify
+     * @param fxExecutor executes actions on the JavaFX application thread
+     * @param clock time source (in nanoseconds)
+     */
+    FXFlowBridge(VFlowModel flow, Executor fxExecutor, LongSupplier clock) {
+        this.flow = flow;
+        this.fxExecutor = fxExecutor;
+        this.clock = clock;
+    }
+
+    /**
+     * Defines the maximum time per pulse that is spent to apply changes.
+     * At least one change is applied per pulse. The default budget is 8 ms,
+     * i.e., half of a frame at 60 fps.
+     *
+     * @param budget frame budget
+     */
+    public void setFrameBudget(Duration budget) {
+        this.frameBudget = (long) (budget.toMillis() * 1e6);
+    }
+
+    /**
+     * Returns the frame budget.
+     *
+     * @return the frame budget
+     */
+    public Duration getFrameBudget() {
+        return Duration.millis(frameBudget / 1e6);
+    }
+
+    /**
+     * Queues the specified change. It is applied on the JavaFX application
+     * thread.
+     *
+     * @param change change to apply (receives the flow of this bridge)
+     */
+    public void submit(Consumer<? super VFlowModel> change) {
+        enqueue(() -> operations.add(change));
+    }
+
+    /**
+     * Queues the creation of a node in the flow of this bridge.
+     *
+     * @param initializer initializes the new node on the JavaFX application
+     * thread (may be {@code null})
+     */
+    public void newNode(Consumer<? super VNode> initializer) {
+        submit((f) -> {
+            VNode n = f.newNode();
+            if (initializer != null) {
+                initializer.accept(n);
+            }
+        });
+    }
+
+    /**
+     * Queues the creation of a node in the flow of this bridge.
+     *
+     * @param obj value object of the new node
+     * @param initializer initializes the new node on the JavaFX application
+     * thread (may be {@code null})
+     */
+    public void newNode(ValueObject obj, Consumer<? super VNode> initializer) {
+        submit((f) -> {
+            VNode n = f.newNode(obj);
+            if (initializer != null) {
+                initializer.accept(n);
+            }
+        });
+    }
+
+    /**
+     * Queues a connection between the specified connectors.
+     *
+     * @param s sender connector
+     * @param r receiver connector
+     */
+    public void connect(Connector s, Connector r) {
+        submit((f) -> s.getNode().getFlow().connect(s, r));
+    }
+
+    /**
+     * Queues the removal of the specified node. Pending location and size
+     * changes of the node are discarded.
+     *
+     * @param n node to remove
+     */
+    public void remove(VNode n) {
+        enqueue(() -> {
+            locations.remove(n);
+            sizes.remove(n);
+            operations.add((f) -> n.getFlow().remove(n));
+        });
+    }
+
+    /**
+     * Queues a location change of the specified node. Only the most recent
+     * location of a node is applied.
+     *
+     * @param n node
+     * @param x x coordinate
+     * @param y y coordinate
+     */
+    public void setLocation(VNode n, double x, double y) {
+        enqueue(() -> locations.put(n, new double[]{x, y}));
+    }
+
+    /**
+     * Queues a size change of the specified node. Only the most recent size
+     * of a node is applied.
+     *
+     * @param n node
+     * @param width width
+     * @param height height
+     */
+    public void setSize(VNode n, double width, double height) {
+        enqueue(() -> sizes.put(n, new double[]{width, height}));
+    }
+
+    /**
+     * Returns the number of pending changes.
+     *
+     * @return the number of pending changes
+     */
+    public int getPendingCount() {
+        synchronized (lock) {
+            return operations.size() + locations.size() + sizes.size();
+        }
+    }
+
+    /**
+     * Applies all pending changes immediately. Must be called on the JavaFX
+     * application thread.
+     */
+    public void flush() {
+        apply(Long.MAX_VALUE);
+    }
+
+    /**
+     * Stops applying changes. Pending changes are discarded.
+     */
+    public void dispose() {
+        synchronized (lock) {
+            disposed = true;
+            operations.clear();
+            locations.clear();
+            sizes.clear();
+        }
+
+        fxExecutor.execute(() -> {
+            if (timer != null) {
+                timer.stop();
+            }
+        });
+    }
+
+    private void enqueue(Runnable action) {
+        boolean start;
+
+        synchronized (lock) {
+            if (disposed) {
+                throw new IllegalStateException("Bridge has been disposed.");
+            }
+
+            action.run();
+
+            start = !scheduled;
+            scheduled = true;
+        }
+
+        if (start) {
+            fxExecutor.execute(this::startTimer);
+        }
+    }
+
+    private void startTimer() {
+        if (timer == null) {
+            timer = new AnimationTimer() {
+                @Override
+                public void handle(long now) {
+                    pulse();
+                }
+            };
+        }
+
+        timer.start();
+    }
+
+    private void pulse() {
+        apply(frameBudget);
+
+        synchronized (lock) {
+            if (operations.isEmpty() && locations.isEmpty()
+                    && sizes.isEmpty()) {
+                // producers restart the timer
+                scheduled = false;
+                timer.stop();
+            }
+        }
+    }
+
+    /**
+     * Applies pending changes. Structural, location and size changes are
+     * taken alternately. At least one change is applied.
+     *
+     * <p>
+     * Structural changes are applied in batched updates of the flow. Most of
+     * their cost (e.g., skin creation) arises when the update ends. Therefore,
+     * the estimated cost of ending the update is counted against the budget
+     * while changes are applied, and the estimate is measured after each
+     * update. As long as no estimate exists, one structural change is
+     * applied per update.
+     * </p>
+     *
+     * @param budget maximum duration (in nanoseconds)
+     */
+    void apply(long budget) {
+        long start = clock.getAsLong();
+        int turn = 0;
+
+        while (true) {
+            int applied = 0;
+            int structural = 0;
+            long now = start;
+
+            flow.beginUpdate();
+
+            try {
+                while (true) {
+                    Runnable change = null;
+                    int kind = 0;
+
+                    synchronized (lock) {
+                        for (int i = 0; i < 3 && change == null;
+                                i++, turn = (turn + 1) % 3) {
+                            kind = turn;
+                            change = nextChange(turn);
+                        }
+                    }
+
+                    if (change == null) {
+                        break;
+                    }
+
+                    try {
+                        change.run();
+                    } catch (Throwable tr) {
+                        Logger.getLogger(FXFlowBridge.class.getName()).log(Level.SEVERE, null, tr);
+                    }
+
+                    applied++;
+
+                    if (kind == 0) {
+                        structural++;
+                    }
+
+                    now = clock.getAsLong();
+
+                    // at least one change per pulse
+                    if (now - start + structural * Math.max(updateCost, 0) >= budget
+                            || (updateCost < 0 && structural > 0)) {
+                        break;
+                    }
+                }
+            } finally {
+                flow.endUpdate();
+            }
+
+            if (applied == 0) {
+                break;
+            }
+
+            long end = clock.getAsLong();
+
+            if (structural > 0) {
+                long cost = (end - now) / structural;
+                updateCost = updateCost < 0 ? cost : (updateCost + cost) / 2;
+            }
+
+            if (end - start >= budget) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Removes the next pending change of the specified kind (guarded by
+     * lock).
+     *
+     * @param kind {@code 0}: structural change, {@code 1}: location change,
+     * {@code 2}: size change
+     * @return the next change of the specified kind or {@code null} if no
+     * such change is pending
+     */
+    private Runnable nextChange(int kind) {
+        if (kind == 0) {
+            Consumer<? super VFlowModel> op = operations.poll();
+            return op == null ? null : () -> op.accept(flow);
+        }
+
+        Map<VNode, double[]> changes = kind == 1 ? locations : sizes;
+
+        if (changes.isEmpty()) {
+            return null;
+        }
+
+        Map.Entry<VNode, double[]> e = changes.entrySet().iterator().next();
+        VNode n = e.getKey();
+        double[] v = e.getValue();
+        changes.remove(n);
+
+        if (kind == 1) {
+            return () -> {
+                n.setX(v[0]);
+                n.setY(v[1]);
+            };
+        } else {
+            return () -> {
+                n.setWidth(v[0]);
+                n.setHeight(v[1]);
+            };
+        }
+    }
+}
@@ -617,7 +617,7 @@ public class FXFlowNodeSkin
 
                     int numOfExistingConnections = connector.getNode().getFlow().
                     getConnections(connector.getType()).
-                    getAllWith(connector).size();
+                    degreeOf(connector);
 
                     if (numOfExistingConnections < connector.
                     getMaxNumberOfConnections()) {
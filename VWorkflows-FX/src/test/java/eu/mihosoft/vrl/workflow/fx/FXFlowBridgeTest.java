@@ -0,0 +1,200 @@
+/*
+ * Copyright 2012-2016 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * Please cite the following publication(s):
+ *
+ * M. Hoffer, C.Poliwoda, G.Wittum. Visual Reflection Library -
+ * A Framework for Declarative GUI Programming on the Java Platform.
+ * Computing and Visualization in Science, 2011, in press.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vrl.workflow.fx;
+
+import eu.mihosoft.vrl.workflow.FlowFactory;
+import eu.mihosoft.vrl.workflow.VFlowModel;
+import eu.mihosoft.vrl.workflow.VNode;
+import javafx.collections.ListChangeListener;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *
+ * @author Michael Hoffer &lt;info@michaelhoffer.de&gt;
+ */
+public class FXFlowBridgeTest {
+
+    // the tests act as JavaFX application thread, i.e., the timer is never
+    // started and changes are applied explicitly
+    private final List<Runnable> fxActions = new ArrayList<>();
+    private final AtomicLong time = new AtomicLong();
+
+    private FXFlowBridge newBridge(VFlowModel flow) {
+        // each clock query advances the time by one nanosecond
+        return new FXFlowBridge(flow, fxActions::add, time::getAndIncrement);
+    }
+
+    @Test
+    public void coalescingTest() {
+        VFlowModel flow = FlowFactory.newFlow().getModel();
+        VNode n = flow.newNode();
+        FXFlowBridge bridge = newBridge(flow);
+
+        bridge.setLocation(n, 1, 2);
+        bridge.setSize(n, 10, 20);
+        bridge.setLocation(n, 3, 4);
+        bridge.setSize(n, 30, 40);
+
+        // last write wins
+        Assert.assertEquals(2, bridge.getPendingCount());
+        // the timer is started once
+        Assert.assertEquals(1, fxActions.size());
+
+        bridge.flush();
+
+        Assert.assertEquals(0, bridge.getPendingCount());
+        Assert.assertEquals(3, n.getX(), 0);
+        Assert.assertEquals(4, n.getY(), 0);
+        Assert.assertEquals(30, n.getWidth(), 0);
+        Assert.assertEquals(40, n.getHeight(), 0);
+    }
+
+    @Test
+    public void budgetTest() {
+        VFlowModel flow = FlowFactory.newFlow().getModel();
+        FXFlowBridge bridge = newBridge(flow);
+
+        List<VNode> nodes = new ArrayList<>();
+
+        for (int i = 0; i < 4; i++) {
+            VNode n = flow.newNode();
+            nodes.add(n);
+            bridge.setLocation(n, i + 1, i + 1);
+            bridge.setSize(n, i + 1, i + 1);
+        }
+
+        bridge.newNode(null);
+
+        Assert.assertEquals(9, bridge.getPendingCount());
+
+        // location and size changes as well as ending the update count
+        // against the budget
+        bridge.apply(4);
+        Assert.assertEquals(6, bridge.getPendingCount());
+        Assert.assertEquals(5, flow.getNodes().size());
+        Assert.assertEquals(1, nodes.get(0).getX(), 0);
+        Assert.assertEquals(1, nodes.get(0).getWidth(), 0);
+        Assert.assertEquals(0, nodes.get(1).getX(), 0);
+
+        bridge.apply(3);
+        bridge.apply(3);
+        Assert.assertEquals(0, bridge.getPendingCount());
+        Assert.assertEquals(4, nodes.get(3).getX(), 0);
+        Assert.assertEquals(4, nodes.get(3).getHeight(), 0);
+
+        // at least one change per pulse
+        bridge.setLocation(nodes.get(0), 5, 5);
+        bridge.setLocation(nodes.get(1), 5, 5);
+        bridge.apply(0);
+        Assert.assertEquals(1, bridge.getPendingCount());
+    }
+
+    @Test
+    public void structuralOrderTest() {
+        VFlowModel flow = FlowFactory.newFlow().getModel();
+        FXFlowBridge bridge = newBridge(flow);
+
+        List<Integer> applied = new ArrayList<>();
+
+        for (int i = 0; i < 10; i++) {
+            int index = i;
+            bridge.submit((f) -> applied.add(index));
+        }
+
+        VNode n = flow.newNode();
+        bridge.setLocation(n, 1, 1);
+        bridge.remove(n);
+
+        // applied across several pulses in the order of submission
+        bridge.apply(3);
+        Assert.assertEquals(Arrays.asList(0, 1), applied);
+
+        bridge.apply(5);
+        Assert.assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5), applied);
+
+        bridge.flush();
+        Assert.assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9),
+                applied);
+
+        // the pending location change has been discarded by the removal
+        Assert.assertFalse(flow.getNodes().contains(n));
+        Assert.assertEquals(0, n.getX(), 0);
+    }
+
+    @Test
+    public void expensiveUpdateTest() {
+        VFlowModel flow = FlowFactory.newFlow().getModel();
+        AtomicLong clock = new AtomicLong();
+
+        // adding nodes is cheap, creating their skins when the update ends
+        // is expensive
+        flow.getNodes().addListener(
+                (ListChangeListener.Change<? extends VNode> c) -> {
+                    while (c.next()) {
+                        clock.addAndGet(1000L * c.getAddedSize());
+                    }
+                });
+
+        FXFlowBridge bridge = new FXFlowBridge(flow, fxActions::add,
+                clock::get);
+
+        for (int i = 0; i < 100; i++) {
+            bridge.newNode(null);
+        }
+
+        int pulses = 0;
+
+        while (bridge.getPendingCount() > 0) {
+            long start = clock.get();
+            int count = flow.getNodes().size();
+
+            bridge.apply(8000);
+
+            // ending the update counts against the budget
+            Assert.assertTrue(clock.get() - start <= 8000);
+            Assert.assertTrue(flow.getNodes().size() > count);
+
+            pulses++;
+        }
+
+        Assert.assertEquals(100, flow.getNodes().size());
+        Assert.assertEquals(13, pulses);
+    }
+}